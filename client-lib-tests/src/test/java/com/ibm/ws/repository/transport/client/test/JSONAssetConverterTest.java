@@ -25,6 +25,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.List;
 import java.util.TimeZone;
 
@@ -99,6 +100,31 @@ public class JSONAssetConverterTest {
         testAsset(readInAsset);
     }
 
+    /**
+     * Test that a list of assets and a single asset survive a round trip through the Smile
+     * encoding
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSmileConversion() throws Exception {
+        Asset asset = createTestAsset();
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        JSONAssetConverter.writeValueAsSmile(outputStream, Collections.singletonList(asset));
+        List<Asset> readInAssets = JSONAssetConverter
+                        .readValuesFromSmile(new ByteArrayInputStream(outputStream.toByteArray()));
+        assertEquals("We only serialized one asset so should have one back", 1,
+                     readInAssets.size());
+        testAsset(readInAssets.get(0));
+
+        outputStream = new ByteArrayOutputStream();
+        JSONAssetConverter.writeValueAsSmile(outputStream, asset);
+        Asset readInAsset = JSONAssetConverter
+                        .readValueFromSmile(new ByteArrayInputStream(outputStream.toByteArray()));
+        testAsset(readInAsset);
+    }
+
     /**
      * Test to ensure we're serializing dates correctly
      * <p>
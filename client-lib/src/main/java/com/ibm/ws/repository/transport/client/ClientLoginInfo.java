@@ -33,6 +33,8 @@ public class ClientLoginInfo {
 
     private LoginInfoClientProxy proxy;
 
+    private boolean smileEncoding;
+
     public ClientLoginInfo(String userId, String password, String apiKey, String repositoryUrl,
                      String softlayerUserId, String softlayerPassword, String attachmentBasicAuthUserId, String attachmentBasicAuthPassword, String userAgent) {
         this.userId = userId;
@@ -145,4 +147,25 @@ public class ClientLoginInfo {
     public void setUserAgent(String userAgent) {
         this.userAgent = userAgent;
     }
+
+    /**
+     * @return true if assets should be sent to and requested from the repository using the Smile
+     *         binary encoding rather than JSON
+     */
+    public boolean isSmileEncoding() {
+        return smileEncoding;
+    }
+
+    /**
+     * <p>Sets whether assets should be sent to and requested from the repository using the Smile
+     * binary encoding, which is smaller and quicker to parse than JSON.</p>
+     * <p>Responses are only Smile encoded if the repository supports it, but when this is set
+     * new assets are always sent Smile encoded, so it should only be set for a repository which
+     * supports Smile.</p>
+     *
+     * @param smileEncoding true to use Smile, false to use JSON
+     */
+    public void setSmileEncoding(boolean smileEncoding) {
+        this.smileEncoding = smileEncoding;
+    }
 }
@@ -341,6 +341,24 @@ public class DataModelSerializer {
         }
     }
 
+    /**
+     * Convert a POJO into a JSON structure.
+     *
+     * @param o the POJO to serialize
+     * @return the JSON object or array
+     * @throws IOException when there are problems creating the JSON.
+     */
+    public static JsonStructure serializeAsJsonStructure(Object o) throws IOException {
+        try {
+            return findFieldsToSerialize(o).mainObject;
+        } catch (IllegalStateException ise) {
+            // the reflective attempt to build the object failed.
+            throw new IOException("Unable to build JSON for Object", ise);
+        } catch (JsonException e) {
+            throw new IOException("Unable to build JSON for Object", e);
+        }
+    }
+
     /**
      * Convert a POJO into Serialized JSON form.
      *
@@ -767,22 +785,62 @@ public class DataModelSerializer {
             JsonReader jsonReader = Json.createReader(i);
             JsonObject parsedObject = jsonReader.readObject();
             jsonReader.close();
-            T newT = processJsonObjectBackIntoDataModelInstance(parsedObject, typeOfObject, verify);
-            return newT;
+            return doDeserializeObject(parsedObject, typeOfObject, verify);
         } catch (JsonException e) {
             throw new IOException("Failed to deserialize object of type " + typeOfObject.getName(), e);
         }
     }
 
-    public static <T> List<T> deserializeList(InputStream i, Class<? extends T> listElementType) throws IOException {
-        List<T> newT = new ArrayList<T>();
+    /**
+     * Convert an already parsed JSON object into a POJO.
+     *
+     * @param json the JSON object
+     * @param typeOfObject the type of POJO to create
+     * @return the POJO
+     * @throws IOException when the JSON doesn't match the type
+     * @throws BadVersionException when the object is at a version this client can't handle
+     */
+    public static <T> T deserializeObject(JsonObject json, Class<? extends T> typeOfObject)
+                    throws IOException, BadVersionException {
+        return doDeserializeObject(json, typeOfObject, Verification.VERIFY);
+    }
+
+    private static <T> T doDeserializeObject(JsonObject json, Class<? extends T> typeOfObject, Verification verify)
+                    throws IOException, BadVersionException {
+        try {
+            return processJsonObjectBackIntoDataModelInstance(json, typeOfObject, verify);
+        } catch (JsonException e) {
+            throw new IOException("Failed to deserialize object of type " + typeOfObject.getName(), e);
+        }
+    }
 
+    public static <T> List<T> deserializeList(InputStream i, Class<? extends T> listElementType) throws IOException {
+        JsonArray parsedArray;
         try {
             JsonReader jsonReader = Json.createReader(i);
-            JsonArray parsedArray = jsonReader.readArray();
+            parsedArray = jsonReader.readArray();
             jsonReader.close();
+        } catch (JsonException e) {
+            throw new IOException("Failed to deserialize list", e);
+        }
+        return deserializeList(parsedArray, listElementType);
+    }
+
+    /**
+     * Convert an already parsed JSON array into a list of POJOs. Elements at a version this client
+     * can't handle are left out of the list.
+     *
+     * @param json the JSON array
+     * @param listElementType the type of POJO to create for each element
+     * @return the list of POJOs
+     * @throws IOException when the JSON doesn't match the type
+     */
+    public static <T> List<T> deserializeList(JsonArray json, Class<? extends T> listElementType) throws IOException {
+        List<T> newT = new ArrayList<T>();
+
+        try {
             // Process the array, if it comes across any elements that are at an invalid version tell it to ignore them rather than throw an exception
-            processJsonArray(parsedArray, newT, listElementType, Verification.VERIFY, ListVersionHandling.IGNORE_ELEMENT);
+            processJsonArray(json, newT, listElementType, Verification.VERIFY, ListVersionHandling.IGNORE_ELEMENT);
         } catch (BadVersionException e) {
             // We've told the Array handle to ignore these exception so this should never happen but it is in the method signature for nested array processing
         } catch (JsonException e) {
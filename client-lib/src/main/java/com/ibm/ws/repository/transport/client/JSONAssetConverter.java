@@ -21,11 +21,16 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.List;
 
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonStructure;
+
 import com.ibm.ws.repository.transport.exceptions.BadVersionException;
 import com.ibm.ws.repository.transport.model.Asset;
 
 /**
- * This class contains utilities for converting {@link Asset}s to and from JSON
+ * This class contains utilities for converting {@link Asset}s to and from JSON, or its binary
+ * Smile encoding
  */
 public class JSONAssetConverter {
 
@@ -121,4 +126,52 @@ public class JSONAssetConverter {
     }
 
     
+    /**
+     * Write a Smile encoded representation of the asset to a stream
+     *
+     * @param stream
+     *            The stream to write to
+     * @param pojo
+     *            The asset to write
+     * @throws IOException
+     */
+    public static void writeValueAsSmile(OutputStream stream, Object pojo)
+            throws IOException {
+        SmileConverter.write(DataModelSerializer.serializeAsJsonStructure(pojo), stream);
+    }
+
+    /**
+     * Read a list of assets from a Smile encoded input stream
+     *
+     * @param inputStream
+     *            The stream to read from
+     * @return The list of assets
+     * @throws IOException
+     */
+    public static List<Asset> readValuesFromSmile(InputStream inputStream)
+            throws IOException {
+        JsonStructure json = SmileConverter.read(inputStream);
+        if (!(json instanceof JsonArray)) {
+            throw new IOException("Failed to deserialize list, the data was not an array");
+        }
+        return DataModelSerializer.deserializeList((JsonArray) json, Asset.class);
+    }
+
+    /**
+     * Read a single asset from a Smile encoded input stream
+     *
+     * @param inputStream
+     *            The stream to read from
+     * @return The asset
+     * @throws IOException
+     * @throws BadVersionException
+     */
+    public static Asset readValueFromSmile(InputStream inputStream) throws IOException, BadVersionException {
+        JsonStructure json = SmileConverter.read(inputStream);
+        if (!(json instanceof JsonObject)) {
+            throw new IOException("Failed to deserialize object of type " + Asset.class.getName() + ", the data was not an object");
+        }
+        return DataModelSerializer.deserializeObject((JsonObject) json, Asset.class);
+    }
+
 }
@@ -99,8 +99,9 @@ public class RestClient extends AbstractRepositoryClient implements RepositoryRe
     public List<Asset> getAllAssets() throws IOException, RequestFailureException {
         HttpURLConnection connection = createHttpURLConnectionToMassive("/assets");
         connection.setRequestMethod("GET");
+        setAcceptedEncoding(connection);
         testResponseCode(connection);
-        return JSONAssetConverter.readValues(connection.getInputStream());
+        return readAssets(connection);
     }
 
     /**
@@ -145,12 +146,17 @@ public class RestClient extends AbstractRepositoryClient implements RepositoryRe
 
         HttpURLConnection connection = createHttpURLConnectionToMassive("/assets");
         connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/json");
         connection.setDoOutput(true);
-        JSONAssetConverter.writeValue(connection.getOutputStream(), asset);
+        setAcceptedEncoding(connection);
+        if (loginInfo.isSmileEncoding()) {
+            connection.setRequestProperty("Content-Type", SmileConverter.SMILE_MEDIA_TYPE);
+            JSONAssetConverter.writeValueAsSmile(connection.getOutputStream(), asset);
+        } else {
+            connection.setRequestProperty("Content-Type", "application/json");
+            JSONAssetConverter.writeValue(connection.getOutputStream(), asset);
+        }
         testResponseCode(connection);
-        Asset returnedAsset = JSONAssetConverter.readValue(connection
-                        .getInputStream());
+        Asset returnedAsset = readAsset(connection);
         returnedAsset = getAsset(returnedAsset.get_id());
         return returnedAsset;
     }
@@ -237,11 +243,11 @@ public class RestClient extends AbstractRepositoryClient implements RepositoryRe
         // Call massive to run the query
         HttpURLConnection connection = createHttpURLConnectionToMassive(url.toString());
         connection.setRequestMethod("GET");
+        setAcceptedEncoding(connection);
         testResponseCode(connection);
-        InputStream is = connection.getInputStream();
 
         // take the returned input stream and convert it to assets
-        List<Asset> assets = JSONAssetConverter.readValues(is);
+        List<Asset> assets = readAssets(connection);
         return assets;
     }
 
@@ -553,8 +559,9 @@ public class RestClient extends AbstractRepositoryClient implements RepositoryRe
         HttpURLConnection connection = createHttpURLConnectionToMassive("/assets/"
                                                                         + assetId);
         connection.setRequestMethod("GET");
+        setAcceptedEncoding(connection);
         testResponseCode(connection);
-        return JSONAssetConverter.readValue(connection.getInputStream());
+        return readAsset(connection);
     }
 
     /**
@@ -709,6 +716,41 @@ public class RestClient extends AbstractRepositoryClient implements RepositoryRe
         return connection;
     }
 
+    /**
+     * If Smile encoding is enabled, ask for a Smile encoded response, falling back to JSON if the
+     * repository doesn't support Smile
+     */
+    private void setAcceptedEncoding(HttpURLConnection connection) {
+        if (loginInfo.isSmileEncoding()) {
+            connection.setRequestProperty("Accept", SmileConverter.SMILE_MEDIA_TYPE + ", application/json;q=0.9");
+        }
+    }
+
+    /**
+     * Read a list of assets from the response, in whichever encoding the repository used
+     */
+    private List<Asset> readAssets(HttpURLConnection connection) throws IOException {
+        if (isSmileResponse(connection)) {
+            return JSONAssetConverter.readValuesFromSmile(connection.getInputStream());
+        }
+        return JSONAssetConverter.readValues(connection.getInputStream());
+    }
+
+    /**
+     * Read a single asset from the response, in whichever encoding the repository used
+     */
+    private Asset readAsset(HttpURLConnection connection) throws IOException, BadVersionException {
+        if (isSmileResponse(connection)) {
+            return JSONAssetConverter.readValueFromSmile(connection.getInputStream());
+        }
+        return JSONAssetConverter.readValue(connection.getInputStream());
+    }
+
+    private static boolean isSmileResponse(HttpURLConnection connection) {
+        String contentType = connection.getContentType();
+        return contentType != null && contentType.toLowerCase().startsWith(SmileConverter.SMILE_MEDIA_TYPE);
+    }
+
     private void addAuthToConnection(HttpURLConnection connection) {
         String basicAuthUserPass = null;
 
@@ -814,8 +856,9 @@ public class RestClient extends AbstractRepositoryClient implements RepositoryRe
         // Now do the filtered call into massive
         HttpURLConnection connection = createHttpURLConnectionToMassive("/assets" + filterString.toString());
         connection.setRequestMethod("GET");
+        setAcceptedEncoding(connection);
         testResponseCode(connection);
-        return JSONAssetConverter.readValues(connection.getInputStream());
+        return readAssets(connection);
     }
 
     /**
@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.repository.transport.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonString;
+import javax.json.JsonStructure;
+import javax.json.JsonValue;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Reads and writes JSON structures in the Smile binary encoding, which is more compact and quicker
+ * to parse than JSON text.
+ * <p>
+ * The rest of the client works with javax.json structures, so Smile data is converted directly to
+ * and from those structures without going through JSON text.
+ */
+class SmileConverter {
+
+    /** The media type for Smile encoded data */
+    static final String SMILE_MEDIA_TYPE = "application/x-jackson-smile";
+
+    private static final SmileFactory FACTORY = new SmileFactory();
+
+    /**
+     * Read a Smile encoded object or array from a stream. The stream is closed afterwards.
+     *
+     * @param inputStream The stream to read from
+     * @return The object or array
+     * @throws IOException if the stream does not contain a Smile encoded object or array
+     */
+    static JsonStructure read(InputStream inputStream) throws IOException {
+        JsonParser parser = FACTORY.createParser(inputStream);
+        try {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                return readObject(parser).build();
+            } else if (token == JsonToken.START_ARRAY) {
+                return readArray(parser).build();
+            } else {
+                throw new IOException("Expected a Smile encoded object or array but found " + token);
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Write an object or array to a stream using the Smile encoding. The stream is closed
+     * afterwards.
+     *
+     * @param json The object or array to write
+     * @param outputStream The stream to write to
+     * @throws IOException
+     */
+    static void write(JsonStructure json, OutputStream outputStream) throws IOException {
+        JsonGenerator generator = FACTORY.createGenerator(outputStream);
+        try {
+            writeValue(generator, json);
+        } finally {
+            generator.close();
+        }
+    }
+
+    private static JsonObjectBuilder readObject(JsonParser parser) throws IOException {
+        JsonObjectBuilder builder = Json.createObjectBuilder();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            switch (token) {
+                case START_OBJECT:
+                    builder.add(name, readObject(parser));
+                    break;
+                case START_ARRAY:
+                    builder.add(name, readArray(parser));
+                    break;
+                case VALUE_STRING:
+                    builder.add(name, parser.getText());
+                    break;
+                case VALUE_NUMBER_INT:
+                    if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                        builder.add(name, parser.getBigIntegerValue());
+                    } else {
+                        builder.add(name, parser.getLongValue());
+                    }
+                    break;
+                case VALUE_NUMBER_FLOAT:
+                    builder.add(name, parser.getDecimalValue());
+                    break;
+                case VALUE_TRUE:
+                    builder.add(name, true);
+                    break;
+                case VALUE_FALSE:
+                    builder.add(name, false);
+                    break;
+                case VALUE_NULL:
+                    builder.addNull(name);
+                    break;
+                default:
+                    throw new IOException("Unexpected token in Smile data: " + token);
+            }
+        }
+        return builder;
+    }
+
+    private static JsonArrayBuilder readArray(JsonParser parser) throws IOException {
+        JsonArrayBuilder builder = Json.createArrayBuilder();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new IOException("Unexpected end of Smile data");
+            }
+            switch (token) {
+                case START_OBJECT:
+                    builder.add(readObject(parser));
+                    break;
+                case START_ARRAY:
+                    builder.add(readArray(parser));
+                    break;
+                case VALUE_STRING:
+                    builder.add(parser.getText());
+                    break;
+                case VALUE_NUMBER_INT:
+                    if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                        builder.add(parser.getBigIntegerValue());
+                    } else {
+                        builder.add(parser.getLongValue());
+                    }
+                    break;
+                case VALUE_NUMBER_FLOAT:
+                    builder.add(parser.getDecimalValue());
+                    break;
+                case VALUE_TRUE:
+                    builder.add(true);
+                    break;
+                case VALUE_FALSE:
+                    builder.add(false);
+                    break;
+                case VALUE_NULL:
+                    builder.addNull();
+                    break;
+                default:
+                    throw new IOException("Unexpected token in Smile data: " + token);
+            }
+        }
+        return builder;
+    }
+
+    private static void writeValue(JsonGenerator generator, JsonValue value) throws IOException {
+        switch (value.getValueType()) {
+            case OBJECT:
+                generator.writeStartObject();
+                for (Map.Entry<String, JsonValue> entry : ((JsonObject) value).entrySet()) {
+                    generator.writeFieldName(entry.getKey());
+                    writeValue(generator, entry.getValue());
+                }
+                generator.writeEndObject();
+                break;
+            case ARRAY:
+                generator.writeStartArray();
+                for (JsonValue element : (JsonArray) value) {
+                    writeValue(generator, element);
+                }
+                generator.writeEndArray();
+                break;
+            case STRING:
+                generator.writeString(((JsonString) value).getString());
+                break;
+            case NUMBER:
+                JsonNumber number = (JsonNumber) value;
+                if (number.isIntegral()) {
+                    BigInteger bigInteger = number.bigIntegerValue();
+                    if (bigInteger.bitLength() < 64) {
+                        generator.writeNumber(bigInteger.longValue());
+                    } else {
+                        generator.writeNumber(bigInteger);
+                    }
+                } else {
+                    generator.writeNumber(number.bigDecimalValue());
+                }
+                break;
+            case TRUE:
+                generator.writeBoolean(true);
+                break;
+            case FALSE:
+                generator.writeBoolean(false);
+                break;
+            case NULL:
+                generator.writeNull();
+                break;
+        }
+    }
+
+}
@@ -38,9 +38,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.ParseException;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.entity.mime.content.ByteArrayBody;
+import org.apache.http.entity.mime.content.StringBody;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -1215,6 +1219,130 @@ public class ApiTest {
         userRepo.getAssetReviewsBad(a.get_id(), 404, "asset not found for id: " + a.get_id());
     }
 
+    /**
+     * Test that POST /resolve returns a feature and everything it requires, but nothing else
+     */
+    @Test
+    public void testResolveFeatures() throws Exception {
+        addFeatureWithState(Asset.State.PUBLISHED, "com.example.a", "com.example.b");
+        addFeatureWithState(Asset.State.PUBLISHED, "com.example.b", "com.example.c");
+        addFeatureWithState(Asset.State.PUBLISHED, "com.example.c");
+        addFeatureWithState(Asset.State.PUBLISHED, "com.example.unrelated");
+        addFeatureWithState(Asset.State.DRAFT, "com.example.draft");
+
+        String request = "{\"symbolicNames\":[\"com.example.a\", \"com.example.draft\"],"
+                         + "\"product\":{\"id\":\"com.ibm.websphere.appserver\",\"version\":\"8.5.5.9\"}}";
+        AssetList resolved = AssetList.jsonArrayToAssetList(repository.doPost("/resolve", request, 200));
+
+        List<Object> names = new ArrayList<>();
+        for (Asset asset : resolved) {
+            names.add(((Map<?, ?>) asset.getProperty("wlpInformation")).get("provideFeature"));
+        }
+        assertThat(names, containsInAnyOrder((Object) Arrays.asList("com.example.a"),
+                                             Arrays.asList("com.example.b"),
+                                             Arrays.asList("com.example.c")));
+
+        String message = repository.parseErrorObject(repository.doPost("/resolve", "{\"symbolicNames\":[]}", 400));
+        assertEquals("Wrong error message", "symbolicNames must be a non-empty list of feature names", message);
+    }
+
+    /**
+     * Test that POST /assets/bulkGet returns the requested assets in order, with their
+     * attachments, and only returns published assets to users
+     */
+    @Test
+    public void testBulkGet() throws Exception {
+        Asset published = repository.addAssetNoAttachments(AssetUtils.getTestAsset());
+        Attachment attachment = AssetUtils.getTestAttachmentWithContent();
+        repository.doPostAttachmentWithContent(published.get_id(), "attachment.txt", attachment, "I am content".getBytes("UTF-8"), ContentType.APPLICATION_OCTET_STREAM);
+        repository.moveAssetFromDraftToState(published.get_id(), Asset.State.PUBLISHED);
+        Asset draft = repository.addAssetNoAttachments(AssetUtils.getTestAsset());
+
+        String request = "{\"ids\":[\"" + draft.get_id() + "\", \"ffffffffffffffffffffffff\", \"" + published.get_id() + "\"]}";
+        AssetList assets = AssetList.jsonArrayToAssetList(repository.doPost("/assets/bulkGet", request, 200));
+        assertEquals("Wrong number of assets", 2, assets.size());
+        assertEquals("Assets should be in the order requested", draft.get_id(), assets.get(0).get_id());
+        assertEquals("Assets should be in the order requested", published.get_id(), assets.get(1).get_id());
+        assertEquals("Wrong number of attachments", 1, assets.get(1).getAttachments().size());
+
+        RepositoryContext userRepository = RepositoryContext.toUserContext(repository);
+        assets = AssetList.jsonArrayToAssetList(userRepository.doPost("/assets/bulkGet", request, 200));
+        assertEquals("Users should only get published assets", 1, assets.size());
+        assertEquals(published.get_id(), assets.get(0).get_id());
+
+        String message = repository.parseErrorObject(repository.doPost("/assets/bulkGet", "{\"ids\":\"wibble\"}", 400));
+        assertEquals("Wrong error message", "ids must be a list of asset ids", message);
+        repository.doPost("/assets/bulkGet", "{\"ids\":[\"wibble\"]}", 400);
+    }
+
+    @Test
+    public void testPostAssetWithAttachments() throws Exception {
+        Attachment content = AssetUtils.getTestAttachmentWithContent();
+        content.setName("content.txt");
+        Attachment link = AssetUtils.getTestAttachmentNoContent();
+        link.setName("link");
+        Attachment license = AssetUtils.getTestAttachmentWithContent();
+        license.setName("license.html");
+
+        HttpEntity request = MultipartEntityBuilder.create()
+                .addPart("asset", new StringBody(AssetUtils.getTestAsset().toJson(), ContentType.APPLICATION_JSON))
+                .addPart("attachmentInfo", new StringBody(content.toJson(), ContentType.APPLICATION_JSON))
+                .addPart("content.txt", new ByteArrayBody("I am content".getBytes("UTF-8"), ContentType.TEXT_PLAIN, "content.txt"))
+                .addPart("attachmentInfo", new StringBody(link.toJson(), ContentType.APPLICATION_JSON))
+                .addPart("attachmentInfo", new StringBody(license.toJson(), ContentType.APPLICATION_JSON))
+                .addPart("license.html", new ByteArrayBody("<p>License</p>".getBytes("UTF-8"), ContentType.TEXT_HTML, "license.html"))
+                .build();
+        Asset created = Asset.deserializeAssetFromJson(repository.doPostMultipart("/assets?state=published", request, 200));
+        assertEquals(Asset.State.PUBLISHED, created.getState());
+        assertEquals("Wrong number of attachments", 3, created.getAttachments().size());
+
+        Asset retrieved = repository.getAsset(created.get_id());
+        assertEquals(Asset.State.PUBLISHED, retrieved.getState());
+        assertEquals("Wrong number of attachments", 3, retrieved.getAttachments().size());
+        for (Attachment attachment : retrieved.getAttachments()) {
+            if (attachment.getName().equals("content.txt")) {
+                assertEquals("I am content", new String(repository.doGetAsByteArray("/assets/" + created.get_id() + "/attachments/"
+                                                                                  + attachment.get_id() + "/content.txt", 200), "UTF-8"));
+            }
+        }
+
+        // An attachment with a bad link type means nothing is created
+        int assetCount = repository.getAllAssets("").size();
+        Attachment badLink = AssetUtils.getTestAttachmentNoContent();
+        badLink.setName("badLink");
+        badLink.setLinkType("wibble");
+        request = MultipartEntityBuilder.create()
+                .addPart("asset", new StringBody(AssetUtils.getTestAsset().toJson(), ContentType.APPLICATION_JSON))
+                .addPart("attachmentInfo", new StringBody(content.toJson(), ContentType.APPLICATION_JSON))
+                .addPart("content.txt", new ByteArrayBody("I am content".getBytes("UTF-8"), ContentType.TEXT_PLAIN, "content.txt"))
+                .addPart("attachmentInfo", new StringBody(badLink.toJson(), ContentType.APPLICATION_JSON))
+                .build();
+        repository.doPostMultipart("/assets", request, 400);
+        assertEquals("No asset should be left behind", assetCount, repository.getAllAssets("").size());
+
+        request = MultipartEntityBuilder.create()
+                .addPart("asset", new StringBody(AssetUtils.getTestAsset().toJson(), ContentType.APPLICATION_JSON))
+                .build();
+        repository.doPostMultipart("/assets?state=wibble", request, 400);
+    }
+
+    private Asset addFeatureWithState(Asset.State targetState, String symbolicName, String... requiredFeatures) throws IOException, InvalidJsonAssetException {
+        Map<String, Object> minVersion = new HashMap<>();
+        minVersion.put("value", "8.5.5.0");
+        Map<String, Object> appliesTo = new HashMap<>();
+        appliesTo.put("productId", "com.ibm.websphere.appserver");
+        appliesTo.put("minVersion", minVersion);
+        Map<String, Object> wlpInformation = new HashMap<>();
+        wlpInformation.put("provideFeature", Arrays.asList(symbolicName));
+        wlpInformation.put("requireFeature", Arrays.asList(requiredFeatures));
+        wlpInformation.put("appliesToFilterInfo", Arrays.asList(appliesTo));
+
+        Asset feature = AssetUtils.getTestAsset();
+        feature.put("type", "com.ibm.websphere.Feature");
+        feature.put("wlpInformation", wlpInformation);
+        return repository.addAssetNoAttachmentsWithState(feature, targetState);
+    }
+
     /**
      * Test asset reviews, non-existent asset
      */
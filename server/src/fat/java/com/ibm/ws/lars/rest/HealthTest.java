@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.Test;
+
+import com.ibm.ws.lars.testutils.FatUtils;
+
+/**
+ * Tests for the health checks. These only make unauthenticated requests to the health checks, and
+ * never to the REST application.
+ */
+public class HealthTest {
+
+    private static final String HEALTH_URL = "http://localhost:" + FatUtils.LIBERTY_PORT_HTTP + "/health";
+
+    /** How long to wait for the server to become ready */
+    private static final long READY_TIMEOUT_MILLIS = 60000;
+
+    @Test
+    public void testLive() throws Exception {
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            assertEquals(200, getStatus(client, HEALTH_URL + "/live"));
+        }
+    }
+
+    /**
+     * The server must become ready without any request being made to the REST application
+     */
+    @Test
+    public void testReadyWithoutRestRequests() throws Exception {
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            long deadline = System.currentTimeMillis() + READY_TIMEOUT_MILLIS;
+            int status = getStatus(client, HEALTH_URL + "/ready");
+            while (status != 200 && System.currentTimeMillis() < deadline) {
+                assertEquals("The server should be ready or not ready yet", 503, status);
+                Thread.sleep(100);
+                status = getStatus(client, HEALTH_URL + "/ready");
+            }
+            assertEquals("The server should have become ready", 200, status);
+        }
+    }
+
+    private static int getStatus(CloseableHttpClient client, String url) throws IOException {
+        try (CloseableHttpResponse response = client.execute(new HttpGet(url))) {
+            return response.getStatusLine().getStatusCode();
+        }
+    }
+
+}
@@ -259,7 +259,7 @@ public class PermissionTest {
     @Test
     public void testDeleteAsset() throws IOException {
         if (role.isAdmin()) {
-            testContext.deleteAsset(createdPublishedAsset.get_id(), 204);
+            testContext.deleteAsset(createdPublishedAsset.get_id(), 202);
         } else {
             testContext.deleteAsset(createdPublishedAsset.get_id(), RC_REJECT);
         }
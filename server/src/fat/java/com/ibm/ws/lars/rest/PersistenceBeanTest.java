@@ -22,6 +22,7 @@ import static com.ibm.ws.lars.rest.matchers.ServerAssetByIdMatcher.assetsWithIds
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -52,10 +53,12 @@ import com.ibm.ws.lars.rest.model.Asset;
 import com.ibm.ws.lars.rest.model.AssetList;
 import com.ibm.ws.lars.rest.model.Attachment;
 import com.ibm.ws.lars.rest.model.AttachmentContentMetadata;
+import com.ibm.ws.lars.rest.model.AttachmentContentResponse;
 import com.ibm.ws.lars.testutils.BasicChecks;
 import com.ibm.ws.lars.testutils.FatUtils;
 import com.mongodb.DB;
 import com.mongodb.MongoClient;
+import com.mongodb.ReadPreference;
 import com.mongodb.WriteConcern;
 
 public class PersistenceBeanTest {
@@ -97,6 +100,11 @@ public class PersistenceBeanTest {
         dbField.setAccessible(true);
         dbField.set(persistenceBean, db);
 
+        // @Inject the configuration
+        Field configurationField = PersistenceBean.class.getDeclaredField("configuration");
+        configurationField.setAccessible(true);
+        configurationField.set(persistenceBean, new Configuration());
+
         // This is a @PostConstruct method so must call it
         persistenceBean.createGridFS();
 
@@ -157,6 +165,13 @@ public class PersistenceBeanTest {
         Asset returnedAssetAfterPut = persistenceBean.retrieveAsset(id);
         assertEquals(returnedAsset, returnedAssetAfterPut);
 
+        // Update, removing a field
+        returnedAsset.getProperties().remove("wibble");
+        persistenceBean.updateAsset(id, returnedAsset);
+        returnedAssetAfterPut = persistenceBean.retrieveAsset(id);
+        assertEquals(returnedAsset, returnedAssetAfterPut);
+        assertFalse(returnedAssetAfterPut.getProperties().containsKey("wibble"));
+
         // Delete
         persistenceBean.deleteAsset(id);
         assertEmpty();
@@ -201,6 +216,38 @@ public class PersistenceBeanTest {
         }
     }
 
+    /**
+     * Tests that attachment content spanning several GridFS chunks can be read with a read
+     * preference which allows secondaries. A standalone mongod acts as the primary for this.
+     */
+    @Test
+    public void testRetrieveAttachmentContentWithReadPreference() throws Exception {
+        Field preferenceField = PersistenceBean.class.getDeclaredField("contentReadPreference");
+        preferenceField.setAccessible(true);
+        preferenceField.set(persistenceBean, ReadPreference.secondaryPreferred());
+
+        byte[] content = new byte[600 * 1024];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        AttachmentContentMetadata contentMetadata = persistenceBean.createAttachmentContent("BigAttachment.bin",
+                                                                                            "application/octet-stream",
+                                                                                            new ByteArrayInputStream(content));
+
+        AttachmentContentResponse response = persistenceBean.retrieveAttachmentContent(contentMetadata.filename);
+        assertEquals("application/octet-stream", response.getContentType());
+        try (InputStream contentStream = response.getContentStream()) {
+            assertTrue(Arrays.equals(content, BasicChecks.slurp(contentStream)));
+        }
+
+        try {
+            persistenceBean.retrieveAttachmentContent("123456789012345678901234");
+            fail("Content was returned for a non-existent attachment");
+        } catch (NonExistentArtefactException e) {
+            // expected
+        }
+    }
+
     /**
      * Verifies that an exception is thrown when we attempt to retrieve a non-existent asset.
      */
@@ -539,6 +586,84 @@ public class PersistenceBeanTest {
         assertEquals(1, result);
     }
 
+    /**
+     * Test that the attachments of a deleted asset can be found and deleted together with their
+     * content
+     */
+    @Test
+    public void testDeleteAttachmentsForAsset() throws Exception {
+        Asset asset = persistenceBean.createAsset(Asset.deserializeAssetFromJson("{\"name\":\"deleted\"}"));
+        Asset otherAsset = persistenceBean.createAsset(Asset.deserializeAssetFromJson("{\"name\":\"kept\"}"));
+
+        List<String> gridFSIds = new ArrayList<>();
+        for (Asset parent : Arrays.asList(asset, asset, otherAsset)) {
+            AttachmentContentMetadata content = persistenceBean.createAttachmentContent("content.txt", "text/plain",
+                                                                                        new ByteArrayInputStream("content".getBytes()));
+            Attachment attachment = new Attachment();
+            attachment.setAssetId(parent.get_id());
+            attachment.setGridFSId(content.filename);
+            persistenceBean.createAttachmentMetadata(attachment);
+            gridFSIds.add(content.filename);
+        }
+
+        persistenceBean.deleteAsset(asset.get_id());
+        assertEquals(Collections.singleton(asset.get_id()), persistenceBean.findAssetIdsWithOrphanedAttachments());
+
+        persistenceBean.deleteAttachmentsForAsset(asset.get_id());
+        assertEquals(0, persistenceBean.findAttachmentsForAsset(asset.get_id()).size());
+        assertEquals(1, persistenceBean.findAttachmentsForAsset(otherAsset.get_id()).size());
+        assertTrue(persistenceBean.findAssetIdsWithOrphanedAttachments().isEmpty());
+
+        for (String gridFSId : gridFSIds.subList(0, 2)) {
+            try {
+                persistenceBean.retrieveAttachmentContent(gridFSId);
+                fail("The content of a deleted attachment was returned");
+            } catch (NonExistentArtefactException e) {
+                // expected
+            }
+        }
+        persistenceBean.retrieveAttachmentContent(gridFSIds.get(2)).getContentStream().close();
+    }
+
+    /**
+     * Test that download counts are added to assets, can be sorted on, and survive an update to
+     * the asset without appearing in it
+     */
+    @Test
+    public void testDownloadCounts() throws Exception {
+        Asset asset1 = persistenceBean.createAsset(Asset.deserializeAssetFromJson("{\"name\":\"one\"}"));
+        Asset asset2 = persistenceBean.createAsset(Asset.deserializeAssetFromJson("{\"name\":\"two\"}"));
+
+        Map<String, Map<String, Long>> counts = new HashMap<>();
+        counts.put(asset1.get_id(), Collections.singletonMap("a", 2L));
+        counts.put(asset2.get_id(), Collections.singletonMap("b", 1L));
+        counts.put("123456789012345678901234", Collections.singletonMap("c", 5L));
+        persistenceBean.addDownloads(counts);
+
+        counts.clear();
+        counts.put(asset2.get_id(), Collections.singletonMap("c", 3L));
+        persistenceBean.addDownloads(counts);
+
+        Asset retrieved = persistenceBean.retrieveAsset(asset1.get_id());
+        assertEquals(asset1, retrieved);
+        persistenceBean.updateAsset(asset1.get_id(), retrieved);
+
+        List<Map<String, Object>> result = persistenceBean.retrieveDownloadCounts(10);
+        assertEquals(2, result.size());
+        assertEquals(asset2.get_id(), result.get(0).get("assetId"));
+        assertEquals(4L, result.get(0).get("downloads"));
+        Map<String, Object> attachments = new HashMap<>();
+        attachments.put("b", 1L);
+        attachments.put("c", 3L);
+        assertEquals(attachments, result.get(0).get("attachments"));
+        assertEquals(asset1.get_id(), result.get(1).get("assetId"));
+        assertEquals("one", result.get(1).get("name"));
+        assertEquals(2L, result.get(1).get("downloads"));
+
+        AssetList sorted = persistenceBean.retrieveAllAssets(Collections.<AssetFilter> emptyList(), null, null, new SortOptions("downloads", DESCENDING));
+        assertThat(sorted, contains(asset2, asset1));
+    }
+
     /**
      * Collate the contents of several AssetLists into one List.
      * <p>
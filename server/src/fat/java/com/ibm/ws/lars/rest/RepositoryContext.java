@@ -324,11 +324,17 @@ public class RepositoryContext extends ExternalResource {
                                   ContentType contentType,
                                   int expectedStatusCode)
             throws ClientProtocolException, IOException {
-        HttpPost post = new HttpPost(fullURL + url);
         HttpEntity requestEntity = MultipartEntityBuilder.create()
                 .addPart("attachmentInfo", new StringBody(json, ContentType.APPLICATION_JSON))
                 .addPart(name, new ByteArrayBody(content, contentType, name))
                 .build();
+
+        return doPostMultipart(url, requestEntity, expectedStatusCode);
+    }
+
+    public String doPostMultipart(String url, HttpEntity requestEntity, int expectedStatusCode)
+            throws ClientProtocolException, IOException {
+        HttpPost post = new HttpPost(fullURL + url);
         post.setEntity(requestEntity);
 
         return doRequest(post, expectedStatusCode);
@@ -419,9 +425,9 @@ public class RepositoryContext extends ExternalResource {
      * @throws IOException
      */
     protected String deleteAsset(String id, int expectedStatusCode) throws IOException {
-        // 204 for 'deleted, no content returned'
+        // 202 for 'deleted, attachments being deleted in the background'
         if (expectedStatusCode == -1) {
-            expectedStatusCode = 204;
+            expectedStatusCode = 202;
         }
 
         String url = "/assets";
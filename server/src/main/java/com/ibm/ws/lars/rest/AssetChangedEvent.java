@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import com.ibm.ws.lars.rest.model.Asset;
+
+/**
+ * CDI event fired by the {@link AssetServiceLayer} after an asset has been written to the
+ * persistence store.
+ * <p>
+ * Beans which keep an in-memory view of the repository observe this event to keep their view up to
+ * date. Observers should treat the event as "replace whatever you know about this asset id", so
+ * that seeing the same event twice is harmless.
+ * <p>
+ * The {@link InvalidationBus} also fires this event for writes made by other servers. If it may
+ * have missed some of those writes, it fires a reset event, after which observers should discard
+ * everything they know.
+ */
+public class AssetChangedEvent {
+
+    private final String assetId;
+    private final Asset asset;
+    private final boolean remote;
+
+    /**
+     * Create an event describing a change to an asset made by this server
+     *
+     * @param assetId the id of the asset which changed
+     * @param asset the asset as it is now stored, or null if the asset has been deleted
+     */
+    public AssetChangedEvent(String assetId, Asset asset) {
+        this(assetId, asset, false);
+    }
+
+    /**
+     * Create an event describing a change to an asset
+     *
+     * @param assetId the id of the asset which changed, or null for a reset event
+     * @param asset the asset as it is now stored, or null if the asset has been deleted
+     * @param remote true if the change was made by another server
+     */
+    public AssetChangedEvent(String assetId, Asset asset, boolean remote) {
+        this.assetId = assetId;
+        this.asset = asset;
+        this.remote = remote;
+    }
+
+    /**
+     * Create an event saying that any asset may have been changed by another server
+     *
+     * @return the reset event
+     */
+    public static AssetChangedEvent reset() {
+        return new AssetChangedEvent(null, null, true);
+    }
+
+    /**
+     * @return the id of the asset which changed
+     */
+    public String getAssetId() {
+        return assetId;
+    }
+
+    /**
+     * @return the asset as it is now stored, or null if the asset has been deleted
+     */
+    public Asset getAsset() {
+        return asset;
+    }
+
+    /**
+     * @return true if the asset has been deleted
+     */
+    public boolean isDelete() {
+        return asset == null;
+    }
+
+    /**
+     * @return true if the change was made by another server
+     */
+    public boolean isRemote() {
+        return remote;
+    }
+
+    /**
+     * @return true if any asset may have changed, so that observers should discard everything
+     *         they know
+     */
+    public boolean isReset() {
+        return assetId == null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        if (isReset()) {
+            return "AssetChangedEvent: reset";
+        }
+        return "AssetChangedEvent: " + assetId + (isDelete() ? " (deleted)" : "") + (remote ? " (remote)" : "");
+    }
+
+}
@@ -0,0 +1,309 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.ws.lars.rest.Condition.Operation;
+import com.ibm.ws.lars.rest.SortOptions.SortOrder;
+import com.ibm.ws.lars.rest.model.Asset;
+
+/**
+ * Applies {@link AssetFilter}s and {@link SortOptions} to assets held in memory, giving the same
+ * results as the equivalent query against the persistence store.
+ * <p>
+ * This is used by the beans which answer queries from an in-memory view of the repository.
+ */
+class AssetMatcher {
+
+    /** Filters which select all published assets */
+    static final Collection<AssetFilter> PUBLISHED_ASSETS = Collections.singletonList(
+            new AssetFilter(Asset.STATE, Collections.singletonList(new Condition(Operation.EQUALS, Asset.State.PUBLISHED.getValue()))));
+
+    private AssetMatcher() {}
+
+    /**
+     * Returns true if the filters restrict the query to published assets only
+     */
+    static boolean isPublishedOnly(Collection<AssetFilter> filters) {
+        List<String> states = getEqualsValues(filters, Asset.STATE);
+        return states != null && states.size() == 1 && Asset.State.PUBLISHED.getValue().equals(states.get(0));
+    }
+
+    /**
+     * Returns the values of the first filter on the given field if all of its conditions are
+     * EQUALS, or null if there is no such filter
+     */
+    static List<String> getEqualsValues(Collection<AssetFilter> filters, String field) {
+        for (AssetFilter filter : filters) {
+            if (!filter.getKey().equals(field)) {
+                continue;
+            }
+            List<String> values = new ArrayList<>();
+            for (Condition condition : filter.getConditions()) {
+                if (condition.getOperation() != Operation.EQUALS) {
+                    return null;
+                }
+                values.add(condition.getValue());
+            }
+            return values;
+        }
+        return null;
+    }
+
+    /**
+     * Check an asset against a list of filters in the same way as the persistence store.
+     * <p>
+     * An asset matches a filter if any of the filter's conditions match. An EQUALS condition
+     * matches if any value of the field is equal to the condition's value, and a NOT_EQUALS
+     * condition matches if none are.
+     */
+    static boolean matchesAll(Asset asset, Collection<AssetFilter> filters) {
+        for (AssetFilter filter : filters) {
+            List<Object> values = getFieldValues(asset, filter.getKey());
+            boolean matched = false;
+            for (Condition condition : filter.getConditions()) {
+                boolean found = values.contains(condition.getValue());
+                if (condition.getOperation() == Operation.EQUALS ? found : !found) {
+                    matched = true;
+                    break;
+                }
+            }
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns all the values of a dotted field in an asset, looking inside any arrays along the way
+     */
+    static List<Object> getFieldValues(Asset asset, String field) {
+        return getFieldValues(asset.getProperties(), field);
+    }
+
+    /**
+     * Returns all the values of a dotted field in a map, looking inside any arrays along the way
+     */
+    static List<Object> getFieldValues(Map<String, Object> properties, String field) {
+        List<Object> current = new ArrayList<>();
+        current.add(properties);
+
+        for (String part : field.split("\\.")) {
+            List<Object> next = new ArrayList<>();
+            for (Object o : current) {
+                if (o instanceof Map) {
+                    addValue(next, ((Map<?, ?>) o).get(part));
+                } else if (o instanceof Collection) {
+                    for (Object element : (Collection<?>) o) {
+                        if (element instanceof Map) {
+                            addValue(next, ((Map<?, ?>) element).get(part));
+                        }
+                    }
+                }
+            }
+            current = next;
+        }
+
+        // The final values may themselves be arrays
+        List<Object> result = new ArrayList<>();
+        for (Object o : current) {
+            if (o instanceof Collection) {
+                result.addAll((Collection<?>) o);
+            } else {
+                result.add(o);
+            }
+        }
+        return result;
+    }
+
+    private static void addValue(List<Object> values, Object value) {
+        if (value != null) {
+            values.add(value);
+        }
+    }
+
+    static Set<String> getStrings(List<Object> values) {
+        Set<String> strings = new HashSet<>();
+        for (Object value : values) {
+            if (value instanceof String) {
+                strings.add((String) value);
+            }
+        }
+        return strings;
+    }
+
+    /**
+     * Returns the page of a list of results selected by the pagination options. As with a query
+     * against the persistence store, a negative offset is treated as zero and a limit of zero or
+     * less means there is no limit.
+     *
+     * @param results the results, in order
+     * @param pagination the pagination options, may be null
+     * @return the page of results, which is a view of the list
+     */
+    static <T> List<T> getPage(List<T> results, PaginationOptions pagination) {
+        if (pagination == null) {
+            return results;
+        }
+        int from = Math.min(Math.max(pagination.getOffset(), 0), results.size());
+        int to = pagination.getLimit() <= 0 ? results.size() : (int) Math.min((long) from + pagination.getLimit(), results.size());
+        return results.subList(from, to);
+    }
+
+    /**
+     * Returns a comparator which orders assets in the same way as mongo would when sorting on the
+     * given field.
+     * <p>
+     * Values are first ordered by type (missing, numbers, strings, objects, booleans, anything
+     * else). Fields with {@link SortKeys} are sorted on their keys. Where a field has several
+     * values because it is in an array, the lowest value is used for an ascending sort and the
+     * highest for a descending sort.
+     *
+     * @param sortOptions the sort options
+     * @return the comparator
+     */
+    static Comparator<Asset> getComparator(final SortOptions sortOptions) {
+        final boolean ascending = sortOptions.getSortOrder() != SortOrder.DESCENDING;
+        return new Comparator<Asset>() {
+            @Override
+            public int compare(Asset a, Asset b) {
+                Object aValue = getSortValue(a, sortOptions.getField(), ascending);
+                Object bValue = getSortValue(b, sortOptions.getField(), ascending);
+                int result = compareValues(aValue, bValue);
+                return ascending ? result : -result;
+            }
+        };
+    }
+
+    /**
+     * Returns true if the sort options sort on one of the download count fields which
+     * {@link PersistenceBean} stores with each asset. These aren't part of the asset, so assets held
+     * in memory can't be sorted on them with {@link #getComparator(SortOptions)}.
+     *
+     * @param sortOptions the sort options, may be null
+     * @return true if the sort is on a download count
+     */
+    static boolean isDownloadCountSort(SortOptions sortOptions) {
+        if (sortOptions == null || sortOptions.getField() == null) {
+            return false;
+        }
+        String field = sortOptions.getField();
+        return field.equals(PersistenceBean.DOWNLOADS_FIELD)
+               || field.equals(PersistenceBean.ATTACHMENT_DOWNLOADS_FIELD)
+               || field.startsWith(PersistenceBean.ATTACHMENT_DOWNLOADS_FIELD + ".");
+    }
+
+    /**
+     * Returns a comparator which orders assets on download counts held separately from the assets,
+     * in the same way as mongo would when sorting on the count fields stored with each asset. An
+     * asset which hasn't been downloaded is treated as not having the field.
+     *
+     * @param sortOptions the sort options, for which {@link #isDownloadCountSort(SortOptions)} must
+     *            be true
+     * @param downloads the download counts of each asset, keyed by asset id and then by attachment
+     *            id
+     * @return the comparator
+     */
+    static Comparator<Asset> getDownloadCountComparator(final SortOptions sortOptions, final Map<String, Map<String, Long>> downloads) {
+        final boolean ascending = sortOptions.getSortOrder() != SortOrder.DESCENDING;
+        return new Comparator<Asset>() {
+            @Override
+            public int compare(Asset a, Asset b) {
+                Object aValue = getDownloadCount(downloads.get(a.get_id()), sortOptions.getField());
+                Object bValue = getDownloadCount(downloads.get(b.get_id()), sortOptions.getField());
+                int result = compareValues(aValue, bValue);
+                return ascending ? result : -result;
+            }
+        };
+    }
+
+    private static Object getDownloadCount(Map<String, Long> counts, String field) {
+        if (counts == null) {
+            return null;
+        }
+        if (field.equals(PersistenceBean.DOWNLOADS_FIELD)) {
+            long total = 0;
+            for (Long count : counts.values()) {
+                total += count;
+            }
+            return total;
+        }
+        if (field.equals(PersistenceBean.ATTACHMENT_DOWNLOADS_FIELD)) {
+            return counts;
+        }
+        return counts.get(field.substring(PersistenceBean.ATTACHMENT_DOWNLOADS_FIELD.length() + 1));
+    }
+
+    private static Object getSortValue(Asset asset, String field, boolean ascending) {
+        Object result = null;
+        boolean first = true;
+        for (Object value : SortKeys.getSortValues(asset.getProperties(), field)) {
+            if (first) {
+                result = value;
+                first = false;
+            } else {
+                int c = compareValues(value, result);
+                if (ascending ? c < 0 : c > 0) {
+                    result = value;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int compareValues(Object a, Object b) {
+        int rankDifference = getTypeRank(a) - getTypeRank(b);
+        if (rankDifference != 0) {
+            return rankDifference;
+        }
+        if (a instanceof Number) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        if (a instanceof String) {
+            return ((String) a).compareTo((String) b);
+        }
+        if (a instanceof Boolean) {
+            return ((Boolean) a).compareTo((Boolean) b);
+        }
+        return 0;
+    }
+
+    private static int getTypeRank(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Number) {
+            return 1;
+        } else if (value instanceof String) {
+            return 2;
+        } else if (value instanceof Map) {
+            return 3;
+        } else if (value instanceof Boolean) {
+            return 4;
+        } else {
+            return 5;
+        }
+    }
+
+}
@@ -16,21 +16,28 @@
 
 package com.ibm.ws.lars.rest;
 
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Event;
 import javax.inject.Inject;
 import javax.ws.rs.core.UriInfo;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+
 import com.ibm.ws.lars.rest.exceptions.AssetPersistenceException;
 import com.ibm.ws.lars.rest.exceptions.InvalidJsonAssetException;
 import com.ibm.ws.lars.rest.exceptions.NonExistentArtefactException;
@@ -59,6 +66,36 @@ public class AssetServiceLayer {
     @Inject
     private Configuration configuration;
 
+    @Inject
+    private FeatureResolver featureResolver;
+
+    @Inject
+    private CatalogViews catalogViews;
+
+    @Inject
+    private PublishedSnapshot publishedSnapshot;
+
+    @Inject
+    private SearchIndex searchIndex;
+
+    @Inject
+    private FacetCounts facetCounts;
+
+    @Inject
+    private QueryResultCache queryResultCache;
+
+    @Inject
+    private AttachmentCache attachmentCache;
+
+    @Inject
+    private DownloadCounter downloadCounter;
+
+    @Inject
+    private AttachmentDeleter attachmentDeleter;
+
+    @Inject
+    private Event<AssetChangedEvent> assetChanges;
+
     /**
      * @see Persistor#retrieveAllAssets()
      */
@@ -70,14 +107,93 @@ public class AssetServiceLayer {
      * @see Persistor#retrieveAllAssets(Collection,String, PaginationOptions, SortOptions)
      */
     public AssetList retrieveAllAssets(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions) {
-        return persistenceBean.retrieveAllAssets(filters, searchTerm, pagination, sortOptions);
+        if (publishedSnapshot.canServe(filters, searchTerm, sortOptions)) {
+            return publishedSnapshot.retrieveAllAssets(filters, pagination, sortOptions);
+        }
+        if (searchIndex.canServe(filters, searchTerm, sortOptions)) {
+            return searchIndex.retrieveAllAssets(filters, searchTerm, pagination, sortOptions);
+        }
+        if (catalogViews.canServe(filters, searchTerm, pagination, sortOptions)) {
+            return catalogViews.retrieveAllAssets(filters);
+        }
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+            return persistenceBean.retrieveAllAssets(filters, searchTerm, pagination, sortOptions);
+        }
+    }
+
+    /**
+     * Retrieve the assets matching a query, serialized as JSON.
+     * <p>
+     * If the {@link QueryResultCache} is enabled, repeated queries are answered from the cache,
+     * unless they are sorted on download counts.
+     *
+     * @see Persistor#retrieveAllAssets(Collection,String, PaginationOptions, SortOptions)
+     */
+    public SerializedContent retrieveAllAssetsJson(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions) throws JsonProcessingException {
+        if (!queryResultCache.isEnabled() || !QueryResultCache.canCache(sortOptions)) {
+            return new SerializedContent(serializeAllAssets(filters, searchTerm, pagination, sortOptions));
+        }
+
+        List<Object> key = QueryResultCache.createKey(filters, searchTerm, pagination, sortOptions);
+        SerializedContent content = queryResultCache.get(key);
+        if (content == null) {
+            long generation = queryResultCache.getGeneration();
+            content = new SerializedContent(serializeAllAssets(filters, searchTerm, pagination, sortOptions));
+            queryResultCache.put(key, generation, content);
+        }
+        return content;
+    }
+
+    /**
+     * Serialize the assets matching a query into a JSON array.
+     * <p>
+     * Queries answered by the persistence store use the JSON stored with each asset, so the assets
+     * don't need to be serialized again.
+     */
+    private byte[] serializeAllAssets(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions) throws JsonProcessingException {
+        if (publishedSnapshot.canServe(filters, searchTerm, sortOptions) || searchIndex.canServe(filters, searchTerm, sortOptions)
+            || catalogViews.canServe(filters, searchTerm, pagination, sortOptions)) {
+            AssetList assets = retrieveAllAssets(filters, searchTerm, pagination, sortOptions);
+            try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.SERIALIZE)) {
+                return assets.toJsonBytes();
+            }
+        }
+
+        List<byte[]> assets;
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+            assets = persistenceBean.retrieveAllAssetsJson(filters, searchTerm, pagination, sortOptions);
+        }
+
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.SERIALIZE)) {
+            ByteArrayOutputStream json = new ByteArrayOutputStream();
+            json.write('[');
+            for (int i = 0; i < assets.size(); i++) {
+                if (i > 0) {
+                    json.write(',');
+                }
+                json.write(assets.get(i), 0, assets.get(i).length);
+            }
+            json.write(']');
+            return json.toByteArray();
+        }
     }
 
     /**
      * @see Persistor#countAllAssets(Collection, String)
      */
     public int countAllAssets(Collection<AssetFilter> filters, String searchTerm) {
-        return persistenceBean.countAllAssets(filters, searchTerm);
+        if (publishedSnapshot.canServe(filters, searchTerm, null)) {
+            return publishedSnapshot.countAllAssets(filters);
+        }
+        if (searchIndex.canServe(filters, searchTerm, null)) {
+            return searchIndex.countAllAssets(filters, searchTerm);
+        }
+        if (catalogViews.canServe(filters, searchTerm, null, null)) {
+            return catalogViews.countAllAssets(filters);
+        }
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+            return persistenceBean.countAllAssets(filters, searchTerm);
+        }
     }
 
     /**
@@ -95,6 +211,9 @@ public class AssetServiceLayer {
      * }
      * </pre>
      * <p>
+     * When the summary is answered from the {@link FacetCounts}, each map also has a
+     * "filterValueCounts" entry, listing each value with the number of assets which have it.
+     * <p>
      * Filters and searchTerm are treated the same as they are in
      * {@link #retrieveAllAssets(Collection, String, PaginationOptions, SortOptions)}.
      *
@@ -104,10 +223,25 @@ public class AssetServiceLayer {
      * @return a list of result maps, one for each field
      */
     public List<Map<String, Object>> summarizeAssets(List<String> fields, Collection<AssetFilter> filters, String searchTerm) {
+        if (facetCounts.canServe(fields, filters, searchTerm)) {
+            return facetCounts.summarizeAssets(fields, filters);
+        }
+
         List<Map<String, Object>> result = new ArrayList<>();
 
+        boolean useSnapshot = publishedSnapshot.canServe(filters, searchTerm, null);
+        boolean useSearchIndex = searchIndex.canServe(filters, searchTerm, null);
         for (String field : fields) {
-            List<Object> values = persistenceBean.getDistinctValues(field, filters, searchTerm);
+            List<Object> values;
+            if (useSnapshot) {
+                values = publishedSnapshot.getDistinctValues(field, filters);
+            } else if (useSearchIndex) {
+                values = searchIndex.getDistinctValues(field, filters, searchTerm);
+            } else {
+                try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+                    values = persistenceBean.getDistinctValues(field, filters, searchTerm);
+                }
+            }
             Map<String, Object> resultMap = new HashMap<>();
             resultMap.put("filterName", field);
             resultMap.put("filterValue", values);
@@ -117,6 +251,19 @@ public class AssetServiceLayer {
         return result;
     }
 
+    /**
+     * Retrieve the download counts of the most downloaded assets, including downloads which the
+     * {@link DownloadCounter} hasn't yet stored
+     *
+     * @param limit the maximum number of assets to return
+     * @return the download counts, most downloaded first
+     * @see Persistor#retrieveDownloadCounts(int)
+     */
+    public List<Map<String, Object>> retrieveDownloadCounts(int limit) {
+        downloadCounter.flush();
+        return persistenceBean.retrieveDownloadCounts(limit);
+    }
+
     /**
      * @param asset
      * @param creatorName The name of the user who is creating the asset. Must not be null.
@@ -133,7 +280,12 @@ public class AssetServiceLayer {
         newAsset.setCreatedBy(creatorName);
         newAsset.getProperties().put("state", Asset.State.DRAFT.getValue());
 
-        return persistenceBean.createAsset(newAsset);
+        Asset createdAsset;
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+            createdAsset = persistenceBean.createAsset(newAsset);
+        }
+        fireAssetChanged(createdAsset.get_id(), createdAsset);
+        return createdAsset;
     }
 
     /**
@@ -142,18 +294,168 @@ public class AssetServiceLayer {
      * @throws NonExistentArtefactException
      */
     public Asset retrieveAsset(String assetId, UriInfo uriInfo) throws NonExistentArtefactException {
-        Asset asset = persistenceBean.retrieveAsset(assetId);
-
-        AttachmentList attachments = persistenceBean.findAttachmentsForAsset(assetId);
-        for (Attachment attachment : attachments) {
-            computeAttachmentURL(attachment, uriInfo);
+        Asset asset;
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+            asset = persistenceBean.retrieveAsset(assetId);
         }
 
-        asset.setAttachments(attachments);
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.ATTACHMENTS)) {
+            AttachmentList attachments = findAttachmentsForAsset(assetId);
+            for (Attachment attachment : attachments) {
+                computeAttachmentURL(attachment, uriInfo);
+            }
+
+            asset.setAttachments(attachments);
+        }
 
         return asset;
     }
 
+    /**
+     * Retrieve a single asset, with its attachments, serialized as JSON.
+     * <p>
+     * The attachments are added to the JSON stored with the asset, so the asset doesn't need to be
+     * serialized again.
+     *
+     * @param assetId the id of the asset
+     * @param filters filters which the asset must match, may be empty
+     * @param uriInfo the UriInfo from the current request, used to compute attachment URLs
+     * @return the JSON of the asset
+     * @throws NonExistentArtefactException if there is no asset with the given id which matches
+     *             the filters
+     */
+    public byte[] retrieveAssetJson(String assetId, Collection<AssetFilter> filters, UriInfo uriInfo) throws NonExistentArtefactException {
+        byte[] assetJson;
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+            assetJson = persistenceBean.retrieveAssetJson(assetId, filters);
+        }
+
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.ATTACHMENTS)) {
+            AttachmentList attachments = findAttachmentsForAsset(assetId);
+            for (Attachment attachment : attachments) {
+                computeAttachmentURL(attachment, uriInfo);
+            }
+
+            byte[] attachmentsJson;
+            try {
+                attachmentsJson = attachments.toJsonBytes();
+            } catch (JsonProcessingException e) {
+                throw new RepositoryException("Couldn't serialize attachments for asset " + assetId, e);
+            }
+
+            return addField(assetJson, Asset.ATTACHMENTS, attachmentsJson);
+        }
+    }
+
+    /**
+     * Retrieve several assets, with their attachments, serialized as a JSON array.
+     * <p>
+     * All the assets are fetched with one query to the persistence store, and all of their
+     * attachments with another, rather than two queries for each asset. The attachments are added
+     * to the JSON stored with each asset, as in
+     * {@link #retrieveAssetJson(String, Collection, UriInfo)}.
+     *
+     * @param assetIds the ids of the assets
+     * @param filters filters which the assets must match, may be empty
+     * @param uriInfo the UriInfo from the current request, used to compute attachment URLs
+     * @return a JSON array of the assets in the order their ids were given. Each asset is only
+     *         included once, and assets which don't exist or don't match the filters are left out.
+     */
+    public byte[] retrieveAssetsJson(List<String> assetIds, Collection<AssetFilter> filters, UriInfo uriInfo) {
+        Set<String> ids = new LinkedHashSet<>(assetIds);
+
+        Map<String, byte[]> assets;
+        Map<String, AttachmentList> attachments;
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+            assets = persistenceBean.retrieveAssetsJson(ids, filters);
+            attachments = assets.isEmpty() ? new HashMap<String, AttachmentList>() : persistenceBean.findAttachmentsForAssets(assets.keySet());
+        }
+
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.ATTACHMENTS)) {
+            ByteArrayOutputStream json = new ByteArrayOutputStream();
+            json.write('[');
+            boolean first = true;
+            for (String id : ids) {
+                byte[] assetJson = assets.get(id);
+                if (assetJson == null) {
+                    continue;
+                }
+
+                AttachmentList assetAttachments = attachments.get(id);
+                if (assetAttachments == null) {
+                    assetAttachments = AttachmentList.createAttachmentListFromMaps(new ArrayList<Map<String, Object>>());
+                }
+                for (Attachment attachment : assetAttachments) {
+                    computeAttachmentURL(attachment, uriInfo);
+                }
+
+                byte[] attachmentsJson;
+                try {
+                    attachmentsJson = assetAttachments.toJsonBytes();
+                } catch (JsonProcessingException e) {
+                    throw new RepositoryException("Couldn't serialize attachments for asset " + id, e);
+                }
+
+                if (!first) {
+                    json.write(',');
+                }
+                first = false;
+                byte[] fullJson = addField(assetJson, Asset.ATTACHMENTS, attachmentsJson);
+                json.write(fullJson, 0, fullJson.length);
+            }
+            json.write(']');
+            return json.toByteArray();
+        }
+    }
+
+    /**
+     * Find the attachments of an asset, timing the database query separately from the rest of the
+     * work of adding the attachments to the asset
+     */
+    private AttachmentList findAttachmentsForAsset(String assetId) {
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+            return persistenceBean.findAttachmentsForAsset(assetId);
+        }
+    }
+
+    /**
+     * Add a field to a serialized JSON object, by inserting it before the closing brace.
+     *
+     * @param objectJson the JSON object, which must not already contain the field
+     * @param name the name of the field, which must not need escaping
+     * @param valueJson the JSON value of the field
+     * @return the JSON object with the field added
+     */
+    static byte[] addField(byte[] objectJson, String name, byte[] valueJson) {
+        int end = objectJson.length - 1;
+        while (end >= 0 && objectJson[end] != '}') {
+            end--;
+        }
+        int start = 0;
+        while (start < end && objectJson[start] != '{') {
+            start++;
+        }
+        if (end <= start) {
+            throw new RepositoryException("Stored asset JSON is not an object");
+        }
+
+        boolean empty = true;
+        for (int i = start + 1; i < end; i++) {
+            if (!Character.isWhitespace(objectJson[i])) {
+                empty = false;
+                break;
+            }
+        }
+
+        byte[] fieldStart = ((empty ? "" : ",") + "\"" + name + "\":").getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream result = new ByteArrayOutputStream(objectJson.length + fieldStart.length + valueJson.length + 1);
+        result.write(objectJson, 0, end);
+        result.write(fieldStart, 0, fieldStart.length);
+        result.write(valueJson, 0, valueJson.length);
+        result.write(objectJson, end, objectJson.length - end);
+        return result.toByteArray();
+    }
+
     /**
      * @param assetId
      * @param asset
@@ -162,11 +464,67 @@ public class AssetServiceLayer {
      * @throws NonExistentArtefactException
      */
     public Asset updateAsset(String assetId, Asset asset) throws InvalidJsonAssetException, NonExistentArtefactException {
-        Asset existingAsset = persistenceBean.retrieveAsset(assetId);
-        if (existingAsset == null) {
-            throw new NonExistentArtefactException(assetId, RepositoryRESTResource.ArtefactType.ASSET);
+        Asset updatedAsset;
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+            Asset existingAsset = persistenceBean.retrieveAsset(assetId);
+            if (existingAsset == null) {
+                throw new NonExistentArtefactException(assetId, RepositoryRESTResource.ArtefactType.ASSET);
+            }
+            updatedAsset = persistenceBean.updateAsset(assetId, asset);
+        }
+        fireAssetChanged(assetId, updatedAsset);
+        return updatedAsset;
+    }
+
+    /**
+     * Move an asset which has just been returned by {@link #createAsset} from the draft state to
+     * the target state, applying every state action needed to get there and storing the asset
+     * once.
+     *
+     * @param newAsset an asset in the draft state
+     * @param targetState the state the asset should end up in
+     * @return the updated asset
+     */
+    public Asset moveNewAssetToState(Asset newAsset, Asset.State targetState) throws RepositoryResourceLifecycleException, NonExistentArtefactException {
+        List<Asset.StateAction> actions = new ArrayList<>();
+        switch (targetState) {
+            case DRAFT:
+                break;
+            case AWAITING_APPROVAL:
+                actions.add(Asset.StateAction.PUBLISH);
+                break;
+            case PUBLISHED:
+                actions.add(Asset.StateAction.PUBLISH);
+                actions.add(Asset.StateAction.APPROVE);
+                break;
+            case NEED_MORE_INFO:
+                actions.add(Asset.StateAction.PUBLISH);
+                actions.add(Asset.StateAction.NEED_MORE_INFO);
+                break;
+        }
+
+        if (actions.isEmpty()) {
+            return newAsset;
+        }
+
+        Asset asset = new Asset(newAsset);
+        for (Asset.StateAction action : actions) {
+            action.performAction(asset);
+        }
+        asset.setLastUpdatedOn(IsoDate.format(new Date()));
+
+        String id = asset.get_id();
+        try {
+            Asset updatedAsset;
+            try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+                updatedAsset = persistenceBean.updateAsset(id, asset);
+            }
+            fireAssetChanged(id, updatedAsset);
+            return updatedAsset;
+        } catch (InvalidJsonAssetException e) {
+            // As in updateAssetState, the only changes to the asset were made by us
+            throw new RepositoryException("JSON retrieved from asset store could not be save back again", e);
         }
-        return persistenceBean.updateAsset(assetId, asset);
     }
 
     /**
@@ -178,13 +536,20 @@ public class AssetServiceLayer {
      * @throws RepositoryResourceLifecycleException
      */
     public void updateAssetState(Asset.StateAction action, String id) throws RepositoryResourceLifecycleException, NonExistentArtefactException {
-        Asset existingAsset = persistenceBean.retrieveAsset(id);
+        Asset existingAsset;
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+            existingAsset = persistenceBean.retrieveAsset(id);
+        }
 
         action.performAction(existingAsset);
         existingAsset.setLastUpdatedOn(IsoDate.format(new Date()));
 
         try {
-            persistenceBean.updateAsset(id, existingAsset);
+            Asset updatedAsset;
+            try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+                updatedAsset = persistenceBean.updateAsset(id, existingAsset);
+            }
+            fireAssetChanged(id, updatedAsset);
         } catch (InvalidJsonAssetException e) {
             // This should never happen, as the asset was retrieved from the persistence layer,
             // and the only changes were by us. Don't percolate the json exception, as that would
@@ -200,22 +565,24 @@ public class AssetServiceLayer {
      */
     public void deleteAsset(String assetId) throws NonExistentArtefactException {
 
-        // Delete all attachments belonging to the asset
-        Asset asset = persistenceBean.retrieveAsset(assetId);
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+            // Check that the asset exists
+            persistenceBean.retrieveAsset(assetId);
 
-        for (Attachment attachment : asset.getAttachments()) {
-            deleteAttachment(attachment.get_id());
+            // Delete the asset itself, which hides its attachments straight away
+            persistenceBean.deleteAsset(assetId);
         }
+        fireAssetChanged(assetId, null);
 
-        // Delete the asset itself
-        persistenceBean.deleteAsset(assetId);
+        // Delete all attachments belonging to the asset in the background
+        attachmentDeleter.deleteAttachments(assetId);
     }
 
     private Attachment createAttachment(String assetId, String name, Attachment originalAttachmentMetadata, String contentType,
                                         InputStream attachmentContentStream, UriInfo uriInfo) throws InvalidJsonAssetException, AssetPersistenceException, NonExistentArtefactException {
 
         // Check that the parent exists
-        try {
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
             persistenceBean.retrieveAsset(assetId);
         } catch (NonExistentArtefactException e) {
             // The message from the PersistenceLayer is unhelpful in this context, so send back a better one
@@ -223,6 +590,15 @@ public class AssetServiceLayer {
                                                    + assetId + ") does not exist in the repository.");
         }
 
+        return storeAttachment(assetId, name, originalAttachmentMetadata, contentType, attachmentContentStream, uriInfo);
+    }
+
+    /**
+     * Store an attachment for an asset which is known to exist.
+     */
+    private Attachment storeAttachment(String assetId, String name, Attachment originalAttachmentMetadata, String contentType,
+                                       InputStream attachmentContentStream, UriInfo uriInfo) throws InvalidJsonAssetException, AssetPersistenceException {
+
         Attachment attachmentMetadata = new Attachment(originalAttachmentMetadata);
 
         // Add necessary fields to the attachment (JSON) metadata
@@ -238,7 +614,10 @@ public class AssetServiceLayer {
 
         // Create the attachment content
         if (attachmentContentStream != null) {
-            AttachmentContentMetadata contentMetadata = persistenceBean.createAttachmentContent(name, contentType, attachmentContentStream);
+            AttachmentContentMetadata contentMetadata;
+            try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+                contentMetadata = persistenceBean.createAttachmentContent(name, contentType, attachmentContentStream);
+            }
 
             // TODO perhaps we should try to clean up after ourselves and delete the attachmentMetadata
             // TODO seriously, this is one of the places where we reaslise that using a DB that doesn't
@@ -248,7 +627,10 @@ public class AssetServiceLayer {
             attachmentMetadata.setSize(contentMetadata.length);
         }
 
-        Attachment returnedAttachment = persistenceBean.createAttachmentMetadata(attachmentMetadata);
+        Attachment returnedAttachment;
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+            returnedAttachment = persistenceBean.createAttachmentMetadata(attachmentMetadata);
+        }
 
         computeAttachmentURL(returnedAttachment, uriInfo);
 
@@ -258,9 +640,15 @@ public class AssetServiceLayer {
     public Attachment createAttachmentWithContent(String assetId, String name, Attachment attachmentMetadata, String contentType,
                                                   InputStream attachmentContentStream, UriInfo uriInfo) throws InvalidJsonAssetException, AssetPersistenceException, NonExistentArtefactException {
 
-        // The attachment has content, so the URL must not be set, and the
-        // linkType must not be set (i.e. it must be null).
+        verifyContentAttachment(attachmentMetadata);
+        return createAttachment(assetId, name, attachmentMetadata, contentType, attachmentContentStream, uriInfo);
+    }
 
+    /**
+     * The attachment has content, so the URL must not be set, and the linkType must not be set
+     * (i.e. it must be null).
+     */
+    private void verifyContentAttachment(Attachment attachmentMetadata) throws InvalidJsonAssetException {
         String url = attachmentMetadata.getUrl();
         if (url != null) {
             throw new InvalidJsonAssetException("An attachment should not have the URL set if it is created with content");
@@ -270,8 +658,6 @@ public class AssetServiceLayer {
         if (stringType != null) {
             throw new InvalidJsonAssetException("The link type must not be set for an attachment with content");
         }
-
-        return createAttachment(assetId, name, attachmentMetadata, contentType, attachmentContentStream, uriInfo);
     }
 
     /**
@@ -290,8 +676,16 @@ public class AssetServiceLayer {
     public Attachment createAttachmentNoContent(String assetId, String name, Attachment attachmentMetadata, UriInfo uriInfo) throws InvalidJsonAssetException,
             AssetPersistenceException, NonExistentArtefactException {
 
-        // There is no content, so an external URL must be set, and the link
-        // type must be DIRECT or WEB_PAGE
+        verifyLinkAttachment(attachmentMetadata);
+        return createAttachment(assetId, name, attachmentMetadata, null, null, uriInfo);
+
+    }
+
+    /**
+     * There is no content, so an external URL must be set, and the link type must be DIRECT or
+     * WEB_PAGE
+     */
+    private void verifyLinkAttachment(Attachment attachmentMetadata) throws InvalidJsonAssetException {
         String url = attachmentMetadata.getUrl();
         if (url == null) {
             throw new InvalidJsonAssetException("The URL of the supplied attachment was null");
@@ -306,14 +700,43 @@ public class AssetServiceLayer {
         if (linkType == null || (linkType != Attachment.LinkType.DIRECT && linkType != Attachment.LinkType.WEB_PAGE)) {
             throw new InvalidJsonAssetException("The link type for the attachment was set to an invalid value: " + stringType);
         }
+    }
 
-        return createAttachment(assetId, name, attachmentMetadata, null, null, uriInfo);
+    /**
+     * Create an attachment for an asset which has just been returned by {@link #createAsset}, as
+     * part of uploading the asset and its attachments in one request. The caller already holds the
+     * parent asset, so unlike {@link #createAttachmentWithContent} and
+     * {@link #createAttachmentNoContent} the parent isn't looked up again.
+     *
+     * @param newAsset the parent asset
+     * @param attachmentMetadata the attachment, which must include its name
+     * @param contentType the type of the content, or null if the attachment has no content
+     * @param attachmentContentStream the content, or null if the attachment is a link to content
+     *            stored elsewhere
+     * @param uriInfo the UriInfo from the current request
+     * @return the stored attachment
+     */
+    public Attachment createAttachmentForNewAsset(Asset newAsset, Attachment attachmentMetadata, String contentType,
+                                                  InputStream attachmentContentStream, UriInfo uriInfo) throws InvalidJsonAssetException, AssetPersistenceException {
+        String name = attachmentMetadata.getName();
+        if (name == null) {
+            throw new InvalidJsonAssetException("The name of the attachment was not set");
+        }
+
+        if (attachmentContentStream != null) {
+            verifyContentAttachment(attachmentMetadata);
+        } else {
+            verifyLinkAttachment(attachmentMetadata);
+        }
 
+        return storeAttachment(newAsset.get_id(), name, attachmentMetadata, contentType, attachmentContentStream, uriInfo);
     }
 
     public void deleteAttachment(String attachmentId) {
-        persistenceBean.deleteAttachmentMetadata(attachmentId);
-        persistenceBean.deleteAttachmentContent(attachmentId);
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+            persistenceBean.deleteAttachmentMetadata(attachmentId);
+            persistenceBean.deleteAttachmentContent(attachmentId);
+        }
     }
 
     public Attachment retrieveAttachmentMetadata(String assetId, String attachmentId, UriInfo uriInfo) throws NonExistentArtefactException {
@@ -333,9 +756,43 @@ public class AssetServiceLayer {
             throw new NonExistentArtefactException("Attachment with id " + attachmentId + " and name " + name + " does not exist in the repository.");
         }
 
-        String gridFSId = attachmentMetadata.getGridFSId();
+        return retrieveAttachmentContent(attachmentMetadata);
+    }
+
+    /**
+     * Retrieve the content of an attachment whose metadata has already been read, from the
+     * {@link AttachmentCache} if possible. Once the content has been found, the download is counted
+     * by the {@link DownloadCounter}.
+     *
+     * @param attachmentMetadata the attachment, which must have content stored in the repository
+     * @return the content of the attachment
+     * @throws NonExistentArtefactException if the content no longer exists
+     */
+    public AttachmentContentResponse retrieveAttachmentContent(Attachment attachmentMetadata) throws NonExistentArtefactException {
+        AttachmentContentResponse response = retrieveAttachmentContent(attachmentMetadata.getGridFSId(), attachmentMetadata.getContentType());
+        downloadCounter.recordDownload(attachmentMetadata.getAssetId(), attachmentMetadata.get_id());
+        return response;
+    }
+
+    private AttachmentContentResponse retrieveAttachmentContent(String gridFSId, String contentType) throws NonExistentArtefactException {
+        if (!attachmentCache.isEnabled()) {
+            return persistenceBean.retrieveAttachmentContent(gridFSId);
+        }
+
+        InputStream cachedContent = attachmentCache.get(gridFSId);
+        if (cachedContent != null) {
+            return new AttachmentContentResponse(cachedContent, contentType);
+        }
+
+        AttachmentContentResponse response = persistenceBean.retrieveAttachmentContent(gridFSId);
+        return new AttachmentContentResponse(attachmentCache.fill(gridFSId, response.getContentStream()), response.getContentType());
+    }
 
-        return persistenceBean.retrieveAttachmentContent(gridFSId);
+    /**
+     * @see FeatureResolver#resolve(Collection, ProductDefinition)
+     */
+    public AssetList resolveFeatures(Collection<String> names, ProductDefinition product) {
+        return featureResolver.resolve(names, product);
     }
 
     /**
@@ -380,4 +837,15 @@ public class AssetServiceLayer {
         attachment.setUrl(url);
     }
 
+    /**
+     * Notify any beans which keep an in-memory view of the repository that an asset has been
+     * written.
+     *
+     * @param assetId the id of the asset
+     * @param asset the asset as it is now stored, or null if it has been deleted
+     */
+    private void fireAssetChanged(String assetId, Asset asset) {
+        assetChanges.fire(new AssetChangedEvent(assetId, asset));
+    }
+
 }
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import com.ibm.ws.lars.rest.exceptions.InvalidParameterException;
+import com.ibm.ws.lars.rest.exceptions.NonExistentArtefactException;
+import com.ibm.ws.lars.rest.model.Attachment;
+import com.ibm.ws.lars.rest.model.AttachmentContentResponse;
+
+/**
+ * A zip file containing the content of several attachments, which is assembled from the content
+ * store as it is written to the response.
+ * <p>
+ * Each attachment is stored as <code>assetId/name</code>. Content which is already compressed,
+ * such as an ESA, is stored without compressing it again.
+ */
+class AttachmentBundle implements StreamingOutput {
+
+    static final String MEDIA_TYPE = "application/zip";
+
+    /** The most attachments which can be requested in one bundle */
+    static final int MAX_ATTACHMENTS = 1000;
+
+    private final AssetServiceLayer assetService;
+
+    private final List<Attachment> attachments = new ArrayList<>();
+
+    private final Set<String> attachmentIds = new HashSet<>();
+
+    /**
+     * @param assetService the service used to read attachment content
+     */
+    AttachmentBundle(AssetServiceLayer assetService) {
+        this.assetService = assetService;
+    }
+
+    /**
+     * Add an attachment to the bundle. Adding the same attachment again has no effect.
+     *
+     * @param attachment the attachment
+     * @throws InvalidParameterException if the attachment's content is not stored in the
+     *             repository, or the bundle is full
+     */
+    void add(Attachment attachment) throws InvalidParameterException {
+        if (attachment.getLinkType() != null || attachment.getGridFSId() == null) {
+            throw new InvalidParameterException("The content of attachment " + attachment.get_id() + " is not stored in this repository");
+        }
+        if (!attachmentIds.add(attachment.get_id())) {
+            return;
+        }
+        if (attachments.size() >= MAX_ATTACHMENTS) {
+            throw new InvalidParameterException("A bundle can contain at most " + MAX_ATTACHMENTS + " attachments");
+        }
+        attachments.add(attachment);
+    }
+
+    @Override
+    public void write(OutputStream os) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(os);
+        Set<String> entryNames = new HashSet<>();
+        byte[] buffer = new byte[8192];
+
+        for (Attachment attachment : attachments) {
+            String entryName = attachment.getAssetId() + "/" + attachment.getName();
+            if (!entryNames.add(entryName)) {
+                // Two attachments of the same asset with the same name
+                entryName = attachment.getAssetId() + "/" + attachment.get_id() + "/" + attachment.getName();
+                entryNames.add(entryName);
+            }
+
+            AttachmentContentResponse content;
+            try {
+                content = assetService.retrieveAttachmentContent(attachment);
+            } catch (NonExistentArtefactException e) {
+                // Deleted since the bundle was requested, and the response has already started
+                throw new IOException("The content of attachment " + attachment.get_id() + " no longer exists", e);
+            }
+
+            // A stored entry would need its CRC up front, which would mean reading the content
+            // twice, so incompressible content is deflated at level 0 instead, which is almost as cheap
+            boolean compress = ContentEncoding.isCompressible(attachment.getContentType());
+            zip.setLevel(compress ? Deflater.DEFAULT_COMPRESSION : Deflater.NO_COMPRESSION);
+            zip.putNextEntry(new ZipEntry(entryName));
+
+            InputStream input = content.getContentStream();
+            try {
+                int len;
+                while ((len = input.read(buffer)) != -1) {
+                    zip.write(buffer, 0, len);
+                }
+            } finally {
+                input.close();
+            }
+            zip.closeEntry();
+        }
+
+        // Write the central directory, but leave closing the response stream to the container
+        zip.finish();
+    }
+
+}
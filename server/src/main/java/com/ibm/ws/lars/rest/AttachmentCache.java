@@ -0,0 +1,304 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+/**
+ * A read-through cache of attachment content on the local disk, so that popular attachments
+ * don't have to be read from the persistence store for every download.
+ * <p>
+ * Content is keyed by its GridFS id. Since new content is always stored under a new id, cached
+ * content never goes stale. Content which has been deleted can't be served from the cache either,
+ * because the attachment metadata is always read from the store first. Such entries are evicted
+ * in the usual way once they are no longer used.
+ * <p>
+ * Content is written to the cache as it is streamed to the first client which downloads it, and
+ * is only added once the whole stream has been read. The cache is limited to a configured number
+ * of bytes, and the least recently used content is evicted when it is full.
+ * <p>
+ * The cache is disabled unless a directory is set in the {@link Configuration}.
+ */
+@ApplicationScoped
+public class AttachmentCache {
+
+    private static final Logger logger = Logger.getLogger(AttachmentCache.class.getCanonicalName());
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    @Inject
+    private Configuration configuration;
+
+    /** Size in bytes of each cached file, keyed by GridFS id, in least recently used order */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalBytes = 0;
+
+    private File directory = null;
+
+    /**
+     * @return true if the cache is enabled
+     */
+    public boolean isEnabled() {
+        return configuration.getAttachmentCacheDirectory() != null && configuration.getAttachmentCacheBytes() > 0;
+    }
+
+    /**
+     * Open cached content
+     *
+     * @param gridFSId the GridFS id of the content
+     * @return a stream of the content, or null if it isn't in the cache
+     */
+    public synchronized InputStream get(String gridFSId) {
+        if (!isValidId(gridFSId) || entries.get(gridFSId) == null) {
+            return null;
+        }
+
+        try {
+            return new FileInputStream(getFile(gridFSId));
+        } catch (FileNotFoundException e) {
+            // Someone has removed the file from under us
+            totalBytes -= entries.remove(gridFSId);
+            return null;
+        }
+    }
+
+    /**
+     * Wrap a stream of content read from the persistence store, so that the content is added to
+     * the cache once the stream has been read to the end.
+     *
+     * @param gridFSId the GridFS id of the content
+     * @param content the content stream
+     * @return a stream which should be read instead of the content stream
+     */
+    public InputStream fill(String gridFSId, InputStream content) {
+        if (!isValidId(gridFSId)) {
+            return content;
+        }
+
+        try {
+            File tempFile = File.createTempFile("fill-" + gridFSId + "-", TEMP_SUFFIX, getDirectory());
+            return new CachingInputStream(content, gridFSId, tempFile);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to create a file to cache attachment content", e);
+            return content;
+        }
+    }
+
+    /**
+     * Move a complete temporary file into the cache
+     */
+    private synchronized void add(String gridFSId, File tempFile) {
+        long size = tempFile.length();
+        File file = getFile(gridFSId);
+        if (size > configuration.getAttachmentCacheBytes() || entries.containsKey(gridFSId) || !tempFile.renameTo(file)) {
+            // Too big, or another download got there first
+            delete(tempFile);
+            return;
+        }
+
+        entries.put(gridFSId, size);
+        totalBytes += size;
+        evict();
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("add: cached " + size + " bytes for " + gridFSId + ", the cache now holds " + totalBytes + " bytes");
+        }
+    }
+
+    private void evict() {
+        long maxBytes = configuration.getAttachmentCacheBytes();
+        for (Iterator<Map.Entry<String, Long>> i = entries.entrySet().iterator(); i.hasNext() && totalBytes > maxBytes;) {
+            Map.Entry<String, Long> entry = i.next();
+            // On some platforms a file which is being read can't be deleted, in which case it is
+            // left behind and will be tidied up when the server restarts
+            delete(getFile(entry.getKey()));
+            totalBytes -= entry.getValue();
+            i.remove();
+        }
+    }
+
+    /**
+     * Returns the cache directory, creating it and loading any content left by a previous run if
+     * this is the first use
+     */
+    private synchronized File getDirectory() throws IOException {
+        if (directory == null) {
+            File dir = new File(configuration.getAttachmentCacheDirectory());
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create the attachment cache directory " + dir);
+            }
+
+            File[] files = dir.listFiles(new FileFilter() {
+                @Override
+                public boolean accept(File file) {
+                    return file.isFile();
+                }
+            });
+            if (files == null) {
+                throw new IOException("Unable to list the attachment cache directory " + dir);
+            }
+
+            // Oldest first, so the most recently written content is treated as most recently used
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File a, File b) {
+                    return Long.compare(a.lastModified(), b.lastModified());
+                }
+            });
+            for (File file : files) {
+                if (file.getName().endsWith(TEMP_SUFFIX) || !isValidId(file.getName())) {
+                    delete(file);
+                } else {
+                    entries.put(file.getName(), file.length());
+                    totalBytes += file.length();
+                }
+            }
+            directory = dir;
+            evict();
+        }
+        return directory;
+    }
+
+    private File getFile(String gridFSId) {
+        return new File(configuration.getAttachmentCacheDirectory(), gridFSId);
+    }
+
+    /**
+     * GridFS ids are used as file names, so only allow ids which are safe to use
+     */
+    private static boolean isValidId(String gridFSId) {
+        return gridFSId != null && gridFSId.matches("[a-zA-Z0-9]+");
+    }
+
+    private static void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            logger.warning("Unable to delete attachment cache file " + file);
+        }
+    }
+
+    /**
+     * Copies everything read through it to a temporary file, which is added to the cache when the
+     * end of the stream is reached. If the stream is closed early, or the file can't be written,
+     * the file is deleted instead.
+     */
+    private class CachingInputStream extends FilterInputStream {
+
+        private final String gridFSId;
+        private final File tempFile;
+        private OutputStream cacheStream;
+
+        CachingInputStream(InputStream in, String gridFSId, File tempFile) throws FileNotFoundException {
+            super(in);
+            this.gridFSId = gridFSId;
+            this.tempFile = tempFile;
+            this.cacheStream = new FileOutputStream(tempFile);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                finish(true);
+            } else if (cacheStream != null) {
+                try {
+                    cacheStream.write(b);
+                } catch (IOException e) {
+                    finish(false);
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count == -1) {
+                finish(true);
+            } else if (cacheStream != null) {
+                try {
+                    cacheStream.write(b, off, count);
+                } catch (IOException e) {
+                    finish(false);
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped content wouldn't be cached, so give up on caching
+            finish(false);
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                finish(false);
+            }
+        }
+
+        /**
+         * Stop copying to the temporary file, and either add it to the cache or delete it
+         */
+        private void finish(boolean complete) {
+            if (cacheStream == null) {
+                return;
+            }
+
+            boolean written = complete;
+            try {
+                cacheStream.close();
+            } catch (IOException e) {
+                written = false;
+            }
+            cacheStream = null;
+
+            if (written) {
+                add(gridFSId, tempFile);
+            } else {
+                delete(tempFile);
+            }
+        }
+    }
+
+}
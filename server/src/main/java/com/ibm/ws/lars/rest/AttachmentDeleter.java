@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+/**
+ * Deletes the attachments of deleted assets in the background, so that deleting an asset with
+ * many attachments doesn't hold up the request.
+ * <p>
+ * The asset itself is deleted first, which hides its attachments straight away as every way of
+ * reading an attachment looks up its asset. A delete which fails is retried a few times, backing
+ * off between attempts. Attachments which are still left behind, for example because the server
+ * stopped or because an attachment was added while its asset was being deleted, are found and
+ * deleted by a sweep which runs when the server starts and then periodically.
+ * <p>
+ * The deleter is started by the {@link StartupListener}, so that the first sweep doesn't wait for
+ * the first asset to be deleted.
+ */
+@ApplicationScoped
+public class AttachmentDeleter {
+
+    private static final Logger logger = Logger.getLogger(AttachmentDeleter.class.getCanonicalName());
+
+    /** How long to wait before retrying a failed delete, doubled after each failure */
+    private static final long RETRY_DELAY_MILLIS = 5000;
+
+    /** How many times a failed delete is retried before it is left to the next sweep */
+    static final int MAX_RETRIES = 5;
+
+    /** How often to look for the attachments of deleted assets */
+    private static final long SWEEP_INTERVAL_MINUTES = 60;
+
+    @Inject
+    private Persistor persistenceBean;
+
+    private long retryDelayMillis = RETRY_DELAY_MILLIS;
+
+    private volatile ScheduledExecutorService executor = null;
+
+    /**
+     * Start deleting attachments in the background and sweeping for orphaned attachments
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "LARS attachment deleter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                deleteOrphanedAttachments();
+            }
+        }, 0, SWEEP_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Delete the attachments of an asset which has already been deleted. This is done in the
+     * background, unless the deleter hasn't been started.
+     *
+     * @param assetId the id of the deleted asset
+     */
+    public void deleteAttachments(String assetId) {
+        if (executor == null) {
+            delete(assetId);
+            return;
+        }
+
+        executor.execute(new DeleteTask(assetId));
+    }
+
+    /**
+     * Delete any attachments left behind by assets which have been deleted
+     */
+    void deleteOrphanedAttachments() {
+        Collection<String> assetIds;
+        try {
+            assetIds = persistenceBean.findAssetIdsWithOrphanedAttachments();
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Unable to look for the attachments of deleted assets", e);
+            return;
+        }
+
+        if (!assetIds.isEmpty()) {
+            logger.info("Deleting the attachments of " + assetIds.size() + " deleted assets");
+        }
+        for (String assetId : assetIds) {
+            delete(assetId);
+        }
+    }
+
+    /**
+     * @return true if the attachments were deleted
+     */
+    private boolean delete(String assetId) {
+        try {
+            persistenceBean.deleteAttachmentsForAsset(assetId);
+            return true;
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Unable to delete the attachments of asset " + assetId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the attachments of one asset, scheduling itself to run again if that fails
+     */
+    private class DeleteTask implements Runnable {
+
+        private final String assetId;
+
+        private int retries = 0;
+
+        DeleteTask(String assetId) {
+            this.assetId = assetId;
+        }
+
+        @Override
+        public void run() {
+            if (delete(assetId)) {
+                return;
+            }
+
+            if (retries >= MAX_RETRIES) {
+                // They will be deleted by the next sweep
+                return;
+            }
+
+            long delay = retryDelayMillis << retries;
+            retries++;
+            try {
+                executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // The server is stopping, they will be deleted when it next starts
+            }
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Converts asset payloads between JSON and the binary encodings (Smile and CBOR) which clients can
+ * ask for instead.
+ * <p>
+ * Assets are always stored and processed as JSON, so a binary payload is transcoded token by token
+ * on the way in or out, without building an intermediate object model.
+ * <p>
+ * A binary encoding is only used for a response if the client explicitly lists it in the Accept
+ * header ahead of JSON. Clients which send no Accept header, or accept anything, get JSON as
+ * before.
+ */
+final class BinaryEncoding {
+
+    static final String SMILE = "application/x-jackson-smile";
+    static final String CBOR = "application/cbor";
+
+    static final MediaType SMILE_TYPE = new MediaType("application", "x-jackson-smile");
+    static final MediaType CBOR_TYPE = new MediaType("application", "cbor");
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final JsonFactory SMILE_FACTORY = new SmileFactory();
+    private static final JsonFactory CBOR_FACTORY = new CBORFactory();
+
+    private BinaryEncoding() {
+        // Not to be instantiated
+    }
+
+    /**
+     * Choose the encoding for a response, based on the request's Accept header.
+     *
+     * @param headers the request headers, may be null
+     * @return {@link #SMILE_TYPE}, {@link #CBOR_TYPE} or {@link MediaType#APPLICATION_JSON_TYPE}
+     */
+    static MediaType getResponseType(HttpHeaders headers) {
+        if (headers == null) {
+            return MediaType.APPLICATION_JSON_TYPE;
+        }
+
+        // The acceptable types are sorted with the most preferred first
+        for (MediaType accepted : headers.getAcceptableMediaTypes()) {
+            if (accepted.isWildcardType() || accepted.isWildcardSubtype() || isSameType(accepted, MediaType.APPLICATION_JSON_TYPE)) {
+                return MediaType.APPLICATION_JSON_TYPE;
+            }
+            if (isSameType(accepted, SMILE_TYPE)) {
+                return SMILE_TYPE;
+            }
+            if (isSameType(accepted, CBOR_TYPE)) {
+                return CBOR_TYPE;
+            }
+        }
+        return MediaType.APPLICATION_JSON_TYPE;
+    }
+
+    /**
+     * Encode a JSON document using the given media type
+     *
+     * @param json the JSON document
+     * @param type the media type to encode to
+     * @return the encoded document, which is the JSON passed in if the type is not binary
+     * @throws IOException if the JSON is not valid
+     */
+    static byte[] encode(byte[] json, MediaType type) throws IOException {
+        JsonFactory factory = getFactory(type);
+        if (factory == JSON_FACTORY) {
+            return json;
+        }
+        return transcode(json, JSON_FACTORY, factory);
+    }
+
+    /**
+     * Decode a document in the given media type to JSON
+     *
+     * @param data the encoded document
+     * @param type the media type of the document
+     * @return the document as JSON, which is the data passed in if the type is not binary
+     * @throws IOException if the data is not valid for the media type
+     */
+    static byte[] decode(byte[] data, MediaType type) throws IOException {
+        JsonFactory factory = getFactory(type);
+        if (factory == JSON_FACTORY) {
+            return data;
+        }
+        return transcode(data, factory, JSON_FACTORY);
+    }
+
+    private static byte[] transcode(byte[] input, JsonFactory from, JsonFactory to) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(input.length);
+        try (JsonParser parser = from.createParser(input);
+                JsonGenerator generator = to.createGenerator(output)) {
+            while (parser.nextToken() != null) {
+                generator.copyCurrentEvent(parser);
+            }
+        }
+        return output.toByteArray();
+    }
+
+    private static JsonFactory getFactory(MediaType type) {
+        if (type != null) {
+            if (isSameType(type, SMILE_TYPE)) {
+                return SMILE_FACTORY;
+            }
+            if (isSameType(type, CBOR_TYPE)) {
+                return CBOR_FACTORY;
+            }
+        }
+        return JSON_FACTORY;
+    }
+
+    /**
+     * Compare the type and subtype, ignoring any parameters
+     */
+    private static boolean isSameType(MediaType a, MediaType b) {
+        return a.getType().equalsIgnoreCase(b.getType()) && a.getSubtype().equalsIgnoreCase(b.getSubtype());
+    }
+
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the number of requests of one kind which can run at the same time, so that a burst of
+ * expensive requests can't use up every request thread in the server.
+ * <p>
+ * When the limit is reached, further requests wait for a bounded time in a queue of bounded
+ * length. Requests which can't join the queue, or which time out, should be rejected.
+ */
+public class Bulkhead {
+
+    private final String name;
+
+    /** Permits to run, or null if the number of concurrent requests is not limited */
+    private final Semaphore permits;
+
+    private final int maxQueued;
+
+    private final long maxWaitMillis;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * @param name the name of the bulkhead, for logging
+     * @param maxConcurrent the maximum number of requests which can run at once, or zero or less
+     *            for no limit
+     * @param maxQueued the maximum number of requests which can wait to run
+     * @param maxWaitMillis the maximum time that a request will wait to run
+     */
+    public Bulkhead(String name, int maxConcurrent, int maxQueued, long maxWaitMillis) {
+        this.name = name;
+        this.permits = maxConcurrent > 0 ? new Semaphore(maxConcurrent, true) : null;
+        this.maxQueued = maxQueued;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Try to enter the bulkhead, waiting if necessary. If this returns true, the caller must call
+     * {@link #exit()} when it has finished.
+     *
+     * @return true if the caller may run, false if it should be rejected
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean tryEnter() throws InterruptedException {
+        if (permits == null || permits.tryAcquire()) {
+            return true;
+        }
+
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            return false;
+        }
+        try {
+            return permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    /**
+     * Leave the bulkhead, after a successful call to {@link #tryEnter()}
+     */
+    public void exit() {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Bulkhead[" + name + ", available=" + (permits == null ? "unlimited" : permits.availablePermits()) + ", queued=" + queued.get() + "]";
+    }
+
+}
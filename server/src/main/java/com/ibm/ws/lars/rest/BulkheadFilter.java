@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import javax.inject.Inject;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Runs expensive REST requests (attachment downloads, attachment uploads and text searches) through
+ * a separate {@link Bulkhead} for each kind of request, so that a burst of them can't tie up every
+ * request thread and starve the cheap metadata queries.
+ * <p>
+ * Requests which can't get into their bulkhead are rejected with a 503 and a Retry-After header.
+ * Each bulkhead is sized in the {@link Configuration} and is unlimited by default.
+ */
+public class BulkheadFilter implements Filter {
+
+    private static final Logger logger = Logger.getLogger(BulkheadFilter.class.getCanonicalName());
+
+    /** The kinds of request which run in their own bulkhead */
+    enum Workload {
+        DOWNLOAD, UPLOAD, SEARCH
+    }
+
+    /** The longest time a request will wait in the queue for its bulkhead */
+    static final long MAX_WAIT_MILLIS = 30 * 1000;
+
+    /** The number of seconds after which a rejected client should retry */
+    static final int RETRY_AFTER_SECONDS = 5;
+
+    private static final Pattern ATTACHMENT_CONTENT_PATH = Pattern.compile("/ma/v1/assets/[^/]+/attachments/[^/]+/[^/]+");
+    private static final Pattern ATTACHMENTS_PATH = Pattern.compile("/ma/v1/assets/[^/]+/attachments/?");
+    private static final Pattern ASSETS_PATH = Pattern.compile("/ma/v1/assets/?");
+    private static final Pattern BUNDLE_PATH = Pattern.compile("/ma/v1/bundle/?");
+
+    @Inject
+    private Configuration configuration;
+
+    private final Map<Workload, Bulkhead> bulkheads = new EnumMap<>(Workload.class);
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        int maxQueued = configuration.getBulkheadQueueLength();
+        bulkheads.put(Workload.DOWNLOAD, new Bulkhead("download", configuration.getDownloadConcurrency(), maxQueued, MAX_WAIT_MILLIS));
+        bulkheads.put(Workload.UPLOAD, new Bulkhead("upload", configuration.getUploadConcurrency(), maxQueued, MAX_WAIT_MILLIS));
+        bulkheads.put(Workload.SEARCH, new Bulkhead("search", configuration.getSearchConcurrency(), maxQueued, MAX_WAIT_MILLIS));
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        String path = httpRequest.getRequestURI().substring(httpRequest.getContextPath().length());
+        // Only look at the parameters of a GET, as reading them can consume the body of a POST
+        boolean isSearch = "GET".equals(httpRequest.getMethod()) && httpRequest.getParameter("q") != null;
+        Workload workload = getWorkload(httpRequest.getMethod(), path, httpRequest.getContentType(), isSearch);
+        if (workload == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        Bulkhead bulkhead = bulkheads.get(workload);
+        boolean entered;
+        try {
+            entered = bulkhead.tryEnter();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            entered = false;
+        }
+
+        if (!entered) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("doFilter: rejecting " + httpRequest.getMethod() + " " + path + ", " + bulkhead + " is full");
+            }
+            reject((HttpServletResponse) response);
+            return;
+        }
+
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            bulkhead.exit();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // Nothing to do
+    }
+
+    /**
+     * Work out which bulkhead, if any, a request should run in
+     *
+     * @param method the HTTP method
+     * @param path the request path, relative to the context root
+     * @param contentType the content type of the request body, may be null
+     * @param isSearch true if the request has a search term
+     * @return the workload, or null if the request doesn't need a bulkhead
+     */
+    static Workload getWorkload(String method, String path, String contentType, boolean isSearch) {
+        if ("GET".equals(method)) {
+            if (ATTACHMENT_CONTENT_PATH.matcher(path).matches()) {
+                return Workload.DOWNLOAD;
+            }
+            if (isSearch && ASSETS_PATH.matcher(path).matches()) {
+                return Workload.SEARCH;
+            }
+        } else if ("POST".equals(method)) {
+            if (ATTACHMENTS_PATH.matcher(path).matches()) {
+                return Workload.UPLOAD;
+            }
+            // An asset can be uploaded together with its attachments in one multipart request
+            if (ASSETS_PATH.matcher(path).matches() && isMultipart(contentType)) {
+                return Workload.UPLOAD;
+            }
+            if (BUNDLE_PATH.matcher(path).matches()) {
+                return Workload.DOWNLOAD;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isMultipart(String contentType) {
+        return contentType != null && contentType.toLowerCase(Locale.ENGLISH).startsWith("multipart/");
+    }
+
+    private static void reject(HttpServletResponse response) throws IOException {
+        response.setStatus(Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+        response.setHeader("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+        response.setContentType(MediaType.APPLICATION_JSON);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(RepositoryRESTResource.getErrorJson(Response.Status.SERVICE_UNAVAILABLE,
+                                                                       "The server is too busy, please try again later"));
+    }
+
+}
@@ -0,0 +1,371 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import com.ibm.ws.lars.rest.model.Asset;
+import com.ibm.ws.lars.rest.model.AssetList;
+
+/**
+ * Keeps an in-memory catalog of the published assets which apply to each product id and minimum
+ * product version, so that the most common client query ("which published assets apply to product X
+ * version Y") can be answered with a map lookup rather than a query on the nested
+ * appliesToFilterInfo array.
+ * <p>
+ * The catalog is loaded from the persistence store the first time it is needed, and then kept up to
+ * date by observing {@link AssetChangedEvent}s, each of which builds a new immutable catalog from
+ * the old one and swaps it in, so that readers never need to take a lock. It is only used if
+ * enabled in the {@link Configuration}. Writes made by other servers sharing the same database are
+ * only seen if the {@link InvalidationBus} is enabled too.
+ * <p>
+ * Results are the same as the persistence store would return: an asset is catalogued under every
+ * combination of the product ids and minimum versions in its appliesToFilterInfo, which matches
+ * the way mongo applies two separate conditions to the elements of an array. Any other filters in
+ * the query are then checked against the candidate assets in memory.
+ */
+@ApplicationScoped
+public class CatalogViews {
+
+    private static final Logger logger = Logger.getLogger(CatalogViews.class.getCanonicalName());
+
+    static final String PRODUCT_ID_FIELD = "wlpInformation.appliesToFilterInfo.productId";
+    static final String MIN_VERSION_FIELD = "wlpInformation.appliesToFilterInfo.minVersion.value";
+
+    /** Key used in a product's view for assets which have no minimum version */
+    private static final String NO_VERSION = "";
+
+    @Inject
+    private Persistor persistenceBean;
+
+    @Inject
+    private Configuration configuration;
+
+    private volatile Catalog catalog = null;
+
+    /**
+     * Check whether a query can be answered from the catalog.
+     * <p>
+     * A query can be answered if catalog views are enabled, it is restricted to published assets,
+     * it filters on one or more product ids and it does not use a search term, pagination or
+     * sorting.
+     *
+     * @see Persistor#retrieveAllAssets(Collection, String, PaginationOptions, SortOptions)
+     */
+    public boolean canServe(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions) {
+        return configuration.isCatalogViewsEnabled()
+               && searchTerm == null
+               && pagination == null
+               && sortOptions == null
+               && AssetMatcher.isPublishedOnly(filters)
+               && AssetMatcher.getEqualsValues(filters, PRODUCT_ID_FIELD) != null;
+    }
+
+    /**
+     * Retrieve the assets which match the given filters from the catalog.
+     * <p>
+     * Callers must check {@link #canServe(Collection, String, PaginationOptions, SortOptions)}
+     * first.
+     *
+     * @param filters the filters, which must include a product id filter
+     * @return the matching assets, ordered by id
+     */
+    public AssetList retrieveAllAssets(Collection<AssetFilter> filters) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Asset asset : findAssets(filters)) {
+            result.add(new HashMap<>(asset.getProperties()));
+        }
+        return AssetList.createAssetListFromMaps(result);
+    }
+
+    /**
+     * Count the assets which match the given filters in the catalog.
+     * <p>
+     * Callers must check {@link #canServe(Collection, String, PaginationOptions, SortOptions)}
+     * first.
+     *
+     * @param filters the filters, which must include a product id filter
+     * @return the number of matching assets
+     */
+    public int countAllAssets(Collection<AssetFilter> filters) {
+        return findAssets(filters).size();
+    }
+
+    /**
+     * Update the catalog when an asset is written
+     *
+     * @param event the event describing the change
+     */
+    public synchronized void assetChanged(@Observes AssetChangedEvent event) {
+        if (catalog == null) {
+            // The change will be picked up when the catalog is loaded
+            return;
+        }
+
+        if (event.isReset()) {
+            // Load it again the next time it is needed
+            catalog = null;
+            return;
+        }
+
+        catalog = catalog.withAsset(event.getAssetId(), event.isDelete() ? null : event.getAsset());
+    }
+
+    private List<Asset> findAssets(Collection<AssetFilter> filters) {
+        Catalog current = getCatalog();
+
+        List<String> productIds = AssetMatcher.getEqualsValues(filters, PRODUCT_ID_FIELD);
+        List<String> versions = AssetMatcher.getEqualsValues(filters, MIN_VERSION_FIELD);
+
+        Set<String> candidateIds = new TreeSet<>();
+        for (String productId : productIds) {
+            Map<String, Set<String>> productView = current.views.get(productId);
+            if (productView == null) {
+                continue;
+            }
+
+            if (versions == null) {
+                for (Set<String> ids : productView.values()) {
+                    candidateIds.addAll(ids);
+                }
+            } else {
+                for (String version : versions) {
+                    Set<String> ids = productView.get(version);
+                    if (ids != null) {
+                        candidateIds.addAll(ids);
+                    }
+                }
+            }
+        }
+
+        List<Asset> result = new ArrayList<>();
+        for (String id : candidateIds) {
+            Asset asset = current.assets.get(id);
+            if (AssetMatcher.matchesAll(asset, filters)) {
+                result.add(asset);
+            }
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("findAssets: found " + result.size() + " assets from " + candidateIds.size() + " candidates");
+        }
+
+        return result;
+    }
+
+    /**
+     * Load the catalog now, if it is enabled, rather than when it is first needed
+     */
+    void warmUp() {
+        if (configuration.isCatalogViewsEnabled()) {
+            getCatalog();
+        }
+    }
+
+    private Catalog getCatalog() {
+        Catalog current = catalog;
+        if (current == null) {
+            current = load();
+        }
+        return current;
+    }
+
+    private synchronized Catalog load() {
+        if (catalog == null) {
+            Catalog loaded = Catalog.create(persistenceBean.retrieveAllAssets(AssetMatcher.PUBLISHED_ASSETS, null, null, null));
+            catalog = loaded;
+
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("load: loaded " + loaded.assets.size() + " published assets into " + loaded.views.size() + " product views");
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * An immutable catalog of published assets which apply to at least one product.
+     * <p>
+     * A catalog is never changed once it has been created. A change to one asset creates a new
+     * catalog which shares every view entry that the change doesn't affect with the old one.
+     */
+    private static class Catalog {
+
+        /** Published assets which apply to at least one product, keyed by asset id */
+        private final Map<String, Asset> assets;
+
+        /** Asset ids, keyed by product id and then by minimum version */
+        private final Map<String, Map<String, Set<String>>> views;
+
+        private Catalog(Map<String, Asset> assets, Map<String, Map<String, Set<String>>> views) {
+            this.assets = assets;
+            this.views = views;
+        }
+
+        /**
+         * Create a catalog of the given assets
+         *
+         * @param assets the assets, any which aren't published or don't apply to a product are
+         *            ignored
+         */
+        static Catalog create(Iterable<Asset> assets) {
+            Map<String, Asset> catalogued = new HashMap<>();
+            Map<String, Map<String, Set<String>>> views = new HashMap<>();
+            for (Asset asset : assets) {
+                if (!isCatalogued(asset)) {
+                    continue;
+                }
+                Asset copy = copyAsset(asset);
+                catalogued.put(copy.get_id(), copy);
+
+                for (List<String> key : getViewKeys(copy)) {
+                    Map<String, Set<String>> productView = views.get(key.get(0));
+                    if (productView == null) {
+                        productView = new HashMap<>();
+                        views.put(key.get(0), productView);
+                    }
+                    Set<String> ids = productView.get(key.get(1));
+                    if (ids == null) {
+                        ids = new HashSet<>();
+                        productView.put(key.get(1), ids);
+                    }
+                    ids.add(copy.get_id());
+                }
+            }
+            return new Catalog(Collections.unmodifiableMap(catalogued), Collections.unmodifiableMap(views));
+        }
+
+        /**
+         * Create a new catalog in which one asset has been added, replaced or removed
+         *
+         * @param id the id of the asset
+         * @param asset the new asset, or null if the asset has been deleted
+         * @return the new catalog
+         */
+        Catalog withAsset(String id, Asset asset) {
+            Asset oldAsset = assets.get(id);
+            Asset newAsset = asset != null && isCatalogued(asset) ? copyAsset(asset) : null;
+            if (oldAsset == null && newAsset == null) {
+                return this;
+            }
+
+            Map<String, Asset> newAssets = new HashMap<>(assets);
+            if (newAsset == null) {
+                newAssets.remove(id);
+            } else {
+                newAssets.put(id, newAsset);
+            }
+
+            Set<List<String>> oldKeys = getViewKeys(oldAsset);
+            Set<List<String>> newKeys = getViewKeys(newAsset);
+            Map<String, Map<String, Set<String>>> newViews = new HashMap<>(views);
+            for (List<String> key : oldKeys) {
+                if (!newKeys.contains(key)) {
+                    updateView(newViews, key.get(0), key.get(1), id, false);
+                }
+            }
+            for (List<String> key : newKeys) {
+                if (!oldKeys.contains(key)) {
+                    updateView(newViews, key.get(0), key.get(1), id, true);
+                }
+            }
+
+            return new Catalog(Collections.unmodifiableMap(newAssets), Collections.unmodifiableMap(newViews));
+        }
+
+        /**
+         * Add an id to, or remove it from, the view for a product id and version, copying the
+         * product's view and the set of ids rather than changing them, since they may be shared
+         * with other catalogs.
+         */
+        private static void updateView(Map<String, Map<String, Set<String>>> views, String productId, String version, String id, boolean add) {
+            Map<String, Set<String>> oldProductView = views.get(productId);
+            Map<String, Set<String>> productView = oldProductView == null ? new HashMap<String, Set<String>>() : new HashMap<>(oldProductView);
+
+            Set<String> oldIds = productView.get(version);
+            Set<String> ids = oldIds == null ? new HashSet<String>() : new HashSet<>(oldIds);
+            if (add) {
+                ids.add(id);
+            } else {
+                ids.remove(id);
+            }
+
+            if (ids.isEmpty()) {
+                productView.remove(version);
+            } else {
+                productView.put(version, Collections.unmodifiableSet(ids));
+            }
+
+            if (productView.isEmpty()) {
+                views.remove(productId);
+            } else {
+                views.put(productId, Collections.unmodifiableMap(productView));
+            }
+        }
+
+        /**
+         * @return the product id and version pairs that an asset is catalogued under, or an empty
+         *         set if the asset is null
+         */
+        private static Set<List<String>> getViewKeys(Asset asset) {
+            Set<List<String>> keys = new HashSet<>();
+            if (asset == null) {
+                return keys;
+            }
+
+            Set<String> versions = AssetMatcher.getStrings(AssetMatcher.getFieldValues(asset, MIN_VERSION_FIELD));
+            if (versions.isEmpty()) {
+                versions.add(NO_VERSION);
+            }
+            for (String productId : AssetMatcher.getStrings(AssetMatcher.getFieldValues(asset, PRODUCT_ID_FIELD))) {
+                for (String version : versions) {
+                    keys.add(Arrays.asList(productId, version));
+                }
+            }
+            return keys;
+        }
+
+        private static boolean isCatalogued(Asset asset) {
+            return Asset.State.PUBLISHED.getValue().equals(asset.getProperties().get(Asset.STATE))
+                   && !AssetMatcher.getStrings(AssetMatcher.getFieldValues(asset, PRODUCT_ID_FIELD)).isEmpty();
+        }
+
+        /**
+         * Take a copy, without the attachments, so that later changes to the asset passed in don't
+         * affect the catalog
+         */
+        private static Asset copyAsset(Asset asset) {
+            Asset copy = new Asset(asset);
+            copy.getProperties().remove(Asset.ATTACHMENTS);
+            return copy;
+        }
+    }
+
+}
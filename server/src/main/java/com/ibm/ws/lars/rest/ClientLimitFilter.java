@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.inject.Inject;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import javax.ws.rs.core.MediaType;
+
+import com.ibm.ws.lars.rest.BulkheadFilter.Workload;
+
+/**
+ * Applies the per-client limits from the {@link Configuration} to REST requests, using a
+ * {@link ClientLimiter}.
+ * <p>
+ * Clients are identified by their user name if they have logged in, otherwise by their IP
+ * address. A client which is over its request limits gets a 429 response with a Retry-After
+ * header. Attachment downloads are throttled to the client's download rate, which is shared
+ * between all of that client's downloads.
+ */
+public class ClientLimitFilter implements Filter {
+
+    private static final Logger logger = Logger.getLogger(ClientLimitFilter.class.getCanonicalName());
+
+    static final int TOO_MANY_REQUESTS = 429;
+
+    /** Throttled downloads are written in chunks of at most this size */
+    static final int CHUNK_SIZE = 8192;
+
+    @Inject
+    private Configuration configuration;
+
+    private ClientLimiter limiter;
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        limiter = new ClientLimiter(configuration.getClientConcurrency(),
+                                    configuration.getClientRequestsPerSecond(),
+                                    configuration.getClientDownloadBytesPerSecond());
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        if (!limiter.isEnabled()) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        String clientId = getClientId(httpRequest);
+
+        ClientLimiter.Admission admission = limiter.tryAdmit(clientId);
+        if (!admission.isAdmitted()) {
+            long retryAfter = admission.getRetryAfterSeconds();
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("doFilter: rejecting request from " + clientId + ", retry after " + retryAfter + "s");
+            }
+            reject(httpResponse, retryAfter);
+            return;
+        }
+
+        try {
+            TokenBucket bandwidth = admission.getBandwidth();
+            String path = httpRequest.getRequestURI().substring(httpRequest.getContextPath().length());
+            if (bandwidth != null && BulkheadFilter.getWorkload(httpRequest.getMethod(), path, httpRequest.getContentType(), false) == Workload.DOWNLOAD) {
+                httpResponse = new ThrottledResponse(httpResponse, bandwidth);
+            }
+            chain.doFilter(request, httpResponse);
+        } finally {
+            limiter.release(admission);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // Nothing to do
+    }
+
+    static String getClientId(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        if (principal != null) {
+            return "user:" + principal.getName();
+        }
+        return "address:" + request.getRemoteAddr();
+    }
+
+    private static void reject(HttpServletResponse response, long retryAfter) throws IOException {
+        response.setStatus(TOO_MANY_REQUESTS);
+        response.setHeader("Retry-After", Long.toString(retryAfter));
+        response.setContentType(MediaType.APPLICATION_JSON);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(RepositoryRESTResource.getErrorJson(TOO_MANY_REQUESTS, "Too many requests, please try again later"));
+    }
+
+    /**
+     * A response whose output stream is limited to the rate of a {@link TokenBucket}
+     */
+    private static class ThrottledResponse extends HttpServletResponseWrapper {
+
+        private final TokenBucket bandwidth;
+
+        private ServletOutputStream outputStream = null;
+
+        ThrottledResponse(HttpServletResponse response, TokenBucket bandwidth) {
+            super(response);
+            this.bandwidth = bandwidth;
+        }
+
+        @Override
+        public synchronized ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new ThrottledOutputStream(super.getOutputStream(), bandwidth);
+            }
+            return outputStream;
+        }
+    }
+
+    /**
+     * An output stream which waits after each chunk of data, so that the average rate of data
+     * written doesn't exceed the rate of a {@link TokenBucket}
+     */
+    static class ThrottledOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream delegate;
+
+        private final TokenBucket bandwidth;
+
+        ThrottledOutputStream(ServletOutputStream delegate, TokenBucket bandwidth) {
+            this.delegate = delegate;
+            this.bandwidth = bandwidth;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            throttle(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int chunk = Math.min(len, CHUNK_SIZE);
+                delegate.write(b, off, chunk);
+                throttle(chunk);
+                off += chunk;
+                len -= chunk;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        private void throttle(int bytes) throws IOException {
+            long waitNanos = bandwidth.consume(bytes);
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while throttling download", e);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the requests made by each client, so that no single client can take more than its share
+ * of the server.
+ * <p>
+ * Each client can be limited in the number of requests it has in progress, the rate at which it
+ * makes requests and the rate at which it downloads attachment content. Each limit is disabled if
+ * it is zero or less.
+ */
+public class ClientLimiter {
+
+    /** When more clients than this are tracked, clients with no requests in progress are forgotten */
+    static final int MAX_TRACKED_CLIENTS = 10000;
+
+    /** How many seconds of requests a client may make in a burst */
+    static final int REQUEST_BURST_SECONDS = 2;
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final int maxConcurrent;
+
+    private final int requestsPerSecond;
+
+    private final long bytesPerSecond;
+
+    private final ConcurrentMap<String, ClientState> clients = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxConcurrent the maximum number of requests each client may have in progress
+     * @param requestsPerSecond the maximum average number of requests per second for each client
+     * @param bytesPerSecond the maximum average download rate for each client
+     */
+    public ClientLimiter(int maxConcurrent, int requestsPerSecond, long bytesPerSecond) {
+        this.maxConcurrent = maxConcurrent;
+        this.requestsPerSecond = requestsPerSecond;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * @return true if any limit is enabled
+     */
+    public boolean isEnabled() {
+        return maxConcurrent > 0 || requestsPerSecond > 0 || bytesPerSecond > 0;
+    }
+
+    /**
+     * Try to start a request for a client. If the request is admitted, the caller must pass the
+     * returned admission to {@link #release(Admission)} when it has finished.
+     *
+     * @param clientId the client identifier
+     * @return the admission, which says whether the request was admitted
+     */
+    public Admission tryAdmit(String clientId) {
+        ClientState client = getClient(clientId);
+
+        if (client.requests != null && !client.requests.tryConsume(1)) {
+            // Round up to whole seconds
+            long nanos = client.requests.getNanosUntilAvailable(1);
+            return new Admission(null, Math.max(1, (nanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND));
+        }
+
+        int active = client.active.incrementAndGet();
+        if (maxConcurrent > 0 && active > maxConcurrent) {
+            client.active.decrementAndGet();
+            return new Admission(null, 1);
+        }
+        return new Admission(client, 0);
+    }
+
+    /**
+     * Finish a request which was admitted by {@link #tryAdmit(String)}.
+     * <p>
+     * The client's state is taken from the admission rather than looked up again, as the client
+     * may have been forgotten and tracked afresh while the request was in progress.
+     *
+     * @param admission the admission returned by {@link #tryAdmit(String)}
+     */
+    public void release(Admission admission) {
+        if (admission.client != null) {
+            admission.client.active.decrementAndGet();
+        }
+    }
+
+    private ClientState getClient(String clientId) {
+        ClientState client = clients.get(clientId);
+        if (client == null) {
+            if (clients.size() >= MAX_TRACKED_CLIENTS) {
+                forgetIdleClients();
+            }
+            ClientState newClient = new ClientState();
+            client = clients.putIfAbsent(clientId, newClient);
+            if (client == null) {
+                client = newClient;
+            }
+        }
+        return client;
+    }
+
+    private void forgetIdleClients() {
+        for (Iterator<ClientState> i = clients.values().iterator(); i.hasNext();) {
+            if (i.next().active.get() == 0) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * The result of {@link ClientLimiter#tryAdmit(String)}
+     */
+    public static final class Admission {
+
+        /** The state of the client, or null if the request was rejected */
+        private final ClientState client;
+
+        private final long retryAfterSeconds;
+
+        private Admission(ClientState client, long retryAfterSeconds) {
+            this.client = client;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        /**
+         * @return true if the request was admitted
+         */
+        public boolean isAdmitted() {
+            return client != null;
+        }
+
+        /**
+         * @return the number of seconds after which a rejected client should try again, or zero if
+         *         the request was admitted
+         */
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+
+        /**
+         * Get the bucket which limits the client's download rate, in bytes. The bucket is shared by
+         * all of the client's downloads.
+         *
+         * @return the bucket, or null if download rates are not limited or the request was rejected
+         */
+        public TokenBucket getBandwidth() {
+            return client == null ? null : client.bandwidth;
+        }
+    }
+
+    private class ClientState {
+        private final AtomicInteger active = new AtomicInteger();
+        private final TokenBucket requests = requestsPerSecond > 0 ? new TokenBucket(requestsPerSecond * REQUEST_BURST_SECONDS, requestsPerSecond) : null;
+        private final TokenBucket bandwidth = bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, bytesPerSecond) : null;
+    }
+
+}
@@ -16,6 +16,8 @@
 
 package com.ibm.ws.lars.rest;
 
+import java.util.logging.Logger;
+
 import javax.enterprise.context.ApplicationScoped;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
@@ -27,8 +29,56 @@ import javax.ws.rs.core.UriInfo;
 @ApplicationScoped
 public class Configuration {
 
+    private static final Logger logger = Logger.getLogger(Configuration.class.getCanonicalName());
+
     private final String urlBase;
 
+    private final boolean catalogViewsEnabled;
+
+    private final boolean publishedSnapshotEnabled;
+
+    private final boolean featureResolverEnabled;
+
+    private final int queryCacheSize;
+
+    private final int downloadConcurrency;
+
+    private final int uploadConcurrency;
+
+    private final int searchConcurrency;
+
+    private final int bulkheadQueueLength;
+
+    private final int clientConcurrency;
+
+    private final int clientRequestsPerSecond;
+
+    private final long clientDownloadBytesPerSecond;
+
+    private final String attachmentCacheDirectory;
+
+    private final long attachmentCacheBytes;
+
+    private final int downloadCountInterval;
+
+    private final boolean invalidationBusEnabled;
+
+    private final String queryReadPreference;
+
+    private final String contentReadPreference;
+
+    private final String fileStoreDirectory;
+
+    private final boolean memoryStoreEnabled;
+
+    private final boolean searchIndexEnabled;
+
+    private final boolean facetCountsEnabled;
+
+    private final boolean warmUpEnabled;
+
+    private final int timingLogSampleRate;
+
     public Configuration() {
         String urlBase = null;
         try {
@@ -39,6 +89,51 @@ public class Configuration {
         }
 
         this.urlBase = urlBase;
+
+        this.catalogViewsEnabled = lookupBoolean("lars/catalogViews", false);
+        this.publishedSnapshotEnabled = lookupBoolean("lars/publishedSnapshot", false);
+        this.featureResolverEnabled = lookupBoolean("lars/featureResolver", false);
+        this.queryCacheSize = lookupInt("lars/queryCacheSize", 0);
+        this.downloadConcurrency = lookupInt("lars/downloadConcurrency", 0);
+        this.uploadConcurrency = lookupInt("lars/uploadConcurrency", 0);
+        this.searchConcurrency = lookupInt("lars/searchConcurrency", 0);
+        this.bulkheadQueueLength = lookupInt("lars/bulkheadQueueLength", 20);
+        this.clientConcurrency = lookupInt("lars/clientConcurrency", 0);
+        this.clientRequestsPerSecond = lookupInt("lars/clientRequestsPerSecond", 0);
+        this.clientDownloadBytesPerSecond = lookupInt("lars/clientDownloadKBPerSecond", 0) * 1024L;
+        this.attachmentCacheDirectory = lookupString("lars/attachmentCacheDir", null);
+        this.attachmentCacheBytes = lookupInt("lars/attachmentCacheSizeMB", 1024) * 1024L * 1024L;
+        this.downloadCountInterval = lookupInt("lars/downloadCountInterval", 0);
+        this.invalidationBusEnabled = lookupBoolean("lars/invalidationBus", false);
+        this.contentReadPreference = lookupString("lars/contentReadPreference", null);
+        this.fileStoreDirectory = lookupString("lars/fileStoreDir", null);
+        this.memoryStoreEnabled = lookupBoolean("lars/memoryStore", false);
+        this.searchIndexEnabled = lookupBoolean("lars/searchIndex", false);
+        this.facetCountsEnabled = lookupBoolean("lars/facetCounts", false);
+        this.warmUpEnabled = lookupBoolean("lars/warmUp", false);
+        this.timingLogSampleRate = lookupInt("lars/timingLogSampleRate", 0);
+
+        boolean inMemoryViewsEnabled = catalogViewsEnabled || publishedSnapshotEnabled || featureResolverEnabled || queryCacheSize > 0
+                                       || searchIndexEnabled || facetCountsEnabled;
+        this.queryReadPreference = checkQueryReadPreference(lookupString("lars/queryReadPreference", null), inMemoryViewsEnabled);
+    }
+
+    /**
+     * The in-memory views and caches are loaded by queries. If those queries could go to a
+     * secondary which hasn't caught up with a write, a view could miss the write until the asset
+     * changes again, so a read preference for queries can't be used with them.
+     *
+     * @param queryReadPreference the configured read preference for queries, or null
+     * @param inMemoryViewsEnabled whether any in-memory view or cache is enabled
+     * @return the read preference to use for queries, or null to use the primary
+     */
+    static String checkQueryReadPreference(String queryReadPreference, boolean inMemoryViewsEnabled) {
+        if (queryReadPreference != null && inMemoryViewsEnabled) {
+            logger.warning("lars/queryReadPreference is ignored because in-memory views or caches are enabled, "
+                           + "which must be loaded from the primary. Queries will be read from the primary.");
+            return null;
+        }
+        return queryReadPreference;
     }
 
     /**
@@ -60,6 +155,341 @@ public class Configuration {
         }
     }
 
+    /**
+     * Returns whether GET requests for published assets which apply to a product should be served
+     * from the in-memory {@link CatalogViews}.
+     * <p>
+     * This is off by default, as the views are only updated by writes made through this server. It
+     * should only be turned on if no other server writes to the same database, or if the
+     * {@link #isInvalidationBusEnabled() invalidation bus} is enabled on every server.
+     *
+     * @return true if catalog views are enabled
+     */
+    public boolean isCatalogViewsEnabled() {
+        return catalogViewsEnabled;
+    }
+
+    /**
+     * Returns whether queries which can only return published assets should be answered from the
+     * in-memory {@link PublishedSnapshot}.
+     * <p>
+     * Like {@link #isCatalogViewsEnabled()}, this is off by default and should only be turned on
+     * if no other server writes to the same database, or if the invalidation bus is enabled on
+     * every server.
+     *
+     * @return true if the published snapshot is enabled
+     */
+    public boolean isPublishedSnapshotEnabled() {
+        return publishedSnapshotEnabled;
+    }
+
+    /**
+     * Returns whether the {@link FeatureResolver} should keep a dependency graph of the published
+     * features in memory, rather than reading the features for each resolution.
+     * <p>
+     * Like {@link #isCatalogViewsEnabled()}, this is off by default, as the graph is only updated
+     * by writes made through this server. It should only be turned on if no other server writes to
+     * the same database, or if the {@link #isInvalidationBusEnabled() invalidation bus} is enabled
+     * on every server.
+     *
+     * @return true if the in-memory feature graph is enabled
+     */
+    public boolean isFeatureResolverEnabled() {
+        return featureResolverEnabled;
+    }
+
+    /**
+     * Returns the maximum number of query results to hold in the {@link QueryResultCache}.
+     * <p>
+     * This is zero by default, which disables the cache. Like {@link #isCatalogViewsEnabled()}, it
+     * should only be set if no other server writes to the same database, or if the invalidation
+     * bus is enabled on every server.
+     *
+     * @return the maximum number of cached query results
+     */
+    public int getQueryCacheSize() {
+        return queryCacheSize;
+    }
+
+    /**
+     * Returns the maximum number of attachment downloads which can run at once. Further downloads
+     * wait in the {@link BulkheadFilter}'s queue.
+     * <p>
+     * This is zero by default, which means there is no limit.
+     *
+     * @return the maximum number of concurrent downloads
+     */
+    public int getDownloadConcurrency() {
+        return downloadConcurrency;
+    }
+
+    /**
+     * Returns the maximum number of attachment uploads which can run at once. Like
+     * {@link #getDownloadConcurrency()}, this is unlimited by default.
+     *
+     * @return the maximum number of concurrent uploads
+     */
+    public int getUploadConcurrency() {
+        return uploadConcurrency;
+    }
+
+    /**
+     * Returns the maximum number of text searches which can run at once. Like
+     * {@link #getDownloadConcurrency()}, this is unlimited by default.
+     *
+     * @return the maximum number of concurrent searches
+     */
+    public int getSearchConcurrency() {
+        return searchConcurrency;
+    }
+
+    /**
+     * Returns the maximum number of requests which can wait for each limited kind of request in
+     * the {@link BulkheadFilter}. Requests beyond this are rejected straight away.
+     *
+     * @return the maximum queue length
+     */
+    public int getBulkheadQueueLength() {
+        return bulkheadQueueLength;
+    }
+
+    /**
+     * Returns the maximum number of requests that a single client, identified by user name or IP
+     * address, may have in progress. Further requests from that client are rejected by the
+     * {@link ClientLimitFilter}.
+     * <p>
+     * This is zero by default, which means there is no limit.
+     *
+     * @return the maximum number of concurrent requests per client
+     */
+    public int getClientConcurrency() {
+        return clientConcurrency;
+    }
+
+    /**
+     * Returns the maximum average number of requests per second that a single client may make.
+     * Like {@link #getClientConcurrency()}, this is unlimited by default.
+     *
+     * @return the maximum request rate per client
+     */
+    public int getClientRequestsPerSecond() {
+        return clientRequestsPerSecond;
+    }
+
+    /**
+     * Returns the maximum rate at which a single client may download attachment content, shared
+     * between all of its downloads. This is configured in kilobytes per second, and like
+     * {@link #getClientConcurrency()} it is unlimited by default.
+     *
+     * @return the maximum download rate per client, in bytes per second
+     */
+    public long getClientDownloadBytesPerSecond() {
+        return clientDownloadBytesPerSecond;
+    }
+
+    /**
+     * Returns the directory in which the {@link AttachmentCache} keeps copies of attachment
+     * content.
+     * <p>
+     * This is null by default, which disables the cache.
+     *
+     * @return the cache directory, or null if the cache is disabled
+     */
+    public String getAttachmentCacheDirectory() {
+        return attachmentCacheDirectory;
+    }
+
+    /**
+     * Returns the maximum amount of content to keep in the {@link AttachmentCache}. This is
+     * configured in megabytes, and defaults to 1024.
+     *
+     * @return the maximum size of the cache in bytes
+     */
+    public long getAttachmentCacheBytes() {
+        return attachmentCacheBytes;
+    }
+
+    /**
+     * Returns how often, in seconds, the download counts kept by the {@link DownloadCounter} are
+     * added to the database.
+     * <p>
+     * This is zero by default, which means downloads are not counted.
+     *
+     * @return the flush interval in seconds
+     */
+    public int getDownloadCountInterval() {
+        return downloadCountInterval;
+    }
+
+    /**
+     * Returns whether the {@link InvalidationBus} should be used to tell other servers which share
+     * the database about asset writes, and to hear about theirs. This lets the in-memory views and
+     * caches be used when several servers write to the same database, provided it is turned on for
+     * every server.
+     * <p>
+     * This is off by default.
+     *
+     * @return true if the invalidation bus is enabled
+     */
+    public boolean isInvalidationBusEnabled() {
+        return invalidationBusEnabled;
+    }
+
+    /**
+     * Returns the name of the MongoDB read preference, such as secondaryPreferred, to use for
+     * queries which list, count or summarize assets. Reads of a single asset, and the reads made
+     * straight after a write, always go to the primary.
+     * <p>
+     * This is null by default, which means all queries go to the primary. It is also ignored if
+     * any of the in-memory views or caches are enabled, as they must be loaded from the primary
+     * to be sure of seeing every write.
+     *
+     * @return the read preference name, or null
+     */
+    public String getQueryReadPreference() {
+        return queryReadPreference;
+    }
+
+    /**
+     * Returns the name of the MongoDB read preference to use when reading attachment content. If
+     * the content isn't found using this read preference, it is read from the primary.
+     * <p>
+     * This is null by default, which means content is read from the primary.
+     *
+     * @return the read preference name, or null
+     */
+    public String getContentReadPreference() {
+        return contentReadPreference;
+    }
+
+    /**
+     * Returns the directory of the {@link FilePersistor}. If this is set, the repository is stored
+     * in this directory instead of in MongoDB.
+     * <p>
+     * This is null by default, which means MongoDB is used.
+     *
+     * @return the directory, or null if the repository is stored in MongoDB
+     */
+    public String getFileStoreDirectory() {
+        return fileStoreDirectory;
+    }
+
+    /**
+     * Returns whether the repository is held in memory by the {@link IndexedMemoryPersistor}
+     * instead of being stored in MongoDB. Everything in the repository is lost when the server
+     * stops, so this is only for test servers and benchmarks.
+     * <p>
+     * This is disabled by default. It is ignored if a file store directory is set.
+     *
+     * @return true if the repository is held in memory
+     */
+    public boolean isMemoryStoreEnabled() {
+        return memoryStoreEnabled;
+    }
+
+    /**
+     * Returns whether queries with a search term should be answered from the in-memory
+     * {@link SearchIndex}, which matches prefixes and misspellings, instead of from the text index
+     * in the persistence store.
+     * <p>
+     * This is off by default. If other servers write to the same database, the
+     * {@link #isInvalidationBusEnabled() invalidation bus} must also be enabled.
+     *
+     * @return true if the search index is enabled
+     */
+    public boolean isSearchIndexEnabled() {
+        return searchIndexEnabled;
+    }
+
+    /**
+     * Returns whether summaries of the most commonly summarized fields should be answered from the
+     * in-memory {@link FacetCounts}, which also give the number of assets with each value.
+     * <p>
+     * This is off by default. If other servers write to the same database, the
+     * {@link #isInvalidationBusEnabled() invalidation bus} must also be enabled.
+     *
+     * @return true if the facet counts are enabled
+     */
+    public boolean isFacetCountsEnabled() {
+        return facetCountsEnabled;
+    }
+
+    /**
+     * Returns whether the enabled in-memory views should be loaded when the server starts, before
+     * it reports that it is ready, rather than by the first request which needs each of them.
+     * <p>
+     * This is off by default.
+     *
+     * @return true if warm-up is enabled
+     * @see StartupTasks
+     */
+    public boolean isWarmUpEnabled() {
+        return warmUpEnabled;
+    }
+
+    /**
+     * Returns how often the {@link ServerTimingFilter} logs the timings of a request. The timings
+     * of one in this many requests are logged.
+     * <p>
+     * This is zero by default, which means no timings are logged. The timings are always returned
+     * in the Server-Timing header.
+     *
+     * @return the number of requests per logged request
+     */
+    public int getTimingLogSampleRate() {
+        return timingLogSampleRate;
+    }
+
+    /**
+     * Looks up an optional string setting in JNDI
+     *
+     * @param name the JNDI name of the setting
+     * @param defaultValue the value to return if the setting is not present or is empty
+     * @return the value of the setting
+     */
+    private static String lookupString(String name, String defaultValue) {
+        try {
+            Object value = new InitialContext().lookup(name);
+            return value == null || value.toString().trim().isEmpty() ? defaultValue : value.toString().trim();
+        } catch (NamingException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Looks up an optional boolean setting in JNDI
+     *
+     * @param name the JNDI name of the setting
+     * @param defaultValue the value to return if the setting is not present
+     * @return the value of the setting
+     */
+    private static boolean lookupBoolean(String name, boolean defaultValue) {
+        try {
+            Object value = new InitialContext().lookup(name);
+            return value == null ? defaultValue : Boolean.parseBoolean(value.toString());
+        } catch (NamingException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Looks up an optional integer setting in JNDI
+     *
+     * @param name the JNDI name of the setting
+     * @param defaultValue the value to return if the setting is not present or is not a number
+     * @return the value of the setting
+     */
+    private static int lookupInt(String name, int defaultValue) {
+        try {
+            Object value = new InitialContext().lookup(name);
+            return value == null ? defaultValue : Integer.parseInt(value.toString().trim());
+        } catch (NamingException e) {
+            return defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     /**
      * Given a URLBase that the user has provided, compute the corresponding BaseUri for the JAX-RS
      * application.
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.core.HttpHeaders;
+
+/**
+ * Utilities for gzip compression of response bodies, for clients which send a suitable
+ * Accept-Encoding header.
+ */
+final class ContentEncoding {
+
+    static final String GZIP = "gzip";
+
+    /** Bodies smaller than this are sent uncompressed, as compressing them gains very little */
+    static final int MIN_GZIP_SIZE = 1024;
+
+    private ContentEncoding() {
+        // Not to be instantiated
+    }
+
+    /**
+     * Check whether the client accepts gzip encoded responses
+     *
+     * @param headers the request headers, may be null
+     * @return true if gzip, or any encoding, is accepted with a non-zero quality
+     */
+    static boolean acceptsGzip(HttpHeaders headers) {
+        if (headers == null) {
+            return false;
+        }
+        List<String> values = headers.getRequestHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (values == null) {
+            return false;
+        }
+
+        boolean wildcard = false;
+        for (String value : values) {
+            for (String coding : value.split(",")) {
+                String[] parts = coding.split(";");
+                String name = parts[0].trim().toLowerCase(Locale.ENGLISH);
+                boolean accepted = getQuality(parts) > 0;
+                if (name.equals(GZIP) || name.equals("x-gzip")) {
+                    // An explicit entry overrides the wildcard
+                    return accepted;
+                }
+                if (name.equals("*")) {
+                    wildcard = accepted;
+                }
+            }
+        }
+        return wildcard;
+    }
+
+    /**
+     * Check whether content of a given type is worth compressing. Text, JSON and XML usually
+     * compress very well, whereas most binary formats are already compressed.
+     *
+     * @param contentType the content type, may be null
+     * @return true if the content should be compressed
+     */
+    static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ENGLISH);
+        return type.startsWith("text/")
+               || type.contains("json")
+               || type.contains("xml")
+               || type.contains("javascript");
+    }
+
+    /**
+     * Compress some data with gzip
+     *
+     * @param data the data to compress
+     * @return the compressed data
+     * @throws IOException
+     */
+    static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+            gzip.write(data);
+        }
+        return output.toByteArray();
+    }
+
+    private static float getQuality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+}
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+/**
+ * Counts attachment downloads in memory and periodically adds the counts to the persistence store
+ * in a single batch, so that a download doesn't have to write to the database.
+ * <p>
+ * Each attachment has its own counter, so concurrent downloads of different attachments don't
+ * contend. Counters are reset rather than removed when they are flushed, so an increment is never
+ * lost, at the cost of keeping a counter for every attachment downloaded since the server started.
+ * <p>
+ * Counting is disabled unless a flush interval is set in the {@link Configuration}. Counts which
+ * haven't been flushed are lost if the server stops abruptly.
+ */
+@ApplicationScoped
+public class DownloadCounter {
+
+    private static final Logger logger = Logger.getLogger(DownloadCounter.class.getCanonicalName());
+
+    @Inject
+    private Persistor persistenceBean;
+
+    @Inject
+    private Configuration configuration;
+
+    /** Downloads since the last flush, keyed by asset id and then by attachment id */
+    private final ConcurrentMap<String, ConcurrentMap<String, AtomicLong>> counts = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService executor = null;
+
+    @PostConstruct
+    public void start() {
+        int interval = configuration.getDownloadCountInterval();
+        if (interval <= 0) {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "LARS download counter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            flush();
+        }
+    }
+
+    /**
+     * @return true if downloads are being counted
+     */
+    public boolean isEnabled() {
+        return configuration.getDownloadCountInterval() > 0;
+    }
+
+    /**
+     * Count a download of an attachment
+     *
+     * @param assetId the id of the asset
+     * @param attachmentId the id of the attachment
+     */
+    public void recordDownload(String assetId, String attachmentId) {
+        if (!isEnabled() || assetId == null || attachmentId == null) {
+            return;
+        }
+
+        ConcurrentMap<String, AtomicLong> assetCounts = counts.get(assetId);
+        if (assetCounts == null) {
+            ConcurrentMap<String, AtomicLong> newCounts = new ConcurrentHashMap<>();
+            assetCounts = counts.putIfAbsent(assetId, newCounts);
+            if (assetCounts == null) {
+                assetCounts = newCounts;
+            }
+        }
+
+        AtomicLong count = assetCounts.get(attachmentId);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong();
+            count = assetCounts.putIfAbsent(attachmentId, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+
+        count.incrementAndGet();
+    }
+
+    /**
+     * Add the downloads counted since the last flush to the persistence store. If that fails, the
+     * counts are kept to be added by the next flush.
+     */
+    public void flush() {
+        Map<String, Map<String, Long>> batch = new HashMap<>();
+        for (Map.Entry<String, ConcurrentMap<String, AtomicLong>> assetCounts : counts.entrySet()) {
+            Map<String, Long> attachmentBatch = new HashMap<>();
+            for (Map.Entry<String, AtomicLong> attachmentCount : assetCounts.getValue().entrySet()) {
+                long count = attachmentCount.getValue().getAndSet(0);
+                if (count > 0) {
+                    attachmentBatch.put(attachmentCount.getKey(), count);
+                }
+            }
+            if (!attachmentBatch.isEmpty()) {
+                batch.put(assetCounts.getKey(), attachmentBatch);
+            }
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            persistenceBean.addDownloads(batch);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Unable to store download counts, they will be retried later", e);
+            for (Map.Entry<String, Map<String, Long>> assetCounts : batch.entrySet()) {
+                for (Map.Entry<String, Long> attachmentCount : assetCounts.getValue().entrySet()) {
+                    counts.get(assetCounts.getKey()).get(attachmentCount.getKey()).addAndGet(attachmentCount.getValue());
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import com.ibm.ws.lars.rest.model.Asset;
+
+/**
+ * Keeps a count of the number of assets with each value of the fields which clients most commonly
+ * summarize, so that an unfiltered summary of those fields can be answered without reading every
+ * asset.
+ * <p>
+ * Counts are kept separately for all assets and for published assets only, which are the two sets
+ * of assets that admins and other users see when they don't give any filters. An asset with
+ * several values in a field counts once towards each of them.
+ * <p>
+ * The counts are loaded the first time they are needed, and updated whenever an
+ * {@link AssetChangedEvent} is observed, by removing the asset's old values and adding its new
+ * ones.
+ * <p>
+ * This is only used if enabled in the {@link Configuration}. Writes made by other servers sharing
+ * the same database are only seen if the {@link InvalidationBus} is enabled too.
+ */
+@ApplicationScoped
+public class FacetCounts {
+
+    private static final Logger logger = Logger.getLogger(FacetCounts.class.getCanonicalName());
+
+    /** The fields which are counted */
+    static final List<String> FACET_FIELDS = Collections.unmodifiableList(Arrays.asList(
+            Asset.TYPE,
+            "provider.name",
+            "wlpInformation.appliesToFilterInfo.productId",
+            "version",
+            "wlpInformation.visibility",
+            "licenseType"));
+
+    /** The key of the counts in each summary result */
+    static final String COUNTS_KEY = "filterValueCounts";
+
+    @Inject
+    private Persistor persistenceBean;
+
+    @Inject
+    private Configuration configuration;
+
+    /** The counted values of each asset, or null if the counts haven't been loaded */
+    private Map<String, Values> assetValues = null;
+
+    /** For each field, the number of assets with each value */
+    private final Map<String, Map<Object, Integer>> allCounts = new HashMap<>();
+
+    /** For each field, the number of published assets with each value */
+    private final Map<String, Map<Object, Integer>> publishedCounts = new HashMap<>();
+
+    /**
+     * Check whether a summary can be answered from the counts.
+     * <p>
+     * A summary can be answered if the counts are enabled, every field is counted, there is no
+     * search term and the only filter, if any, restricts the summary to published assets.
+     *
+     * @param fields the fields to summarize
+     * @param filters the filters
+     * @param searchTerm the search term, may be null
+     * @return true if the summary can be answered from the counts
+     */
+    public boolean canServe(List<String> fields, Collection<AssetFilter> filters, String searchTerm) {
+        return configuration.isFacetCountsEnabled()
+               && searchTerm == null
+               && FACET_FIELDS.containsAll(fields)
+               && (filters.isEmpty() || (filters.size() == 1 && AssetMatcher.isPublishedOnly(filters)));
+    }
+
+    /**
+     * Summarize the fields in the same form as
+     * {@link AssetServiceLayer#summarizeAssets(List, Collection, String)}, with the addition of
+     * the number of assets with each value. Values are listed with the most common first.
+     * <p>
+     * Callers must check {@link #canServe(List, Collection, String)} first.
+     *
+     * @param fields the fields to summarize
+     * @param filters the filters, which are either empty or restrict the summary to published
+     *            assets
+     * @return a list of result maps, one for each field
+     */
+    public List<Map<String, Object>> summarizeAssets(List<String> fields, Collection<AssetFilter> filters) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        synchronized (this) {
+            load();
+            Map<String, Map<Object, Integer>> counts = filters.isEmpty() ? allCounts : publishedCounts;
+            for (String field : fields) {
+                List<Map.Entry<Object, Integer>> entries = new ArrayList<>(counts.get(field).entrySet());
+                Collections.sort(entries, new Comparator<Map.Entry<Object, Integer>>() {
+                    @Override
+                    public int compare(Map.Entry<Object, Integer> a, Map.Entry<Object, Integer> b) {
+                        return Integer.compare(b.getValue(), a.getValue());
+                    }
+                });
+
+                List<Object> values = new ArrayList<>();
+                List<Map<String, Object>> valueCounts = new ArrayList<>();
+                for (Map.Entry<Object, Integer> entry : entries) {
+                    values.add(entry.getKey());
+                    Map<String, Object> valueCount = new LinkedHashMap<>();
+                    valueCount.put("value", entry.getKey());
+                    valueCount.put("count", entry.getValue());
+                    valueCounts.add(valueCount);
+                }
+
+                Map<String, Object> resultMap = new HashMap<>();
+                resultMap.put("filterName", field);
+                resultMap.put("filterValue", values);
+                resultMap.put(COUNTS_KEY, valueCounts);
+                result.add(resultMap);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Update the counts when an asset is written
+     *
+     * @param event the event describing the change
+     */
+    public synchronized void assetChanged(@Observes AssetChangedEvent event) {
+        if (assetValues == null) {
+            // The change will be picked up when the counts are loaded
+            return;
+        }
+
+        if (event.isReset()) {
+            // Load them again the next time they are needed
+            assetValues = null;
+            return;
+        }
+
+        Values oldValues = assetValues.remove(event.getAssetId());
+        if (oldValues != null) {
+            count(oldValues, -1);
+        }
+        if (!event.isDelete()) {
+            Values newValues = new Values(event.getAsset());
+            assetValues.put(event.getAssetId(), newValues);
+            count(newValues, 1);
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("assetChanged: updated facet counts after " + event);
+        }
+    }
+
+    /**
+     * Load the counts now, if they are enabled, rather than when they are first needed
+     */
+    synchronized void warmUp() {
+        if (configuration.isFacetCountsEnabled()) {
+            load();
+        }
+    }
+
+    /**
+     * Load the counts if they aren't loaded. Must be called while synchronized.
+     */
+    private void load() {
+        if (assetValues != null) {
+            return;
+        }
+
+        for (String field : FACET_FIELDS) {
+            allCounts.put(field, new HashMap<Object, Integer>());
+            publishedCounts.put(field, new HashMap<Object, Integer>());
+        }
+        assetValues = new HashMap<>();
+        for (Asset asset : persistenceBean.retrieveAllAssets()) {
+            Values values = new Values(asset);
+            assetValues.put(asset.get_id(), values);
+            count(values, 1);
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("load: counted the values of " + assetValues.size() + " assets");
+        }
+    }
+
+    /**
+     * Add or remove one asset's values to or from the counts
+     */
+    private void count(Values values, int delta) {
+        for (Map.Entry<String, Set<Object>> field : values.fieldValues.entrySet()) {
+            for (Object value : field.getValue()) {
+                add(allCounts.get(field.getKey()), value, delta);
+                if (values.published) {
+                    add(publishedCounts.get(field.getKey()), value, delta);
+                }
+            }
+        }
+    }
+
+    private static void add(Map<Object, Integer> counts, Object value, int delta) {
+        Integer count = counts.get(value);
+        int newCount = (count == null ? 0 : count) + delta;
+        if (newCount > 0) {
+            counts.put(value, newCount);
+        } else {
+            counts.remove(value);
+        }
+    }
+
+    /**
+     * The values of the counted fields in one asset
+     */
+    private static class Values {
+
+        final boolean published;
+
+        final Map<String, Set<Object>> fieldValues = new HashMap<>();
+
+        Values(Asset asset) {
+            published = Asset.State.PUBLISHED.getValue().equals(asset.getProperties().get(Asset.STATE));
+            for (String field : FACET_FIELDS) {
+                Set<Object> values = new LinkedHashSet<>(AssetMatcher.getFieldValues(asset, field));
+                if (!values.isEmpty()) {
+                    fieldValues.put(field, values);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,344 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import com.ibm.ws.lars.rest.Condition.Operation;
+import com.ibm.ws.lars.rest.model.Asset;
+import com.ibm.ws.lars.rest.model.AssetList;
+
+/**
+ * Resolves Liberty features and their dependencies on the server, so that a client can find every
+ * feature it needs to install with a single request rather than walking the requireFeature chain
+ * one query at a time.
+ * <p>
+ * If enabled in the {@link Configuration}, the resolver keeps an immutable in-memory dependency
+ * graph of all published features. The graph is loaded from the persistence store the first time
+ * it is needed. When an {@link AssetChangedEvent} is observed, a new graph is built from the old one
+ * and swapped in, so resolutions never need to take a lock. Writes made by other servers sharing
+ * the same database are only seen if the {@link InvalidationBus} is enabled.
+ * <p>
+ * Otherwise, each resolution queries the persistence store for the features it needs, one level of
+ * the requireFeature chain at a time.
+ */
+@ApplicationScoped
+public class FeatureResolver {
+
+    private static final Logger logger = Logger.getLogger(FeatureResolver.class.getCanonicalName());
+
+    static final String PROVIDE_FEATURE = "provideFeature";
+    static final String REQUIRE_FEATURE = "requireFeature";
+    static final String SHORT_NAME = "shortName";
+    static final String LOWER_CASE_SHORT_NAME = "lowerCaseShortName";
+
+    private static final Collection<AssetFilter> PUBLISHED_FEATURES = Arrays.asList(
+            new AssetFilter(Asset.STATE, Collections.singletonList(new Condition(Operation.EQUALS, Asset.State.PUBLISHED.getValue()))),
+            new AssetFilter(Asset.TYPE, Collections.singletonList(new Condition(Operation.EQUALS, Asset.FEATURE_TYPE))));
+
+    @Inject
+    private Persistor persistenceBean;
+
+    @Inject
+    private Configuration configuration;
+
+    private volatile Graph graph = null;
+
+    /**
+     * Find the features with the given names which apply to the given product, together with
+     * every feature that they require, directly or indirectly, which also applies to the product.
+     * <p>
+     * A feature may be referred to by its symbolic name, short name or lower case short name.
+     * Names which do not match any published feature are ignored.
+     *
+     * @param names the names of the features to resolve
+     * @param product the product the features will be installed into
+     * @return the list of features, in the order they were found
+     */
+    public AssetList resolve(Collection<String> names, ProductDefinition product) {
+        if (!configuration.isFeatureResolverEnabled()) {
+            return resolveFromStore(names, product);
+        }
+
+        Graph current = getGraph();
+
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        Set<String> visitedNames = new HashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>(names);
+
+        while (!toVisit.isEmpty()) {
+            String name = toVisit.poll();
+            if (!visitedNames.add(name)) {
+                continue;
+            }
+
+            Set<String> ids = current.featureIdsByName.get(name);
+            if (ids == null) {
+                continue;
+            }
+
+            for (String id : ids) {
+                Asset feature = current.features.get(id);
+                if (result.containsKey(id) || !product.matches(feature)) {
+                    continue;
+                }
+
+                result.put(id, new HashMap<>(feature.getProperties()));
+                toVisit.addAll(getRequiredFeatureNames(feature));
+            }
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("resolve: resolved " + names + " for " + product + " to " + result.keySet());
+        }
+
+        return AssetList.createAssetListFromMaps(new ArrayList<>(result.values()));
+    }
+
+    /**
+     * Resolve features by querying the persistence store, used when the graph is disabled.
+     * <p>
+     * Each level of the requireFeature chain is found with one query for all of the names at that
+     * level, so only the features which are needed are read. The names requested by the client may
+     * be short names, but the names in a requireFeature are always symbolic names, so only the
+     * first level needs to look at the short name fields.
+     *
+     * @see #resolve(Collection, ProductDefinition)
+     */
+    private AssetList resolveFromStore(Collection<String> names, ProductDefinition product) {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        Set<String> visitedNames = new HashSet<>(names);
+        Set<String> level = new LinkedHashSet<>(names);
+        List<String> nameFields = Arrays.asList(PROVIDE_FEATURE, SHORT_NAME, LOWER_CASE_SHORT_NAME);
+        int queries = 0;
+
+        while (!level.isEmpty()) {
+            Set<String> nextLevel = new LinkedHashSet<>();
+            for (String nameField : nameFields) {
+                queries++;
+                for (Asset feature : persistenceBean.retrieveAllAssets(getFeatureNameFilters(nameField, level), null, null, null)) {
+                    String id = feature.get_id();
+                    if (result.containsKey(id)
+                        || !isPublishedFeature(feature)
+                        || Collections.disjoint(getNames(feature), level)
+                        || !product.matches(feature)) {
+                        continue;
+                    }
+
+                    result.put(id, new HashMap<>(feature.getProperties()));
+                    for (String required : getRequiredFeatureNames(feature)) {
+                        if (visitedNames.add(required)) {
+                            nextLevel.add(required);
+                        }
+                    }
+                }
+            }
+            level = nextLevel;
+            nameFields = Collections.singletonList(PROVIDE_FEATURE);
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("resolveFromStore: resolved " + names + " for " + product + " to " + result.keySet() + " with " + queries + " queries");
+        }
+
+        return AssetList.createAssetListFromMaps(new ArrayList<>(result.values()));
+    }
+
+    /**
+     * Create the filters for the published features which have any of the given values in one of
+     * their wlpInformation name fields
+     */
+    private static Collection<AssetFilter> getFeatureNameFilters(String nameField, Collection<String> names) {
+        List<Condition> conditions = new ArrayList<>();
+        for (String name : names) {
+            conditions.add(new Condition(Operation.EQUALS, name));
+        }
+        List<AssetFilter> filters = new ArrayList<>(PUBLISHED_FEATURES);
+        filters.add(new AssetFilter("wlpInformation." + nameField, conditions));
+        return filters;
+    }
+
+    /**
+     * Replace the dependency graph when an asset is written
+     *
+     * @param event the event describing the change
+     */
+    public synchronized void assetChanged(@Observes AssetChangedEvent event) {
+        if (graph == null) {
+            // The change will be picked up when the graph is loaded
+            return;
+        }
+
+        if (event.isReset()) {
+            // Load it again the next time it is needed
+            graph = null;
+            return;
+        }
+
+        Map<String, Asset> features = new HashMap<>(graph.features);
+        features.remove(event.getAssetId());
+        if (!event.isDelete() && isPublishedFeature(event.getAsset())) {
+            features.put(event.getAssetId(), copyFeature(event.getAsset()));
+        }
+        graph = new Graph(features);
+    }
+
+    /**
+     * Load the dependency graph now, if it is enabled, rather than when it is first needed
+     */
+    void warmUp() {
+        if (configuration.isFeatureResolverEnabled()) {
+            getGraph();
+        }
+    }
+
+    private Graph getGraph() {
+        Graph current = graph;
+        if (current == null) {
+            current = load();
+        }
+        return current;
+    }
+
+    private synchronized Graph load() {
+        if (graph == null) {
+            graph = readGraph();
+
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("load: loaded " + graph.features.size() + " published features");
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Build a dependency graph of the published features currently in the persistence store
+     */
+    private Graph readGraph() {
+        Map<String, Asset> features = new HashMap<>();
+        for (Asset asset : persistenceBean.retrieveAllAssets(PUBLISHED_FEATURES, null, null, null)) {
+            if (isPublishedFeature(asset)) {
+                features.put(asset.get_id(), copyFeature(asset));
+            }
+        }
+        return new Graph(features);
+    }
+
+    /**
+     * Take a copy, without the attachments, so that later changes to the asset passed in don't
+     * affect the graph
+     */
+    private static Asset copyFeature(Asset asset) {
+        Asset feature = new Asset(asset);
+        feature.getProperties().remove(Asset.ATTACHMENTS);
+        return feature;
+    }
+
+    private static boolean isPublishedFeature(Asset asset) {
+        return Asset.FEATURE_TYPE.equals(asset.getType())
+               && Asset.State.PUBLISHED.getValue().equals(asset.getProperties().get(Asset.STATE));
+    }
+
+    /**
+     * Returns all the names that a feature can be referred to by
+     */
+    private static Set<String> getNames(Asset feature) {
+        Set<String> names = new HashSet<>();
+        names.addAll(getStrings(feature.getWlpInformationField(PROVIDE_FEATURE)));
+        names.addAll(getStrings(feature.getWlpInformationField(SHORT_NAME)));
+        names.addAll(getStrings(feature.getWlpInformationField(LOWER_CASE_SHORT_NAME)));
+        return names;
+    }
+
+    /**
+     * Returns the symbolic names of the features required by a feature.
+     * <p>
+     * Any attributes after the symbolic name (e.g. <code>;ibm.tolerates:=...</code>) are removed.
+     */
+    private static List<String> getRequiredFeatureNames(Asset feature) {
+        List<String> names = new ArrayList<>();
+        for (String requirement : getStrings(feature.getWlpInformationField(REQUIRE_FEATURE))) {
+            int semicolon = requirement.indexOf(';');
+            names.add(semicolon == -1 ? requirement.trim() : requirement.substring(0, semicolon).trim());
+        }
+        return names;
+    }
+
+    /**
+     * Converts a field value which may be a single string or a collection of strings into a list
+     */
+    private static List<String> getStrings(Object value) {
+        List<String> strings = new ArrayList<>();
+        if (value instanceof String) {
+            strings.add((String) value);
+        } else if (value instanceof Collection) {
+            for (Object o : (Collection<?>) value) {
+                if (o instanceof String) {
+                    strings.add((String) o);
+                }
+            }
+        }
+        return strings;
+    }
+
+    /**
+     * An immutable dependency graph of published features
+     */
+    private static class Graph {
+
+        /** Published features, keyed by asset id */
+        private final Map<String, Asset> features;
+
+        /** Ids of published features, keyed by each of the names that can be used to refer to them */
+        private final Map<String, Set<String>> featureIdsByName;
+
+        Graph(Map<String, Asset> features) {
+            this.features = Collections.unmodifiableMap(features);
+
+            Map<String, Set<String>> featureIdsByName = new HashMap<>();
+            for (Asset feature : features.values()) {
+                for (String name : getNames(feature)) {
+                    Set<String> ids = featureIdsByName.get(name);
+                    if (ids == null) {
+                        ids = new HashSet<>();
+                        featureIdsByName.put(name, ids);
+                    }
+                    ids.add(feature.get_id());
+                }
+            }
+            this.featureIdsByName = featureIdsByName;
+        }
+    }
+
+}
@@ -0,0 +1,743 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Typed;
+import javax.inject.Inject;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibm.ws.lars.rest.exceptions.AssetPersistenceException;
+import com.ibm.ws.lars.rest.exceptions.InvalidJsonAssetException;
+import com.ibm.ws.lars.rest.exceptions.NonExistentArtefactException;
+import com.ibm.ws.lars.rest.exceptions.RepositoryException;
+import com.ibm.ws.lars.rest.model.Asset;
+import com.ibm.ws.lars.rest.model.AssetList;
+import com.ibm.ws.lars.rest.model.Attachment;
+import com.ibm.ws.lars.rest.model.AttachmentContentMetadata;
+import com.ibm.ws.lars.rest.model.AttachmentContentResponse;
+import com.ibm.ws.lars.rest.model.AttachmentList;
+
+/**
+ * A persistence store which keeps the repository in a directory on the local file system, so that
+ * a small repository can be run without a MongoDB server.
+ * <p>
+ * Assets, attachment metadata, content types and download counts are stored as records in a
+ * {@link RecordLog}, and attachment content is stored in a file of its own. Only the positions of
+ * the records are held in memory, along with which attachments belong to which asset and the
+ * download counts.
+ * <p>
+ * Queries are answered by reading every asset and applying the filters, search term, sort order
+ * and pagination in memory, using the same rules as the {@link PersistenceBean}. This is quick for
+ * the few hundred assets which this store is intended for.
+ * <p>
+ * This store is used instead of the {@link PersistenceBean} when a directory for it is set in the
+ * {@link Configuration}. It must not be shared between servers.
+ */
+@ApplicationScoped
+@Typed(FilePersistor.class)
+public class FilePersistor implements Persistor {
+
+    private static final Logger logger = Logger.getLogger(FilePersistor.class.getCanonicalName());
+
+    static final int ASSET = 0;
+    static final int ATTACHMENT = 1;
+    static final int CONTENT = 2;
+    static final int DOWNLOADS = 3;
+    private static final int NUM_TYPES = 4;
+
+    static final String CONTENT_DIRECTORY = "content";
+
+    private static final String ID = "_id";
+    private static final String ASSET_ID = "assetId";
+
+    /** Fields which can't be stored in an asset, as MongoDB uses them for data which isn't part of the asset */
+    static final List<String> INTERNAL_FIELDS = Collections.unmodifiableList(
+            Arrays.asList(PersistenceBean.JSON_FIELD, PersistenceBean.DOWNLOADS_FIELD, PersistenceBean.ATTACHMENT_DOWNLOADS_FIELD,
+                          SortKeys.SORT_KEYS_FIELD));
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final byte[] ID_PREFIX = new byte[5];
+    private static final AtomicInteger ID_COUNTER;
+    static {
+        RANDOM.nextBytes(ID_PREFIX);
+        ID_COUNTER = new AtomicInteger(RANDOM.nextInt());
+    }
+
+    @Inject
+    private Configuration configuration;
+
+    private File directory;
+
+    private File contentDirectory;
+
+    private RecordLog log;
+
+    /** The ids of the attachments of each asset */
+    private final Map<String, Set<String>> attachmentIds = new HashMap<>();
+
+    /** The download counts of each asset, keyed by attachment id */
+    private final Map<String, Map<String, Long>> downloads = new HashMap<>();
+
+    @PostConstruct
+    public void open() {
+        open(new File(configuration.getFileStoreDirectory()));
+    }
+
+    /**
+     * Open the store in a directory, creating it if necessary
+     *
+     * @param directory the directory
+     */
+    synchronized void open(File directory) {
+        long start = System.currentTimeMillis();
+        this.directory = directory;
+        this.contentDirectory = new File(directory, CONTENT_DIRECTORY);
+        try {
+            log = new RecordLog(directory, NUM_TYPES);
+
+            for (String attachmentId : log.getKeys(ATTACHMENT)) {
+                Attachment attachment = Attachment.jsonToAttachment(log.get(ATTACHMENT, attachmentId));
+                addAttachmentId(attachment.getAssetId(), attachmentId);
+            }
+            for (String assetId : log.getKeys(DOWNLOADS)) {
+                Map<String, Long> counts = MAPPER.readValue(log.get(DOWNLOADS, assetId), new TypeReference<LinkedHashMap<String, Long>>() {});
+                downloads.put(assetId, counts);
+            }
+        } catch (IOException | InvalidJsonAssetException e) {
+            throw new RepositoryException("Unable to open the file store in " + directory, e);
+        }
+
+        if (!contentDirectory.isDirectory() && !contentDirectory.mkdirs()) {
+            throw new RepositoryException("Unable to create the directory " + contentDirectory);
+        }
+
+        // Remove any content which was being written, or was written but never recorded, when the
+        // server stopped
+        for (File file : contentDirectory.listFiles()) {
+            if (!log.contains(CONTENT, file.getName()) && !file.delete()) {
+                logger.warning("Unable to delete " + file);
+            }
+        }
+
+        logger.info("Opened the file store in " + directory + " with " + log.size(ASSET) + " assets in "
+                    + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (log == null) {
+            return;
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to close the file store in " + directory, e);
+        }
+        log = null;
+    }
+
+    /**
+     * Compact the record log if much of it is taken up by old records
+     */
+    @Override
+    public synchronized void initialize() {
+        try {
+            if (log.needsCompaction()) {
+                log.compact();
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to compact the file store in " + directory, e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AssetList retrieveAllAssets() {
+        return toAssetList(readAssets());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AssetList retrieveAllAssets(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions) {
+        return toAssetList(query(filters, searchTerm, pagination, sortOptions));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<byte[]> retrieveAllAssetsJson(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions) {
+        List<byte[]> results = new ArrayList<>();
+        for (Asset asset : query(filters, searchTerm, pagination, sortOptions)) {
+            results.add(asset.toJsonBytes());
+        }
+        return results;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int countAllAssets(Collection<AssetFilter> filters, String searchTerm) {
+        return query(filters, searchTerm, null, null).size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<Object> getDistinctValues(String field, Collection<AssetFilter> filters, String searchTerm) {
+        Set<Object> values = new LinkedHashSet<>();
+        for (Asset asset : query(filters, searchTerm, null, null)) {
+            values.addAll(AssetMatcher.getFieldValues(asset, field));
+        }
+        return new ArrayList<>(values);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Asset retrieveAsset(String assetId) throws NonExistentArtefactException {
+        Asset asset = readAsset(assetId);
+        if (asset == null) {
+            throw new NonExistentArtefactException(assetId, RepositoryRESTResource.ArtefactType.ASSET);
+        }
+        return asset;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public byte[] retrieveAssetJson(String assetId, Collection<AssetFilter> filters) throws NonExistentArtefactException {
+        Asset asset = readAsset(assetId);
+        if (asset == null || !AssetMatcher.matchesAll(asset, filters)) {
+            throw new NonExistentArtefactException(assetId, RepositoryRESTResource.ArtefactType.ASSET);
+        }
+        asset.getProperties().remove(Asset.ATTACHMENTS);
+        return asset.toJsonBytes();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized Asset createAsset(Asset newAsset) throws InvalidJsonAssetException {
+        Map<String, Object> properties = new LinkedHashMap<>(newAsset.getProperties());
+        properties.keySet().removeAll(INTERNAL_FIELDS);
+        if (properties.get(ID) == null) {
+            properties.put(ID, allocateNewId());
+        }
+        String id = checkId(properties.get(ID));
+
+        write(ASSET, id, Asset.createAssetFromMap(properties).toJsonBytes());
+        compactIfNeeded();
+        try {
+            return retrieveAsset(id);
+        } catch (NonExistentArtefactException e) {
+            // This should not happen. If it does it is a repository bug
+            throw new RepositoryException("Created asset could not be retrieved from the file store.", e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized Asset updateAsset(String assetId, Asset asset) throws InvalidJsonAssetException, NonExistentArtefactException {
+        if (!Objects.equals(assetId, asset.get_id())) {
+            throw new InvalidJsonAssetException("The specified asset id does not match the specified asset.");
+        }
+        if (!log.contains(ASSET, assetId)) {
+            throw new NonExistentArtefactException(assetId, RepositoryRESTResource.ArtefactType.ASSET);
+        }
+
+        Map<String, Object> properties = new LinkedHashMap<>(asset.getProperties());
+        properties.keySet().removeAll(INTERNAL_FIELDS);
+        write(ASSET, assetId, Asset.createAssetFromMap(properties).toJsonBytes());
+        compactIfNeeded();
+        return retrieveAsset(assetId);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void deleteAsset(String assetId) {
+        remove(ASSET, assetId);
+        if (downloads.remove(assetId) != null) {
+            remove(DOWNLOADS, assetId);
+        }
+        compactIfNeeded();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized AttachmentList findAttachmentsForAsset(String assetId) {
+        List<Map<String, Object>> results = new ArrayList<>();
+        Set<String> ids = attachmentIds.get(assetId);
+        if (ids != null) {
+            for (String attachmentId : ids) {
+                try {
+                    results.add(retrieveAttachmentMetadata(attachmentId).getProperties());
+                } catch (NonExistentArtefactException e) {
+                    // Can't happen while we hold the lock
+                    throw new RepositoryException("Attachment " + attachmentId + " is missing from the file store", e);
+                }
+            }
+        }
+        return AttachmentList.createAttachmentListFromMaps(results);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, byte[]> retrieveAssetsJson(Collection<String> assetIds, Collection<AssetFilter> filters) {
+        Map<String, byte[]> result = new LinkedHashMap<>();
+        for (String assetId : assetIds) {
+            try {
+                result.put(assetId, retrieveAssetJson(assetId, filters));
+            } catch (NonExistentArtefactException e) {
+                // Left out of the result
+            }
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized Map<String, AttachmentList> findAttachmentsForAssets(Collection<String> assetIds) {
+        Map<String, AttachmentList> result = new LinkedHashMap<>();
+        for (String assetId : assetIds) {
+            AttachmentList attachments = findAttachmentsForAsset(assetId);
+            if (attachments.size() > 0) {
+                result.put(assetId, attachments);
+            }
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AttachmentContentMetadata createAttachmentContent(String name, String contentType, InputStream attachmentContentStream) throws AssetPersistenceException {
+        String id = allocateNewId();
+        File tempFile = new File(contentDirectory, id + ".tmp");
+        long length = 0;
+        try {
+            try (FileOutputStream output = new FileOutputStream(tempFile)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = attachmentContentStream.read(buffer)) != -1) {
+                    output.write(buffer, 0, read);
+                    length += read;
+                }
+                output.getFD().sync();
+            }
+            Files.move(tempFile.toPath(), getContentFile(id).toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+            // The content is only visible once its record has been written
+            synchronized (this) {
+                write(CONTENT, id, contentType == null ? new byte[0] : contentType.getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException | RepositoryException e) {
+            tempFile.delete();
+            getContentFile(id).delete();
+            throw new AssetPersistenceException(e);
+        }
+
+        return new AttachmentContentMetadata(id, length);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized Attachment createAttachmentMetadata(Attachment attachment) {
+        Map<String, Object> properties = new LinkedHashMap<>(attachment.getProperties());
+        if (properties.get(ID) == null) {
+            properties.put(ID, allocateNewId());
+        }
+        String id = checkId(properties.get(ID));
+
+        Attachment toStore = Attachment.createAttachmentFromMap(properties);
+        write(ATTACHMENT, id, toStore.toJsonBytes());
+        addAttachmentId(toStore.getAssetId(), id);
+        try {
+            return retrieveAttachmentMetadata(id);
+        } catch (NonExistentArtefactException e) {
+            throw new RepositoryException("Created attachment could not be retrieved from the persistence store", e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Attachment retrieveAttachmentMetadata(String attachmentId) throws NonExistentArtefactException {
+        byte[] json = read(ATTACHMENT, attachmentId);
+        if (json == null) {
+            throw new NonExistentArtefactException(attachmentId, RepositoryRESTResource.ArtefactType.ATTACHMENT);
+        }
+        try {
+            return Attachment.jsonToAttachment(json);
+        } catch (InvalidJsonAssetException e) {
+            throw new RepositoryException("Attachment " + attachmentId + " in the file store is corrupt", e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void deleteAttachmentContent(String attachmentId) {
+        deleteContent(attachmentId);
+        compactIfNeeded();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void deleteAttachmentMetadata(String attachmentId) {
+        try {
+            Attachment attachment = retrieveAttachmentMetadata(attachmentId);
+            removeAttachmentId(attachment.getAssetId(), attachmentId);
+        } catch (NonExistentArtefactException e) {
+            return;
+        }
+        remove(ATTACHMENT, attachmentId);
+        compactIfNeeded();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void deleteAttachmentsForAsset(String assetId) {
+        Set<String> ids = attachmentIds.get(assetId);
+        if (ids == null) {
+            return;
+        }
+        for (String attachmentId : new ArrayList<>(ids)) {
+            try {
+                String gridFSId = retrieveAttachmentMetadata(attachmentId).getGridFSId();
+                if (gridFSId != null) {
+                    deleteContent(gridFSId);
+                }
+            } catch (NonExistentArtefactException e) {
+                // Already gone
+            }
+            remove(ATTACHMENT, attachmentId);
+        }
+        attachmentIds.remove(assetId);
+        compactIfNeeded();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized Collection<String> findAssetIdsWithOrphanedAttachments() {
+        Set<String> orphaned = new HashSet<>();
+        for (String assetId : attachmentIds.keySet()) {
+            if (!log.contains(ASSET, assetId)) {
+                orphaned.add(assetId);
+            }
+        }
+        return orphaned;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AttachmentContentResponse retrieveAttachmentContent(String gridFSId) throws NonExistentArtefactException {
+        byte[] contentType = read(CONTENT, gridFSId);
+        if (contentType == null) {
+            throw new NonExistentArtefactException("Attachment content " + gridFSId + " does not exist in the repository.");
+        }
+        try {
+            return new AttachmentContentResponse(new FileInputStream(getContentFile(gridFSId)),
+                                                 contentType.length == 0 ? null : new String(contentType, StandardCharsets.UTF_8));
+        } catch (FileNotFoundException e) {
+            // Deleted since the record was read
+            throw new NonExistentArtefactException("Attachment content " + gridFSId + " does not exist in the repository.");
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void addDownloads(Map<String, Map<String, Long>> counts) {
+        for (Map.Entry<String, Map<String, Long>> assetCounts : counts.entrySet()) {
+            String assetId = assetCounts.getKey();
+            if (!log.contains(ASSET, assetId)) {
+                continue;
+            }
+            Map<String, Long> totals = downloads.get(assetId);
+            Map<String, Long> newTotals = totals == null ? new LinkedHashMap<String, Long>() : new LinkedHashMap<>(totals);
+            for (Map.Entry<String, Long> attachmentCount : assetCounts.getValue().entrySet()) {
+                Long total = newTotals.get(attachmentCount.getKey());
+                newTotals.put(attachmentCount.getKey(), (total == null ? 0 : total) + attachmentCount.getValue());
+            }
+            try {
+                write(DOWNLOADS, assetId, MAPPER.writeValueAsBytes(newTotals));
+            } catch (IOException e) {
+                throw new RepositoryException("Unable to store the download counts of asset " + assetId, e);
+            }
+            downloads.put(assetId, newTotals);
+        }
+        compactIfNeeded();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<Map<String, Object>> retrieveDownloadCounts(int limit) {
+        List<Map<String, Object>> results = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, Map<String, Long>> assetCounts : downloads.entrySet()) {
+                Asset asset = readAsset(assetCounts.getKey());
+                if (asset == null) {
+                    continue;
+                }
+                long total = 0;
+                for (Long count : assetCounts.getValue().values()) {
+                    total += count;
+                }
+                if (total <= 0) {
+                    continue;
+                }
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("assetId", assetCounts.getKey());
+                result.put(Asset.NAME, asset.get(Asset.NAME));
+                result.put(PersistenceBean.DOWNLOADS_FIELD, total);
+                result.put("attachments", new LinkedHashMap<String, Object>(assetCounts.getValue()));
+                results.add(result);
+            }
+        }
+
+        Collections.sort(results, new Comparator<Map<String, Object>>() {
+            @Override
+            public int compare(Map<String, Object> a, Map<String, Object> b) {
+                return Long.compare((Long) b.get(PersistenceBean.DOWNLOADS_FIELD), (Long) a.get(PersistenceBean.DOWNLOADS_FIELD));
+            }
+        });
+        return limit > 0 && results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+    }
+
+    /**
+     * Allocate an id in the same format as a MongoDB ObjectId, made up of the time in seconds, a
+     * random value chosen when the server starts and a counter
+     */
+    @Override
+    public String allocateNewId() {
+        return newObjectId();
+    }
+
+    /**
+     * Create a new id in the same format as a MongoDB ObjectId
+     */
+    static String newObjectId() {
+        byte[] bytes = new byte[12];
+        int time = (int) (System.currentTimeMillis() / 1000);
+        int counter = ID_COUNTER.getAndIncrement();
+        bytes[0] = (byte) (time >>> 24);
+        bytes[1] = (byte) (time >>> 16);
+        bytes[2] = (byte) (time >>> 8);
+        bytes[3] = (byte) time;
+        System.arraycopy(ID_PREFIX, 0, bytes, 4, ID_PREFIX.length);
+        bytes[9] = (byte) (counter >>> 16);
+        bytes[10] = (byte) (counter >>> 8);
+        bytes[11] = (byte) counter;
+
+        StringBuilder id = new StringBuilder(24);
+        for (byte b : bytes) {
+            id.append(String.format("%02x", b & 0xff));
+        }
+        return id.toString();
+    }
+
+    /**
+     * Find the assets which match the filters and search term, in the order given by the sort
+     * options or, if there are none, by the relevance to the search term
+     */
+    private List<Asset> query(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions) {
+        final TextSearch search = searchTerm == null ? null : new TextSearch(searchTerm);
+        List<Asset> results = new ArrayList<>();
+        final Map<Asset, Double> scores = new IdentityHashMap<>();
+        for (Asset asset : readAssets()) {
+            if (filters != null && !AssetMatcher.matchesAll(asset, filters)) {
+                continue;
+            }
+            if (search != null) {
+                double score = search.score(asset);
+                if (score <= 0) {
+                    continue;
+                }
+                scores.put(asset, score);
+            }
+            results.add(asset);
+        }
+
+        if (AssetMatcher.isDownloadCountSort(sortOptions)) {
+            Collections.sort(results, AssetMatcher.getDownloadCountComparator(sortOptions, copyDownloads()));
+        } else if (sortOptions != null) {
+            Collections.sort(results, AssetMatcher.getComparator(sortOptions));
+        } else if (search != null) {
+            Collections.sort(results, new Comparator<Asset>() {
+                @Override
+                public int compare(Asset a, Asset b) {
+                    return Double.compare(scores.get(b), scores.get(a));
+                }
+            });
+        }
+
+        return AssetMatcher.getPage(results, pagination);
+    }
+
+    private List<Asset> readAssets() {
+        List<Asset> assets = new ArrayList<>();
+        for (String assetId : getAssetIds()) {
+            Asset asset = readAsset(assetId);
+            // The asset may have been deleted since the ids were listed
+            if (asset != null) {
+                assets.add(asset);
+            }
+        }
+        return assets;
+    }
+
+    /**
+     * @return a copy of the download counts of each asset. The counts of an asset are replaced
+     *         rather than changed, so they don't need to be copied.
+     */
+    private synchronized Map<String, Map<String, Long>> copyDownloads() {
+        return new HashMap<>(downloads);
+    }
+
+    private synchronized List<String> getAssetIds() {
+        return log.getKeys(ASSET);
+    }
+
+    /**
+     * @return the asset, or null if it doesn't exist
+     */
+    private Asset readAsset(String assetId) {
+        byte[] json = read(ASSET, assetId);
+        if (json == null) {
+            return null;
+        }
+        try {
+            return Asset.deserializeAssetFromJson(new ByteArrayInputStream(json));
+        } catch (InvalidJsonAssetException e) {
+            throw new RepositoryException("Asset " + assetId + " in the file store is corrupt", e);
+        }
+    }
+
+    private synchronized byte[] read(int type, String key) {
+        try {
+            return log.get(type, key);
+        } catch (IOException e) {
+            throw new RepositoryException("Unable to read from the file store in " + directory, e);
+        }
+    }
+
+    private void write(int type, String key, byte[] value) {
+        try {
+            log.put(type, key, value);
+        } catch (IOException e) {
+            throw new RepositoryException("Unable to write to the file store in " + directory, e);
+        }
+    }
+
+    private void remove(int type, String key) {
+        try {
+            log.remove(type, key);
+        } catch (IOException e) {
+            throw new RepositoryException("Unable to write to the file store in " + directory, e);
+        }
+    }
+
+    private void deleteContent(String gridFSId) {
+        // Remove the record first, so that the content is never visible without its file
+        remove(CONTENT, gridFSId);
+        File file = getContentFile(gridFSId);
+        if (file.exists() && !file.delete()) {
+            logger.warning("Unable to delete " + file);
+        }
+    }
+
+    private void compactIfNeeded() {
+        try {
+            if (log.needsCompaction()) {
+                log.compact();
+            }
+        } catch (IOException e) {
+            // The writes have been made, so the log will just be compacted later
+            logger.log(Level.WARNING, "Unable to compact the file store in " + directory, e);
+        }
+    }
+
+    private File getContentFile(String gridFSId) {
+        return new File(contentDirectory, checkId(gridFSId));
+    }
+
+    private void addAttachmentId(String assetId, String attachmentId) {
+        if (assetId == null) {
+            return;
+        }
+        Set<String> ids = attachmentIds.get(assetId);
+        if (ids == null) {
+            ids = new LinkedHashSet<>();
+            attachmentIds.put(assetId, ids);
+        }
+        ids.add(attachmentId);
+    }
+
+    private void removeAttachmentId(String assetId, String attachmentId) {
+        Set<String> ids = attachmentIds.get(assetId);
+        if (ids != null) {
+            ids.remove(attachmentId);
+            if (ids.isEmpty()) {
+                attachmentIds.remove(assetId);
+            }
+        }
+    }
+
+    /**
+     * Check that an id is a 24 digit hex string, as it would have to be for MongoDB, which also
+     * makes it safe to use as a file name
+     */
+    private static String checkId(Object id) {
+        if (!(id instanceof String) || !((String) id).matches("[0-9a-fA-F]{24}")) {
+            throw new IllegalArgumentException("Invalid id: " + id);
+        }
+        return (String) id;
+    }
+
+    private static AssetList toAssetList(List<Asset> assets) {
+        List<Map<String, Object>> maps = new ArrayList<>();
+        for (Asset asset : assets) {
+            maps.add(asset.getProperties());
+        }
+        return AssetList.createAssetListFromMaps(maps);
+    }
+
+}
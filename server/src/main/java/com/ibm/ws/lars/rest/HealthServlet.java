@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.MediaType;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Health checks for load balancers and orchestrators.
+ * <p>
+ * /health/live returns 200 whenever the application is running. /health/ready returns 200 once the
+ * {@link StartupTasks} have finished and 503 until then. Both return the progress of the startup
+ * tasks as JSON. They don't need authentication, see web.xml.
+ */
+@SuppressWarnings("serial")
+@WebServlet({ HealthServlet.LIVE_PATH, HealthServlet.READY_PATH })
+public class HealthServlet extends HttpServlet {
+
+    static final String LIVE_PATH = "/health/live";
+
+    static final String READY_PATH = "/health/ready";
+
+    private static final ObjectMapper writer = new ObjectMapper();
+
+    @Inject
+    @SuppressFBWarnings(value = "SE_BAD_FIELD", justification = "CDI normal scoped injected field")
+    private StartupTasks startupTasks;
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        Map<String, Object> status = startupTasks.getStatus();
+
+        boolean ready = startupTasks.isReady();
+        if (READY_PATH.equals(req.getServletPath()) && !ready) {
+            resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        } else {
+            resp.setStatus(HttpServletResponse.SC_OK);
+        }
+
+        resp.setContentType(MediaType.APPLICATION_JSON);
+        resp.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        resp.setHeader("Cache-Control", "no-cache");
+        writer.writeValue(resp.getOutputStream(), status);
+    }
+
+}
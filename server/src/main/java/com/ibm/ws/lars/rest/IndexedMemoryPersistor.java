@@ -0,0 +1,884 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Typed;
+
+import com.ibm.ws.lars.rest.Condition.Operation;
+import com.ibm.ws.lars.rest.exceptions.AssetPersistenceException;
+import com.ibm.ws.lars.rest.exceptions.InvalidJsonAssetException;
+import com.ibm.ws.lars.rest.exceptions.NonExistentArtefactException;
+import com.ibm.ws.lars.rest.exceptions.RepositoryException;
+import com.ibm.ws.lars.rest.model.Asset;
+import com.ibm.ws.lars.rest.model.AssetList;
+import com.ibm.ws.lars.rest.model.Attachment;
+import com.ibm.ws.lars.rest.model.AttachmentContentMetadata;
+import com.ibm.ws.lars.rest.model.AttachmentContentResponse;
+import com.ibm.ws.lars.rest.model.AttachmentList;
+
+/**
+ * A persistence store which holds the whole repository in memory, for test servers and for
+ * measuring the rest of the application without a database. Nothing is kept when the server stops.
+ * <p>
+ * Queries are answered from indexes, which are updated as assets are written:
+ * <ul>
+ * <li>a hash index on each of the {@link PublishedSnapshot#INDEXED_FIELDS} and the asset state,
+ * used for filters whose conditions are all EQUALS</li>
+ * <li>an index of the words in the fields searched by a {@link TextSearch}, so only assets
+ * containing one of the searched words are scored</li>
+ * <li>a sorted index for each of the first few sort options which are used, so a sorted page can
+ * be read without sorting every matching asset</li>
+ * </ul>
+ * Any filter which can't be answered from an index is checked against each candidate asset with
+ * the {@link AssetMatcher}, so results are the same as from the {@link PersistenceBean}. Assets
+ * which are equal under the sort order are returned in the order they were created, so paging
+ * through a sorted list is stable.
+ * <p>
+ * Reads run concurrently under a shared lock and writes take an exclusive lock. Stored assets
+ * are never changed, so results are copied from them after the lock has been released.
+ * <p>
+ * This store is used instead of the {@link PersistenceBean} when enabled in the
+ * {@link Configuration}.
+ */
+@ApplicationScoped
+@Typed(IndexedMemoryPersistor.class)
+public class IndexedMemoryPersistor implements Persistor {
+
+    private static final Logger logger = Logger.getLogger(IndexedMemoryPersistor.class.getCanonicalName());
+
+    private static final String ID = "_id";
+
+    /** The fields with a hash index */
+    static final List<String> INDEXED_FIELDS;
+    static {
+        List<String> fields = new ArrayList<>(PublishedSnapshot.INDEXED_FIELDS);
+        fields.add(Asset.STATE);
+        INDEXED_FIELDS = Collections.unmodifiableList(fields);
+    }
+
+    /** The most sort options which are given a sorted index, since clients may sort on any field */
+    static final int MAX_SORT_INDEXES = 8;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Assets keyed by id, in the order they were created */
+    private final Map<String, StoredAsset> assets = new LinkedHashMap<>();
+
+    /** For each indexed field, a map from each value to the ids of the assets with that value */
+    private final Map<String, Map<Object, Set<String>>> indexes = new HashMap<>();
+
+    /** A map from each stemmed word in the searched fields to the ids of the assets containing it */
+    private final Map<String, Set<String>> textIndex = new HashMap<>();
+
+    /** The assets in the order given by each sort option which has been used */
+    private final Map<SortOptions, TreeSet<StoredAsset>> sortIndexes = new LinkedHashMap<>();
+
+    /** Attachment metadata JSON keyed by attachment id */
+    private final Map<String, byte[]> attachments = new LinkedHashMap<>();
+
+    /** The ids of the attachments of each asset */
+    private final Map<String, Set<String>> attachmentIds = new HashMap<>();
+
+    private final Map<String, Content> contents = new HashMap<>();
+
+    /** The download counts of each asset, keyed by attachment id */
+    private final Map<String, Map<String, Long>> downloads = new HashMap<>();
+
+    private long nextSequence = 0;
+
+    public IndexedMemoryPersistor() {
+        for (String field : INDEXED_FIELDS) {
+            indexes.put(field, new HashMap<Object, Set<String>>());
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void initialize() {
+        // Nothing to be done
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AssetList retrieveAllAssets() {
+        return toAssetList(query(null, null, null, null));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AssetList retrieveAllAssets(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions) {
+        return toAssetList(query(filters, searchTerm, pagination, sortOptions));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<byte[]> retrieveAllAssetsJson(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions) {
+        List<byte[]> results = new ArrayList<>();
+        for (StoredAsset stored : query(filters, searchTerm, pagination, sortOptions)) {
+            results.add(stored.json.clone());
+        }
+        return results;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int countAllAssets(Collection<AssetFilter> filters, String searchTerm) {
+        return query(filters, searchTerm, null, null).size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<Object> getDistinctValues(String field, Collection<AssetFilter> filters, String searchTerm) {
+        Set<Object> values = new LinkedHashSet<>();
+        for (StoredAsset stored : query(filters, searchTerm, null, null)) {
+            values.addAll(AssetMatcher.getFieldValues(stored.asset, field));
+        }
+        return new ArrayList<>(values);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Asset retrieveAsset(String assetId) throws NonExistentArtefactException {
+        StoredAsset stored = getStoredAsset(assetId);
+        if (stored == null) {
+            throw new NonExistentArtefactException(assetId, RepositoryRESTResource.ArtefactType.ASSET);
+        }
+        return stored.copy();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public byte[] retrieveAssetJson(String assetId, Collection<AssetFilter> filters) throws NonExistentArtefactException {
+        StoredAsset stored = getStoredAsset(assetId);
+        if (stored == null || !AssetMatcher.matchesAll(stored.asset, filters)) {
+            throw new NonExistentArtefactException(assetId, RepositoryRESTResource.ArtefactType.ASSET);
+        }
+        return stored.json.clone();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Asset createAsset(Asset newAsset) throws InvalidJsonAssetException {
+        Map<String, Object> properties = new LinkedHashMap<>(newAsset.getProperties());
+        if (properties.get(ID) == null) {
+            properties.put(ID, allocateNewId());
+        }
+        String id = String.valueOf(properties.get(ID));
+        properties.put(ID, id);
+
+        StoredAsset stored;
+        lock.writeLock().lock();
+        try {
+            StoredAsset existing = assets.get(id);
+            stored = new StoredAsset(properties, existing == null ? nextSequence++ : existing.sequence);
+            store(existing, stored);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return stored.copy();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Asset updateAsset(String assetId, Asset asset) throws InvalidJsonAssetException, NonExistentArtefactException {
+        if (!Objects.equals(assetId, asset.get_id())) {
+            throw new InvalidJsonAssetException("The specified asset id does not match the specified asset.");
+        }
+
+        StoredAsset stored;
+        lock.writeLock().lock();
+        try {
+            StoredAsset existing = assets.get(assetId);
+            if (existing == null) {
+                throw new NonExistentArtefactException(assetId, RepositoryRESTResource.ArtefactType.ASSET);
+            }
+            stored = new StoredAsset(asset.getProperties(), existing.sequence);
+            store(existing, stored);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return stored.copy();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void deleteAsset(String assetId) {
+        lock.writeLock().lock();
+        try {
+            StoredAsset existing = assets.remove(assetId);
+            if (existing != null) {
+                unindex(existing);
+            }
+            downloads.remove(assetId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AttachmentList findAttachmentsForAsset(String assetId) {
+        List<byte[]> jsons = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Set<String> ids = attachmentIds.get(assetId);
+            if (ids != null) {
+                for (String attachmentId : ids) {
+                    jsons.add(attachments.get(attachmentId));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (byte[] json : jsons) {
+            results.add(toAttachment(json).getProperties());
+        }
+        return AttachmentList.createAttachmentListFromMaps(results);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, byte[]> retrieveAssetsJson(Collection<String> assetIds, Collection<AssetFilter> filters) {
+        Map<String, byte[]> result = new LinkedHashMap<>();
+        for (String assetId : assetIds) {
+            try {
+                result.put(assetId, retrieveAssetJson(assetId, filters));
+            } catch (NonExistentArtefactException e) {
+                // Left out of the result
+            }
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, AttachmentList> findAttachmentsForAssets(Collection<String> assetIds) {
+        Map<String, AttachmentList> result = new LinkedHashMap<>();
+        for (String assetId : assetIds) {
+            AttachmentList attachments = findAttachmentsForAsset(assetId);
+            if (attachments.size() > 0) {
+                result.put(assetId, attachments);
+            }
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AttachmentContentMetadata createAttachmentContent(String name, String contentType, InputStream attachmentContentStream) throws AssetPersistenceException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = attachmentContentStream.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new AssetPersistenceException(e);
+        }
+
+        String id = allocateNewId();
+        Content content = new Content(contentType, bytes.toByteArray());
+        lock.writeLock().lock();
+        try {
+            contents.put(id, content);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return new AttachmentContentMetadata(id, content.bytes.length);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Attachment createAttachmentMetadata(Attachment attachment) {
+        Map<String, Object> properties = new LinkedHashMap<>(attachment.getProperties());
+        if (properties.get(ID) == null) {
+            properties.put(ID, allocateNewId());
+        }
+        Attachment toStore = Attachment.createAttachmentFromMap(properties);
+        byte[] json = toStore.toJsonBytes();
+
+        lock.writeLock().lock();
+        try {
+            byte[] existing = attachments.put(toStore.get_id(), json);
+            if (existing != null) {
+                removeAttachmentId(toAttachment(existing).getAssetId(), toStore.get_id());
+            }
+            addAttachmentId(toStore.getAssetId(), toStore.get_id());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return toAttachment(json);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Attachment retrieveAttachmentMetadata(String attachmentId) throws NonExistentArtefactException {
+        byte[] json;
+        lock.readLock().lock();
+        try {
+            json = attachments.get(attachmentId);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (json == null) {
+            throw new NonExistentArtefactException(attachmentId, RepositoryRESTResource.ArtefactType.ATTACHMENT);
+        }
+        return toAttachment(json);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void deleteAttachmentContent(String attachmentId) {
+        lock.writeLock().lock();
+        try {
+            contents.remove(attachmentId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void deleteAttachmentMetadata(String attachmentId) {
+        lock.writeLock().lock();
+        try {
+            byte[] existing = attachments.remove(attachmentId);
+            if (existing != null) {
+                removeAttachmentId(toAttachment(existing).getAssetId(), attachmentId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void deleteAttachmentsForAsset(String assetId) {
+        lock.writeLock().lock();
+        try {
+            Set<String> ids = attachmentIds.remove(assetId);
+            if (ids == null) {
+                return;
+            }
+            for (String attachmentId : ids) {
+                byte[] json = attachments.remove(attachmentId);
+                String gridFSId = json == null ? null : toAttachment(json).getGridFSId();
+                if (gridFSId != null) {
+                    contents.remove(gridFSId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Collection<String> findAssetIdsWithOrphanedAttachments() {
+        Set<String> orphaned = new HashSet<>();
+        lock.readLock().lock();
+        try {
+            for (String assetId : attachmentIds.keySet()) {
+                if (!assets.containsKey(assetId)) {
+                    orphaned.add(assetId);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return orphaned;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AttachmentContentResponse retrieveAttachmentContent(String gridFSId) throws NonExistentArtefactException {
+        Content content;
+        lock.readLock().lock();
+        try {
+            content = contents.get(gridFSId);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (content == null) {
+            throw new NonExistentArtefactException("Attachment content " + gridFSId + " does not exist in the repository.");
+        }
+        return new AttachmentContentResponse(new ByteArrayInputStream(content.bytes), content.contentType);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void addDownloads(Map<String, Map<String, Long>> counts) {
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<String, Map<String, Long>> assetCounts : counts.entrySet()) {
+                if (!assets.containsKey(assetCounts.getKey())) {
+                    continue;
+                }
+                Map<String, Long> totals = downloads.get(assetCounts.getKey());
+                if (totals == null) {
+                    totals = new LinkedHashMap<>();
+                    downloads.put(assetCounts.getKey(), totals);
+                }
+                for (Map.Entry<String, Long> attachmentCount : assetCounts.getValue().entrySet()) {
+                    Long total = totals.get(attachmentCount.getKey());
+                    totals.put(attachmentCount.getKey(), (total == null ? 0 : total) + attachmentCount.getValue());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<Map<String, Object>> retrieveDownloadCounts(int limit) {
+        List<Map<String, Object>> results = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, Map<String, Long>> assetCounts : downloads.entrySet()) {
+                long total = 0;
+                for (Long count : assetCounts.getValue().values()) {
+                    total += count;
+                }
+                if (total <= 0) {
+                    continue;
+                }
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("assetId", assetCounts.getKey());
+                result.put(Asset.NAME, assets.get(assetCounts.getKey()).asset.get(Asset.NAME));
+                result.put(PersistenceBean.DOWNLOADS_FIELD, total);
+                result.put("attachments", new LinkedHashMap<String, Object>(assetCounts.getValue()));
+                results.add(result);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Collections.sort(results, new Comparator<Map<String, Object>>() {
+            @Override
+            public int compare(Map<String, Object> a, Map<String, Object> b) {
+                return Long.compare((Long) b.get(PersistenceBean.DOWNLOADS_FIELD), (Long) a.get(PersistenceBean.DOWNLOADS_FIELD));
+            }
+        });
+        return limit > 0 && results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String allocateNewId() {
+        return FilePersistor.newObjectId();
+    }
+
+    /**
+     * Find the assets which match the filters and search term, in the order given by the sort
+     * options or, if there are none, by the relevance to the search term and then the order they
+     * were created
+     */
+    private List<StoredAsset> query(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions) {
+        Collection<AssetFilter> allFilters = filters == null ? Collections.<AssetFilter> emptyList() : filters;
+        TextSearch search = searchTerm == null ? null : new TextSearch(searchTerm);
+        int offset = pagination == null ? 0 : Math.max(pagination.getOffset(), 0);
+        int limit = pagination == null || pagination.getLimit() <= 0 ? Integer.MAX_VALUE : pagination.getLimit();
+
+        // Download counts change without the asset changing, so they can't be kept in a sorted index
+        boolean downloadCountSort = AssetMatcher.isDownloadCountSort(sortOptions);
+        if (sortOptions != null && !downloadCountSort) {
+            createSortIndex(sortOptions);
+        }
+
+        lock.readLock().lock();
+        try {
+            Collection<String> candidateIds = getCandidateIds(allFilters, search);
+
+            // Read a page straight from the sorted index, unless only a few assets could match
+            TreeSet<StoredAsset> sortIndex = sortOptions == null ? null : sortIndexes.get(sortOptions);
+            if (sortIndex != null && (candidateIds == null || candidateIds.size() * 4 > assets.size())) {
+                List<StoredAsset> results = new ArrayList<>();
+                int skipped = 0;
+                for (StoredAsset stored : sortIndex) {
+                    if (results.size() >= limit) {
+                        break;
+                    }
+                    if ((candidateIds == null || candidateIds.contains(stored.id)) && matches(stored, allFilters, search)) {
+                        if (skipped < offset) {
+                            skipped++;
+                        } else {
+                            results.add(stored);
+                        }
+                    }
+                }
+                return results;
+            }
+
+            List<StoredAsset> results = new ArrayList<>();
+            final Map<StoredAsset, Double> scores = new IdentityHashMap<>();
+            if (candidateIds == null) {
+                for (StoredAsset stored : assets.values()) {
+                    if (AssetMatcher.matchesAll(stored.asset, allFilters)) {
+                        results.add(stored);
+                    }
+                }
+            } else {
+                for (String id : candidateIds) {
+                    StoredAsset stored = assets.get(id);
+                    if (!AssetMatcher.matchesAll(stored.asset, allFilters)) {
+                        continue;
+                    }
+                    if (search != null) {
+                        double score = search.score(stored.asset);
+                        if (score <= 0) {
+                            continue;
+                        }
+                        scores.put(stored, score);
+                    }
+                    results.add(stored);
+                }
+                Collections.sort(results, SEQUENCE_ORDER);
+            }
+
+            if (downloadCountSort) {
+                Collections.sort(results, new StoredAssetComparator(AssetMatcher.getDownloadCountComparator(sortOptions, downloads)));
+            } else if (sortOptions != null) {
+                Collections.sort(results, new StoredAssetComparator(AssetMatcher.getComparator(sortOptions)));
+            } else if (search != null) {
+                // Stable, so equal scores stay in the order the assets were created
+                Collections.sort(results, new Comparator<StoredAsset>() {
+                    @Override
+                    public int compare(StoredAsset a, StoredAsset b) {
+                        return Double.compare(scores.get(b), scores.get(a));
+                    }
+                });
+            }
+
+            int from = Math.min(offset, results.size());
+            int to = (int) Math.min((long) from + limit, results.size());
+            return from == 0 && to == results.size() ? results : new ArrayList<>(results.subList(from, to));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Use the indexes to find the smallest set of assets which could match the filters and search
+     * term. Must be called with the read lock held.
+     *
+     * @return the ids, or null if every asset could match
+     */
+    private Collection<String> getCandidateIds(Collection<AssetFilter> filters, TextSearch search) {
+        Collection<String> candidateIds = null;
+
+        if (search != null) {
+            Set<String> ids = new HashSet<>();
+            for (String term : search.getSearchedTerms()) {
+                Set<String> matchingIds = textIndex.get(term);
+                if (matchingIds != null) {
+                    ids.addAll(matchingIds);
+                }
+            }
+            candidateIds = ids;
+        }
+
+        for (AssetFilter filter : filters) {
+            Map<Object, Set<String>> index = indexes.get(filter.getKey());
+            if (index == null || !allEquals(filter)) {
+                continue;
+            }
+
+            Set<String> ids = new HashSet<>();
+            for (Condition condition : filter.getConditions()) {
+                Set<String> matchingIds = index.get(condition.getValue());
+                if (matchingIds != null) {
+                    ids.addAll(matchingIds);
+                }
+            }
+            if (candidateIds == null) {
+                candidateIds = ids;
+            } else {
+                candidateIds.retainAll(ids);
+            }
+        }
+        return candidateIds;
+    }
+
+    private static boolean matches(StoredAsset stored, Collection<AssetFilter> filters, TextSearch search) {
+        return AssetMatcher.matchesAll(stored.asset, filters) && (search == null || search.score(stored.asset) > 0);
+    }
+
+    private static boolean allEquals(AssetFilter filter) {
+        for (Condition condition : filter.getConditions()) {
+            if (condition.getOperation() != Operation.EQUALS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Build a sorted index for the given sort options if there isn't one yet and the limit on the
+     * number of sorted indexes hasn't been reached
+     */
+    private void createSortIndex(SortOptions sortOptions) {
+        lock.readLock().lock();
+        try {
+            if (sortIndexes.containsKey(sortOptions) || sortIndexes.size() >= MAX_SORT_INDEXES) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (sortIndexes.containsKey(sortOptions) || sortIndexes.size() >= MAX_SORT_INDEXES) {
+                return;
+            }
+            TreeSet<StoredAsset> sortIndex = new TreeSet<>(new StoredAssetComparator(AssetMatcher.getComparator(sortOptions)));
+            sortIndex.addAll(assets.values());
+            sortIndexes.put(sortOptions, sortIndex);
+
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("createSortIndex: created a sorted index on " + sortOptions + " of " + sortIndex.size() + " assets");
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private StoredAsset getStoredAsset(String assetId) {
+        lock.readLock().lock();
+        try {
+            return assets.get(assetId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replace an asset and update the indexes. Must be called with the write lock held.
+     *
+     * @param existing the asset being replaced, may be null
+     * @param stored the new asset
+     */
+    private void store(StoredAsset existing, StoredAsset stored) {
+        if (existing != null) {
+            unindex(existing);
+        }
+        assets.put(stored.id, stored);
+
+        for (String field : INDEXED_FIELDS) {
+            Map<Object, Set<String>> index = indexes.get(field);
+            for (Object value : AssetMatcher.getFieldValues(stored.asset, field)) {
+                addToIndex(index, value, stored.id);
+            }
+        }
+        for (String term : stored.terms) {
+            addToIndex(textIndex, term, stored.id);
+        }
+        for (TreeSet<StoredAsset> sortIndex : sortIndexes.values()) {
+            sortIndex.add(stored);
+        }
+    }
+
+    /**
+     * Remove an asset from the indexes. Must be called with the write lock held.
+     */
+    private void unindex(StoredAsset stored) {
+        for (String field : INDEXED_FIELDS) {
+            Map<Object, Set<String>> index = indexes.get(field);
+            for (Object value : AssetMatcher.getFieldValues(stored.asset, field)) {
+                removeFromIndex(index, value, stored.id);
+            }
+        }
+        for (String term : stored.terms) {
+            removeFromIndex(textIndex, term, stored.id);
+        }
+        for (TreeSet<StoredAsset> sortIndex : sortIndexes.values()) {
+            sortIndex.remove(stored);
+        }
+    }
+
+    private static <K> void addToIndex(Map<K, Set<String>> index, K value, String id) {
+        Set<String> ids = index.get(value);
+        if (ids == null) {
+            ids = new HashSet<>();
+            index.put(value, ids);
+        }
+        ids.add(id);
+    }
+
+    private static <K> void removeFromIndex(Map<K, Set<String>> index, K value, String id) {
+        Set<String> ids = index.get(value);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                index.remove(value);
+            }
+        }
+    }
+
+    private void addAttachmentId(String assetId, String attachmentId) {
+        if (assetId == null) {
+            return;
+        }
+        Set<String> ids = attachmentIds.get(assetId);
+        if (ids == null) {
+            ids = new LinkedHashSet<>();
+            attachmentIds.put(assetId, ids);
+        }
+        ids.add(attachmentId);
+    }
+
+    private void removeAttachmentId(String assetId, String attachmentId) {
+        Set<String> ids = attachmentIds.get(assetId);
+        if (ids != null) {
+            ids.remove(attachmentId);
+            if (ids.isEmpty()) {
+                attachmentIds.remove(assetId);
+            }
+        }
+    }
+
+    private static Attachment toAttachment(byte[] json) {
+        try {
+            return Attachment.jsonToAttachment(json);
+        } catch (InvalidJsonAssetException e) {
+            // We wrote the JSON ourselves, so this should not happen
+            throw new RepositoryException("Stored attachment could not be read", e);
+        }
+    }
+
+    private static AssetList toAssetList(List<StoredAsset> storedAssets) {
+        List<Map<String, Object>> maps = new ArrayList<>();
+        for (StoredAsset stored : storedAssets) {
+            maps.add(stored.copy().getProperties());
+        }
+        return AssetList.createAssetListFromMaps(maps);
+    }
+
+    private static final Comparator<StoredAsset> SEQUENCE_ORDER = new Comparator<StoredAsset>() {
+        @Override
+        public int compare(StoredAsset a, StoredAsset b) {
+            return Long.compare(a.sequence, b.sequence);
+        }
+    };
+
+    /**
+     * Orders assets with a comparator from {@link AssetMatcher}, and then by the order they were
+     * created, so that no two assets are equal
+     */
+    private static class StoredAssetComparator implements Comparator<StoredAsset> {
+
+        private final Comparator<Asset> assetComparator;
+
+        StoredAssetComparator(Comparator<Asset> assetComparator) {
+            this.assetComparator = assetComparator;
+        }
+
+        @Override
+        public int compare(StoredAsset a, StoredAsset b) {
+            int result = assetComparator.compare(a.asset, b.asset);
+            return result != 0 ? result : SEQUENCE_ORDER.compare(a, b);
+        }
+    }
+
+    /**
+     * An asset as held in the store. This is never changed once created, and the asset inside is
+     * never handed out, so callers always get a copy made from the JSON.
+     */
+    private static class StoredAsset {
+
+        final String id;
+
+        /** The position of the asset in the order they were created */
+        final long sequence;
+
+        final byte[] json;
+
+        final Asset asset;
+
+        /** The stemmed words in the searched fields */
+        final Set<String> terms;
+
+        StoredAsset(Map<String, Object> properties, long sequence) throws InvalidJsonAssetException {
+            Map<String, Object> toStore = new LinkedHashMap<>(properties);
+            toStore.keySet().removeAll(FilePersistor.INTERNAL_FIELDS);
+            // Attachments are stored separately
+            toStore.remove(Asset.ATTACHMENTS);
+
+            this.json = Asset.createAssetFromMap(toStore).toJsonBytes();
+            this.asset = Asset.deserializeAssetFromJson(new ByteArrayInputStream(json));
+            this.id = asset.get_id();
+            this.sequence = sequence;
+
+            Set<String> terms = new HashSet<>();
+            for (String field : TextSearch.FIELDS) {
+                for (String value : AssetMatcher.getStrings(AssetMatcher.getFieldValues(asset, field))) {
+                    terms.addAll(TextSearch.getTerms(value));
+                }
+            }
+            this.terms = Collections.unmodifiableSet(terms);
+        }
+
+        Asset copy() {
+            try {
+                return Asset.deserializeAssetFromJson(new ByteArrayInputStream(json));
+            } catch (InvalidJsonAssetException e) {
+                // We wrote the JSON ourselves, so this should not happen
+                throw new RepositoryException("Stored asset " + id + " could not be read", e);
+            }
+        }
+    }
+
+    private static class Content {
+
+        final String contentType;
+
+        final byte[] bytes;
+
+        Content(String contentType, byte[] bytes) {
+            this.contentType = contentType;
+            this.bytes = bytes;
+        }
+    }
+
+}
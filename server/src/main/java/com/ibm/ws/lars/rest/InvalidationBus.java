@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Event;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+import com.ibm.ws.lars.rest.exceptions.NonExistentArtefactException;
+import com.ibm.ws.lars.rest.exceptions.RepositoryException;
+import com.ibm.ws.lars.rest.model.Asset;
+import com.mongodb.BasicDBObject;
+import com.mongodb.Bytes;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+
+/**
+ * Tells the other servers which share the database about asset writes made by this server, so that
+ * they can keep their in-memory views of the repository up to date.
+ * <p>
+ * Each local {@link AssetChangedEvent} is written as a message to a capped collection, which every
+ * server follows with a tailable cursor. When a message from another server arrives, the asset is
+ * read again and an {@link AssetChangedEvent} is fired for it, so the
+ * {@link QueryResultCache}, {@link CatalogViews}, {@link PublishedSnapshot} and
+ * {@link FeatureResolver} are updated just as they are for a local write.
+ * <p>
+ * If messages may have been missed, because the cursor was lost for long enough that they were
+ * removed from the capped collection, a reset event is fired instead.
+ * <p>
+ * The bus is disabled unless it is turned on in the {@link Configuration}.
+ */
+@ApplicationScoped
+public class InvalidationBus {
+
+    private static final Logger logger = Logger.getLogger(InvalidationBus.class.getCanonicalName());
+
+    static final String COLLECTION = "invalidations";
+
+    /** The size in bytes of the capped collection */
+    static final long COLLECTION_SIZE = 1024 * 1024;
+
+    /** The most messages kept in the capped collection */
+    static final int COLLECTION_MAX = 10000;
+
+    static final String NODE_FIELD = "node";
+    static final String ASSET_ID_FIELD = "assetId";
+    private static final String ID = "_id";
+
+    /** How long to wait before following the collection again after an error */
+    private static final long RETRY_MILLIS = 1000;
+
+    private static final String DB_NAME = "mongo/larsDB";
+
+    /** Looked up when the bus is first used, so that the database isn't needed when it is disabled */
+    private DB db = null;
+
+    @Inject
+    private Configuration configuration;
+
+    @Inject
+    private Persistor persistenceBean;
+
+    @Inject
+    private Event<AssetChangedEvent> assetChanges;
+
+    /** Identifies the messages written by this server */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /** The ids of messages which have already been seen, so that they are only applied once */
+    private final Set<Object> seenIds = Collections.newSetFromMap(new LinkedHashMap<Object, Boolean>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Boolean> eldest) {
+            return size() > COLLECTION_MAX * 2;
+        }
+    });
+
+    private boolean collectionCreated = false;
+
+    private volatile Thread tailThread = null;
+
+    /** The id of the last message seen, only used by the following thread once it has started */
+    private Object lastId = null;
+
+    /**
+     * @return true if the bus is enabled
+     */
+    public boolean isEnabled() {
+        return configuration.isInvalidationBusEnabled();
+    }
+
+    /**
+     * Start following the messages from other servers, if the bus is enabled
+     */
+    public synchronized void start() {
+        if (!isEnabled() || tailThread != null) {
+            return;
+        }
+
+        DBCollection messages = getCollection();
+
+        // Messages already in the collection describe writes which happened before we started
+        lastId = null;
+        try (DBCursor cursor = messages.find(new BasicDBObject(), new BasicDBObject(ID, 1))) {
+            for (DBObject message : cursor) {
+                lastId = message.get(ID);
+                seenIds.add(lastId);
+            }
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                follow();
+            }
+        }, "LARS invalidation bus");
+        thread.setDaemon(true);
+        tailThread = thread;
+        thread.start();
+
+        logger.info("Following asset changes made by other servers, this server is " + nodeId);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        Thread thread = tailThread;
+        tailThread = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Send a message to the other servers when an asset is written by this server
+     *
+     * @param event the event describing the change
+     */
+    public void assetChanged(@Observes AssetChangedEvent event) {
+        if (!isEnabled() || event.isRemote()) {
+            return;
+        }
+
+        try {
+            getCollection().insert(createMessage(nodeId, event.getAssetId()));
+        } catch (MongoException e) {
+            logger.log(Level.WARNING, "Unable to tell other servers about a change to asset " + event.getAssetId()
+                                      + ", their cached views of the asset may be out of date", e);
+        }
+    }
+
+    static DBObject createMessage(String nodeId, String assetId) {
+        return new BasicDBObject(NODE_FIELD, nodeId).append(ASSET_ID_FIELD, assetId);
+    }
+
+    /**
+     * Follow the capped collection, applying each message from another server, until the bus is
+     * stopped
+     */
+    private void follow() {
+        DBCollection messages = getCollection();
+        while (tailThread == Thread.currentThread()) {
+            try {
+                followOnce(messages);
+            } catch (RuntimeException e) {
+                if (tailThread == Thread.currentThread()) {
+                    logger.log(Level.WARNING, "Lost track of asset changes made by other servers, retrying", e);
+                }
+            }
+
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Open a tailable cursor on the capped collection and apply each new message from it, until the
+     * cursor is lost or the bus is stopped. A reset event is fired first if the last message seen
+     * has been removed from the collection, as others may have been removed with it.
+     *
+     * @param messages the capped collection
+     */
+    void followOnce(DBCollection messages) {
+        if (lastId != null && messages.findOne(new BasicDBObject(ID, lastId)) == null) {
+            logger.warning("Some asset changes made by other servers may have been missed, all cached views of the repository will be reloaded");
+            assetChanges.fire(AssetChangedEvent.reset());
+            lastId = null;
+        }
+
+        try (DBCursor cursor = messages.find()
+                .addOption(Bytes.QUERYOPTION_TAILABLE)
+                .addOption(Bytes.QUERYOPTION_AWAITDATA)) {
+            while (tailThread == Thread.currentThread() && cursor.hasNext()) {
+                DBObject message = cursor.next();
+                Object id = message.get(ID);
+                synchronized (this) {
+                    if (!seenIds.add(id)) {
+                        continue;
+                    }
+                }
+                lastId = id;
+                apply(message);
+            }
+        }
+    }
+
+    /**
+     * Fire an event for a message from another server
+     */
+    private void apply(DBObject message) {
+        if (nodeId.equals(message.get(NODE_FIELD))) {
+            return;
+        }
+
+        String assetId = (String) message.get(ASSET_ID_FIELD);
+        Asset asset;
+        try {
+            asset = persistenceBean.retrieveAsset(assetId);
+        } catch (NonExistentArtefactException e) {
+            asset = null;
+        }
+
+        AssetChangedEvent event = new AssetChangedEvent(assetId, asset, true);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("apply: firing " + event);
+        }
+        assetChanges.fire(event);
+    }
+
+    /**
+     * Get the capped collection, creating it if it doesn't exist. The collection must be created
+     * explicitly, as writing to it would otherwise create an ordinary collection.
+     */
+    private synchronized DBCollection getCollection() {
+        if (db == null) {
+            try {
+                db = (DB) new InitialContext().lookup(DB_NAME);
+            } catch (NamingException e) {
+                throw new RepositoryException("The invalidation bus is enabled but the database " + DB_NAME + " can't be found", e);
+            }
+        }
+        if (!collectionCreated) {
+            if (!db.collectionExists(COLLECTION)) {
+                try {
+                    db.createCollection(COLLECTION, new BasicDBObject("capped", true)
+                            .append("size", COLLECTION_SIZE)
+                            .append("max", COLLECTION_MAX));
+                } catch (MongoException e) {
+                    // Another server created it at the same time
+                    if (!db.collectionExists(COLLECTION)) {
+                        throw e;
+                    }
+                }
+            }
+            collectionCreated = true;
+        }
+        return db.getCollection(COLLECTION);
+    }
+
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+/**
+ * A product version, as found in the appliesToFilterInfo of an asset, e.g. <code>8.5.5.9</code>
+ * <p>
+ * Unlike an OSGi version, each segment (including the fourth) is compared numerically where it is
+ * a number, so that 8.5.5.10 is correctly seen as later than 8.5.5.9. Segments that are not
+ * numbers (e.g. <code>2016.0.0.0+</code> or <code>beta</code>) are compared as strings. Missing
+ * trailing segments are treated as zero.
+ */
+public class LibertyVersion implements Comparable<LibertyVersion> {
+
+    private final String[] segments;
+
+    private LibertyVersion(String versionString) {
+        this.segments = versionString.trim().split("\\.");
+    }
+
+    /**
+     * Parse a version string
+     *
+     * @param versionString the version string, may be null
+     * @return the version, or null if versionString is null or empty
+     */
+    public static LibertyVersion parse(String versionString) {
+        if (versionString == null || versionString.trim().isEmpty()) {
+            return null;
+        }
+        return new LibertyVersion(versionString);
+    }
+
+    /**
+     * Check whether this version lies in the range described by the given bounds.
+     *
+     * @param min the lower bound, or null if there is no lower bound
+     * @param minInclusive whether the lower bound is inclusive
+     * @param max the upper bound, or null if there is no upper bound
+     * @param maxInclusive whether the upper bound is inclusive
+     * @return true if this version is within the range
+     */
+    public boolean isInRange(LibertyVersion min, boolean minInclusive, LibertyVersion max, boolean maxInclusive) {
+        if (min != null) {
+            int c = compareTo(min);
+            if (c < 0 || (c == 0 && !minInclusive)) {
+                return false;
+            }
+        }
+        if (max != null) {
+            int c = compareTo(max);
+            if (c > 0 || (c == 0 && !maxInclusive)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int compareTo(LibertyVersion other) {
+        int length = Math.max(segments.length, other.segments.length);
+        for (int i = 0; i < length; i++) {
+            int c = compareSegment(getSegment(i), other.getSegment(i));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns a string which sorts in the same order as this version when strings are compared
+     * character by character, as a database does when sorting without a collation.
+     * <p>
+     * Trailing zero segments are left out, so that equal versions have equal keys. Each numeric
+     * segment is written without leading zeros and prefixed by a character giving its length,
+     * so that longer numbers sort after shorter ones, and other segments are prefixed by a
+     * character which sorts after all of those.
+     *
+     * @return the sort key
+     */
+    public String toSortKey() {
+        int length = segments.length;
+        while (length > 0 && Long.valueOf(0).equals(asNumber(segments[length - 1]))) {
+            length--;
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                key.append('.');
+            }
+            Long number = asNumber(segments[i]);
+            if (number != null) {
+                String digits = number.toString();
+                key.append((char) ('0' + digits.length())).append(digits);
+            } else {
+                key.append('~').append(segments[i]);
+            }
+        }
+        return key.toString();
+    }
+
+    private String getSegment(int i) {
+        return i < segments.length ? segments[i] : "0";
+    }
+
+    private static int compareSegment(String a, String b) {
+        Long aNum = asNumber(a);
+        Long bNum = asNumber(b);
+        if (aNum != null && bNum != null) {
+            return aNum.compareTo(bNum);
+        }
+        // Numbers sort before anything else
+        if (aNum != null) {
+            return -1;
+        }
+        if (bNum != null) {
+            return 1;
+        }
+        return a.compareTo(b);
+    }
+
+    private static Long asNumber(String segment) {
+        if (segment.isEmpty() || segment.length() > 18) {
+            return null;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            if (!Character.isDigit(segment.charAt(i))) {
+                return null;
+            }
+        }
+        return Long.valueOf(segment);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        // Must be consistent with compareTo, so ignore trailing zero segments
+        // and hash numeric segments by value
+        int length = segments.length;
+        while (length > 0 && Long.valueOf(0).equals(asNumber(segments[length - 1]))) {
+            length--;
+        }
+        int result = 1;
+        for (int i = 0; i < length; i++) {
+            Long number = asNumber(segments[i]);
+            result = 31 * result + (number != null ? number.hashCode() : segments[i].hashCode());
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        return compareTo((LibertyVersion) obj) == 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < segments.length; i++) {
+            if (i > 0) {
+                b.append('.');
+            }
+            b.append(segments[i]);
+        }
+        return b.toString();
+    }
+
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records an event for each persistence store call, attachment content read or write and REST
+ * request, so that the repository operations behind a slow period can be found.
+ * <p>
+ * Events are written to this class's logger at FINE level, one line per event, with the time each
+ * operation took. They are turned on and off with the logging configuration, for example by
+ * adding com.ibm.ws.lars.rest.OperationEvents=fine to the Liberty trace specification, without
+ * restarting the server. When they are off, recording an event costs a single check of the log
+ * level.
+ * <p>
+ * Callers get a start time from {@link #start()} before the operation and pass it to one of the
+ * record methods afterwards. The record methods do nothing if events were off when the operation
+ * started.
+ */
+public class OperationEvents {
+
+    private static final Logger logger = Logger.getLogger(OperationEvents.class.getCanonicalName());
+
+    /** The start time returned when events are off */
+    static final long NOT_RECORDING = Long.MIN_VALUE;
+
+    private OperationEvents() {
+        // Only static methods
+    }
+
+    /**
+     * @return true if events are being recorded
+     */
+    public static boolean isEnabled() {
+        return logger.isLoggable(Level.FINE);
+    }
+
+    /**
+     * Get the start time of an operation
+     *
+     * @return the current time in nanoseconds, or {@link #NOT_RECORDING} if events are off
+     */
+    public static long start() {
+        return isEnabled() ? System.nanoTime() : NOT_RECORDING;
+    }
+
+    /**
+     * Record a call to the persistence store
+     *
+     * @param start the start time returned by {@link #start()}
+     * @param operation the name of the {@link Persistor} method
+     * @param filters the filters passed to the method, or null if it doesn't take filters
+     * @param searchTerm the search term passed to the method, or null
+     * @param resultCount the number of results returned, or -1 if the method doesn't return a list
+     */
+    public static void persistorCall(long start, String operation, Collection<AssetFilter> filters, String searchTerm, int resultCount) {
+        if (start == NOT_RECORDING) {
+            return;
+        }
+
+        StringBuilder event = new StringBuilder("persistor operation=").append(operation);
+        if (filters != null) {
+            event.append(" filters=").append(describeFilters(filters));
+        }
+        if (searchTerm != null) {
+            event.append(" search=true");
+        }
+        if (resultCount >= 0) {
+            event.append(" results=").append(resultCount);
+        }
+        appendDuration(event, start);
+        logger.fine(event.toString());
+    }
+
+    /**
+     * Record the reading or writing of some attachment content
+     *
+     * @param start the start time returned by {@link #start()}
+     * @param operation "read" or "write"
+     * @param bytes the number of bytes read or written
+     */
+    public static void contentTransfer(long start, String operation, long bytes) {
+        if (start == NOT_RECORDING) {
+            return;
+        }
+
+        long nanos = System.nanoTime() - start;
+        StringBuilder event = new StringBuilder("content operation=").append(operation).append(" bytes=").append(bytes);
+        appendDuration(event, start);
+        if (nanos > 0) {
+            event.append(" kbPerSecond=").append(String.format(Locale.ROOT, "%.1f", bytes * 1000000000.0 / nanos / 1024));
+        }
+        logger.fine(event.toString());
+    }
+
+    /**
+     * Record a REST request
+     *
+     * @param start the start time returned by {@link #start()}
+     * @param method the HTTP method
+     * @param path the request path
+     * @param status the response status code
+     */
+    public static void restRequest(long start, String method, String path, int status) {
+        if (start == NOT_RECORDING) {
+            return;
+        }
+
+        StringBuilder event = new StringBuilder("rest method=").append(method).append(" path=").append(path).append(" status=").append(status);
+        appendDuration(event, start);
+        logger.fine(event.toString());
+    }
+
+    /**
+     * Describe the shape of some filters, that is the fields and operations they use but not the
+     * values they compare with, e.g. <code>state:EQUALS,type:EQUALS|NOT_EQUALS</code>
+     *
+     * @param filters the filters
+     * @return a description of the filters
+     */
+    static String describeFilters(Collection<AssetFilter> filters) {
+        StringBuilder description = new StringBuilder();
+        for (AssetFilter filter : filters) {
+            if (description.length() > 0) {
+                description.append(',');
+            }
+            description.append(filter.getKey()).append(':');
+            for (int i = 0; i < filter.getConditions().size(); i++) {
+                if (i > 0) {
+                    description.append('|');
+                }
+                description.append(filter.getConditions().get(i).getOperation());
+            }
+        }
+        return description.toString();
+    }
+
+    private static void appendDuration(StringBuilder event, long start) {
+        event.append(" ms=").append(String.format(Locale.ROOT, "%.3f", (System.nanoTime() - start) / 1000000.0));
+    }
+
+}
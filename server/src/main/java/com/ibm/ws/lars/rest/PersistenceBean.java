@@ -16,19 +16,25 @@
 
 package com.ibm.ws.lars.rest;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Typed;
+import javax.inject.Inject;
 
 import org.bson.types.ObjectId;
 
@@ -45,9 +51,12 @@ import com.ibm.ws.lars.rest.model.AttachmentList;
 import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.BulkWriteOperation;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
 import com.mongodb.gridfs.GridFS;
 import com.mongodb.gridfs.GridFSDBFile;
 import com.mongodb.gridfs.GridFSInputFile;
@@ -66,6 +75,7 @@ import com.mongodb.gridfs.GridFSInputFile;
  *
  */
 @ApplicationScoped
+@Typed(PersistenceBean.class)
 public class PersistenceBean implements Persistor {
 
     private static final Logger logger = Logger.getLogger(PersistenceBean.class.getCanonicalName());
@@ -80,16 +90,62 @@ public class PersistenceBean implements Persistor {
     /** The _id field of a MongoDB object */
     private static String ID = "_id";
 
+    /** The maximum number of ids to put in a single $in query when deleting */
+    private static final int DELETE_BATCH_SIZE = 500;
+
+    /**
+     * Field in which the serialized JSON of an asset is stored, so that it doesn't need to be
+     * serialized again each time the asset is read. This field is never returned as part of an
+     * asset.
+     */
+    static final String JSON_FIELD = "_json";
+
+    /**
+     * The fields of an asset which hold its download counts. These are maintained by
+     * {@link #addDownloads(Map)}, so they can be sorted on, but are not part of the asset's JSON.
+     */
+    static final String DOWNLOADS_FIELD = "downloads";
+    static final String ATTACHMENT_DOWNLOADS_FIELD = "attachmentDownloads";
+
     private static final String DB_NAME = "mongo/larsDB";
 
     @Resource(lookup = DB_NAME)
     private com.mongodb.DB db;
 
+    @Inject
+    private Configuration configuration;
+
     private GridFS gridFS;
 
+    /** The read preference for queries which list, count or summarize assets */
+    private ReadPreference queryReadPreference = ReadPreference.primary();
+
+    /** The read preference for reading attachment content */
+    private ReadPreference contentReadPreference = ReadPreference.primary();
+
     @PostConstruct
     public void createGridFS() {
         gridFS = new GridFS(db);
+        queryReadPreference = getReadPreference(configuration.getQueryReadPreference());
+        contentReadPreference = getReadPreference(configuration.getContentReadPreference());
+    }
+
+    /**
+     * Convert the name of a read preference, such as secondaryPreferred, to a ReadPreference
+     *
+     * @param name the name of the read preference, may be null
+     * @return the read preference, or the primary if the name is null or not valid
+     */
+    private static ReadPreference getReadPreference(String name) {
+        if (name == null) {
+            return ReadPreference.primary();
+        }
+        try {
+            return ReadPreference.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            logger.warning("Unknown read preference " + name + ", reading from the primary instead");
+            return ReadPreference.primary();
+        }
     }
 
     private DBCollection getAssetCollection() {
@@ -100,6 +156,21 @@ public class PersistenceBean implements Persistor {
         return db.getCollection(ATTACHMENTS_COLLECTION);
     }
 
+    /**
+     * @return the collection holding the GridFS file documents. GridFS doesn't expose its own
+     *         collections, so this is looked up by name.
+     */
+    private DBCollection getContentFilesCollection() {
+        return db.getCollection(gridFS.getBucketName() + ".files");
+    }
+
+    /**
+     * @return the collection holding the GridFS chunks
+     */
+    private DBCollection getContentChunksCollection() {
+        return db.getCollection(gridFS.getBucketName() + ".chunks");
+    }
+
     private DBObject makeQueryById(ObjectId id) {
         return new BasicDBObject(ID, id);
     }
@@ -121,16 +192,61 @@ public class PersistenceBean implements Persistor {
         }
     }
 
+    /**
+     * Serialize an asset that is about to be written and store the JSON in the {@link #JSON_FIELD}
+     * of the object.
+     * <p>
+     * Assets which contain an attachments field don't have their JSON stored, since the attachments
+     * field is always replaced when a single asset is returned.
+     *
+     * @param obj the asset to be written, which must have an id
+     */
+    private static void addSerializedJson(DBObject obj) {
+        obj.removeField(JSON_FIELD);
+        if (obj.containsField(Asset.ATTACHMENTS)) {
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> properties = obj.toMap();
+        properties.remove(DOWNLOADS_FIELD);
+        properties.remove(ATTACHMENT_DOWNLOADS_FIELD);
+        properties.remove(SortKeys.SORT_KEYS_FIELD);
+        properties.put(ID, ((ObjectId) obj.get(ID)).toHexString());
+        obj.put(JSON_FIELD, Asset.createAssetFromMap(properties).toJsonBytes());
+    }
+
+    /**
+     * Remove the fields which are stored with an asset but aren't part of it
+     */
+    private static void removeInternalFields(DBObject obj) {
+        obj.removeField(JSON_FIELD);
+        obj.removeField(DOWNLOADS_FIELD);
+        obj.removeField(ATTACHMENT_DOWNLOADS_FIELD);
+        obj.removeField(SortKeys.SORT_KEYS_FIELD);
+    }
+
+    /**
+     * Store the {@link SortKeys} of an asset that is about to be written in the
+     * {@link SortKeys#SORT_KEYS_FIELD} of the object, so that sorting on them can use an index
+     */
+    @SuppressWarnings("unchecked")
+    private static void addSortKeys(DBObject obj) {
+        obj.removeField(SortKeys.SORT_KEYS_FIELD);
+        obj.put(SortKeys.SORT_KEYS_FIELD, new BasicDBObject(SortKeys.createSortKeys(obj.toMap())));
+    }
+
     @Override
     public AssetList retrieveAllAssets() {
         List<Map<String, Object>> mapList = new ArrayList<>();
 
-        try (DBCursor cursor = getAssetCollection().find()) {
+        try (DBCursor cursor = getAssetCollection().find().setReadPreference(queryReadPreference)) {
             if (logger.isLoggable(Level.FINE)) {
                 logger.fine("retrieveAllAssets: found " + cursor.count() + " assets.");
             }
             for (DBObject obj : cursor) {
                 convertObjectIdToHexString(obj);
+                removeInternalFields(obj);
                 // BSON spec says that all keys have to be strings
                 // so this should be safe.
                 @SuppressWarnings("unchecked")
@@ -159,7 +275,7 @@ public class PersistenceBean implements Persistor {
         if (sortOptions != null) {
             // If sort options are provided, use them to sort the results
             int sortOrder = getMongoSortOrder(sortOptions.getSortOrder());
-            sortObject = new BasicDBObject(sortOptions.getField(), sortOrder);
+            sortObject = new BasicDBObject(SortKeys.getStoredSortField(sortOptions.getField()), sortOrder);
         } else {
             // If no sort options are provided but there is a search term, sort on relevance to the search term
             if (searchTerm != null) {
@@ -172,6 +288,7 @@ public class PersistenceBean implements Persistor {
         List<DBObject> results = query(filterObject, sortObject, projectionObject, pagination);
         List<Map<String, Object>> assets = new ArrayList<Map<String, Object>>();
         for (DBObject result : results) {
+            removeInternalFields(result);
             // BSON spec says that all keys have to be strings
             // so this should be safe.
             @SuppressWarnings("unchecked")
@@ -184,6 +301,40 @@ public class PersistenceBean implements Persistor {
         return AssetList.createAssetListFromMaps(assets);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public List<byte[]> retrieveAllAssetsJson(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions) {
+        BasicDBObject filterObject = createFilterObject(filters, searchTerm);
+
+        // Only fetch the serialized JSON, the id is returned anyway
+        BasicDBObject projectionObject = new BasicDBObject(JSON_FIELD, 1);
+        DBObject sortObject = null;
+
+        if (sortOptions != null) {
+            sortObject = new BasicDBObject(SortKeys.getStoredSortField(sortOptions.getField()), getMongoSortOrder(sortOptions.getSortOrder()));
+        } else if (searchTerm != null) {
+            sortObject = new BasicDBObject("score", new BasicDBObject("$meta", "textScore"));
+            projectionObject.append("score", new BasicDBObject("$meta", "textScore"));
+        }
+
+        List<byte[]> assets = new ArrayList<>();
+        for (DBObject result : query(filterObject, sortObject, projectionObject, pagination)) {
+            byte[] json = (byte[]) result.get(JSON_FIELD);
+            if (json == null) {
+                // The asset hasn't been written since JSON started being stored, or can't be
+                // stored that way, so fetch it in full
+                try {
+                    json = retrieveAsset(new ObjectId((String) result.get(ID))).toJsonBytes();
+                } catch (NonExistentArtefactException e) {
+                    // Deleted since the query was run
+                    continue;
+                }
+            }
+            assets.add(json);
+        }
+        return assets;
+    }
+
     /** {@inheritDoc} */
     @Override
     public int countAllAssets(Collection<AssetFilter> filters, String searchTerm) {
@@ -195,7 +346,7 @@ public class PersistenceBean implements Persistor {
     @SuppressWarnings("unchecked")
     @Override
     public List<Object> getDistinctValues(String field, Collection<AssetFilter> filters, String searchTerm) {
-        return getAssetCollection().distinct(field, createFilterObject(filters, searchTerm));
+        return getAssetCollection().distinct(field, createFilterObject(filters, searchTerm), queryReadPreference);
     }
 
     /**
@@ -221,6 +372,13 @@ public class PersistenceBean implements Persistor {
             List<Condition> conditions = filter.getConditions();
             if (conditions.size() == 1) {
                 filterList.add(createFilterObject(filter.getKey(), conditions.get(0)));
+            } else if (isAllEquals(conditions)) {
+                // A single $in can use one index scan rather than one for each value
+                BasicDBList values = new BasicDBList();
+                for (Condition condition : conditions) {
+                    values.add(condition.getValue());
+                }
+                filterList.add(new BasicDBObject(filter.getKey(), new BasicDBObject("$in", values)));
             } else {
                 BasicDBList list = new BasicDBList();
                 for (Condition condition : conditions) {
@@ -239,6 +397,15 @@ public class PersistenceBean implements Persistor {
         return filterObject;
     }
 
+    private static boolean isAllEquals(List<Condition> conditions) {
+        for (Condition condition : conditions) {
+            if (condition.getOperation() != Condition.Operation.EQUALS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private BasicDBObject createFilterObject(String field, Condition condition) {
         Object value = null;
         switch (condition.getOperation()) {
@@ -263,7 +430,7 @@ public class PersistenceBean implements Persistor {
         }
 
         List<DBObject> results = new ArrayList<DBObject>();
-        try (DBCursor cursor = getAssetCollection().find(filterObject, projectionObject)) {
+        try (DBCursor cursor = getAssetCollection().find(filterObject, projectionObject).setReadPreference(queryReadPreference)) {
             if (logger.isLoggable(Level.FINE)) {
                 logger.fine("query: found " + cursor.count() + " assets.");
             }
@@ -290,7 +457,7 @@ public class PersistenceBean implements Persistor {
             logger.fine("queryCount: Querying database with query object " + filterObject);
         }
 
-        DBCursor cursor = getAssetCollection().find(filterObject);
+        DBCursor cursor = getAssetCollection().find(filterObject).setReadPreference(queryReadPreference);
         int count = cursor.count();
 
         if (logger.isLoggable(Level.FINE)) {
@@ -316,6 +483,75 @@ public class PersistenceBean implements Persistor {
         return retrieveAsset(new ObjectId(assetId));
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public byte[] retrieveAssetJson(String assetId, Collection<AssetFilter> filters) throws NonExistentArtefactException {
+        ObjectId objId = new ObjectId(assetId);
+        BasicDBObject query = createFilterObject(filters, null);
+        query.append(ID, objId);
+
+        DBObject resultObj = getAssetCollection().findOne(query, new BasicDBObject(JSON_FIELD, 1));
+        if (resultObj == null) {
+            throw new NonExistentArtefactException(assetId, RepositoryRESTResource.ArtefactType.ASSET);
+        }
+
+        byte[] json = (byte[]) resultObj.get(JSON_FIELD);
+        if (json == null) {
+            // Not stored, either because the asset hasn't been written since JSON started being
+            // stored or because it has an attachments field. Serialize it now.
+            Asset asset = retrieveAsset(objId);
+            asset.getProperties().remove(Asset.ATTACHMENTS);
+            json = asset.toJsonBytes();
+        }
+        return json;
+    }
+
+    /**
+     * Retrieve the JSON of several assets with a single $in query. Like
+     * {@link #retrieveAssetJson(String, Collection)}, this always reads from the primary.
+     */
+    @Override
+    public Map<String, byte[]> retrieveAssetsJson(Collection<String> assetIds, Collection<AssetFilter> filters) {
+        BasicDBList ids = new BasicDBList();
+        for (String assetId : assetIds) {
+            if (ObjectId.isValid(assetId)) {
+                ids.add(new ObjectId(assetId));
+            }
+        }
+
+        Map<String, byte[]> result = new LinkedHashMap<>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+
+        BasicDBObject query = createFilterObject(filters, null);
+        query.append(ID, new BasicDBObject("$in", ids));
+        try (DBCursor cursor = getAssetCollection().find(query, new BasicDBObject(JSON_FIELD, 1))) {
+            for (DBObject obj : cursor) {
+                ObjectId id = (ObjectId) obj.get(ID);
+                byte[] json = (byte[]) obj.get(JSON_FIELD);
+                if (json == null) {
+                    // Not stored, see retrieveAssetJson
+                    try {
+                        Asset asset = retrieveAsset(id);
+                        asset.getProperties().remove(Asset.ATTACHMENTS);
+                        json = asset.toJsonBytes();
+                    } catch (NonExistentArtefactException e) {
+                        // Deleted since the query was run
+                        continue;
+                    }
+                }
+                result.put(id.toHexString(), json);
+            }
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("retrieveAssetsJson: found " + result.size() + " of " + assetIds.size() + " assets");
+        }
+
+        return result;
+    }
+
     /**
      * Retrieve a single asset by its id.
      *
@@ -329,6 +565,7 @@ public class PersistenceBean implements Persistor {
             throw new NonExistentArtefactException(assetId.toString(), RepositoryRESTResource.ArtefactType.ASSET);
         }
         convertObjectIdToHexString(resultObj);
+        removeInternalFields(resultObj);
         // All entries in a Mongo document have string keys, this is part of
         // the BSON spec, so this should be safe. Not very nice though.
         @SuppressWarnings("unchecked")
@@ -348,6 +585,14 @@ public class PersistenceBean implements Persistor {
             logger.fine("createAsset: inserting object into the database: " + obj);
         }
 
+        // Allocate the id now so that it can be included in the stored JSON
+        if (obj.get(ID) == null) {
+            obj.put(ID, new ObjectId());
+        }
+        removeInternalFields(obj);
+        addSerializedJson(obj);
+        addSortKeys(obj);
+
         coll.insert(obj);
 
         Asset createdAsset = null;
@@ -380,7 +625,30 @@ public class PersistenceBean implements Persistor {
             logger.fine(msg);
         }
 
-        coll.update(query, obj);
+        removeInternalFields(obj);
+        addSerializedJson(obj);
+        addSortKeys(obj);
+
+        // Set the asset's own fields and unset the ones it no longer has, rather than replacing the
+        // document, so that the download counts are never written here and an increment made by
+        // addDownloads at the same time can't be lost
+        DBObject existing = coll.findOne(query, new BasicDBObject(DOWNLOADS_FIELD, 0).append(ATTACHMENT_DOWNLOADS_FIELD, 0));
+        if (existing == null) {
+            throw new NonExistentArtefactException(assetId, RepositoryRESTResource.ArtefactType.ASSET);
+        }
+        obj.removeField(ID);
+        BasicDBObject removed = new BasicDBObject();
+        for (String field : existing.keySet()) {
+            if (!field.equals(ID) && !obj.containsField(field)) {
+                removed.append(field, "");
+            }
+        }
+
+        BasicDBObject update = new BasicDBObject("$set", obj);
+        if (!removed.isEmpty()) {
+            update.append("$unset", removed);
+        }
+        coll.update(query, update);
 
         return retrieveAsset(objId);
     }
@@ -470,6 +738,80 @@ public class PersistenceBean implements Persistor {
         getAttachmentCollection().remove(query);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void deleteAttachmentsForAsset(String assetId) {
+        DBObject query = new BasicDBObject("assetId", assetId);
+        List<String> gridFSIds = new ArrayList<>();
+        try (DBCursor cursor = getAttachmentCollection().find(query, new BasicDBObject(Attachment.GRIDFS_ID, 1))) {
+            for (DBObject attachment : cursor) {
+                Object gridFSId = attachment.get(Attachment.GRIDFS_ID);
+                if (gridFSId != null) {
+                    gridFSIds.add(gridFSId.toString());
+                }
+            }
+        }
+
+        for (int i = 0; i < gridFSIds.size(); i += DELETE_BATCH_SIZE) {
+            deleteContent(gridFSIds.subList(i, Math.min(i + DELETE_BATCH_SIZE, gridFSIds.size())));
+        }
+
+        getAttachmentCollection().remove(query);
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("deleteAttachmentsForAsset: deleted attachments and " + gridFSIds.size() + " content files for asset " + assetId);
+        }
+    }
+
+    /**
+     * Delete a batch of GridFS files with a single remove from each of the files and chunks
+     * collections, rather than removing the chunks of each file separately as GridFS does.
+     *
+     * @param gridFSIds the filenames of the GridFS files
+     */
+    private void deleteContent(List<String> gridFSIds) {
+        List<Object> fileIds = new ArrayList<>();
+        DBObject filesQuery = new BasicDBObject("filename", new BasicDBObject("$in", gridFSIds));
+        try (DBCursor cursor = getContentFilesCollection().find(filesQuery, new BasicDBObject(ID, 1))) {
+            for (DBObject file : cursor) {
+                fileIds.add(file.get(ID));
+            }
+        }
+        if (fileIds.isEmpty()) {
+            return;
+        }
+
+        // Remove the files before their chunks, so that a partly deleted file can't be read
+        getContentFilesCollection().remove(new BasicDBObject(ID, new BasicDBObject("$in", fileIds)));
+        getContentChunksCollection().remove(new BasicDBObject("files_id", new BasicDBObject("$in", fileIds)));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Collection<String> findAssetIdsWithOrphanedAttachments() {
+        List<String> assetIds = new ArrayList<>();
+        for (Object assetId : getAttachmentCollection().distinct("assetId")) {
+            if (assetId instanceof String && ObjectId.isValid((String) assetId)) {
+                assetIds.add((String) assetId);
+            }
+        }
+
+        Set<String> orphaned = new HashSet<>(assetIds);
+        for (int i = 0; i < assetIds.size(); i += DELETE_BATCH_SIZE) {
+            List<ObjectId> batch = new ArrayList<>();
+            for (String assetId : assetIds.subList(i, Math.min(i + DELETE_BATCH_SIZE, assetIds.size()))) {
+                batch.add(new ObjectId(assetId));
+            }
+            DBObject query = new BasicDBObject(ID, new BasicDBObject("$in", batch));
+            try (DBCursor cursor = getAssetCollection().find(query, new BasicDBObject(ID, 1))) {
+                for (DBObject asset : cursor) {
+                    orphaned.remove(asset.get(ID).toString());
+                }
+            }
+        }
+        return orphaned;
+    }
+
     @Override
     public AttachmentList findAttachmentsForAsset(String assetId) {
         BasicDBObject query = new BasicDBObject("assetId", assetId);
@@ -490,6 +832,42 @@ public class PersistenceBean implements Persistor {
         return AttachmentList.createAttachmentListFromMaps(results);
     }
 
+    /**
+     * Find the attachments of several assets with a single $in query
+     */
+    @Override
+    public Map<String, AttachmentList> findAttachmentsForAssets(Collection<String> assetIds) {
+        Map<String, List<Map<String, Object>>> attachmentsByAsset = new LinkedHashMap<>();
+        if (!assetIds.isEmpty()) {
+            BasicDBObject query = new BasicDBObject("assetId", new BasicDBObject("$in", new ArrayList<>(assetIds)));
+            try (DBCursor cursor = getAttachmentCollection().find(query)) {
+                for (DBObject attachment : cursor) {
+                    convertObjectIdToHexString(attachment);
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> oneResult = attachment.toMap();
+                    String assetId = (String) oneResult.get("assetId");
+                    List<Map<String, Object>> attachments = attachmentsByAsset.get(assetId);
+                    if (attachments == null) {
+                        attachments = new ArrayList<>();
+                        attachmentsByAsset.put(assetId, attachments);
+                    }
+                    attachments.add(oneResult);
+                }
+            }
+        }
+
+        Map<String, AttachmentList> result = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Map<String, Object>>> entry : attachmentsByAsset.entrySet()) {
+            result.put(entry.getKey(), AttachmentList.createAttachmentListFromMaps(entry.getValue()));
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("findAttachmentsForAssets: found attachments for " + result.size() + " of " + assetIds.size() + " assets");
+        }
+
+        return result;
+    }
+
     /**
      * Returns an InputStream of the content of the attachment or null if the attachment does not
      * exist.
@@ -498,6 +876,14 @@ public class PersistenceBean implements Persistor {
      */
     @Override
     public AttachmentContentResponse retrieveAttachmentContent(String gridFSId) throws NonExistentArtefactException {
+        if (contentReadPreference.isSlaveOk()) {
+            AttachmentContentResponse response = retrieveAttachmentContent(gridFSId, contentReadPreference);
+            if (response != null) {
+                return response;
+            }
+            // The content may not have been replicated yet, so try the primary
+        }
+
         GridFSDBFile file = gridFS.findOne(gridFSId);
 
         if (file != null) {
@@ -509,13 +895,99 @@ public class PersistenceBean implements Persistor {
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void addDownloads(Map<String, Map<String, Long>> counts) {
+        BulkWriteOperation bulk = getAssetCollection().initializeUnorderedBulkOperation();
+        int updates = 0;
+        for (Map.Entry<String, Map<String, Long>> assetCounts : counts.entrySet()) {
+            if (!ObjectId.isValid(assetCounts.getKey())) {
+                continue;
+            }
+
+            BasicDBObject increments = new BasicDBObject();
+            long total = 0;
+            for (Map.Entry<String, Long> attachmentCount : assetCounts.getValue().entrySet()) {
+                increments.append(ATTACHMENT_DOWNLOADS_FIELD + "." + attachmentCount.getKey(), attachmentCount.getValue());
+                total += attachmentCount.getValue();
+            }
+            increments.append(DOWNLOADS_FIELD, total);
+
+            // Not an upsert, so the counts for a deleted asset are dropped
+            bulk.find(makeQueryById(new ObjectId(assetCounts.getKey()))).update(new BasicDBObject("$inc", increments));
+            updates++;
+        }
+
+        if (updates > 0) {
+            bulk.execute();
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("addDownloads: added download counts for " + updates + " assets");
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<Map<String, Object>> retrieveDownloadCounts(int limit) {
+        DBObject query = new BasicDBObject(DOWNLOADS_FIELD, new BasicDBObject("$gt", 0));
+        DBObject projection = new BasicDBObject(Asset.NAME, 1).append(DOWNLOADS_FIELD, 1).append(ATTACHMENT_DOWNLOADS_FIELD, 1);
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        try (DBCursor cursor = getAssetCollection().find(query, projection)
+                .sort(new BasicDBObject(DOWNLOADS_FIELD, -1))
+                .limit(limit)
+                .setReadPreference(queryReadPreference)) {
+            for (DBObject obj : cursor) {
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("assetId", ((ObjectId) obj.get(ID)).toHexString());
+                result.put(Asset.NAME, obj.get(Asset.NAME));
+                result.put(DOWNLOADS_FIELD, ((Number) obj.get(DOWNLOADS_FIELD)).longValue());
+
+                Map<String, Object> attachments = new LinkedHashMap<>();
+                DBObject attachmentCounts = (DBObject) obj.get(ATTACHMENT_DOWNLOADS_FIELD);
+                if (attachmentCounts != null) {
+                    for (String attachmentId : attachmentCounts.keySet()) {
+                        attachments.put(attachmentId, ((Number) attachmentCounts.get(attachmentId)).longValue());
+                    }
+                }
+                result.put("attachments", attachments);
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Read attachment content using a particular read preference. The GridFS class always reads
+     * with the default read preference of its collections, so the files and chunks collections are
+     * queried directly.
+     *
+     * @return the content, or null if the file doesn't exist
+     */
+    private AttachmentContentResponse retrieveAttachmentContent(String gridFSId, ReadPreference readPreference) {
+        DBObject file = getContentFilesCollection().findOne(new BasicDBObject("filename", gridFSId), null, readPreference);
+        if (file == null) {
+            return null;
+        }
+
+        DBCursor chunks = getContentChunksCollection()
+                .find(new BasicDBObject("files_id", file.get(ID)))
+                .sort(new BasicDBObject("n", 1))
+                .setReadPreference(readPreference);
+        return new AttachmentContentResponse(new ChunkInputStream(chunks), (String) file.get("contentType"));
+    }
+
     /** {@inheritDoc} */
     @Override
     public String allocateNewId() {
         return new ObjectId().toHexString();
     }
 
-    /** {@inheritDoc} */
+    /**
+     * Build the indexes we need and fill in any data missing from assets written by older
+     * versions. Indexes are built in the background, so that the database isn't blocked while they
+     * are built, and progress is logged as each step finishes.
+     */
     @Override
     public void initialize() {
         // Make sure the fields we want to query are indexed
@@ -527,9 +999,137 @@ public class PersistenceBean implements Persistor {
         for (String indexField : searchIndexFields) {
             textIndex.add(indexField, "text");
         }
-        assets.ensureIndex(textIndex.get());
+        ensureIndex(assets, textIndex.get());
 
         // Add Attachment(assetId) index
-        attachments.ensureIndex(new BasicDBObject("assetId", 1));
+        ensureIndex(attachments, new BasicDBObject("assetId", 1));
+
+        // Add index for sorting on download counts
+        ensureIndex(assets, new BasicDBObject(DOWNLOADS_FIELD, 1));
+
+        // Add indexes for sorting on names and versions
+        for (String sortKeyField : SortKeys.getSortKeyFields()) {
+            ensureIndex(assets, new BasicDBObject(sortKeyField, 1));
+        }
+
+        storeMissingJson(assets);
+        storeMissingSortKeys(assets);
+    }
+
+    /**
+     * Create an index, if it doesn't exist, in the background
+     */
+    private static void ensureIndex(DBCollection collection, DBObject keys) {
+        long start = System.currentTimeMillis();
+        collection.ensureIndex(keys, new BasicDBObject("background", true));
+        logger.info("Ensured index " + keys + " on " + collection.getName() + " in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Store the serialized JSON for any assets which were written before it was stored with each
+     * asset.
+     */
+    private void storeMissingJson(DBCollection assets) {
+        BasicDBObject missingJson = new BasicDBObject(JSON_FIELD, new BasicDBObject("$exists", false))
+                .append(Asset.ATTACHMENTS, new BasicDBObject("$exists", false));
+
+        int count = 0;
+        try (DBCursor cursor = assets.find(missingJson)) {
+            for (DBObject obj : cursor) {
+                addSerializedJson(obj);
+                // Don't overwrite JSON stored by a write that happened since the query
+                DBObject query = new BasicDBObject(ID, obj.get(ID)).append(JSON_FIELD, new BasicDBObject("$exists", false));
+                assets.update(query, new BasicDBObject("$set", new BasicDBObject(JSON_FIELD, obj.get(JSON_FIELD))));
+                count++;
+            }
+        }
+
+        if (count > 0) {
+            logger.info("Stored the serialized JSON of " + count + " assets");
+        }
+    }
+
+    /**
+     * Store the sort keys for any assets which were written before sort keys were stored with
+     * each asset.
+     */
+    private void storeMissingSortKeys(DBCollection assets) {
+        BasicDBObject missingSortKeys = new BasicDBObject(SortKeys.SORT_KEYS_FIELD, new BasicDBObject("$exists", false));
+
+        int count = 0;
+        try (DBCursor cursor = assets.find(missingSortKeys)) {
+            for (DBObject obj : cursor) {
+                addSortKeys(obj);
+                // Don't overwrite sort keys stored by a write that happened since the query
+                DBObject query = new BasicDBObject(ID, obj.get(ID)).append(SortKeys.SORT_KEYS_FIELD, new BasicDBObject("$exists", false));
+                assets.update(query, new BasicDBObject("$set", new BasicDBObject(SortKeys.SORT_KEYS_FIELD, obj.get(SortKeys.SORT_KEYS_FIELD))));
+                count++;
+            }
+        }
+
+        if (count > 0) {
+            logger.info("Stored the sort keys of " + count + " assets");
+        }
+    }
+
+    /**
+     * Reads the data of a sequence of GridFS chunks as a single stream
+     */
+    private static class ChunkInputStream extends InputStream {
+
+        private final DBCursor chunks;
+        private byte[] chunk = new byte[0];
+        private int position = 0;
+
+        ChunkInputStream(DBCursor chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            return chunk[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int count = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            chunks.close();
+        }
+
+        /**
+         * Move on to the next chunk if the current one has been read
+         *
+         * @return false if there is no more data
+         */
+        private boolean nextChunk() throws IOException {
+            while (position >= chunk.length) {
+                if (!chunks.hasNext()) {
+                    return false;
+                }
+                try {
+                    chunk = (byte[]) chunks.next().get("data");
+                } catch (MongoException e) {
+                    throw new IOException("Unable to read attachment content", e);
+                }
+                position = 0;
+            }
+            return true;
+        }
     }
 }
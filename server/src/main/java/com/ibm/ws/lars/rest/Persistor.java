@@ -19,6 +19,7 @@ package com.ibm.ws.lars.rest;
 import java.io.InputStream;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import com.ibm.ws.lars.rest.exceptions.AssetPersistenceException;
 import com.ibm.ws.lars.rest.exceptions.InvalidJsonAssetException;
@@ -58,6 +59,18 @@ public interface Persistor {
      */
     public AssetList retrieveAllAssets(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions);
 
+    /**
+     * Retrieve the serialized JSON of a list of assets. The filters, search term, pagination and
+     * sort options are applied in the same way as
+     * {@link #retrieveAllAssets(Collection, String, PaginationOptions, SortOptions)}.
+     * <p>
+     * Where possible, implementations should return JSON which was serialized when the asset was
+     * last written, rather than serializing each asset again.
+     *
+     * @return a list containing the JSON of each matching asset
+     */
+    public List<byte[]> retrieveAllAssetsJson(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions);
+
     /**
      * Retrieve the number of assets which match the given set of filters.
      * <p>
@@ -96,6 +109,33 @@ public interface Persistor {
      */
     public Asset retrieveAsset(String assetId) throws NonExistentArtefactException;
 
+    /**
+     * Retrieve the serialized JSON of a single asset, without any attachments field.
+     * <p>
+     * Where possible, implementations should return JSON which was serialized when the asset was
+     * last written, rather than serializing the asset again.
+     *
+     * @param assetId the id of the asset
+     * @param filters filters which the asset must match, may be empty
+     * @return the JSON of the asset
+     * @throws NonExistentArtefactException if there is no asset with the given id which matches
+     *             the filters
+     */
+    public byte[] retrieveAssetJson(String assetId, Collection<AssetFilter> filters) throws NonExistentArtefactException;
+
+    /**
+     * Retrieve the serialized JSON of several assets, without any attachments fields, in the same
+     * way as {@link #retrieveAssetJson(String, Collection)}.
+     * <p>
+     * Implementations which use a database should fetch all the assets with a single query.
+     *
+     * @param assetIds the ids of the assets
+     * @param filters filters which the assets must match, may be empty
+     * @return a map from asset id to JSON, which only contains the assets which exist and match the
+     *         filters
+     */
+    public Map<String, byte[]> retrieveAssetsJson(Collection<String> assetIds, Collection<AssetFilter> filters);
+
     /**
      * Create a single asset.
      *
@@ -124,6 +164,16 @@ public interface Persistor {
      */
     public AttachmentList findAttachmentsForAsset(String assetId);
 
+    /**
+     * Returns the attachments of several assets. Implementations which use a database should
+     * fetch all the attachments with a single query.
+     *
+     * @param assetIds the ids of the assets
+     * @return a map from asset id to the attachments of that asset, which only contains the
+     *         assets which have attachments
+     */
+    public Map<String, AttachmentList> findAttachmentsForAssets(Collection<String> assetIds);
+
     /**
      * Creates attachment content (ie file contents) in the persistence store.
      *
@@ -155,6 +205,19 @@ public interface Persistor {
      */
     public void deleteAttachmentMetadata(String attachmentId);
 
+    /**
+     * Deletes the metadata and content of all the attachments belonging to the specified asset.
+     * The content is deleted before the metadata, so if this fails part way through it can be
+     * called again to finish the job.
+     */
+    public void deleteAttachmentsForAsset(String assetId);
+
+    /**
+     * Returns the ids of assets which no longer exist but which still have attachments, for
+     * example because the server stopped before it had deleted them.
+     */
+    public Collection<String> findAssetIdsWithOrphanedAttachments();
+
     /**
      * Returns an input stream of the content of the specified attachment.
      *
@@ -162,6 +225,24 @@ public interface Persistor {
      */
     public AttachmentContentResponse retrieveAttachmentContent(String gridFSId) throws NonExistentArtefactException;
 
+    /**
+     * Adds to the download counts of some assets and their attachments. Counts for assets which no
+     * longer exist are discarded.
+     *
+     * @param counts the number of downloads to add, keyed by asset id and then by attachment id
+     */
+    public void addDownloads(Map<String, Map<String, Long>> counts);
+
+    /**
+     * Retrieves the download counts of the most downloaded assets, most downloaded first. Each
+     * entry in the list contains the assetId, name and downloads of the asset, and an attachments
+     * map containing the downloads of each attachment, keyed by attachment id.
+     *
+     * @param limit the maximum number of assets to return
+     * @return the download counts
+     */
+    public List<Map<String, Object>> retrieveDownloadCounts(int limit);
+
     /**
      * Allocates and returns a new unique id. This is useful if the id of an object has to be set
      * before creating it in the persistence store.
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.enterprise.inject.Produces;
+
+/**
+ * Chooses the {@link Persistor} which is injected into the rest of the application.
+ * <p>
+ * The {@link PersistenceBean}, which stores the repository in MongoDB, is used unless a directory
+ * for the {@link FilePersistor} is set or the {@link IndexedMemoryPersistor} is enabled in the
+ * {@link Configuration}. Only the chosen persistor is created, so MongoDB is not contacted when
+ * one of the others is used.
+ * <p>
+ * The chosen persistor is wrapped in a {@link RecordingPersistor}, so that its calls can be
+ * recorded as {@link OperationEvents}.
+ */
+@ApplicationScoped
+public class PersistorProducer {
+
+    private static final Logger logger = Logger.getLogger(PersistorProducer.class.getCanonicalName());
+
+    @Produces
+    @ApplicationScoped
+    public Persistor getPersistor(Configuration configuration, Instance<PersistenceBean> mongoPersistor, Instance<FilePersistor> filePersistor,
+                                  Instance<IndexedMemoryPersistor> memoryPersistor) {
+        Persistor persistor;
+        if (configuration.getFileStoreDirectory() != null) {
+            logger.info("Storing the repository in " + configuration.getFileStoreDirectory());
+            persistor = filePersistor.get();
+        } else if (configuration.isMemoryStoreEnabled()) {
+            logger.warning("Holding the repository in memory, it will be lost when the server stops");
+            persistor = memoryPersistor.get();
+        } else {
+            persistor = mongoPersistor.get();
+        }
+        return new RecordingPersistor(persistor);
+    }
+
+}
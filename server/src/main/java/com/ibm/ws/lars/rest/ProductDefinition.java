@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.ws.lars.rest.model.Asset;
+
+/**
+ * Describes the product that a client wants to install assets into.
+ * <p>
+ * This mirrors the ProductDefinition used by the client library and installUtility, and
+ * {@link #matches(Asset)} applies the same rules as the client uses when it checks an asset's
+ * appliesToFilterInfo.
+ */
+public class ProductDefinition {
+
+    private final String id;
+    private final String version;
+    private final String edition;
+    private final String installType;
+
+    /**
+     * @param id the product id, e.g. com.ibm.websphere.appserver
+     * @param version the product version, may be null to match any version
+     * @param edition the product edition, may be null
+     * @param installType the product install type, may be null
+     */
+    public ProductDefinition(String id, String version, String edition, String installType) {
+        this.id = id;
+        this.version = version;
+        this.edition = edition;
+        this.installType = installType;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getEdition() {
+        return edition;
+    }
+
+    public String getInstallType() {
+        return installType;
+    }
+
+    /**
+     * Check whether an asset applies to this product.
+     * <p>
+     * An asset applies if any of the entries in its appliesToFilterInfo are for this product id. If
+     * the first entry for this product id has a version range, edition list or install type which
+     * don't match this product, the asset does not apply.
+     *
+     * @param asset the asset to check
+     * @return true if the asset applies to this product
+     */
+    public boolean matches(Asset asset) {
+        for (Map<String, Object> filterInfo : getAppliesToFilterInfo(asset)) {
+            if (id == null || !id.equals(filterInfo.get("productId"))) {
+                continue;
+            }
+
+            // Only the first entry for our product id is considered, as the client does
+            return matchesVersion(filterInfo) && matchesEdition(filterInfo) && matchesInstallType(filterInfo);
+        }
+        return false;
+    }
+
+    private boolean matchesVersion(Map<String, Object> filterInfo) {
+        LibertyVersion productVersion = LibertyVersion.parse(version);
+        if (productVersion == null) {
+            return true;
+        }
+
+        Map<String, Object> minVersion = asMap(filterInfo.get("minVersion"));
+        Map<String, Object> maxVersion = asMap(filterInfo.get("maxVersion"));
+
+        LibertyVersion min = minVersion == null ? null : LibertyVersion.parse((String) minVersion.get("value"));
+        LibertyVersion max = maxVersion == null ? null : LibertyVersion.parse((String) maxVersion.get("value"));
+
+        return productVersion.isInRange(min, isInclusive(minVersion), max, isInclusive(maxVersion));
+    }
+
+    private boolean matchesEdition(Map<String, Object> filterInfo) {
+        Object rawEditions = filterInfo.get("rawEditions");
+        if (rawEditions instanceof Collection && !((Collection<?>) rawEditions).isEmpty()) {
+            return ((Collection<?>) rawEditions).contains(edition);
+        }
+        return true;
+    }
+
+    private boolean matchesInstallType(Map<String, Object> filterInfo) {
+        Object assetInstallType = filterInfo.get("installType");
+        return assetInstallType == null || assetInstallType.equals(installType);
+    }
+
+    private static boolean isInclusive(Map<String, Object> bound) {
+        if (bound == null) {
+            return true;
+        }
+        Object inclusive = bound.get("inclusive");
+        return !(inclusive instanceof Boolean) || (Boolean) inclusive;
+    }
+
+    /**
+     * Returns the appliesToFilterInfo entries from an asset
+     *
+     * @param asset the asset
+     * @return the list of appliesToFilterInfo maps, never null
+     */
+    static List<Map<String, Object>> getAppliesToFilterInfo(Asset asset) {
+        Object filterInfo = asset.getWlpInformationField("appliesToFilterInfo");
+        if (!(filterInfo instanceof List)) {
+            return Collections.emptyList();
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Object entry : (List<?>) filterInfo) {
+            Map<String, Object> entryMap = asMap(entry);
+            if (entryMap != null) {
+                result.add(entryMap);
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object o) {
+        if (o instanceof Map) {
+            return (Map<String, Object>) o;
+        }
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "ProductDefinition: id=" + id + ", version=" + version + ", edition=" + edition + ", installType=" + installType;
+    }
+
+}
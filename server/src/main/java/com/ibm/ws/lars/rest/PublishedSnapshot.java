@@ -0,0 +1,383 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import com.ibm.ws.lars.rest.Condition.Operation;
+import com.ibm.ws.lars.rest.model.Asset;
+import com.ibm.ws.lars.rest.model.AssetList;
+
+/**
+ * Holds an immutable in-memory snapshot of every published asset, so that queries from users who
+ * can only see published assets can be answered without going to the persistence store.
+ * <p>
+ * The snapshot is loaded the first time it is needed. When an {@link AssetChangedEvent} is
+ * observed, a new snapshot is built from the old one and swapped in, so readers never need to take
+ * a lock and always see a consistent set of assets.
+ * <p>
+ * The snapshot indexes the fields that clients most commonly filter on, so a query filtering on
+ * one of those fields only needs to check the assets with a matching value. Other filters are
+ * checked against every published asset.
+ * <p>
+ * This is only used if enabled in the {@link Configuration}. Writes made by other servers sharing
+ * the same database are only seen if the {@link InvalidationBus} is enabled too.
+ */
+@ApplicationScoped
+public class PublishedSnapshot {
+
+    private static final Logger logger = Logger.getLogger(PublishedSnapshot.class.getCanonicalName());
+
+    /** The fields which are indexed, matching those that the client library filters on */
+    static final List<String> INDEXED_FIELDS = Collections.unmodifiableList(Arrays.asList(
+            Asset.TYPE,
+            "wlpInformation.appliesToFilterInfo.productId",
+            "wlpInformation.appliesToFilterInfo.minVersion.value",
+            "wlpInformation.appliesToFilterInfo.hasMaxVersion",
+            "wlpInformation.visibility",
+            "wlpInformation2.visibility",
+            "wlpInformation.provideFeature",
+            "wlpInformation.shortName",
+            "wlpInformation.lowerCaseShortName",
+            "wlpInformation.vanityRelativeURL"));
+
+    @Inject
+    private Persistor persistenceBean;
+
+    @Inject
+    private Configuration configuration;
+
+    private volatile Snapshot snapshot = null;
+
+    /**
+     * Check whether a query can be answered from the snapshot.
+     * <p>
+     * A query can be answered if the published snapshot is enabled, the query is restricted to
+     * published assets and it does not use a search term or sort on download counts, which aren't
+     * held in the snapshot.
+     *
+     * @param filters the filters
+     * @param searchTerm the search term, may be null
+     * @param sortOptions the sort options, may be null
+     * @return true if the query can be answered from the snapshot
+     */
+    public boolean canServe(Collection<AssetFilter> filters, String searchTerm, SortOptions sortOptions) {
+        return configuration.isPublishedSnapshotEnabled()
+               && searchTerm == null
+               && !AssetMatcher.isDownloadCountSort(sortOptions)
+               && AssetMatcher.isPublishedOnly(filters);
+    }
+
+    /**
+     * Retrieve the published assets which match the given filters.
+     * <p>
+     * Callers must check {@link #canServe(Collection, String, SortOptions)} first.
+     *
+     * @see Persistor#retrieveAllAssets(Collection, String, PaginationOptions, SortOptions)
+     */
+    public AssetList retrieveAllAssets(Collection<AssetFilter> filters, PaginationOptions pagination, SortOptions sortOptions) {
+        List<Asset> assets = getSnapshot().find(filters);
+
+        if (sortOptions != null) {
+            Collections.sort(assets, AssetMatcher.getComparator(sortOptions));
+        }
+
+        assets = AssetMatcher.getPage(assets, pagination);
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Asset asset : assets) {
+            result.add(new HashMap<>(asset.getProperties()));
+        }
+        return AssetList.createAssetListFromMaps(result);
+    }
+
+    /**
+     * Count the published assets which match the given filters.
+     * <p>
+     * Callers must check {@link #canServe(Collection, String, SortOptions)} first.
+     *
+     * @see Persistor#countAllAssets(Collection, String)
+     */
+    public int countAllAssets(Collection<AssetFilter> filters) {
+        return getSnapshot().find(filters).size();
+    }
+
+    /**
+     * Get the distinct values of a field across the published assets which match the given
+     * filters.
+     * <p>
+     * Callers must check {@link #canServe(Collection, String, SortOptions)} first.
+     *
+     * @see Persistor#getDistinctValues(String, Collection, String)
+     */
+    public List<Object> getDistinctValues(String field, Collection<AssetFilter> filters) {
+        Set<Object> values = new LinkedHashSet<>();
+        for (Asset asset : getSnapshot().find(filters)) {
+            values.addAll(AssetMatcher.getFieldValues(asset, field));
+        }
+        return new ArrayList<>(values);
+    }
+
+    /**
+     * Replace the snapshot when an asset is written
+     *
+     * @param event the event describing the change
+     */
+    public synchronized void assetChanged(@Observes AssetChangedEvent event) {
+        if (snapshot == null) {
+            // The change will be picked up when the snapshot is loaded
+            return;
+        }
+
+        if (event.isReset()) {
+            // Load it again the next time it is needed
+            snapshot = null;
+            return;
+        }
+
+        Asset asset = !event.isDelete() && isPublished(event.getAsset()) ? copyAsset(event.getAsset()) : null;
+        snapshot = snapshot.withAsset(event.getAssetId(), asset);
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("assetChanged: updated snapshot after " + event + ", it now contains " + snapshot.assets.size() + " assets");
+        }
+    }
+
+    /**
+     * Load the snapshot now, if it is enabled, rather than when it is first needed
+     */
+    void warmUp() {
+        if (configuration.isPublishedSnapshotEnabled()) {
+            getSnapshot();
+        }
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = load();
+        }
+        return current;
+    }
+
+    private synchronized Snapshot load() {
+        if (snapshot == null) {
+            TreeMap<String, Asset> assets = new TreeMap<>();
+            for (Asset asset : persistenceBean.retrieveAllAssets(AssetMatcher.PUBLISHED_ASSETS, null, null, null)) {
+                assets.put(asset.get_id(), copyAsset(asset));
+            }
+            snapshot = Snapshot.create(assets);
+
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("load: loaded snapshot of " + assets.size() + " published assets");
+            }
+        }
+        return snapshot;
+    }
+
+    private static boolean isPublished(Asset asset) {
+        return Asset.State.PUBLISHED.getValue().equals(asset.getProperties().get(Asset.STATE));
+    }
+
+    /**
+     * Take a copy, without the attachments, so that later changes to the asset passed in don't
+     * affect the snapshot
+     */
+    private static Asset copyAsset(Asset asset) {
+        Asset copy = new Asset(asset);
+        copy.getProperties().remove(Asset.ATTACHMENTS);
+        return copy;
+    }
+
+    /**
+     * An immutable set of published assets, together with indexes on the {@link #INDEXED_FIELDS}.
+     * <p>
+     * A snapshot is never changed once it has been created. A change to one asset creates a new
+     * snapshot which shares every index entry that the change doesn't affect with the old one.
+     */
+    private static class Snapshot {
+
+        /** Assets keyed by id, in id order */
+        private final Map<String, Asset> assets;
+
+        /** For each indexed field, a map from each string value to the ids of the assets with that value */
+        private final Map<String, Map<String, Set<String>>> indexes;
+
+        private Snapshot(Map<String, Asset> assets, Map<String, Map<String, Set<String>>> indexes) {
+            this.assets = assets;
+            this.indexes = indexes;
+        }
+
+        /**
+         * Create a snapshot of the given assets, indexing every one of them
+         *
+         * @param assets the assets keyed by id, which must not be changed afterwards
+         */
+        static Snapshot create(TreeMap<String, Asset> assets) {
+            Map<String, Map<String, Set<String>>> indexes = new HashMap<>();
+            for (String field : INDEXED_FIELDS) {
+                Map<String, Set<String>> index = new HashMap<>();
+                for (Asset asset : assets.values()) {
+                    for (String value : getIndexedValues(asset, field)) {
+                        Set<String> ids = index.get(value);
+                        if (ids == null) {
+                            ids = new TreeSet<>();
+                            index.put(value, ids);
+                        }
+                        ids.add(asset.get_id());
+                    }
+                }
+                indexes.put(field, index);
+            }
+            return new Snapshot(Collections.unmodifiableMap(assets), indexes);
+        }
+
+        /**
+         * Create a new snapshot in which one asset has been added, replaced or removed. Only the
+         * index entries for the values which the old or new asset has are copied and updated.
+         *
+         * @param id the id of the asset
+         * @param asset the new asset, or null if the asset should no longer be in the snapshot
+         * @return the new snapshot
+         */
+        Snapshot withAsset(String id, Asset asset) {
+            Asset oldAsset = assets.get(id);
+            if (oldAsset == null && asset == null) {
+                return this;
+            }
+
+            TreeMap<String, Asset> newAssets = new TreeMap<>(assets);
+            if (asset == null) {
+                newAssets.remove(id);
+            } else {
+                newAssets.put(id, asset);
+            }
+
+            Map<String, Map<String, Set<String>>> newIndexes = new HashMap<>(indexes);
+            for (String field : INDEXED_FIELDS) {
+                Set<String> oldValues = getIndexedValues(oldAsset, field);
+                Set<String> newValues = getIndexedValues(asset, field);
+                if (oldValues.equals(newValues)) {
+                    continue;
+                }
+
+                Map<String, Set<String>> index = new HashMap<>(indexes.get(field));
+                for (String value : oldValues) {
+                    if (!newValues.contains(value)) {
+                        Set<String> ids = new TreeSet<>(index.get(value));
+                        ids.remove(id);
+                        if (ids.isEmpty()) {
+                            index.remove(value);
+                        } else {
+                            index.put(value, ids);
+                        }
+                    }
+                }
+                for (String value : newValues) {
+                    if (!oldValues.contains(value)) {
+                        Set<String> existing = index.get(value);
+                        Set<String> ids = existing == null ? new TreeSet<String>() : new TreeSet<>(existing);
+                        ids.add(id);
+                        index.put(value, ids);
+                    }
+                }
+                newIndexes.put(field, index);
+            }
+
+            return new Snapshot(Collections.unmodifiableMap(newAssets), newIndexes);
+        }
+
+        /**
+         * @return the distinct string values of a field of an asset, or an empty set if the asset
+         *         is null
+         */
+        private static Set<String> getIndexedValues(Asset asset, String field) {
+            if (asset == null) {
+                return Collections.emptySet();
+            }
+            return new HashSet<>(AssetMatcher.getStrings(AssetMatcher.getFieldValues(asset, field)));
+        }
+
+        /**
+         * Returns the assets which match the filters, in id order
+         */
+        List<Asset> find(Collection<AssetFilter> filters) {
+            Collection<String> candidateIds = getCandidateIds(filters);
+
+            List<Asset> result = new ArrayList<>();
+            for (String id : candidateIds) {
+                Asset asset = assets.get(id);
+                if (AssetMatcher.matchesAll(asset, filters)) {
+                    result.add(asset);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Use the indexes to find the smallest set of assets which could match the filters
+         */
+        private Collection<String> getCandidateIds(Collection<AssetFilter> filters) {
+            Collection<String> candidateIds = assets.keySet();
+
+            for (AssetFilter filter : filters) {
+                Map<String, Set<String>> index = indexes.get(filter.getKey());
+                if (index == null || !allEquals(filter)) {
+                    continue;
+                }
+
+                Set<String> ids = new TreeSet<>();
+                for (Condition condition : filter.getConditions()) {
+                    Set<String> matchingIds = index.get(condition.getValue());
+                    if (matchingIds != null) {
+                        ids.addAll(matchingIds);
+                    }
+                }
+                if (ids.size() < candidateIds.size()) {
+                    candidateIds = ids;
+                }
+            }
+            return candidateIds;
+        }
+
+        private static boolean allEquals(AssetFilter filter) {
+            for (Condition condition : filter.getConditions()) {
+                if (condition.getOperation() != Operation.EQUALS) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
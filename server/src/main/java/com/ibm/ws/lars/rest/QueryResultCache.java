@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+/**
+ * A bounded cache of serialized query results, so that repeated identical queries can be answered
+ * without going to the persistence store or serializing the result again. Since the cached
+ * {@link SerializedContent} keeps each encoding of the result it has produced, compressed
+ * responses don't need to be compressed again either.
+ * <p>
+ * Results are keyed by a normalized form of the query, so that the order of the filters and of the
+ * values within a filter does not matter. Since the filters for a user who can only see published
+ * assets always include a state filter, the key also distinguishes between callers in different
+ * roles.
+ * <p>
+ * Every write to the repository increments a generation counter, and cached results from an
+ * earlier generation are ignored. This means that a result is never returned once an asset has
+ * been changed by this server, or by another server if the {@link InvalidationBus} is enabled.
+ * <p>
+ * The cache is disabled unless a size is set in the {@link Configuration}. Writes made by other
+ * servers sharing the same database are only seen if the {@link InvalidationBus} is enabled too.
+ */
+@ApplicationScoped
+public class QueryResultCache {
+
+    private static final Logger logger = Logger.getLogger(QueryResultCache.class.getCanonicalName());
+
+    /** Orders normalized filters by field name, then by conditions */
+    private static final Comparator<List<String>> FILTER_ORDER = new Comparator<List<String>>() {
+        @Override
+        public int compare(List<String> a, List<String> b) {
+            for (int i = 0; i < a.size() && i < b.size(); i++) {
+                int c = a.get(i).compareTo(b.get(i));
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return a.size() - b.size();
+        }
+    };
+
+    @Inject
+    private Configuration configuration;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private Map<List<Object>, CachedResult> cache = null;
+
+    /**
+     * @return true if the cache is enabled
+     */
+    public boolean isEnabled() {
+        return configuration.getQueryCacheSize() > 0;
+    }
+
+    /**
+     * Check whether the result of a query can be cached. Results sorted on download counts can't
+     * be, since the counts change without an asset being written, so nothing would invalidate
+     * them.
+     *
+     * @param sortOptions the sort options of the query, may be null
+     * @return true if the result can be cached
+     */
+    public static boolean canCache(SortOptions sortOptions) {
+        return !AssetMatcher.isDownloadCountSort(sortOptions);
+    }
+
+    /**
+     * Returns the current repository generation. This must be read before running a query whose
+     * result will be passed to {@link #put(List, long, SerializedContent)}.
+     *
+     * @return the current generation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Look up a cached result
+     *
+     * @param key the key, created with {@link #createKey(Collection, String, PaginationOptions, SortOptions)}
+     * @return the cached result, or null if there is no result for the current generation
+     */
+    public synchronized SerializedContent get(List<Object> key) {
+        if (cache == null) {
+            return null;
+        }
+
+        CachedResult result = cache.get(key);
+        if (result == null) {
+            return null;
+        }
+        if (result.generation != generation.get()) {
+            cache.remove(key);
+            return null;
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("get: cache hit for " + key);
+        }
+        return result.content;
+    }
+
+    /**
+     * Store a result in the cache
+     *
+     * @param key the key, created with {@link #createKey(Collection, String, PaginationOptions, SortOptions)}
+     * @param resultGeneration the generation returned by {@link #getGeneration()} before the query
+     *            was run
+     * @param content the serialized result
+     */
+    public synchronized void put(List<Object> key, long resultGeneration, SerializedContent content) {
+        if (resultGeneration != generation.get()) {
+            // The repository has changed since the query was run
+            return;
+        }
+
+        if (cache == null) {
+            final int maxSize = configuration.getQueryCacheSize();
+            cache = new LinkedHashMap<List<Object>, CachedResult>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, CachedResult> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+        cache.put(key, new CachedResult(resultGeneration, content));
+    }
+
+    /**
+     * Invalidate all cached results when an asset is written
+     *
+     * @param event the event describing the change
+     */
+    public void assetChanged(@Observes AssetChangedEvent event) {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Create a cache key for a query.
+     * <p>
+     * The key does not depend on the order of the filters, or the order of the conditions within a
+     * filter.
+     *
+     * @see Persistor#retrieveAllAssets(Collection, String, PaginationOptions, SortOptions)
+     */
+    public static List<Object> createKey(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions) {
+        List<List<String>> normalizedFilters = new ArrayList<>();
+        for (AssetFilter filter : filters) {
+            List<String> conditions = new ArrayList<>();
+            for (Condition condition : filter.getConditions()) {
+                conditions.add(condition.toString());
+            }
+            Collections.sort(conditions);
+
+            List<String> normalizedFilter = new ArrayList<>();
+            normalizedFilter.add(filter.getKey());
+            normalizedFilter.addAll(conditions);
+            normalizedFilters.add(normalizedFilter);
+        }
+        Collections.sort(normalizedFilters, FILTER_ORDER);
+
+        return Arrays.<Object> asList(normalizedFilters, searchTerm, pagination, sortOptions);
+    }
+
+    private static class CachedResult {
+        private final long generation;
+        private final SerializedContent content;
+
+        CachedResult(long generation, SerializedContent content) {
+            this.generation = generation;
+            this.content = content;
+        }
+    }
+
+}
@@ -16,16 +16,10 @@
 
 package com.ibm.ws.lars.rest;
 
-import javax.inject.Inject;
 import javax.ws.rs.ApplicationPath;
 import javax.ws.rs.core.Application;
 
 @ApplicationPath("/ma/v1")
 public class RESTApplication extends Application {
 
-    @Inject
-    RESTApplication(Persistor persistor) {
-        persistor.initialize();
-    }
-
 }
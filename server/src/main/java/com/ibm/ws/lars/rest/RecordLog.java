@@ -0,0 +1,532 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of records, each of which sets or removes the value stored under a key, used
+ * by the {@link FilePersistor}.
+ * <p>
+ * Only the position in the log of the latest record for each key is kept in memory. Values are
+ * read from the log when they are needed, so the memory used depends on the number of keys rather
+ * than on the size of the values.
+ * <p>
+ * Each record carries a checksum, so a record which was only partly written when the server
+ * stopped is found and discarded when the log is opened. The positions of the records are saved to
+ * an index file when the log is closed, and the index is memory-mapped when the log is opened so
+ * that only the records written since it was saved have to be read. If the index is missing or
+ * out of date, the whole log is read instead.
+ * <p>
+ * Records which have been replaced or removed are left in the log until it is compacted, which
+ * writes the live records to a new log and replaces the old one.
+ */
+class RecordLog implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(RecordLog.class.getCanonicalName());
+
+    static final String LOG_FILE = "records.log";
+    static final String INDEX_FILE = "records.index";
+
+    private static final int LOG_MAGIC = 0x4C415253;
+    private static final int INDEX_MAGIC = 0x4C415249;
+    private static final int VERSION = 1;
+
+    /** The log header holds the magic number, the version and the generation */
+    private static final int LOG_HEADER_LENGTH = 16;
+
+    /** Each record starts with the length of its body and the checksum of its body */
+    private static final int RECORD_HEADER_LENGTH = 8;
+
+    /** The largest record body which will be read, anything bigger must be corrupt */
+    private static final int MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+
+    /** The log isn't compacted until it has at least this much dead space */
+    private static final long MIN_COMPACTION_BYTES = 1024 * 1024;
+
+    private final File directory;
+
+    private final int numTypes;
+
+    /** The position of the latest record for each key, for each type of record */
+    private final List<Map<String, Long>> positions;
+
+    private RandomAccessFile file;
+
+    private FileChannel channel;
+
+    /** Identifies this version of the log, so that an index of an older log isn't used */
+    private long generation;
+
+    /** The total size of the latest record for each key */
+    private long liveBytes = 0;
+
+    /**
+     * Open or create the log in a directory
+     *
+     * @param directory the directory holding the log
+     * @param numTypes the number of types of record, types are numbered from zero
+     * @throws IOException if the log can't be read
+     */
+    RecordLog(File directory, int numTypes) throws IOException {
+        this.directory = directory;
+        this.numTypes = numTypes;
+        this.positions = new ArrayList<>();
+        for (int i = 0; i < numTypes; i++) {
+            positions.add(new LinkedHashMap<String, Long>());
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the directory " + directory);
+        }
+
+        File logFile = new File(directory, LOG_FILE);
+        boolean exists = logFile.exists() && logFile.length() >= LOG_HEADER_LENGTH;
+        file = new RandomAccessFile(logFile, "rw");
+        channel = file.getChannel();
+
+        if (exists) {
+            ByteBuffer header = readFully(0, LOG_HEADER_LENGTH);
+            if (header.getInt() != LOG_MAGIC || header.getInt() != VERSION) {
+                channel.close();
+                file.close();
+                throw new IOException(logFile + " is not a LARS record log");
+            }
+            generation = header.getLong();
+            long start = readIndex();
+            scan(start);
+        } else {
+            generation = System.currentTimeMillis();
+            channel.truncate(0);
+            channel.write(createHeader(generation), 0);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * @param type the type of record
+     * @return the keys which have a value, in the order they were first written
+     */
+    synchronized List<String> getKeys(int type) {
+        return new ArrayList<>(positions.get(type).keySet());
+    }
+
+    /**
+     * @param type the type of record
+     * @return the number of keys which have a value
+     */
+    synchronized int size(int type) {
+        return positions.get(type).size();
+    }
+
+    /**
+     * @param type the type of record
+     * @param key the key
+     * @return true if the key has a value
+     */
+    synchronized boolean contains(int type, String key) {
+        return positions.get(type).containsKey(key);
+    }
+
+    /**
+     * Read the value stored under a key
+     *
+     * @param type the type of record
+     * @param key the key
+     * @return the value, or null if the key has no value
+     * @throws IOException if the value can't be read
+     */
+    synchronized byte[] get(int type, String key) throws IOException {
+        Long position = positions.get(type).get(key);
+        if (position == null) {
+            return null;
+        }
+        Record record = readRecord(position);
+        if (record == null || record.value == null) {
+            throw new IOException("The record for " + key + " at position " + position + " is corrupt");
+        }
+        return record.value;
+    }
+
+    /**
+     * Store a value under a key, replacing any existing value. The record is forced to disk before
+     * this returns.
+     *
+     * @param type the type of record
+     * @param key the key
+     * @param value the value
+     * @throws IOException if the record can't be written
+     */
+    synchronized void put(int type, String key, byte[] value) throws IOException {
+        append(type, key, value);
+    }
+
+    /**
+     * Remove the value stored under a key, if there is one
+     *
+     * @param type the type of record
+     * @param key the key
+     * @throws IOException if the record can't be written
+     */
+    synchronized void remove(int type, String key) throws IOException {
+        if (positions.get(type).containsKey(key)) {
+            append(type, key, null);
+        }
+    }
+
+    /**
+     * @return true if more than half of the log is taken up by records which have been replaced
+     *         or removed
+     */
+    synchronized boolean needsCompaction() throws IOException {
+        long deadBytes = channel.size() - LOG_HEADER_LENGTH - liveBytes;
+        return deadBytes >= MIN_COMPACTION_BYTES && deadBytes > liveBytes;
+    }
+
+    /**
+     * Write the live records to a new log, replace the old log with it, and save the index
+     *
+     * @throws IOException if the new log can't be written, in which case the old log is kept
+     */
+    synchronized void compact() throws IOException {
+        long oldSize = channel.size();
+        long newGeneration = Math.max(System.currentTimeMillis(), generation + 1);
+        File newLogFile = new File(directory, LOG_FILE + ".tmp");
+        List<Map<String, Long>> newPositions = new ArrayList<>();
+
+        try (RandomAccessFile newFile = new RandomAccessFile(newLogFile, "rw")) {
+            FileChannel newChannel = newFile.getChannel();
+            newChannel.truncate(0);
+            newChannel.write(createHeader(newGeneration), 0);
+            long position = LOG_HEADER_LENGTH;
+            for (int type = 0; type < numTypes; type++) {
+                Map<String, Long> typePositions = new LinkedHashMap<>();
+                for (Map.Entry<String, Long> entry : positions.get(type).entrySet()) {
+                    Record record = readRecord(entry.getValue());
+                    if (record == null || record.value == null) {
+                        throw new IOException("The record for " + entry.getKey() + " is corrupt");
+                    }
+                    ByteBuffer buffer = createRecord(type, entry.getKey(), record.value);
+                    typePositions.put(entry.getKey(), position);
+                    position += buffer.remaining();
+                    while (buffer.hasRemaining()) {
+                        newChannel.write(buffer, newChannel.size());
+                    }
+                }
+                newPositions.add(typePositions);
+            }
+            newChannel.force(true);
+        }
+
+        channel.close();
+        file.close();
+        try {
+            Files.move(newLogFile.toPath(), new File(directory, LOG_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // Reopen whichever log is now in place
+            file = new RandomAccessFile(new File(directory, LOG_FILE), "rw");
+            channel = file.getChannel();
+        }
+        generation = newGeneration;
+        for (int type = 0; type < numTypes; type++) {
+            positions.get(type).clear();
+            positions.get(type).putAll(newPositions.get(type));
+        }
+        liveBytes = channel.size() - LOG_HEADER_LENGTH;
+
+        writeIndex();
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("compact: reduced the record log from " + oldSize + " to " + channel.size() + " bytes");
+        }
+    }
+
+    /**
+     * Save the index and close the log
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (channel.isOpen()) {
+                writeIndex();
+            }
+        } finally {
+            channel.close();
+            file.close();
+            channel = null;
+        }
+    }
+
+    private void append(int type, String key, byte[] value) throws IOException {
+        ByteBuffer buffer = createRecord(type, key, value);
+        long position = channel.size();
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, channel.size());
+        }
+        channel.force(false);
+        apply(type, key, position, value == null ? -1 : length);
+    }
+
+    /**
+     * Record the position of the latest record for a key
+     *
+     * @param length the length of the record, or -1 if it removes the key
+     */
+    private void apply(int type, String key, long position, int length) throws IOException {
+        Long oldPosition = length == -1 ? positions.get(type).remove(key) : positions.get(type).put(key, position);
+        if (oldPosition != null) {
+            liveBytes -= RECORD_HEADER_LENGTH + readFully(oldPosition, 4).getInt();
+        }
+        if (length != -1) {
+            liveBytes += length;
+        }
+    }
+
+    /**
+     * Read the records from a position to the end of the log. If a record is incomplete or
+     * corrupt, the log is truncated there, since it was being written when the server stopped.
+     */
+    private void scan(long start) throws IOException {
+        long position = start;
+        long size = channel.size();
+        int count = 0;
+        while (position < size) {
+            Record record = readRecord(position);
+            if (record == null) {
+                logger.warning("Discarding " + (size - position) + " bytes of incomplete records at the end of "
+                               + new File(directory, LOG_FILE));
+                channel.truncate(position);
+                channel.force(true);
+                break;
+            }
+            apply(record.type, record.key, position, record.value == null ? -1 : record.length);
+            position += record.length;
+            count++;
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("scan: read " + count + " records from position " + start);
+        }
+    }
+
+    /**
+     * Read the record at a position
+     *
+     * @return the record, or null if it is incomplete or corrupt
+     */
+    private Record readRecord(long position) throws IOException {
+        long size = channel.size();
+        if (position + RECORD_HEADER_LENGTH > size) {
+            return null;
+        }
+        ByteBuffer header = readFully(position, RECORD_HEADER_LENGTH);
+        int bodyLength = header.getInt();
+        int checksum = header.getInt();
+        if (bodyLength <= 0 || bodyLength > MAX_RECORD_LENGTH || position + RECORD_HEADER_LENGTH + bodyLength > size) {
+            return null;
+        }
+
+        ByteBuffer body = readFully(position + RECORD_HEADER_LENGTH, bodyLength);
+        CRC32 crc = new CRC32();
+        crc.update(body.array(), 0, bodyLength);
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+
+        Record record = new Record();
+        record.length = RECORD_HEADER_LENGTH + bodyLength;
+        record.type = body.get();
+        byte[] key = new byte[body.getShort()];
+        body.get(key);
+        record.key = new String(key, StandardCharsets.UTF_8);
+        int valueLength = body.getInt();
+        if (valueLength >= 0) {
+            record.value = new byte[valueLength];
+            body.get(record.value);
+        }
+        if (record.type < 0 || record.type >= numTypes) {
+            return null;
+        }
+        return record;
+    }
+
+    private static ByteBuffer createRecord(int type, String key, byte[] value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bytes);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        body.writeByte(type);
+        body.writeShort(keyBytes.length);
+        body.write(keyBytes);
+        if (value == null) {
+            body.writeInt(-1);
+        } else {
+            body.writeInt(value.length);
+            body.write(value);
+        }
+        body.flush();
+
+        byte[] bodyBytes = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_LENGTH + bodyBytes.length);
+        buffer.putInt(bodyBytes.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(bodyBytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer createHeader(long generation) {
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_LENGTH);
+        header.putInt(LOG_MAGIC);
+        header.putInt(VERSION);
+        header.putLong(generation);
+        header.flip();
+        return header;
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new IOException("Unexpected end of " + new File(directory, LOG_FILE));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Load the positions of the records from the index, if it matches the log
+     *
+     * @return the position in the log from which records must be read, as they are not in the
+     *         index
+     */
+    private long readIndex() throws IOException {
+        File indexFile = new File(directory, INDEX_FILE);
+        if (!indexFile.exists()) {
+            return LOG_HEADER_LENGTH;
+        }
+
+        try (RandomAccessFile index = new RandomAccessFile(indexFile, "r")) {
+            MappedByteBuffer buffer = index.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, index.length());
+            if (buffer.getInt() != INDEX_MAGIC || buffer.getInt() != VERSION || buffer.getLong() != generation) {
+                logger.info("The index of " + new File(directory, LOG_FILE) + " is out of date, the whole log will be read");
+                return LOG_HEADER_LENGTH;
+            }
+            long indexedLength = buffer.getLong();
+            if (indexedLength > channel.size()) {
+                logger.info("The index of " + new File(directory, LOG_FILE) + " is out of date, the whole log will be read");
+                return LOG_HEADER_LENGTH;
+            }
+            liveBytes = buffer.getLong();
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                int type = buffer.get();
+                byte[] key = new byte[buffer.getShort()];
+                buffer.get(key);
+                positions.get(type).put(new String(key, StandardCharsets.UTF_8), buffer.getLong());
+            }
+            return indexedLength;
+        } catch (RuntimeException e) {
+            // A truncated or corrupt index
+            logger.log(Level.INFO, "The index of " + new File(directory, LOG_FILE) + " can't be read, the whole log will be read", e);
+            for (Map<String, Long> typePositions : positions) {
+                typePositions.clear();
+            }
+            liveBytes = 0;
+            return LOG_HEADER_LENGTH;
+        }
+    }
+
+    /**
+     * Save the positions of the records, so that the log doesn't have to be read when it is next
+     * opened. The index is written to a temporary file which then replaces the old index, so an
+     * index is never partly written.
+     */
+    private void writeIndex() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(INDEX_MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(generation);
+        out.writeLong(channel.size());
+        out.writeLong(liveBytes);
+        int count = 0;
+        for (Map<String, Long> typePositions : positions) {
+            count += typePositions.size();
+        }
+        out.writeInt(count);
+        for (int type = 0; type < numTypes; type++) {
+            for (Map.Entry<String, Long> entry : positions.get(type).entrySet()) {
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeByte(type);
+                out.writeShort(key.length);
+                out.write(key);
+                out.writeLong(entry.getValue());
+            }
+        }
+        out.flush();
+
+        File tempFile = new File(directory, INDEX_FILE + ".tmp");
+        try (RandomAccessFile index = new RandomAccessFile(tempFile, "rw")) {
+            index.setLength(0);
+            index.write(bytes.toByteArray());
+            index.getChannel().force(true);
+        }
+        try {
+            Files.move(tempFile.toPath(), new File(directory, INDEX_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The old index may still be mapped on some platforms. It will be found to be out of
+            // date when the log is next opened, and the whole log read.
+            logger.log(Level.INFO, "Unable to replace the index of " + new File(directory, LOG_FILE), e);
+        }
+    }
+
+    private static class Record {
+        int type;
+        String key;
+        /** The value, or null if the record removes the key */
+        byte[] value;
+        /** The length of the record including its header */
+        int length;
+    }
+
+}
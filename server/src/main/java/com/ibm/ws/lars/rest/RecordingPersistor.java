@@ -0,0 +1,327 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.ws.lars.rest.exceptions.AssetPersistenceException;
+import com.ibm.ws.lars.rest.exceptions.InvalidJsonAssetException;
+import com.ibm.ws.lars.rest.exceptions.NonExistentArtefactException;
+import com.ibm.ws.lars.rest.model.Asset;
+import com.ibm.ws.lars.rest.model.AssetList;
+import com.ibm.ws.lars.rest.model.Attachment;
+import com.ibm.ws.lars.rest.model.AttachmentContentMetadata;
+import com.ibm.ws.lars.rest.model.AttachmentContentResponse;
+import com.ibm.ws.lars.rest.model.AttachmentList;
+
+/**
+ * Wraps the {@link Persistor} chosen by the {@link PersistorProducer} and records an
+ * {@link OperationEvents} event for each call.
+ * <p>
+ * Attachment content reads are recorded when the content stream is closed, so that they include
+ * the number of bytes actually read.
+ */
+public class RecordingPersistor implements Persistor {
+
+    private final Persistor delegate;
+
+    public RecordingPersistor(Persistor delegate) {
+        this.delegate = delegate;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AssetList retrieveAllAssets() {
+        long start = OperationEvents.start();
+        AssetList result = delegate.retrieveAllAssets();
+        OperationEvents.persistorCall(start, "retrieveAllAssets", null, null, result.size());
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AssetList retrieveAllAssets(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions) {
+        long start = OperationEvents.start();
+        AssetList result = delegate.retrieveAllAssets(filters, searchTerm, pagination, sortOptions);
+        OperationEvents.persistorCall(start, "retrieveAllAssets", filters, searchTerm, result.size());
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<byte[]> retrieveAllAssetsJson(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions) {
+        long start = OperationEvents.start();
+        List<byte[]> result = delegate.retrieveAllAssetsJson(filters, searchTerm, pagination, sortOptions);
+        OperationEvents.persistorCall(start, "retrieveAllAssetsJson", filters, searchTerm, result.size());
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int countAllAssets(Collection<AssetFilter> filters, String searchTerm) {
+        long start = OperationEvents.start();
+        int result = delegate.countAllAssets(filters, searchTerm);
+        OperationEvents.persistorCall(start, "countAllAssets", filters, searchTerm, result);
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<Object> getDistinctValues(String field, Collection<AssetFilter> filters, String searchTerm) {
+        long start = OperationEvents.start();
+        List<Object> result = delegate.getDistinctValues(field, filters, searchTerm);
+        OperationEvents.persistorCall(start, "getDistinctValues", filters, searchTerm, result.size());
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Asset retrieveAsset(String assetId) throws NonExistentArtefactException {
+        long start = OperationEvents.start();
+        Asset result = delegate.retrieveAsset(assetId);
+        OperationEvents.persistorCall(start, "retrieveAsset", null, null, -1);
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public byte[] retrieveAssetJson(String assetId, Collection<AssetFilter> filters) throws NonExistentArtefactException {
+        long start = OperationEvents.start();
+        byte[] result = delegate.retrieveAssetJson(assetId, filters);
+        OperationEvents.persistorCall(start, "retrieveAssetJson", filters, null, -1);
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, byte[]> retrieveAssetsJson(Collection<String> assetIds, Collection<AssetFilter> filters) {
+        long start = OperationEvents.start();
+        Map<String, byte[]> result = delegate.retrieveAssetsJson(assetIds, filters);
+        OperationEvents.persistorCall(start, "retrieveAssetsJson", filters, null, result.size());
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Asset createAsset(Asset newAsset) throws InvalidJsonAssetException {
+        long start = OperationEvents.start();
+        Asset result = delegate.createAsset(newAsset);
+        OperationEvents.persistorCall(start, "createAsset", null, null, -1);
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Asset updateAsset(String assetId, Asset asset) throws InvalidJsonAssetException, NonExistentArtefactException {
+        long start = OperationEvents.start();
+        Asset result = delegate.updateAsset(assetId, asset);
+        OperationEvents.persistorCall(start, "updateAsset", null, null, -1);
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void deleteAsset(String assetId) {
+        long start = OperationEvents.start();
+        delegate.deleteAsset(assetId);
+        OperationEvents.persistorCall(start, "deleteAsset", null, null, -1);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AttachmentList findAttachmentsForAsset(String assetId) {
+        long start = OperationEvents.start();
+        AttachmentList result = delegate.findAttachmentsForAsset(assetId);
+        OperationEvents.persistorCall(start, "findAttachmentsForAsset", null, null, result.size());
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, AttachmentList> findAttachmentsForAssets(Collection<String> assetIds) {
+        long start = OperationEvents.start();
+        Map<String, AttachmentList> result = delegate.findAttachmentsForAssets(assetIds);
+        OperationEvents.persistorCall(start, "findAttachmentsForAssets", null, null, result.size());
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AttachmentContentMetadata createAttachmentContent(String name, String contentType, InputStream attachmentContentStream) throws AssetPersistenceException {
+        long start = OperationEvents.start();
+        AttachmentContentMetadata result = delegate.createAttachmentContent(name, contentType, attachmentContentStream);
+        OperationEvents.contentTransfer(start, "write", result.length);
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Attachment createAttachmentMetadata(Attachment attachment) {
+        long start = OperationEvents.start();
+        Attachment result = delegate.createAttachmentMetadata(attachment);
+        OperationEvents.persistorCall(start, "createAttachmentMetadata", null, null, -1);
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Attachment retrieveAttachmentMetadata(String attachmentId) throws NonExistentArtefactException {
+        long start = OperationEvents.start();
+        Attachment result = delegate.retrieveAttachmentMetadata(attachmentId);
+        OperationEvents.persistorCall(start, "retrieveAttachmentMetadata", null, null, -1);
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void deleteAttachmentContent(String attachmentId) {
+        long start = OperationEvents.start();
+        delegate.deleteAttachmentContent(attachmentId);
+        OperationEvents.persistorCall(start, "deleteAttachmentContent", null, null, -1);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void deleteAttachmentMetadata(String attachmentId) {
+        long start = OperationEvents.start();
+        delegate.deleteAttachmentMetadata(attachmentId);
+        OperationEvents.persistorCall(start, "deleteAttachmentMetadata", null, null, -1);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void deleteAttachmentsForAsset(String assetId) {
+        long start = OperationEvents.start();
+        delegate.deleteAttachmentsForAsset(assetId);
+        OperationEvents.persistorCall(start, "deleteAttachmentsForAsset", null, null, -1);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Collection<String> findAssetIdsWithOrphanedAttachments() {
+        long start = OperationEvents.start();
+        Collection<String> result = delegate.findAssetIdsWithOrphanedAttachments();
+        OperationEvents.persistorCall(start, "findAssetIdsWithOrphanedAttachments", null, null, result.size());
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AttachmentContentResponse retrieveAttachmentContent(String gridFSId) throws NonExistentArtefactException {
+        long start = OperationEvents.start();
+        AttachmentContentResponse response = delegate.retrieveAttachmentContent(gridFSId);
+        if (start == OperationEvents.NOT_RECORDING || response == null || response.getContentStream() == null) {
+            return response;
+        }
+        return new AttachmentContentResponse(new RecordingInputStream(response.getContentStream(), start), response.getContentType());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void addDownloads(Map<String, Map<String, Long>> counts) {
+        long start = OperationEvents.start();
+        delegate.addDownloads(counts);
+        OperationEvents.persistorCall(start, "addDownloads", null, null, counts.size());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<Map<String, Object>> retrieveDownloadCounts(int limit) {
+        long start = OperationEvents.start();
+        List<Map<String, Object>> result = delegate.retrieveDownloadCounts(limit);
+        OperationEvents.persistorCall(start, "retrieveDownloadCounts", null, null, result.size());
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String allocateNewId() {
+        return delegate.allocateNewId();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void initialize() {
+        long start = OperationEvents.start();
+        delegate.initialize();
+        OperationEvents.persistorCall(start, "initialize", null, null, -1);
+    }
+
+    /**
+     * Counts the bytes read from attachment content, and records the read when it is closed
+     */
+    private static class RecordingInputStream extends FilterInputStream {
+
+        private final long start;
+
+        private long bytes = 0;
+
+        private boolean recorded = false;
+
+        RecordingInputStream(InputStream in, long start) {
+            super(in);
+            this.start = start;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                bytes += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            bytes += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!recorded) {
+                    recorded = true;
+                    OperationEvents.contentTransfer(start, "read", bytes);
+                }
+            }
+        }
+    }
+
+}
@@ -20,6 +20,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.ExceptionMapper;
 import javax.ws.rs.ext.Provider;
@@ -37,6 +38,7 @@ public class RepositoryClientExceptionMapper implements ExceptionMapper<Reposito
     public Response toResponse(RepositoryClientException e) {
         return Response.status(e.getResponseStatus())
                 .entity(getErrorJson(e.getResponseStatus(), e.getMessage()))
+                .type(MediaType.APPLICATION_JSON_TYPE)
                 .build();
     }
 
@@ -16,10 +16,16 @@
 
 package com.ibm.ws.lars.rest;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -28,6 +34,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
 import javax.annotation.security.PermitAll;
 import javax.annotation.security.RolesAllowed;
@@ -45,13 +52,16 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.SecurityContext;
 import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.apache.wink.common.model.multipart.BufferedInMultiPart;
+import org.apache.wink.common.model.multipart.InMultiPart;
 import org.apache.wink.common.model.multipart.InPart;
 
 import com.fasterxml.jackson.core.JsonParseException;
@@ -96,11 +106,24 @@ public class RepositoryRESTResource {
 
     private static final ObjectMapper jsonMapper = new ObjectMapper();
 
+    /** The number of assets returned by {@link #getDownloadCounts(String)} if no limit is given */
+    static final int DEFAULT_DOWNLOADS_LIMIT = 100;
+
+    /** The most assets which can be fetched by one call to {@link #getAssetsById} */
+    static final int MAX_BULK_GET_IDS = 1000;
+
+    /** The names of the parts of a request to {@link #postAssetWithAttachments} */
+    static final String ASSET_PART = "asset";
+    static final String ATTACHMENT_INFO_PART = "attachmentInfo";
+
     private static final AssetFilter ASSET_IS_PUBLISHED = new AssetFilter(Asset.STATE, Collections.<Condition> singletonList(new Condition(Operation.EQUALS, Asset.State.PUBLISHED.getValue())));
 
     @Inject
     private AssetServiceLayer assetService;
 
+    @Context
+    private HttpHeaders headers;
+
     public RepositoryRESTResource() {
         // constructor left intentionally blank
     }
@@ -121,23 +144,31 @@ public class RepositoryRESTResource {
 
     @GET
     @Path("/assets")
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({ MediaType.APPLICATION_JSON, BinaryEncoding.SMILE, BinaryEncoding.CBOR })
     public Response getAssets(@Context UriInfo info, @Context SecurityContext context) throws JsonProcessingException, InvalidParameterException {
 
         if (logger.isLoggable(Level.FINE)) {
             logger.fine("getAssets called with query parameters: " + info.getRequestUri().getRawQuery());
         }
 
-        AssetQueryParameters params = AssetQueryParameters.create(info);
+        Collection<AssetFilter> filters;
+        String searchTerm;
+        PaginationOptions pagination;
+        SortOptions sortOptions;
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.PARSE)) {
+            AssetQueryParameters params = AssetQueryParameters.create(info);
+            filters = params.getFilters();
+            searchTerm = params.getSearchTerm();
+            pagination = params.getPagination();
+            sortOptions = params.getSortOptions();
+        }
 
-        Collection<AssetFilter> filters = params.getFilters();
         if (!context.isUserInRole(ADMIN_ROLE)) {
             filters.add(ASSET_IS_PUBLISHED);
         }
 
-        AssetList assets = assetService.retrieveAllAssets(filters, params.getSearchTerm(), params.getPagination(), params.getSortOptions());
-        String json = assets.toJson();
-        return Response.ok(json).build();
+        SerializedContent content = assetService.retrieveAllAssetsJson(filters, searchTerm, pagination, sortOptions);
+        return createEncodedResponse(content);
     }
 
     @HEAD
@@ -147,20 +178,25 @@ public class RepositoryRESTResource {
             logger.fine("countAssets called with query parameters: " + info.getRequestUri().getRawQuery());
         }
 
-        AssetQueryParameters params = AssetQueryParameters.create(info);
+        Collection<AssetFilter> filters;
+        String searchTerm;
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.PARSE)) {
+            AssetQueryParameters params = AssetQueryParameters.create(info);
+            filters = params.getFilters();
+            searchTerm = params.getSearchTerm();
+        }
 
-        Collection<AssetFilter> filters = params.getFilters();
         if (!sc.isUserInRole(ADMIN_ROLE)) {
             filters.add(ASSET_IS_PUBLISHED);
         }
 
-        int count = assetService.countAllAssets(filters, params.getSearchTerm());
+        int count = assetService.countAllAssets(filters, searchTerm);
         return Response.noContent().header("count", count).build();
     }
 
     @POST
     @Path("/assets")
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({ MediaType.APPLICATION_JSON, BinaryEncoding.SMILE, BinaryEncoding.CBOR })
     @RolesAllowed(ADMIN_ROLE)
     public Response postAssets(String assetJSON, @Context SecurityContext context) {
         if (logger.isLoggable(Level.FINE)) {
@@ -175,18 +211,158 @@ public class RepositoryRESTResource {
 
         Asset asset = null;
         try {
-            asset = assetService.createAsset(Asset.deserializeAssetFromJson(assetJSON), name);
+            Asset newAsset;
+            try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.PARSE)) {
+                newAsset = Asset.deserializeAssetFromJson(assetJSON);
+            }
+            asset = assetService.createAsset(newAsset, name);
         } catch (InvalidJsonAssetException e) {
             String body = getErrorJson(Response.Status.BAD_REQUEST, "Invalid asset definition");
-            return Response.status(Response.Status.BAD_REQUEST).entity(body).build();
+            return Response.status(Response.Status.BAD_REQUEST).entity(body).type(MediaType.APPLICATION_JSON_TYPE).build();
+        }
+
+        return createEncodedResponse(new SerializedContent(asset.toJsonBytes()));
+    }
+
+    /**
+     * Create an asset from a request body in one of the binary encodings. The body is converted to
+     * JSON and then handled in the same way as a JSON request.
+     */
+    @POST
+    @Path("/assets")
+    @Consumes({ BinaryEncoding.SMILE, BinaryEncoding.CBOR })
+    @Produces({ MediaType.APPLICATION_JSON, BinaryEncoding.SMILE, BinaryEncoding.CBOR })
+    @RolesAllowed(ADMIN_ROLE)
+    public Response postAssetsBinary(byte[] assetData, @Context SecurityContext context) {
+        String assetJSON;
+        try {
+            assetJSON = new String(BinaryEncoding.decode(assetData, headers.getMediaType()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            String body = getErrorJson(Response.Status.BAD_REQUEST, "Invalid asset definition");
+            return Response.status(Response.Status.BAD_REQUEST).entity(body).type(MediaType.APPLICATION_JSON_TYPE).build();
+        }
+
+        return postAssets(assetJSON, context);
+    }
+
+    /**
+     * Create an asset together with all of its attachments, and optionally move it to a target
+     * state, in one request. The request is a multipart/form-data body whose first part, named
+     * "asset", holds the asset JSON. Each attachment follows as an "attachmentInfo" part holding
+     * the attachment JSON, which must include the attachment's name. If the next part has that
+     * name, it holds the attachment's content; otherwise the attachment is a link to content stored
+     * elsewhere. The optional state query parameter gives the state the asset should end up in,
+     * e.g. state=published.
+     * <p>
+     * The parts are read in order and each attachment's content is streamed straight into the
+     * content store. If anything goes wrong, the asset and any attachments already stored are
+     * deleted again.
+     * <p>
+     * The response is the created asset, with its attachments, in the same format as GET
+     * /assets/{assetId}.
+     */
+    @POST
+    @Path("/assets")
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @Produces({ MediaType.APPLICATION_JSON, BinaryEncoding.SMILE, BinaryEncoding.CBOR })
+    @RolesAllowed(ADMIN_ROLE)
+    public Response postAssetWithAttachments(@QueryParam("state") String state,
+                                             InMultiPart inMultiPart,
+                                             @Context SecurityContext context,
+                                             @Context UriInfo uriInfo) throws InvalidJsonAssetException, InvalidParameterException, AssetPersistenceException, NonExistentArtefactException, RepositoryResourceLifecycleException {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("postAssetWithAttachments called, state: " + state);
+        }
+
+        Asset.State targetState = Asset.State.DRAFT;
+        if (state != null) {
+            targetState = Asset.State.forValue(state);
+            if (targetState == null) {
+                throw new InvalidParameterException("Invalid state: " + state);
+            }
+        }
+
+        if (!inMultiPart.hasNext()) {
+            throw new InvalidParameterException("The request must start with an asset part");
+        }
+        InPart assetPart = inMultiPart.next();
+        if (!ASSET_PART.equals(assetPart.getPartName())) {
+            throw new InvalidParameterException("The request must start with an asset part");
+        }
+
+        Asset newAsset;
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.PARSE)) {
+            newAsset = Asset.deserializeAssetFromJson(assetPart.getInputStream());
+        }
+
+        String name = "";
+        Principal principal = context.getUserPrincipal();
+        if (principal != null) {
+            name = principal.getName();
+        }
+
+        Asset asset = assetService.createAsset(newAsset, name);
+        List<Map<String, Object>> attachments = new ArrayList<>();
+        boolean complete = false;
+        try {
+            Attachment pendingAttachment = null;
+            while (inMultiPart.hasNext()) {
+                InPart part = inMultiPart.next();
+                String partName = part.getPartName();
+
+                if (pendingAttachment != null) {
+                    if (partName != null && partName.equals(pendingAttachment.getName())) {
+                        attachments.add(assetService.createAttachmentForNewAsset(asset, pendingAttachment, part.getContentType(), part.getInputStream(), uriInfo).getProperties());
+                        pendingAttachment = null;
+                        continue;
+                    }
+
+                    // The attachment had no content part, so it's a link
+                    attachments.add(assetService.createAttachmentForNewAsset(asset, pendingAttachment, null, null, uriInfo).getProperties());
+                    pendingAttachment = null;
+                }
+
+                if (ATTACHMENT_INFO_PART.equals(partName)) {
+                    try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.PARSE)) {
+                        pendingAttachment = Attachment.jsonToAttachment(part.getInputStream());
+                    }
+                } else {
+                    throw new InvalidParameterException("Unexpected part in the request: " + partName);
+                }
+            }
+
+            if (pendingAttachment != null) {
+                attachments.add(assetService.createAttachmentForNewAsset(asset, pendingAttachment, null, null, uriInfo).getProperties());
+            }
+
+            asset = assetService.moveNewAssetToState(asset, targetState);
+            complete = true;
+        } finally {
+            if (!complete) {
+                discardAsset(asset.get_id());
+            }
         }
 
-        return Response.ok(asset.toJson()).build();
+        asset.setAttachments(AttachmentList.createAttachmentListFromMaps(attachments));
+
+        return createEncodedResponse(new SerializedContent(asset.toJsonBytes()));
+    }
+
+    /**
+     * Delete an asset which couldn't be fully created, logging rather than throwing if that fails
+     * so that the original failure is the one reported.
+     */
+    private void discardAsset(String assetId) {
+        try {
+            assetService.deleteAsset(assetId);
+        } catch (NonExistentArtefactException | RuntimeException e) {
+            logger.log(Level.WARNING, "Could not delete partly created asset " + assetId, e);
+        }
     }
 
     @GET
     @Path("/assets/{assetId}")
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({ MediaType.APPLICATION_JSON, BinaryEncoding.SMILE, BinaryEncoding.CBOR })
     public Response getAsset(@PathParam("assetId") String assetId, @Context UriInfo uriInfo, @Context SecurityContext sc) throws InvalidIdException, NonExistentArtefactException {
 
         if (logger.isLoggable(Level.FINE)) {
@@ -195,15 +371,62 @@ public class RepositoryRESTResource {
 
         sanitiseId(assetId, ArtefactType.ASSET);
 
-        Asset asset = assetService.retrieveAsset(assetId, uriInfo);
-
+        List<AssetFilter> filters = new ArrayList<>();
         if (!sc.isUserInRole(ADMIN_ROLE)) {
-            if (asset.getState() != Asset.State.PUBLISHED) {
-                throw new NonExistentArtefactException(assetId, ArtefactType.ASSET);
+            filters.add(ASSET_IS_PUBLISHED);
+        }
+
+        byte[] json = assetService.retrieveAssetJson(assetId, filters, uriInfo);
+        return createEncodedResponse(new SerializedContent(json));
+    }
+
+    /**
+     * Retrieves several assets, with their attachments, in one request. The expected json should
+     * look like:
+     *
+     * <pre>
+     * {"ids": ["assetId1", "assetId2"]}
+     * </pre>
+     *
+     * The response is a list of the assets, in the same format as GET /assets/{assetId}, in the
+     * order their ids were given. Assets which don't exist, or which the user can't see, are left
+     * out.
+     */
+    @POST
+    @Path("/assets/bulkGet")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces({ MediaType.APPLICATION_JSON, BinaryEncoding.SMILE, BinaryEncoding.CBOR })
+    public Response getAssetsById(String requestJSON, @Context UriInfo uriInfo, @Context SecurityContext sc) throws InvalidParameterException, InvalidIdException {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("getAssetsById called with json content:\n" + requestJSON);
+        }
+
+        List<String> assetIds = new ArrayList<>();
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.PARSE)) {
+            Map<String, Object> request = readJsonObject(requestJSON);
+            Object ids = request.get("ids");
+            if (!(ids instanceof List)) {
+                throw new InvalidParameterException("ids must be a list of asset ids");
+            }
+            for (Object id : (List<?>) ids) {
+                if (!(id instanceof String)) {
+                    throw new InvalidParameterException("ids must be a list of asset ids");
+                }
+                sanitiseId((String) id, ArtefactType.ASSET);
+                assetIds.add((String) id);
+            }
+            if (assetIds.size() > MAX_BULK_GET_IDS) {
+                throw new InvalidParameterException("At most " + MAX_BULK_GET_IDS + " assets can be fetched at once");
             }
         }
 
-        return Response.ok(asset.toJson()).build();
+        List<AssetFilter> filters = new ArrayList<>();
+        if (!sc.isUserInRole(ADMIN_ROLE)) {
+            filters.add(ASSET_IS_PUBLISHED);
+        }
+
+        byte[] json = assetService.retrieveAssetsJson(assetIds, filters, uriInfo);
+        return createEncodedResponse(new SerializedContent(json));
     }
 
     @DELETE
@@ -218,9 +441,8 @@ public class RepositoryRESTResource {
         sanitiseId(assetId, ArtefactType.ASSET);
 
         assetService.deleteAsset(assetId);
-        // TODO This could produce a 202 (rather than a 204 no content), to
-        // reflect that there is no guarantee that mongo's delete is complete
-        return Response.noContent().build();
+        // The asset's attachments are deleted in the background
+        return Response.status(Response.Status.ACCEPTED).build();
     }
 
     @GET
@@ -232,22 +454,28 @@ public class RepositoryRESTResource {
             logger.fine("getAssetFieldSummary called with query parameters: " + uriInfo.getRequestUri().getRawQuery());
         }
 
-        AssetQueryParameters params = AssetQueryParameters.create(uriInfo);
-        String fieldsString = params.getFields();
-        if (fieldsString == null || fieldsString.isEmpty()) {
-            throw new InvalidParameterException("The fields parameter was not provided");
+        List<String> fields;
+        Collection<AssetFilter> filters;
+        String searchTerm;
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.PARSE)) {
+            AssetQueryParameters params = AssetQueryParameters.create(uriInfo);
+            String fieldsString = params.getFields();
+            if (fieldsString == null || fieldsString.isEmpty()) {
+                throw new InvalidParameterException("The fields parameter was not provided");
+            }
+            fields = Arrays.asList(fieldsString.split(","));
+            filters = params.getFilters();
+            searchTerm = params.getSearchTerm();
         }
-        List<String> fields = Arrays.asList(fieldsString.split(","));
 
-        Collection<AssetFilter> filters = params.getFilters();
         if (!sc.isUserInRole(ADMIN_ROLE)) {
             filters.add(ASSET_IS_PUBLISHED);
         }
 
-        List<Map<String, Object>> summary = assetService.summarizeAssets(fields, filters, params.getSearchTerm());
+        List<Map<String, Object>> summary = assetService.summarizeAssets(fields, filters, searchTerm);
 
         String resultJson;
-        try {
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.SERIALIZE)) {
             resultJson = jsonMapper.writeValueAsString(summary);
         } catch (JsonProcessingException e) {
             throw new RepositoryException("Could not serialize summary result", e);
@@ -256,6 +484,46 @@ public class RepositoryRESTResource {
         return Response.ok(resultJson).build();
     }
 
+    /**
+     * Returns the download counts of the most downloaded assets, and of each of their attachments.
+     * Downloads are only counted if the download count interval is configured.
+     * <p>
+     * The limit query parameter sets the number of assets returned, which defaults to
+     * {@value #DEFAULT_DOWNLOADS_LIMIT}.
+     */
+    @GET
+    @Path("/assets/downloads")
+    @Produces(MediaType.APPLICATION_JSON)
+    @RolesAllowed(ADMIN_ROLE)
+    public Response getDownloadCounts(@QueryParam("limit") String limitString) throws InvalidParameterException {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("getDownloadCounts called with limit: " + limitString);
+        }
+
+        int limit = DEFAULT_DOWNLOADS_LIMIT;
+        if (limitString != null) {
+            try {
+                limit = Integer.parseInt(limitString);
+            } catch (NumberFormatException e) {
+                limit = -1;
+            }
+            if (limit <= 0) {
+                throw new InvalidParameterException("The limit parameter must be a positive integer");
+            }
+        }
+
+        List<Map<String, Object>> counts = assetService.retrieveDownloadCounts(limit);
+
+        String resultJson;
+        try {
+            resultJson = jsonMapper.writeValueAsString(counts);
+        } catch (JsonProcessingException e) {
+            throw new RepositoryException("Could not serialize download counts", e);
+        }
+
+        return Response.ok(resultJson).build();
+    }
+
     @POST
     @Path("/assets/{assetId}/attachments")
     @Consumes(MediaType.MULTIPART_FORM_DATA)
@@ -390,11 +658,16 @@ public class RepositoryRESTResource {
         AttachmentContentResponse contentResponse = assetService.retrieveAttachmentContent(assetId, attachmentId, name, uriInfo);
         if (contentResponse != null) {
             final InputStream contentInputStream = contentResponse.getContentStream();
-            StreamingOutput stream = new InputStreamStreamingOutput(contentInputStream);
-
-            return Response.ok(stream)
-                    .header("Content-Type", contentResponse.getContentType())
-                    .build();
+            boolean gzip = ContentEncoding.isCompressible(contentResponse.getContentType()) && ContentEncoding.acceptsGzip(headers);
+            StreamingOutput stream = new InputStreamStreamingOutput(contentInputStream, gzip);
+
+            ResponseBuilder builder = Response.ok(stream)
+                    .header("Content-Type", contentResponse.getContentType());
+            if (gzip) {
+                builder.header(HttpHeaders.CONTENT_ENCODING, ContentEncoding.GZIP)
+                        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+            return builder.build();
         } else {
             String body = getErrorJson(Response.Status.NOT_FOUND, "Could not find attachment for id " + attachmentId);
             return Response.status(Response.Status.NOT_FOUND).entity(body).build();
@@ -444,6 +717,128 @@ public class RepositoryRESTResource {
         return Response.ok("[]").build();
     }
 
+    /**
+     * Resolves a set of features, together with all the features they require, for a given
+     * product. The expected json should look like:<br>
+     *
+     * <pre>
+     * {"symbolicNames": ["com.ibm.websphere.appserver.jsp-2.3"],
+     *  "product": {"id": "com.ibm.websphere.appserver",
+     *              "version": "8.5.5.9",
+     *              "edition": "BASE",
+     *              "installType": "Archive"}}
+     * </pre>
+     *
+     * Only the product id is required. The response is a list of the matching published features,
+     * in the same format as returned by GET /assets.
+     */
+    @POST
+    @Path("/resolve")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response resolveFeatures(String requestJSON) throws InvalidParameterException, JsonProcessingException {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("resolveFeatures called with json content:\n" + requestJSON);
+        }
+
+        Map<String, Object> request = readJsonObject(requestJSON);
+
+        Object names = request.get("symbolicNames");
+        if (!(names instanceof List) || ((List<?>) names).isEmpty()) {
+            throw new InvalidParameterException("symbolicNames must be a non-empty list of feature names");
+        }
+        List<String> symbolicNames = new ArrayList<>();
+        for (Object name : (List<?>) names) {
+            if (!(name instanceof String)) {
+                throw new InvalidParameterException("symbolicNames must be a non-empty list of feature names");
+            }
+            symbolicNames.add((String) name);
+        }
+
+        ProductDefinition product = getProductDefinition(request.get("product"));
+
+        AssetList features = assetService.resolveFeatures(symbolicNames, product);
+        return Response.ok(features.toJson()).build();
+    }
+
+    /**
+     * Downloads the content of several attachments as a single zip file, so that installing a set
+     * of features doesn't need a separate request for each attachment. The expected json should
+     * look like:<br>
+     *
+     * <pre>
+     * {"attachments": [{"assetId": "1234", "attachmentId": "5678"},
+     *                  {"assetId": "9abc"}]}
+     * </pre>
+     *
+     * If no attachmentId is given, all the attachments of the asset which have content stored in
+     * the repository are included. Each attachment is stored in the zip as
+     * <code>assetId/name</code>.
+     */
+    @POST
+    @Path("/bundle")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces({ AttachmentBundle.MEDIA_TYPE, MediaType.APPLICATION_JSON })
+    public Response getBundle(String requestJSON, @Context UriInfo uriInfo, @Context SecurityContext sc)
+            throws InvalidParameterException, InvalidIdException, NonExistentArtefactException {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("getBundle called with json content:\n" + requestJSON);
+        }
+
+        Map<String, Object> request = readJsonObject(requestJSON);
+
+        Object items = request.get("attachments");
+        String error = "attachments must be a non-empty list of objects containing an assetId and optionally an attachmentId";
+        if (!(items instanceof List) || ((List<?>) items).isEmpty()) {
+            throw new InvalidParameterException(error);
+        }
+
+        // Each asset is only read once, however many of its attachments are requested
+        Map<String, Asset> assets = new HashMap<>();
+        AttachmentBundle bundle = new AttachmentBundle(assetService);
+        for (Object item : (List<?>) items) {
+            if (!(item instanceof Map)) {
+                throw new InvalidParameterException(error);
+            }
+            String assetId = getOptionalString((Map<?, ?>) item, "assetId");
+            String attachmentId = getOptionalString((Map<?, ?>) item, "attachmentId");
+            if (assetId == null) {
+                throw new InvalidParameterException(error);
+            }
+            sanitiseId(assetId, ArtefactType.ASSET);
+            if (attachmentId != null) {
+                sanitiseId(attachmentId, ArtefactType.ATTACHMENT);
+            }
+
+            Asset asset = assets.get(assetId);
+            if (asset == null) {
+                asset = assetService.retrieveAsset(assetId, uriInfo);
+                if (!sc.isUserInRole(ADMIN_ROLE)) {
+                    if (asset.getState() != Asset.State.PUBLISHED) {
+                        throw new NonExistentArtefactException(assetId, ArtefactType.ASSET);
+                    }
+                }
+                assets.put(assetId, asset);
+            }
+
+            boolean found = false;
+            for (Attachment attachment : asset.getAttachments()) {
+                if (attachmentId == null ? attachment.getLinkType() == null : attachmentId.equals(attachment.get_id())) {
+                    bundle.add(attachment);
+                    found = true;
+                }
+            }
+            if (attachmentId != null && !found) {
+                throw new NonExistentArtefactException("Asset " + assetId + " has no associated attachment with id " + attachmentId);
+            }
+        }
+
+        return Response.ok(bundle)
+                .type(AttachmentBundle.MEDIA_TYPE)
+                .header("Content-Disposition", "attachment; filename=\"bundle.zip\"")
+                .build();
+    }
+
     /**
      * Returns a dummy installation manager repository.config file
      * <p>
@@ -481,8 +876,16 @@ public class RepositoryRESTResource {
      * comes out of Massive. Except without the stack trace for the moment.
      */
     static String getErrorJson(Response.Status status, String message) {
+        return getErrorJson(status.getStatusCode(), message);
+    }
+
+    /**
+     * Produce a JSON string with an error message, for a status code which is not in
+     * {@link Response.Status}
+     */
+    static String getErrorJson(int statusCode, String message) {
         Map<String, Object> errorMap = new HashMap<String, Object>();
-        errorMap.put("statusCode", status.getStatusCode());
+        errorMap.put("statusCode", statusCode);
         errorMap.put("message", message);
         String error;
         try {
@@ -494,6 +897,28 @@ public class RepositoryRESTResource {
         return error;
     }
 
+    /**
+     * Create a 200 response containing a JSON document, encoded in whichever of JSON or the binary
+     * encodings the client asked for. Large documents are compressed if the client accepts gzip.
+     */
+    private Response createEncodedResponse(SerializedContent content) {
+        MediaType type = BinaryEncoding.getResponseType(headers);
+        boolean gzip = content.getJson().length >= ContentEncoding.MIN_GZIP_SIZE && ContentEncoding.acceptsGzip(headers);
+        byte[] entity;
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.SERIALIZE)) {
+            entity = content.getBytes(type, gzip);
+        } catch (IOException e) {
+            throw new RepositoryException("Couldn't encode JSON object from repository as " + type, e);
+        }
+
+        ResponseBuilder builder = Response.ok(entity, type)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, ContentEncoding.GZIP);
+        }
+        return builder.build();
+    }
+
     private static void sanitiseId(String id, ArtefactType typeOfId) throws InvalidIdException {
         if (!validId(id)) {
             throw new InvalidIdException(typeOfId.getValue(), id);
@@ -524,6 +949,53 @@ public class RepositoryRESTResource {
         return Asset.StateAction.forValue(actionString);
     }
 
+    /**
+     * Parse a request body which should contain a JSON object
+     *
+     * @throws InvalidParameterException if the body is not a JSON object
+     */
+    static Map<String, Object> readJsonObject(String input) throws InvalidParameterException {
+        Map<String, Object> result = null;
+        try {
+            result = jsonMapper.readValue(input, new TypeReference<Map<String, Object>>() {});
+        } catch (IOException e) {
+            // Fall through, result is still null
+        }
+        if (result == null) {
+            throw new InvalidParameterException("The request body must be a JSON object");
+        }
+        return result;
+    }
+
+    /**
+     * Read a product definition from the product object in a request body
+     *
+     * @throws InvalidParameterException if the product object is missing or doesn't have an id
+     */
+    static ProductDefinition getProductDefinition(Object productObject) throws InvalidParameterException {
+        if (!(productObject instanceof Map)) {
+            throw new InvalidParameterException("product must be provided");
+        }
+        Map<?, ?> product = (Map<?, ?>) productObject;
+        Object id = product.get("id");
+        if (!(id instanceof String)) {
+            throw new InvalidParameterException("product must contain an id");
+        }
+
+        return new ProductDefinition((String) id,
+                                     getOptionalString(product, "version"),
+                                     getOptionalString(product, "edition"),
+                                     getOptionalString(product, "installType"));
+    }
+
+    private static String getOptionalString(Map<?, ?> map, String key) throws InvalidParameterException {
+        Object value = map.get(key);
+        if (value != null && !(value instanceof String)) {
+            throw new InvalidParameterException(key + " must be a string");
+        }
+        return (String) value;
+    }
+
     /**
      * Implementation of {@link StreamingOutput} to put the input stream onto the output stream.
      */
@@ -531,20 +1003,43 @@ public class RepositoryRESTResource {
         /**  */
         private final InputStream contentInputStream;
 
+        /** Whether to compress the content with gzip as it is written */
+        private final boolean gzip;
+
         /**
          * @param contentInputStream
+         * @param gzip
          */
-        private InputStreamStreamingOutput(InputStream contentInputStream) {
+        private InputStreamStreamingOutput(InputStream contentInputStream, boolean gzip) {
             this.contentInputStream = contentInputStream;
+            this.gzip = gzip;
         }
 
         @Override
         public void write(OutputStream os) throws IOException {
             try {
+                if (!gzip && contentInputStream instanceof FileInputStream) {
+                    // Content from the AttachmentCache, which the file channel may be able to
+                    // transfer without copying it through a buffer
+                    FileChannel channel = ((FileInputStream) contentInputStream).getChannel();
+                    WritableByteChannel target = Channels.newChannel(os);
+                    long position = 0;
+                    long size = channel.size();
+                    while (position < size) {
+                        position += channel.transferTo(position, size - position, target);
+                    }
+                    return;
+                }
+
+                OutputStream out = gzip ? new GZIPOutputStream(os) : os;
                 byte[] buffer = new byte[1024];
                 int len;
                 while ((len = contentInputStream.read(buffer)) != -1) {
-                    os.write(buffer, 0, len);
+                    out.write(buffer, 0, len);
+                }
+                if (gzip) {
+                    // Write the gzip trailer, but leave closing the response stream to the container
+                    ((GZIPOutputStream) out).finish();
                 }
             } finally {
                 contentInputStream.close();
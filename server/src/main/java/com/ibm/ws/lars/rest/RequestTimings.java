@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Times the phases of the REST request being handled by the current thread, for the Server-Timing
+ * header added by the {@link ServerTimingFilter}.
+ * <p>
+ * Code which does a phase of the work wraps it in a timer:
+ *
+ * <pre>
+ * try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * Timers may be nested, in which case the outer timer is paused while the inner one runs, so the
+ * time of each phase doesn't include the time of the phases within it. Timers do nothing if the
+ * current thread isn't handling a request which is being timed.
+ * <p>
+ * Instances are only used by the thread handling the request, so aren't thread safe.
+ */
+public class RequestTimings {
+
+    /** Parsing the request */
+    public static final String PARSE = "parse";
+
+    /** Reading from and writing to the persistence store */
+    public static final String DB = "db";
+
+    /** Finding the attachments of assets and adding them to the response */
+    public static final String ATTACHMENTS = "attach";
+
+    /** Serializing and encoding the response */
+    public static final String SERIALIZE = "serialize";
+
+    /** The whole request */
+    public static final String TOTAL = "total";
+
+    private static final ThreadLocal<RequestTimings> current = new ThreadLocal<>();
+
+    private static final Timer NO_TIMER = new Timer(null, null);
+
+    private final long startNanos = System.nanoTime();
+
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+
+    private Timer running = null;
+
+    /**
+     * Start timing the request being handled by the current thread
+     *
+     * @return the timings of the request
+     */
+    static RequestTimings begin() {
+        RequestTimings timings = new RequestTimings();
+        current.set(timings);
+        return timings;
+    }
+
+    /**
+     * Stop timing the request being handled by the current thread
+     */
+    static void end() {
+        current.remove();
+    }
+
+    /**
+     * Start timing a phase of the current request
+     *
+     * @param phase the name of the phase, one of the constants in this class
+     * @return a timer which must be closed when the phase is finished
+     */
+    public static Timer time(String phase) {
+        RequestTimings timings = current.get();
+        if (timings == null) {
+            return NO_TIMER;
+        }
+        return timings.start(phase);
+    }
+
+    private Timer start(String phase) {
+        long now = System.nanoTime();
+        if (running != null) {
+            running.pause(now);
+        }
+        // Add the phase now, so that phases are listed in the order they started
+        if (!phases.containsKey(phase)) {
+            phases.put(phase, new Phase());
+        }
+        running = new Timer(this, phase);
+        running.startNanos = now;
+        return running;
+    }
+
+    private void stop(Timer timer) {
+        long now = System.nanoTime();
+        Phase phase = phases.get(timer.phase);
+        phase.nanos += timer.elapsedNanos + (now - timer.startNanos);
+        phase.count++;
+
+        running = timer.outer;
+        if (running != null) {
+            running.startNanos = now;
+        }
+    }
+
+    /**
+     * Format the timings as the value of a Server-Timing header. Each phase is given with its
+     * duration in milliseconds, and how many times it happened if that was more than once,
+     * followed by the total time of the request so far.
+     *
+     * @return the header value
+     */
+    String toHeader() {
+        StringBuilder header = new StringBuilder();
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+            appendMetric(header, entry.getKey(), entry.getValue().nanos);
+            if (entry.getValue().count > 1) {
+                header.append(";desc=\"").append(entry.getValue().count).append(" calls\"");
+            }
+            header.append(", ");
+        }
+        appendMetric(header, TOTAL, System.nanoTime() - startNanos);
+        return header.toString();
+    }
+
+    private static void appendMetric(StringBuilder header, String name, long nanos) {
+        header.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.1f", nanos / 1000000.0));
+    }
+
+    private static class Phase {
+        private long nanos = 0;
+        private int count = 0;
+    }
+
+    /**
+     * Times one phase of a request, from when it is created until it is closed
+     */
+    public static class Timer implements AutoCloseable {
+
+        private final RequestTimings timings;
+        private final String phase;
+        private final Timer outer;
+        private long startNanos;
+        private long elapsedNanos = 0;
+
+        private Timer(RequestTimings timings, String phase) {
+            this.timings = timings;
+            this.phase = phase;
+            this.outer = timings == null ? null : timings.running;
+        }
+
+        private void pause(long now) {
+            elapsedNanos += now - startNanos;
+        }
+
+        @Override
+        public void close() {
+            if (timings != null) {
+                timings.stop(this);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,577 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import com.ibm.ws.lars.rest.model.Asset;
+import com.ibm.ws.lars.rest.model.AssetList;
+
+/**
+ * An in-memory inverted index used to answer queries with a search term, instead of the text
+ * index in the persistence store.
+ * <p>
+ * Compared to a MongoDB $text query, this:
+ * <ul>
+ * <li>keeps feature names such as <code>jsp-2.3</code> together as one word, as well as indexing
+ * their parts</li>
+ * <li>also searches the short names and provided features of features</li>
+ * <li>matches words which start with a searched word, and words which differ from a searched word
+ * by one or two typing mistakes, with a lower score than exact matches</li>
+ * <li>ranks matches with BM25, giving more weight to the name than to the description</li>
+ * </ul>
+ * As with $text, an asset matches if it contains any of the searched words, all of the quoted
+ * phrases and none of the words with a leading <code>-</code>.
+ * <p>
+ * The index is loaded the first time it is needed, and kept up to date by observing
+ * {@link AssetChangedEvent}s. It holds a copy of every asset, without attachments, so that
+ * filters, sorting and pagination can be applied without going to the persistence store.
+ * <p>
+ * This is only used if enabled in the {@link Configuration}. Writes made by other servers sharing
+ * the same database are only seen if the {@link InvalidationBus} is enabled too.
+ */
+@ApplicationScoped
+public class SearchIndex {
+
+    private static final Logger logger = Logger.getLogger(SearchIndex.class.getCanonicalName());
+
+    /** The fields which are indexed, and how much each occurrence of a word in them counts */
+    static final Map<String, Integer> FIELD_WEIGHTS;
+    static {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        weights.put(Asset.NAME, 3);
+        weights.put("wlpInformation.shortName", 3);
+        weights.put("wlpInformation.provideFeature", 2);
+        weights.put("shortDescription", 2);
+        weights.put("tags", 2);
+        weights.put("description", 1);
+        FIELD_WEIGHTS = Collections.unmodifiableMap(weights);
+    }
+
+    /** BM25 term frequency saturation */
+    private static final double K1 = 1.2;
+
+    /** BM25 length normalization */
+    private static final double B = 0.75;
+
+    /** How much a word which starts with a searched word counts, compared to an exact match */
+    private static final double PREFIX_WEIGHT = 0.5;
+
+    /** How much a word with a typing mistake counts, compared to an exact match */
+    private static final double FUZZY_WEIGHT = 0.3;
+
+    /** Searched words shorter than this aren't used as prefixes */
+    private static final int MIN_PREFIX_LENGTH = 2;
+
+    /** Searched words shorter than this must be spelled correctly */
+    private static final int MIN_FUZZY_LENGTH = 4;
+
+    /** Searched words at least this long may have two typing mistakes */
+    private static final int TWO_EDIT_LENGTH = 8;
+
+    /** The most indexed words which one searched word can match by prefix or typing mistake */
+    private static final int MAX_EXPANSIONS = 50;
+
+    @Inject
+    private Persistor persistenceBean;
+
+    @Inject
+    private Configuration configuration;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** The indexed assets keyed by id, or null if the index hasn't been loaded */
+    private Map<String, Document> documents = null;
+
+    /** A map from each indexed word to the weighted number of times it occurs in each asset */
+    private final TreeMap<String, Map<String, Integer>> postings = new TreeMap<>();
+
+    /** The total length of all the indexed assets */
+    private long totalLength = 0;
+
+    /**
+     * Check whether a query can be answered from the index, which is true if the index is enabled,
+     * the query has a search term and it doesn't sort on download counts, which aren't held in the
+     * index
+     *
+     * @param filters the filters
+     * @param searchTerm the search term, may be null
+     * @param sortOptions the sort options, may be null
+     * @return true if the query can be answered from the index
+     */
+    public boolean canServe(Collection<AssetFilter> filters, String searchTerm, SortOptions sortOptions) {
+        return configuration.isSearchIndexEnabled() && searchTerm != null && !AssetMatcher.isDownloadCountSort(sortOptions);
+    }
+
+    /**
+     * Retrieve the assets which match the search term and filters. Unless sort options are given,
+     * the best matches are returned first.
+     * <p>
+     * Callers must check {@link #canServe(Collection, String, SortOptions)} first.
+     *
+     * @see Persistor#retrieveAllAssets(Collection, String, PaginationOptions, SortOptions)
+     */
+    public AssetList retrieveAllAssets(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions) {
+        List<Asset> assets = search(filters, searchTerm);
+
+        if (sortOptions != null) {
+            Collections.sort(assets, AssetMatcher.getComparator(sortOptions));
+        }
+
+        assets = AssetMatcher.getPage(assets, pagination);
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Asset asset : assets) {
+            result.add(new HashMap<>(asset.getProperties()));
+        }
+        return AssetList.createAssetListFromMaps(result);
+    }
+
+    /**
+     * Count the assets which match the search term and filters.
+     * <p>
+     * Callers must check {@link #canServe(Collection, String, SortOptions)} first.
+     *
+     * @see Persistor#countAllAssets(Collection, String)
+     */
+    public int countAllAssets(Collection<AssetFilter> filters, String searchTerm) {
+        return search(filters, searchTerm).size();
+    }
+
+    /**
+     * Get the distinct values of a field across the assets which match the search term and
+     * filters.
+     * <p>
+     * Callers must check {@link #canServe(Collection, String, SortOptions)} first.
+     *
+     * @see Persistor#getDistinctValues(String, Collection, String)
+     */
+    public List<Object> getDistinctValues(String field, Collection<AssetFilter> filters, String searchTerm) {
+        Set<Object> values = new LinkedHashSet<>();
+        for (Asset asset : search(filters, searchTerm)) {
+            values.addAll(AssetMatcher.getFieldValues(asset, field));
+        }
+        return new ArrayList<>(values);
+    }
+
+    /**
+     * Update the index when an asset is written
+     *
+     * @param event the event describing the change
+     */
+    public void assetChanged(@Observes AssetChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (documents == null) {
+                // The change will be picked up when the index is loaded
+                return;
+            }
+
+            if (event.isReset()) {
+                // Load it again the next time it is needed
+                documents = null;
+                postings.clear();
+                totalLength = 0;
+                return;
+            }
+
+            remove(event.getAssetId());
+            if (!event.isDelete()) {
+                add(new Document(event.getAssetId(), event.getAsset()));
+            }
+
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("assetChanged: updated the search index after " + event + ", it now contains " + documents.size() + " assets");
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find the assets which match the search term and filters, best match first
+     */
+    private List<Asset> search(Collection<AssetFilter> filters, String searchTerm) {
+        Query query = new Query(searchTerm);
+        final Map<Document, Double> scores = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            while (documents == null) {
+                // Not loaded yet, or reset since it was loaded
+                lock.readLock().unlock();
+                try {
+                    load();
+                } finally {
+                    lock.readLock().lock();
+                }
+            }
+
+            double averageLength = Math.max(1, (double) totalLength / Math.max(1, documents.size()));
+            for (String term : query.terms) {
+                // Each asset scores for its best match of each searched word
+                Map<Document, Double> best = new HashMap<>();
+                for (Map.Entry<String, Double> expansion : expand(term).entrySet()) {
+                    Map<String, Integer> frequencies = postings.get(expansion.getKey());
+                    double idf = Math.log(1 + (documents.size() - frequencies.size() + 0.5) / (frequencies.size() + 0.5));
+                    for (Map.Entry<String, Integer> frequency : frequencies.entrySet()) {
+                        Document document = documents.get(frequency.getKey());
+                        double tf = frequency.getValue();
+                        double score = expansion.getValue() * idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * document.length / averageLength));
+                        Double previous = best.get(document);
+                        if (previous == null || previous < score) {
+                            best.put(document, score);
+                        }
+                    }
+                }
+                for (Map.Entry<Document, Double> score : best.entrySet()) {
+                    Double total = scores.get(score.getKey());
+                    scores.put(score.getKey(), total == null ? score.getValue() : total + score.getValue());
+                }
+            }
+
+            for (String term : query.negatedTerms) {
+                Map<String, Integer> frequencies = postings.get(term);
+                if (frequencies != null) {
+                    for (String id : frequencies.keySet()) {
+                        scores.remove(documents.get(id));
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Document> matches = new ArrayList<>();
+        for (Document document : scores.keySet()) {
+            if (document.containsPhrases(query.phrases) && AssetMatcher.matchesAll(document.asset, filters)) {
+                matches.add(document);
+            }
+        }
+        Collections.sort(matches, new Comparator<Document>() {
+            @Override
+            public int compare(Document a, Document b) {
+                int result = Double.compare(scores.get(b), scores.get(a));
+                return result != 0 ? result : a.id.compareTo(b.id);
+            }
+        });
+
+        List<Asset> result = new ArrayList<>();
+        for (Document document : matches) {
+            result.add(document.asset);
+        }
+        return result;
+    }
+
+    /**
+     * Find the indexed words which a searched word matches, and how much each counts. Must be
+     * called with the lock held.
+     */
+    private Map<String, Double> expand(String term) {
+        Map<String, Double> expansions = new HashMap<>();
+        if (postings.containsKey(term)) {
+            expansions.put(term, 1.0);
+        }
+
+        if (term.length() >= MIN_PREFIX_LENGTH) {
+            for (String word : postings.subMap(term, false, term + Character.MAX_VALUE, false).keySet()) {
+                if (expansions.size() >= MAX_EXPANSIONS) {
+                    break;
+                }
+                expansions.put(word, PREFIX_WEIGHT);
+            }
+        }
+
+        // Numbers and versions must be exact, 2.3 is not a misspelling of 2.2
+        if (term.length() >= MIN_FUZZY_LENGTH && !containsDigit(term)) {
+            int maxEdits = term.length() >= TWO_EDIT_LENGTH ? 2 : 1;
+            for (String word : postings.keySet()) {
+                if (expansions.size() >= MAX_EXPANSIONS) {
+                    break;
+                }
+                if (!expansions.containsKey(word) && Math.abs(word.length() - term.length()) <= maxEdits && !containsDigit(word)
+                    && editDistance(term, word, maxEdits) <= maxEdits) {
+                    expansions.put(word, FUZZY_WEIGHT);
+                }
+            }
+        }
+        return expansions;
+    }
+
+    /**
+     * Load the index now, if it is enabled, rather than when it is first needed
+     */
+    void warmUp() {
+        if (configuration.isSearchIndexEnabled()) {
+            load();
+        }
+    }
+
+    /**
+     * Load the index if it isn't loaded
+     */
+    private void load() {
+        lock.readLock().lock();
+        try {
+            if (documents != null) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (documents != null) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            documents = new HashMap<>();
+            for (Asset asset : persistenceBean.retrieveAllAssets()) {
+                add(new Document(asset.get_id(), asset));
+            }
+            logger.info("Loaded the search index of " + documents.size() + " assets and " + postings.size() + " words in "
+                        + (System.currentTimeMillis() - start) + "ms");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add an asset to the index. Must be called with the write lock held.
+     */
+    private void add(Document document) {
+        documents.put(document.id, document);
+        for (Map.Entry<String, Integer> frequency : document.frequencies.entrySet()) {
+            Map<String, Integer> frequencies = postings.get(frequency.getKey());
+            if (frequencies == null) {
+                frequencies = new HashMap<>();
+                postings.put(frequency.getKey(), frequencies);
+            }
+            frequencies.put(document.id, frequency.getValue());
+        }
+        totalLength += document.length;
+    }
+
+    /**
+     * Remove an asset from the index. Must be called with the write lock held.
+     */
+    private void remove(String assetId) {
+        Document document = documents.remove(assetId);
+        if (document == null) {
+            return;
+        }
+        for (String word : document.frequencies.keySet()) {
+            Map<String, Integer> frequencies = postings.get(word);
+            if (frequencies != null) {
+                frequencies.remove(assetId);
+                if (frequencies.isEmpty()) {
+                    postings.remove(word);
+                }
+            }
+        }
+        totalLength -= document.length;
+    }
+
+    /**
+     * Split some text into words for the index.
+     * <p>
+     * Words are lower cased and common plural and verb endings are removed. A word made of parts
+     * joined by hyphens, underscores or dots, such as <code>jsp-2.3</code> or
+     * <code>com.ibm.websphere</code>, is kept whole and its parts are also returned. Dots between
+     * digits don't split a word, so version numbers stay together.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (String chunk : text.toLowerCase(Locale.ENGLISH).split("[^\\p{L}\\p{N}._\\-]+")) {
+            String word = chunk.replaceAll("^[._\\-]+|[._\\-]+$", "");
+            if (word.isEmpty()) {
+                continue;
+            }
+
+            String[] parts = word.split("[_\\-]|(?<!\\p{N})\\.|\\.(?!\\p{N})");
+            if (parts.length > 1) {
+                tokens.add(word);
+            }
+            for (String part : parts) {
+                if (!part.isEmpty() && !TextSearch.isStopWord(part)) {
+                    tokens.add(containsDigit(part) ? part : TextSearch.stem(part));
+                }
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Work out the number of insertions, deletions, substitutions and swaps of adjacent characters
+     * needed to turn one word into another, giving up once it is more than a maximum
+     *
+     * @return the distance, or maxEdits + 1 if it is more than maxEdits
+     */
+    static int editDistance(String a, String b, int maxEdits) {
+        int[] previous2 = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMinimum = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    current[j] = Math.min(current[j], previous2[j - 2] + 1);
+                }
+                rowMinimum = Math.min(rowMinimum, current[j]);
+            }
+            if (rowMinimum > maxEdits) {
+                return maxEdits + 1;
+            }
+            int[] spare = previous2;
+            previous2 = previous;
+            previous = current;
+            current = spare;
+        }
+        return Math.min(previous[b.length()], maxEdits + 1);
+    }
+
+    private static boolean containsDigit(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.isDigit(word.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A search term split into searched words, negated words and quoted phrases
+     */
+    private static class Query {
+
+        final Set<String> terms = new LinkedHashSet<>();
+
+        final Set<String> negatedTerms = new HashSet<>();
+
+        final List<String> phrases = new ArrayList<>();
+
+        Query(String searchTerm) {
+            StringBuilder unquoted = new StringBuilder();
+            String remaining = searchTerm;
+            int start;
+            while ((start = remaining.indexOf('"')) != -1) {
+                int end = remaining.indexOf('"', start + 1);
+                if (end == -1) {
+                    break;
+                }
+                unquoted.append(remaining, 0, start).append(' ');
+                String phrase = remaining.substring(start + 1, end).trim();
+                if (!phrase.isEmpty()) {
+                    phrases.add(phrase.toLowerCase(Locale.ENGLISH));
+                    terms.addAll(tokenize(phrase));
+                }
+                remaining = remaining.substring(end + 1);
+            }
+            unquoted.append(remaining);
+
+            for (String word : unquoted.toString().trim().split("\\s+")) {
+                if (word.startsWith("-")) {
+                    negatedTerms.addAll(tokenize(word.substring(1)));
+                } else {
+                    terms.addAll(tokenize(word));
+                }
+            }
+        }
+    }
+
+    /**
+     * An indexed asset
+     */
+    private static class Document {
+
+        final String id;
+
+        /** A copy of the asset without its attachments */
+        final Asset asset;
+
+        /** The weighted number of times each word occurs in the asset */
+        final Map<String, Integer> frequencies = new HashMap<>();
+
+        /** The weighted number of words in the asset */
+        final int length;
+
+        /** The lower cased values of the indexed fields, for matching phrases */
+        final List<String> text = new ArrayList<>();
+
+        Document(String id, Asset asset) {
+            this.id = id;
+            this.asset = new Asset(asset);
+            this.asset.getProperties().remove(Asset.ATTACHMENTS);
+
+            int length = 0;
+            for (Map.Entry<String, Integer> field : FIELD_WEIGHTS.entrySet()) {
+                for (String value : AssetMatcher.getStrings(AssetMatcher.getFieldValues(this.asset, field.getKey()))) {
+                    text.add(value.toLowerCase(Locale.ENGLISH));
+                    for (String token : tokenize(value)) {
+                        Integer frequency = frequencies.get(token);
+                        frequencies.put(token, (frequency == null ? 0 : frequency) + field.getValue());
+                        length += field.getValue();
+                    }
+                }
+            }
+            this.length = length;
+        }
+
+        boolean containsPhrases(List<String> phrases) {
+            for (String phrase : phrases) {
+                boolean found = false;
+                for (String value : text) {
+                    if (value.contains(phrase)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.ws.rs.core.MediaType;
+
+/**
+ * A response body which has been serialized as JSON, together with any other encodings of it
+ * that have been requested.
+ * <p>
+ * Each encoding is only produced once, so when an instance is held in the
+ * {@link QueryResultCache} a hot response is not transcoded or compressed again for every
+ * request.
+ */
+public class SerializedContent {
+
+    private final byte[] json;
+
+    /** Encoded forms of the JSON, keyed by media type and content encoding */
+    private final ConcurrentMap<String, byte[]> encodings = new ConcurrentHashMap<>();
+
+    /**
+     * @param json the serialized JSON
+     */
+    public SerializedContent(byte[] json) {
+        this.json = json;
+    }
+
+    /**
+     * @return the serialized JSON
+     */
+    public byte[] getJson() {
+        return json;
+    }
+
+    /**
+     * Get the content in the given encoding
+     *
+     * @param type the media type, either JSON or one of the binary types supported by
+     *            {@link BinaryEncoding}
+     * @param gzip true if the content should be compressed with gzip
+     * @return the encoded content
+     * @throws IOException if the content can't be encoded
+     */
+    public byte[] getBytes(MediaType type, boolean gzip) throws IOException {
+        String key = (type.getType() + "/" + type.getSubtype()).toLowerCase(Locale.ENGLISH) + (gzip ? ";" + ContentEncoding.GZIP : "");
+        byte[] bytes = encodings.get(key);
+        if (bytes == null) {
+            bytes = BinaryEncoding.encode(json, type);
+            if (gzip) {
+                bytes = ContentEncoding.gzip(bytes);
+            }
+            encodings.putIfAbsent(key, bytes);
+        }
+        return bytes;
+    }
+
+}
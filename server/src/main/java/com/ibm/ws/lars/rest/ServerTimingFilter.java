@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.inject.Inject;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Times each REST request with {@link RequestTimings} and returns the time taken by each phase in
+ * a Server-Timing header.
+ * <p>
+ * The header is added just before the response body is written, so it covers everything up to
+ * that point. If {@link Configuration#getTimingLogSampleRate()} is set, the timings of one in that
+ * many requests are also logged once the request has finished. Each request is also recorded as
+ * an {@link OperationEvents} event.
+ */
+public class ServerTimingFilter implements Filter {
+
+    private static final Logger logger = Logger.getLogger(ServerTimingFilter.class.getCanonicalName());
+
+    static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    @Inject
+    private Configuration configuration;
+
+    private int sampleRate;
+
+    private final AtomicLong requestCount = new AtomicLong();
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        sampleRate = configuration.getTimingLogSampleRate();
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        long start = OperationEvents.start();
+        RequestTimings timings = RequestTimings.begin();
+        TimedResponse timedResponse = new TimedResponse((HttpServletResponse) response, timings);
+        try {
+            chain.doFilter(request, timedResponse);
+        } finally {
+            RequestTimings.end();
+            timedResponse.addTimingHeader();
+        }
+
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        OperationEvents.restRequest(start, httpRequest.getMethod(), httpRequest.getRequestURI(), timedResponse.getStatus());
+        if (sampleRate > 0 && requestCount.incrementAndGet() % sampleRate == 0) {
+            logger.info(httpRequest.getMethod() + " " + httpRequest.getRequestURI() + " " + timedResponse.getStatus() + " " + timings.toHeader());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // Nothing to do
+    }
+
+    /**
+     * A response which adds the Server-Timing header before anything commits it
+     */
+    private static class TimedResponse extends HttpServletResponseWrapper {
+
+        private final RequestTimings timings;
+
+        private boolean headerAdded = false;
+
+        TimedResponse(HttpServletResponse response, RequestTimings timings) {
+            super(response);
+            this.timings = timings;
+        }
+
+        void addTimingHeader() {
+            if (!headerAdded && !isCommitted()) {
+                setHeader(SERVER_TIMING_HEADER, timings.toHeader());
+            }
+            headerAdded = true;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            addTimingHeader();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            addTimingHeader();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            addTimingHeader();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            addTimingHeader();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            addTimingHeader();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            addTimingHeader();
+            super.sendRedirect(location);
+        }
+    }
+
+}
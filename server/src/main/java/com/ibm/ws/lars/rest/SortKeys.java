@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.ibm.ws.lars.rest.model.Asset;
+
+/**
+ * Normalized keys for the fields which clients sort on, whose raw values don't sort usefully.
+ * <p>
+ * Names are sorted without regard to case, and versions are sorted numerically, so that
+ * <code>8.5.5.10</code> comes after <code>8.5.5.9</code>. The persistence store keeps the keys in
+ * the {@link #SORT_KEYS_FIELD} of each asset, so that sorting on them can use an index, and the
+ * in-memory views compute them from the asset as they sort.
+ * <p>
+ * Where a field has several values the key also has several values, so the lowest or highest is
+ * used in the same way as it would be for the raw field.
+ */
+class SortKeys {
+
+    /**
+     * Field in which the sort keys of an asset are stored. This field is never returned as part
+     * of an asset.
+     */
+    static final String SORT_KEYS_FIELD = "_sortKeys";
+
+    /** The fields which are sorted without regard to case, and the names of their keys */
+    private static final Map<String, String> LOWER_CASE_FIELDS;
+
+    /** The fields which are sorted as versions, and the names of their keys */
+    private static final Map<String, String> VERSION_FIELDS;
+
+    static {
+        Map<String, String> lowerCaseFields = new LinkedHashMap<>();
+        lowerCaseFields.put(Asset.NAME, "name");
+        lowerCaseFields.put("wlpInformation.shortName", "shortName");
+        LOWER_CASE_FIELDS = Collections.unmodifiableMap(lowerCaseFields);
+
+        Map<String, String> versionFields = new LinkedHashMap<>();
+        versionFields.put("version", "version");
+        versionFields.put("wlpInformation.appliesToFilterInfo.minVersion.value", "minVersion");
+        VERSION_FIELDS = Collections.unmodifiableMap(versionFields);
+    }
+
+    private SortKeys() {}
+
+    /**
+     * Returns the fields in which the sort keys are stored, for indexing
+     */
+    static List<String> getSortKeyFields() {
+        List<String> fields = new ArrayList<>();
+        for (String key : LOWER_CASE_FIELDS.values()) {
+            fields.add(SORT_KEYS_FIELD + "." + key);
+        }
+        for (String key : VERSION_FIELDS.values()) {
+            fields.add(SORT_KEYS_FIELD + "." + key);
+        }
+        return fields;
+    }
+
+    /**
+     * Returns the field which the persistence store should sort on when asked to sort on the
+     * given field
+     *
+     * @param field the field requested by the client
+     * @return the field holding its sort key, or the field itself if it has no sort key
+     */
+    static String getStoredSortField(String field) {
+        String key = LOWER_CASE_FIELDS.get(field);
+        if (key == null) {
+            key = VERSION_FIELDS.get(field);
+        }
+        return key == null ? field : SORT_KEYS_FIELD + "." + key;
+    }
+
+    /**
+     * Returns the values to sort on for a field of an asset. These are the sort keys of the field
+     * if it has them, otherwise the values of the field.
+     */
+    static List<Object> getSortValues(Map<String, Object> properties, String field) {
+        List<Object> values = AssetMatcher.getFieldValues(properties, field);
+        boolean lowerCase = LOWER_CASE_FIELDS.containsKey(field);
+        boolean version = VERSION_FIELDS.containsKey(field);
+        if (!lowerCase && !version) {
+            return values;
+        }
+
+        // Values which aren't strings are left alone, so they sort by type as before
+        List<Object> keys = new ArrayList<>();
+        for (Object value : values) {
+            if (value instanceof String && lowerCase) {
+                keys.add(((String) value).toLowerCase(Locale.ENGLISH));
+            } else if (value instanceof String && LibertyVersion.parse((String) value) != null) {
+                keys.add(LibertyVersion.parse((String) value).toSortKey());
+            } else {
+                keys.add(value);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Compute the sort keys of an asset, to be stored in its {@link #SORT_KEYS_FIELD}
+     *
+     * @param properties the properties of the asset
+     * @return a map from the name of each key to its value, which is a list if the field has
+     *         several values
+     */
+    static Map<String, Object> createSortKeys(Map<String, Object> properties) {
+        Map<String, Object> sortKeys = new LinkedHashMap<>();
+        addSortKeys(sortKeys, properties, LOWER_CASE_FIELDS);
+        addSortKeys(sortKeys, properties, VERSION_FIELDS);
+        return sortKeys;
+    }
+
+    private static void addSortKeys(Map<String, Object> sortKeys, Map<String, Object> properties, Map<String, String> fields) {
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            List<Object> values = getSortValues(properties, field.getKey());
+            if (values.size() == 1) {
+                sortKeys.put(field.getValue(), values.get(0));
+            } else if (!values.isEmpty()) {
+                sortKeys.put(field.getValue(), values);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import javax.inject.Inject;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Starts the background work of the application when it is deployed.
+ * <p>
+ * The REST application is only created when the first request for it arrives, so the
+ * {@link StartupTasks} can't be started from there: /health/ready would report that the server
+ * wasn't ready until something other than a health check had been sent to it.
+ */
+@WebListener
+public class StartupListener implements ServletContextListener {
+
+    @Inject
+    private StartupTasks startupTasks;
+
+    @Inject
+    private InvalidationBus invalidationBus;
+
+    @Inject
+    private AttachmentDeleter attachmentDeleter;
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        // Index builds can take minutes on a big repository, so don't hold up the application
+        startupTasks.start();
+        invalidationBus.start();
+        attachmentDeleter.start();
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        attachmentDeleter.stop();
+        invalidationBus.stop();
+        startupTasks.stop();
+    }
+
+}
@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+/**
+ * Does the work needed to get the repository ready to serve requests in the background, so that
+ * the application starts straight away.
+ * <p>
+ * First the persistence store is initialized, which builds any missing database indexes. This is
+ * retried until it succeeds. Then, if {@link Configuration#isWarmUpEnabled() warm-up} is enabled,
+ * the enabled in-memory views are loaded so that the first requests don't have to wait for them.
+ * <p>
+ * The server is live as soon as the application has started, but it is only ready once these
+ * tasks have finished. {@link HealthServlet} reports both, so that a load balancer can wait until
+ * the server is ready before sending it requests.
+ */
+@ApplicationScoped
+public class StartupTasks {
+
+    private static final Logger logger = Logger.getLogger(StartupTasks.class.getCanonicalName());
+
+    private static final long RETRY_MILLIS = 30000;
+
+    /**
+     * The stages of getting ready
+     */
+    public enum Phase {
+        STARTING,
+        INITIALIZING,
+        WARMING_UP,
+        READY
+    }
+
+    @Inject
+    private Persistor persistenceBean;
+
+    @Inject
+    private Configuration configuration;
+
+    @Inject
+    private PublishedSnapshot publishedSnapshot;
+
+    @Inject
+    private CatalogViews catalogViews;
+
+    @Inject
+    private FeatureResolver featureResolver;
+
+    @Inject
+    private SearchIndex searchIndex;
+
+    @Inject
+    private FacetCounts facetCounts;
+
+    private long retryMillis = RETRY_MILLIS;
+
+    private volatile Phase phase = Phase.STARTING;
+
+    private volatile long startTime = 0;
+
+    private volatile long readyTime = 0;
+
+    private volatile String lastFailure = null;
+
+    private volatile Thread thread = null;
+
+    /**
+     * Start the tasks in the background, if they haven't already been started
+     */
+    public synchronized void start() {
+        if (thread != null || phase != Phase.STARTING) {
+            return;
+        }
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runTasks();
+            }
+        }, "LARS startup tasks");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        Thread current = thread;
+        thread = null;
+        if (current != null) {
+            current.interrupt();
+        }
+    }
+
+    /**
+     * @return true if the tasks have finished and the server is ready to serve requests
+     */
+    public boolean isReady() {
+        return phase == Phase.READY;
+    }
+
+    /**
+     * @return the stage the tasks have reached
+     */
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * Describe the progress of the tasks, for reporting by {@link HealthServlet}
+     *
+     * @return a map giving the phase, how long the tasks have taken so far and the most recent
+     *         failure, if there has been one
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        Phase currentPhase = phase;
+        status.put("phase", currentPhase.name());
+        status.put("ready", currentPhase == Phase.READY);
+        if (startTime != 0) {
+            long endTime = currentPhase == Phase.READY ? readyTime : System.currentTimeMillis();
+            status.put("elapsedMillis", endTime - startTime);
+        }
+        if (lastFailure != null) {
+            status.put("lastFailure", lastFailure);
+        }
+        return status;
+    }
+
+    /**
+     * Run the tasks in the current thread
+     */
+    void runTasks() {
+        startTime = System.currentTimeMillis();
+
+        phase = Phase.INITIALIZING;
+        logger.info("Initializing the persistence store");
+        if (!initialize()) {
+            return;
+        }
+        logger.info("Initialized the persistence store in " + (System.currentTimeMillis() - startTime) + "ms");
+
+        if (configuration.isWarmUpEnabled()) {
+            phase = Phase.WARMING_UP;
+            warmUp();
+        }
+
+        readyTime = System.currentTimeMillis();
+        phase = Phase.READY;
+        logger.info("The repository is ready, after " + (readyTime - startTime) + "ms");
+    }
+
+    /**
+     * Initialize the persistence store, retrying until it succeeds
+     *
+     * @return true if it succeeded, or false if we were stopped first
+     */
+    private boolean initialize() {
+        while (true) {
+            try {
+                persistenceBean.initialize();
+                lastFailure = null;
+                return true;
+            } catch (RuntimeException e) {
+                lastFailure = e.toString();
+                logger.log(Level.WARNING, "Unable to initialize the persistence store, retrying in " + retryMillis + "ms", e);
+            }
+
+            try {
+                Thread.sleep(retryMillis);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Load the enabled in-memory views. If a view can't be loaded, it is loaded by the first
+     * request which needs it instead.
+     */
+    private void warmUp() {
+        warmUp("published snapshot", new Runnable() {
+            @Override
+            public void run() {
+                publishedSnapshot.warmUp();
+            }
+        });
+        warmUp("catalog views", new Runnable() {
+            @Override
+            public void run() {
+                catalogViews.warmUp();
+            }
+        });
+        warmUp("feature resolver", new Runnable() {
+            @Override
+            public void run() {
+                featureResolver.warmUp();
+            }
+        });
+        warmUp("search index", new Runnable() {
+            @Override
+            public void run() {
+                searchIndex.warmUp();
+            }
+        });
+        warmUp("facet counts", new Runnable() {
+            @Override
+            public void run() {
+                facetCounts.warmUp();
+            }
+        });
+    }
+
+    private void warmUp(String name, Runnable task) {
+        long start = System.currentTimeMillis();
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            lastFailure = e.toString();
+            logger.log(Level.WARNING, "Unable to load the " + name, e);
+            return;
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("warmUp: loaded the " + name + " in " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+}
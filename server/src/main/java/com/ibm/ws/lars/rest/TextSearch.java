@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.ws.lars.rest.model.Asset;
+
+/**
+ * Matches assets against a search term in memory, in the same way as a MongoDB $text query
+ * against the text index which the {@link PersistenceBean} creates.
+ * <p>
+ * The search term is split into words, quoted phrases and negated words. An asset matches if it
+ * contains any of the words, all of the phrases and none of the negated words. Words are compared
+ * case-insensitively after removing common English suffixes, and stop words are ignored.
+ * <p>
+ * The score of a match follows MongoDB's formula, with every field weighted equally, so sorting on
+ * it gives the same order as sorting on the textScore in almost all cases. MongoDB uses a full
+ * Snowball stemmer, whereas this only removes plural and verb endings, so a few words which MongoDB
+ * would treat as the same are treated as different.
+ */
+class TextSearch {
+
+    /** The fields which are searched */
+    static final List<String> FIELDS = Collections.unmodifiableList(Arrays.asList("name", "description", "shortDescription", "tags"));
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "about", "an", "and", "are", "as", "at", "be", "but", "by", "for", "from", "has", "have", "if", "in", "into",
+            "is", "it", "its", "of", "on", "or", "that", "the", "their", "then", "there", "these", "they", "this", "to",
+            "was", "were", "will", "with"));
+
+    private final Set<String> terms = new LinkedHashSet<>();
+
+    private final Set<String> negatedTerms = new HashSet<>();
+
+    private final List<String> phrases = new ArrayList<>();
+
+    /**
+     * @param searchTerm the search term, in the syntax of a MongoDB $text query
+     */
+    TextSearch(String searchTerm) {
+        String remaining = searchTerm;
+
+        // Extract the quoted phrases, whose words are also searched for on their own
+        StringBuilder unquoted = new StringBuilder();
+        int start;
+        while ((start = remaining.indexOf('"')) != -1) {
+            int end = remaining.indexOf('"', start + 1);
+            if (end == -1) {
+                break;
+            }
+            unquoted.append(remaining, 0, start).append(' ');
+            String phrase = remaining.substring(start + 1, end);
+            if (!phrase.trim().isEmpty()) {
+                phrases.add(phrase.toLowerCase(Locale.ENGLISH));
+                terms.addAll(getTerms(phrase));
+            }
+            remaining = remaining.substring(end + 1);
+        }
+        unquoted.append(remaining);
+
+        for (String word : unquoted.toString().split("\\s+")) {
+            if (word.startsWith("-")) {
+                negatedTerms.addAll(getTerms(word.substring(1)));
+            } else {
+                terms.addAll(getTerms(word));
+            }
+        }
+    }
+
+    /**
+     * Returns the stemmed words of the search term, not including the negated words. An asset
+     * must contain at least one of these to match.
+     */
+    Set<String> getSearchedTerms() {
+        return Collections.unmodifiableSet(terms);
+    }
+
+    /**
+     * Score an asset against the search term
+     *
+     * @param asset the asset
+     * @return the score, which is zero if the asset doesn't match
+     */
+    double score(Asset asset) {
+        if (terms.isEmpty()) {
+            return 0;
+        }
+
+        List<List<String>> fieldValues = new ArrayList<>();
+        for (String field : FIELDS) {
+            List<String> values = new ArrayList<>();
+            for (Object value : AssetMatcher.getFieldValues(asset, field)) {
+                if (value instanceof String) {
+                    values.add((String) value);
+                }
+            }
+            fieldValues.add(values);
+        }
+
+        for (String phrase : phrases) {
+            if (!containsPhrase(fieldValues, phrase)) {
+                return 0;
+            }
+        }
+
+        double score = 0;
+        for (List<String> values : fieldValues) {
+            for (String value : values) {
+                List<String> tokens = getTerms(value);
+                Map<String, Integer> counts = new HashMap<>();
+                for (String token : tokens) {
+                    if (negatedTerms.contains(token)) {
+                        return 0;
+                    }
+                    Integer count = counts.get(token);
+                    counts.put(token, count == null ? 1 : count + 1);
+                }
+                score += score(counts, tokens.size());
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Score one field value in the same way as MongoDB, where each repeat of a word adds half as
+     * much as the one before, and words count for more in short values than in long ones
+     */
+    private double score(Map<String, Integer> counts, int numTokens) {
+        double score = 0;
+        for (String term : terms) {
+            Integer count = counts.get(term);
+            if (count == null) {
+                continue;
+            }
+            double frequency = 0;
+            double weight = 1;
+            for (int i = 0; i < count; i++) {
+                frequency += weight;
+                weight /= 2;
+            }
+            double coefficient = (0.5 * count / numTokens) + 0.5;
+            score += frequency * coefficient;
+        }
+        return score;
+    }
+
+    private static boolean containsPhrase(List<List<String>> fieldValues, String phrase) {
+        for (List<String> values : fieldValues) {
+            for (String value : values) {
+                if (value.toLowerCase(Locale.ENGLISH).contains(phrase)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Split some text into stemmed words, leaving out the stop words
+     */
+    static List<String> getTerms(String text) {
+        List<String> result = new ArrayList<>();
+        for (String word : text.toLowerCase(Locale.ENGLISH).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty() && !isStopWord(word)) {
+                result.add(stem(word));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if a lower case word is too common to be searched for
+     */
+    static boolean isStopWord(String word) {
+        return STOP_WORDS.contains(word);
+    }
+
+    /**
+     * Remove common English plural and verb endings from a lower case word
+     */
+    static String stem(String word) {
+        String result = word;
+        if (result.endsWith("sses")) {
+            result = result.substring(0, result.length() - 2);
+        } else if (result.endsWith("ies") && result.length() > 4) {
+            result = result.substring(0, result.length() - 3) + "y";
+        } else if (result.endsWith("s") && !result.endsWith("ss") && !result.endsWith("us") && result.length() > 3) {
+            result = result.substring(0, result.length() - 1);
+        }
+
+        if (result.endsWith("ing") && result.length() > 5) {
+            result = result.substring(0, result.length() - 3);
+        } else if (result.endsWith("ed") && result.length() > 4) {
+            result = result.substring(0, result.length() - 2);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket, used to limit the rate at which a client can make requests or download data.
+ * <p>
+ * The bucket holds up to a fixed number of tokens and is refilled at a constant rate. Taking tokens
+ * from a full bucket allows short bursts, while the refill rate limits the long term average.
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double capacity;
+
+    private final double tokensPerNano;
+
+    private double tokens;
+
+    private long lastRefill;
+
+    /**
+     * Create a full bucket
+     *
+     * @param capacity the maximum number of tokens in the bucket
+     * @param tokensPerSecond the rate at which the bucket is refilled, which must be positive
+     */
+    public TokenBucket(long capacity, long tokensPerSecond) {
+        this.capacity = capacity;
+        this.tokensPerNano = (double) tokensPerSecond / NANOS_PER_SECOND;
+        this.tokens = capacity;
+        this.lastRefill = nanoTime();
+    }
+
+    /**
+     * Take tokens from the bucket, if there are enough
+     *
+     * @param count the number of tokens to take
+     * @return true if the tokens were taken, false if there weren't enough
+     */
+    public synchronized boolean tryConsume(long count) {
+        refill();
+        if (tokens >= count) {
+            tokens -= count;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Take tokens from the bucket, even if there are not enough. The caller should then wait for
+     * the returned time, which is how long it will take for the bucket to be refilled to empty.
+     *
+     * @param count the number of tokens to take
+     * @return the number of nanoseconds to wait, which is zero if there were enough tokens
+     */
+    public synchronized long consume(long count) {
+        refill();
+        tokens -= count;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+    }
+
+    /**
+     * @param count a number of tokens
+     * @return the number of nanoseconds until that many tokens will be available
+     */
+    public synchronized long getNanosUntilAvailable(long count) {
+        refill();
+        return tokens >= count ? 0 : (long) Math.ceil((count - tokens) / tokensPerNano);
+    }
+
+    private void refill() {
+        long now = nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+
+    /**
+     * Returns the current time, may be overridden for testing
+     */
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+}
@@ -44,6 +44,13 @@ public class Asset extends RepositoryObject {
 
     public static final String NAME = "name";
 
+    public static final String TYPE = "type";
+
+    public static final String WLP_INFORMATION = "wlpInformation";
+
+    /** The value of the type field for a Liberty feature (an ESA) */
+    public static final String FEATURE_TYPE = "com.ibm.websphere.Feature";
+
     public Asset() {
         super();
     }
@@ -105,6 +112,28 @@ public class Asset extends RepositoryObject {
         properties.put(CREATED_BY, createdBy);
     }
 
+    /**
+     * @return the type of the asset, or null if it is not set or is not a string
+     */
+    public String getType() {
+        Object type = properties.get(TYPE);
+        return type instanceof String ? (String) type : null;
+    }
+
+    /**
+     * Returns the value of a field from the wlpInformation section of the asset.
+     *
+     * @param field the name of the field within wlpInformation
+     * @return the value, or null if either wlpInformation or the field are not present
+     */
+    public Object getWlpInformationField(String field) {
+        Object wlpInformation = properties.get(WLP_INFORMATION);
+        if (wlpInformation instanceof Map) {
+            return ((Map<?, ?>) wlpInformation).get(field);
+        }
+        return null;
+    }
+
     /**
      * Reads an asset from the supplied JSON. No fields will be modified. This method does not
      * sanitise the asset or check that it is in a fit state to be written straight to the database.
@@ -118,6 +118,19 @@ public abstract class RepositoryObject {
         }
     }
 
+    /**
+     * Serialize the object as UTF-8 encoded JSON
+     *
+     * @return the JSON bytes
+     */
+    public byte[] toJsonBytes() {
+        try {
+            return writer.writeValueAsBytes(this.properties);
+        } catch (JsonProcessingException e) {
+            throw new RepositoryException("Couldn't serialize JSON object from repository", e);
+        }
+    }
+
     public void writeJSONToStream(OutputStream output) throws IOException {
         writer.writeValue(output, this.properties);
     }
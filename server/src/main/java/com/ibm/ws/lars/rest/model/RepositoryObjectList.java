@@ -53,6 +53,16 @@ public abstract class RepositoryObjectList<T> {
         return writer.writeValueAsString(this.state);
     }
 
+    /**
+     * Serialize the list as UTF-8 encoded JSON
+     *
+     * @return the JSON bytes
+     * @throws JsonProcessingException
+     */
+    public byte[] toJsonBytes() throws JsonProcessingException {
+        return writer.writeValueAsBytes(this.state);
+    }
+
     public int size() {
         return state.size();
     }
@@ -21,14 +21,21 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import javax.ws.rs.core.UriInfo;
 
+import mockit.Deencapsulation;
+
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -63,7 +70,9 @@ public class AssetServiceLayerTest {
     private UriInfo dummyUriInfo;
 
     private AssetServiceLayer service;
+    private AttachmentDeleter attachmentDeleter;
     Persistor memoryPersistor = new MemoryPersistor();
+    DummyEvent<AssetChangedEvent> assetChanges = new DummyEvent<>();
 
     @Before
     public void setUp() throws Exception {
@@ -75,9 +84,20 @@ public class AssetServiceLayerTest {
         attachmentContent = "I am some very simple content for the attachment!".getBytes();
 
         service = new AssetServiceLayer();
-
-        AssetServiceLayerInjection.setConfiguration(service, new Configuration());
+        Configuration configuration = new Configuration();
+        AttachmentCache attachmentCache = new AttachmentCache();
+        Deencapsulation.setField(attachmentCache, "configuration", configuration);
+        DownloadCounter downloadCounter = new DownloadCounter();
+        Deencapsulation.setField(downloadCounter, "configuration", configuration);
+        attachmentDeleter = new AttachmentDeleter();
+        Deencapsulation.setField(attachmentDeleter, "persistenceBean", memoryPersistor);
+
+        AssetServiceLayerInjection.setConfiguration(service, configuration);
         AssetServiceLayerInjection.setPersistenceBean(service, memoryPersistor);
+        AssetServiceLayerInjection.setAssetChanges(service, assetChanges);
+        AssetServiceLayerInjection.setAttachmentCache(service, attachmentCache);
+        AssetServiceLayerInjection.setDownloadCounter(service, downloadCounter);
+        AssetServiceLayerInjection.setAttachmentDeleter(service, attachmentDeleter);
 
         dummyUriInfo = new DummyUriInfo(new URI("http://localhost:9080/ma/v1/"));
 
@@ -133,6 +153,30 @@ public class AssetServiceLayerTest {
         assertEquals("There should be no assets stored", 0, emptyAssets.size());
     }
 
+    /**
+     * Tests that an event is fired for every write to an asset, so that in-memory views of the
+     * repository can be kept up to date.
+     */
+    @Test
+    public void testAssetChangedEvents() throws Exception {
+        Asset asset = service.createAsset(simpleObject, TEST_USERNAME);
+        String id = asset.get_id();
+        service.updateAssetState(Asset.StateAction.PUBLISH, id);
+        service.deleteAsset(id);
+
+        List<AssetChangedEvent> events = assetChanges.getFiredEvents();
+        assertEquals("Wrong number of events fired", 3, events.size());
+
+        assertEquals("Create event has the wrong id", id, events.get(0).getAssetId());
+        assertEquals("Create event has the wrong state", Asset.State.DRAFT, events.get(0).getAsset().getState());
+
+        assertEquals("State change event has the wrong id", id, events.get(1).getAssetId());
+        assertEquals("State change event has the wrong state", Asset.State.AWAITING_APPROVAL, events.get(1).getAsset().getState());
+
+        assertEquals("Delete event has the wrong id", id, events.get(2).getAssetId());
+        assertTrue("Delete event should be a delete", events.get(2).isDelete());
+    }
+
     /**
      * Tests creating and retrieving an attachment with no content.
      */
@@ -268,6 +312,222 @@ public class AssetServiceLayerTest {
         assertEquals(fetchedAsset.getAttachments().get(0), createdAttachment);
     }
 
+    /**
+     * Tests that deleting an asset deletes its attachments. The attachment deleter hasn't been
+     * started, so they are deleted straight away rather than in the background.
+     */
+    @Test
+    public void testDeleteAssetWithAttachments() throws Exception {
+        Asset asset = service.createAsset(new Asset(simpleObject), TEST_USERNAME);
+        for (String name : Arrays.asList("first.txt", "second.txt")) {
+            service.createAttachmentWithContent(asset.get_id(), name, new Attachment(attachmentWithContent), "text/plain",
+                                                new ByteArrayInputStream(attachmentContent), dummyUriInfo);
+        }
+        Asset otherAsset = service.createAsset(new Asset(simpleObject), TEST_USERNAME);
+        service.createAttachmentWithContent(otherAsset.get_id(), "other.txt", new Attachment(attachmentWithContent), "text/plain",
+                                            new ByteArrayInputStream(attachmentContent), dummyUriInfo);
+
+        service.deleteAsset(asset.get_id());
+
+        assertEquals("The asset should have been deleted", 1, service.retrieveAllAssets().size());
+        assertEquals("The attachments should have been deleted", 0, memoryPersistor.findAttachmentsForAsset(asset.get_id()).size());
+        assertEquals("The other asset's attachment should not have been deleted", 1, memoryPersistor.findAttachmentsForAsset(otherAsset.get_id()).size());
+    }
+
+    /**
+     * Tests that attachments left behind by a deleted asset are found and deleted
+     */
+    @Test
+    public void testDeleteOrphanedAttachments() throws Exception {
+        Asset asset = service.createAsset(new Asset(simpleObject), TEST_USERNAME);
+        service.createAttachmentWithContent(asset.get_id(), "orphan.txt", new Attachment(attachmentWithContent), "text/plain",
+                                            new ByteArrayInputStream(attachmentContent), dummyUriInfo);
+
+        // Delete just the asset, as if the server had stopped before deleting the attachments
+        memoryPersistor.deleteAsset(asset.get_id());
+        assertEquals(Collections.singleton(asset.get_id()), memoryPersistor.findAssetIdsWithOrphanedAttachments());
+
+        attachmentDeleter.deleteOrphanedAttachments();
+        assertEquals("The attachment should have been deleted", 0, memoryPersistor.findAttachmentsForAsset(asset.get_id()).size());
+        assertTrue(memoryPersistor.findAssetIdsWithOrphanedAttachments().isEmpty());
+    }
+
+    /**
+     * Tests that retrieving an asset as JSON gives the same result as retrieving the asset, and
+     * that the filters are applied
+     */
+    @Test
+    public void testRetrieveAssetJson() throws Exception {
+        Asset returnedAsset = service.createAsset(new Asset(simpleObject), TEST_USERNAME);
+        service.createAttachmentWithContent(returnedAsset.get_id(),
+                                            "AttachmentWithContent.txt",
+                                            new Attachment(attachmentWithContent),
+                                            "text/plain",
+                                            new ByteArrayInputStream(attachmentContent),
+                                            dummyUriInfo);
+
+        byte[] json = service.retrieveAssetJson(returnedAsset.get_id(), Collections.<AssetFilter> emptyList(), dummyUriInfo);
+        Asset fetchedAsset = Asset.deserializeAssetFromJson(new String(json, StandardCharsets.UTF_8));
+        assertEquals("Wrong asset returned", returnedAsset.get_id(), fetchedAsset.get_id());
+        assertEquals("Wrong asset name", simpleObject.getProperty("name"), fetchedAsset.getProperty("name"));
+        assertEquals("Wrong number of attachments", 1, fetchedAsset.getAttachments().size());
+        assertEquals("Attachment should have the correct URL",
+                     "http://localhost:9080/ma/v1/assets/" + returnedAsset.get_id() + "/attachments/"
+                             + fetchedAsset.getAttachments().get(0).get_id() + "/AttachmentWithContent.txt",
+                     fetchedAsset.getAttachments().get(0).getUrl());
+
+        AssetFilter published = new AssetFilter(Asset.STATE,
+                Collections.singletonList(new Condition(Condition.Operation.EQUALS, Asset.State.PUBLISHED.getValue())));
+        thrown.expect(NonExistentArtefactException.class);
+        service.retrieveAssetJson(returnedAsset.get_id(), Collections.singletonList(published), dummyUriInfo);
+    }
+
+    /**
+     * Test that several assets can be retrieved at once, in the order requested, with their
+     * attachments, and that missing and filtered out assets are left out
+     */
+    @Test
+    public void testRetrieveAssetsJson() throws Exception {
+        Asset first = service.createAsset(new Asset(simpleObject), TEST_USERNAME);
+        Asset second = service.createAsset(new Asset(simpleObject), TEST_USERNAME);
+        service.createAttachmentWithContent(second.get_id(),
+                                            "AttachmentWithContent.txt",
+                                            new Attachment(attachmentWithContent),
+                                            "text/plain",
+                                            new ByteArrayInputStream(attachmentContent),
+                                            dummyUriInfo);
+        service.updateAssetState(Asset.StateAction.PUBLISH, second.get_id());
+        service.updateAssetState(Asset.StateAction.APPROVE, second.get_id());
+
+        List<String> ids = Arrays.asList(second.get_id(), "ffffffffffffffffffffffff", first.get_id(), second.get_id());
+        byte[] json = service.retrieveAssetsJson(ids, Collections.<AssetFilter> emptyList(), dummyUriInfo);
+        AssetList assets = AssetList.jsonArrayToAssetList(new String(json, StandardCharsets.UTF_8));
+        assertEquals("Wrong number of assets", 2, assets.size());
+        assertEquals("Assets should be in the order requested", second.get_id(), assets.get(0).get_id());
+        assertEquals("Assets should be in the order requested", first.get_id(), assets.get(1).get_id());
+        assertEquals("Wrong number of attachments", 1, assets.get(0).getAttachments().size());
+        assertEquals("Attachment should have the correct URL",
+                     "http://localhost:9080/ma/v1/assets/" + second.get_id() + "/attachments/"
+                             + assets.get(0).getAttachments().get(0).get_id() + "/AttachmentWithContent.txt",
+                     assets.get(0).getAttachments().get(0).getUrl());
+        assertEquals("Wrong number of attachments", 0, assets.get(1).getAttachments().size());
+
+        AssetFilter published = new AssetFilter(Asset.STATE,
+                Collections.singletonList(new Condition(Condition.Operation.EQUALS, Asset.State.PUBLISHED.getValue())));
+        json = service.retrieveAssetsJson(ids, Collections.singletonList(published), dummyUriInfo);
+        assets = AssetList.jsonArrayToAssetList(new String(json, StandardCharsets.UTF_8));
+        assertEquals("Only the published asset should be returned", 1, assets.size());
+        assertEquals(second.get_id(), assets.get(0).get_id());
+    }
+
+    @Test
+    public void testCreateAttachmentsForNewAsset() throws Exception {
+        Asset asset = service.createAsset(new Asset(simpleObject), TEST_USERNAME);
+
+        Attachment content = new Attachment(attachmentWithContent);
+        content.setName("AttachmentWithContent.txt");
+        Attachment createdContent = service.createAttachmentForNewAsset(asset, content, "text/plain",
+                                                                        new ByteArrayInputStream(attachmentContent), dummyUriInfo);
+        assertEquals("Attachment should have assetId set correctly", asset.get_id(), createdContent.getAssetId());
+        assertNotNull("Attachment content should be stored", createdContent.getGridFSId());
+
+        Attachment link = Attachment.jsonToAttachment("{\"name\":\"Mr Attachment\", \"url\":\"http://example.com\", \"linkType\":\"direct\"}");
+        Attachment createdLink = service.createAttachmentForNewAsset(asset, link, null, null, dummyUriInfo);
+        assertNull("Link attachment should not have any content stored", createdLink.getGridFSId());
+        assertEquals("Link attachment should keep its URL", "http://example.com", createdLink.getUrl());
+
+        Asset published = service.moveNewAssetToState(asset, Asset.State.PUBLISHED);
+        assertEquals(Asset.State.PUBLISHED, published.getState());
+
+        Asset retrieved = service.retrieveAsset(asset.get_id(), dummyUriInfo);
+        assertEquals("Asset should be stored in the published state", Asset.State.PUBLISHED, retrieved.getState());
+        assertEquals("Wrong number of attachments", 2, retrieved.getAttachments().size());
+    }
+
+    @Test(expected = InvalidJsonAssetException.class)
+    public void testCreateAttachmentForNewAssetNoName() throws Exception {
+        Asset asset = service.createAsset(new Asset(simpleObject), TEST_USERNAME);
+        service.createAttachmentForNewAsset(asset, new Attachment(attachmentWithContent), "text/plain",
+                                            new ByteArrayInputStream(attachmentContent), dummyUriInfo);
+    }
+
+    @Test
+    public void testMoveNewAssetToDraft() throws Exception {
+        Asset asset = service.createAsset(new Asset(simpleObject), TEST_USERNAME);
+        Asset moved = service.moveNewAssetToState(asset, Asset.State.DRAFT);
+        assertEquals(Asset.State.DRAFT, moved.getState());
+        assertEquals(Asset.State.DRAFT, service.retrieveAsset(asset.get_id(), dummyUriInfo).getState());
+    }
+
+    /**
+     * Write requests should report the time spent in the persistence store, as reads do
+     */
+    @Test
+    public void testWritesTimed() throws Exception {
+        Asset asset = service.createAsset(new Asset(simpleObject), TEST_USERNAME);
+
+        RequestTimings timings = RequestTimings.begin();
+        try {
+            service.updateAssetState(Asset.StateAction.PUBLISH, asset.get_id());
+            assertTrue("updateAssetState should be timed", timings.toHeader().startsWith(RequestTimings.DB + ";"));
+        } finally {
+            RequestTimings.end();
+        }
+
+        timings = RequestTimings.begin();
+        try {
+            service.updateAsset(asset.get_id(), new Asset(simpleObject));
+            assertTrue("updateAsset should be timed", timings.toHeader().startsWith(RequestTimings.DB + ";"));
+        } finally {
+            RequestTimings.end();
+        }
+
+        timings = RequestTimings.begin();
+        try {
+            service.deleteAsset(asset.get_id());
+            assertTrue("deleteAsset should be timed", timings.toHeader().startsWith(RequestTimings.DB + ";"));
+        } finally {
+            RequestTimings.end();
+        }
+    }
+
+    /**
+     * Tests that a download is only counted once its content has been found
+     */
+    @Test
+    public void testDownloadCounted() throws Exception {
+        Configuration configuration = new Configuration();
+        Deencapsulation.setField(configuration, "downloadCountInterval", 60);
+        DownloadCounter downloadCounter = new DownloadCounter();
+        Deencapsulation.setField(downloadCounter, "configuration", configuration);
+        Deencapsulation.setField(downloadCounter, "persistenceBean", memoryPersistor);
+        AssetServiceLayerInjection.setDownloadCounter(service, downloadCounter);
+
+        Asset asset = service.createAsset(new Asset(simpleObject), TEST_USERNAME);
+        Attachment attachment = service.createAttachmentWithContent(asset.get_id(), "content.txt", new Attachment(attachmentWithContent), "text/plain",
+                                                                    new ByteArrayInputStream(attachmentContent), dummyUriInfo);
+        service.retrieveAttachmentContent(asset.get_id(), attachment.get_id(), "content.txt", dummyUriInfo).getContentStream().close();
+
+        Attachment missingContent = new Attachment(attachment);
+        missingContent.setGridFSId("missing");
+        try {
+            service.retrieveAttachmentContent(missingContent);
+            fail("Content was returned for an attachment which has none");
+        } catch (NonExistentArtefactException e) {
+            // expected
+        }
+
+        List<Map<String, Object>> counts = service.retrieveDownloadCounts(10);
+        assertEquals(1, counts.size());
+        assertEquals(1L, counts.get(0).get("downloads"));
+    }
+
+    @Test
+    public void testAddField() {
+        assertEquals("{\"a\":1,\"b\":[]}", new String(AssetServiceLayer.addField("{\"a\":1}".getBytes(), "b", "[]".getBytes())));
+        assertEquals("{\"b\":[]}", new String(AssetServiceLayer.addField("{ }".getBytes(), "b", "[]".getBytes())).replace(" ", ""));
+    }
+
     /**
      * Verifies that an exceptino is thrown when we attempt to create an attachment that has both
      * content and a url.
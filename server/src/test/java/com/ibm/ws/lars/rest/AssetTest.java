@@ -60,6 +60,7 @@ public class AssetTest {
 
         AssetServiceLayerInjection.setConfiguration(service, new Configuration());
         AssetServiceLayerInjection.setPersistenceBean(service, memoryPersistor);
+        AssetServiceLayerInjection.setAssetChanges(service, new DummyEvent<AssetChangedEvent>());
     }
 
     /**
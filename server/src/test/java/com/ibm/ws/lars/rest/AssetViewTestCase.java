@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.ibm.ws.lars.rest.Condition.Operation;
+import com.ibm.ws.lars.rest.model.Asset;
+import com.ibm.ws.lars.rest.model.AssetList;
+
+/**
+ * Common fixture for the unit tests of the in-memory views of the repository, such as
+ * {@link PublishedSnapshot} and {@link SearchIndex}, which are loaded from the persistence store and
+ * then kept up to date by observing {@link AssetChangedEvent}s.
+ * <p>
+ * Subclasses say how to create an asset their view will show, how to count the assets their view
+ * shows and how to pass an event to it, and the tests here check the behaviour every view must
+ * share.
+ */
+public abstract class AssetViewTestCase {
+
+    /**
+     * The views only ask for the assets they hold, but the memory persistor can't filter so it
+     * gives them everything
+     */
+    protected final Persistor persistor = new MemoryPersistor() {
+        @Override
+        public AssetList retrieveAllAssets(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions) {
+            return retrieveAllAssets();
+        }
+    };
+
+    /**
+     * Create an asset which the view will show once it knows about it
+     *
+     * @param name the name of the asset
+     * @return the asset that was created
+     */
+    protected abstract Asset createVisibleAsset(String name) throws Exception;
+
+    /**
+     * @return the number of assets created by {@link #createVisibleAsset(String)} that the view
+     *         currently shows, loading the view if needed
+     */
+    protected abstract int countVisibleAssets();
+
+    /**
+     * Pass an event to the view
+     */
+    protected abstract void assetChanged(AssetChangedEvent event);
+
+    @Test
+    public void testReloadedOnReset() throws Exception {
+        createVisibleAsset("a");
+        assertEquals(1, countVisibleAssets());
+
+        // Written by another server, which we've missed hearing about
+        createVisibleAsset("b");
+        assertEquals(1, countVisibleAssets());
+
+        assetChanged(AssetChangedEvent.reset());
+        assertEquals(2, countVisibleAssets());
+    }
+
+    /**
+     * Create a filter with a condition for each value
+     */
+    protected static AssetFilter filter(String field, Operation operation, String... values) {
+        List<Condition> conditions = new ArrayList<>();
+        for (String value : values) {
+            conditions.add(new Condition(operation, value));
+        }
+        return new AssetFilter(field, conditions);
+    }
+
+    /**
+     * Create an asset in the persistor
+     *
+     * @param name the name, or null for no name
+     * @param state the state, or null for no state
+     * @param type the type
+     * @param moreJson more fields for the asset, as JSON without the enclosing braces, or null
+     * @return the asset that was created
+     */
+    protected Asset storeAsset(String name, String state, String type, String moreJson) throws Exception {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"type\":\"").append(type).append("\"");
+        if (name != null) {
+            json.append(", \"name\":\"").append(name).append("\"");
+        }
+        if (state != null) {
+            json.append(", \"state\":\"").append(state).append("\"");
+        }
+        if (moreJson != null) {
+            json.append(", ").append(moreJson);
+        }
+        json.append("}");
+        return persistor.createAsset(Asset.deserializeAssetFromJson(json.toString()));
+    }
+
+    /**
+     * @return the names of the assets, in order
+     */
+    protected static List<String> getNames(Iterable<Asset> assets) {
+        List<String> names = new ArrayList<>();
+        for (Asset asset : assets) {
+            names.add((String) asset.getProperty(Asset.NAME));
+        }
+        return names;
+    }
+
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.ws.rs.core.UriInfo;
+
+import mockit.Deencapsulation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.ws.lars.rest.exceptions.InvalidParameterException;
+import com.ibm.ws.lars.rest.injection.AssetServiceLayerInjection;
+import com.ibm.ws.lars.rest.model.Asset;
+import com.ibm.ws.lars.rest.model.Attachment;
+import com.ibm.ws.lars.testutils.BasicChecks;
+
+/**
+ * Unit tests for {@link AttachmentBundle}
+ */
+public class AttachmentBundleTest {
+
+    private AssetServiceLayer service;
+    private UriInfo dummyUriInfo;
+
+    @Before
+    public void setUp() throws Exception {
+        service = new AssetServiceLayer();
+        Configuration configuration = new Configuration();
+        AttachmentCache attachmentCache = new AttachmentCache();
+        Deencapsulation.setField(attachmentCache, "configuration", configuration);
+        DownloadCounter downloadCounter = new DownloadCounter();
+        Deencapsulation.setField(downloadCounter, "configuration", configuration);
+
+        AssetServiceLayerInjection.setConfiguration(service, configuration);
+        AssetServiceLayerInjection.setPersistenceBean(service, new MemoryPersistor());
+        AssetServiceLayerInjection.setAssetChanges(service, new DummyEvent<AssetChangedEvent>());
+        AssetServiceLayerInjection.setAttachmentCache(service, attachmentCache);
+        AssetServiceLayerInjection.setDownloadCounter(service, downloadCounter);
+
+        dummyUriInfo = new DummyUriInfo(new URI("http://localhost:9080/ma/v1/"));
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        Asset asset = service.createAsset(Asset.deserializeAssetFromJson("{\"name\":\"foo\"}"), "testUser");
+        Attachment esa = createAttachment(asset, "foo.esa", "application/zip", "not really a zip");
+        Attachment license = createAttachment(asset, "license.html", "text/html", "<p>license</p>");
+        Attachment otherLicense = createAttachment(asset, "license.html", "text/html", "<p>other license</p>");
+
+        AttachmentBundle bundle = new AttachmentBundle(service);
+        bundle.add(esa);
+        bundle.add(license);
+        bundle.add(esa);
+        bundle.add(otherLicense);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        bundle.write(output);
+
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+            assertEntry(zip, asset.get_id() + "/foo.esa", "not really a zip");
+            assertEntry(zip, asset.get_id() + "/license.html", "<p>license</p>");
+            assertEntry(zip, asset.get_id() + "/" + otherLicense.get_id() + "/license.html", "<p>other license</p>");
+            assertNull("Unexpected entry in bundle", zip.getNextEntry());
+        }
+    }
+
+    @Test
+    public void testExternalAttachment() {
+        Attachment attachment = new Attachment();
+        attachment.setLinkType(Attachment.LinkType.DIRECT.getValue());
+        try {
+            new AttachmentBundle(service).add(attachment);
+            fail("An attachment without content was added to the bundle");
+        } catch (InvalidParameterException e) {
+            // expected
+        }
+    }
+
+    private Attachment createAttachment(Asset asset, String name, String contentType, String content) throws Exception {
+        return service.createAttachmentWithContent(asset.get_id(), name, new Attachment(), contentType,
+                                                   new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), dummyUriInfo);
+    }
+
+    private static void assertEntry(ZipInputStream zip, String name, String content) throws IOException {
+        ZipEntry entry = zip.getNextEntry();
+        assertEquals(name, entry.getName());
+        assertEquals(content, new String(BasicChecks.slurp(zip), StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import mockit.Deencapsulation;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ibm.ws.lars.testutils.BasicChecks;
+
+/**
+ * Unit tests for {@link AttachmentCache}
+ */
+public class AttachmentCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Configuration configuration;
+    private AttachmentCache cache;
+
+    @Before
+    public void setUp() {
+        configuration = new Configuration();
+        Deencapsulation.setField(configuration, "attachmentCacheDirectory", folder.getRoot().getPath());
+        Deencapsulation.setField(configuration, "attachmentCacheBytes", 10L);
+        cache = createCache();
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        assertNull(new Configuration().getAttachmentCacheDirectory());
+        assertTrue(cache.isEnabled());
+    }
+
+    @Test
+    public void testReadThrough() throws IOException {
+        assertNull(cache.get("abc"));
+
+        InputStream stream = cache.fill("abc", content("1234"));
+        assertNull("Content should not be cached until it has been read", cache.get("abc"));
+        assertEquals("1234", read(stream));
+
+        assertEquals("1234", read(cache.get("abc")));
+        assertEquals("1234", read(cache.get("abc")));
+    }
+
+    @Test
+    public void testPartialRead() throws IOException {
+        InputStream stream = cache.fill("abc", content("1234"));
+        stream.read(new byte[2]);
+        stream.close();
+
+        assertNull(cache.get("abc"));
+        assertEquals("Temporary file was left behind", 0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        fill("a", "1234");
+        fill("b", "1234");
+        read(cache.get("a"));
+
+        // "b" is now the least recently used
+        fill("c", "1234");
+        assertTrue(isCached("a"));
+        assertNull(cache.get("b"));
+        assertTrue(isCached("c"));
+        assertFalse(new File(folder.getRoot(), "b").exists());
+
+        // Too big to cache at all
+        fill("d", "12345678901");
+        assertNull(cache.get("d"));
+        assertTrue(isCached("a"));
+    }
+
+    @Test
+    public void testInvalidId() throws IOException {
+        InputStream content = content("1234");
+        assertSame(content, cache.fill("../abc", content));
+        assertNull(cache.get("../abc"));
+    }
+
+    @Test
+    public void testRestart() throws IOException {
+        fill("a", "1234");
+        fill("b", "1234");
+        assertTrue(new File(folder.getRoot(), "c-1.tmp").createNewFile());
+
+        cache = createCache();
+        // Force the cache to load the directory
+        cache.fill("c", content("")).close();
+
+        assertEquals("1234", read(cache.get("a")));
+        assertEquals("1234", read(cache.get("b")));
+        assertFalse(new File(folder.getRoot(), "c-1.tmp").exists());
+    }
+
+    private AttachmentCache createCache() {
+        AttachmentCache attachmentCache = new AttachmentCache();
+        Deencapsulation.setField(attachmentCache, "configuration", configuration);
+        return attachmentCache;
+    }
+
+    private void fill(String id, String content) throws IOException {
+        read(cache.fill(id, content(content)));
+    }
+
+    private boolean isCached(String id) throws IOException {
+        InputStream stream = cache.get(id);
+        if (stream == null) {
+            return false;
+        }
+        stream.close();
+        return true;
+    }
+
+    private static InputStream content(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(InputStream stream) throws IOException {
+        try {
+            return new String(BasicChecks.slurp(stream), StandardCharsets.UTF_8);
+        } finally {
+            stream.close();
+        }
+    }
+
+}
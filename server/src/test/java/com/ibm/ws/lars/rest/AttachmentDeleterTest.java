@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import mockit.Deencapsulation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link AttachmentDeleter}
+ */
+public class AttachmentDeleterTest {
+
+    private int failures;
+    private final List<String> deleted = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> orphaned = Collections.synchronizedList(new ArrayList<String>());
+    private AttachmentDeleter deleter;
+
+    @Before
+    public void setUp() {
+        failures = 0;
+        Persistor persistor = new MemoryPersistor() {
+            @Override
+            public synchronized void deleteAttachmentsForAsset(String assetId) {
+                if (failures > 0) {
+                    failures--;
+                    throw new IllegalStateException("Database unavailable");
+                }
+                deleted.add(assetId);
+                orphaned.remove(assetId);
+            }
+
+            @Override
+            public Collection<String> findAssetIdsWithOrphanedAttachments() {
+                return new ArrayList<>(orphaned);
+            }
+        };
+        deleter = new AttachmentDeleter();
+        Deencapsulation.setField(deleter, "persistenceBean", persistor);
+        Deencapsulation.setField(deleter, "retryDelayMillis", 1L);
+    }
+
+    @After
+    public void tearDown() {
+        deleter.stop();
+    }
+
+    @Test
+    public void testFailedDeleteRetried() throws Exception {
+        failures = AttachmentDeleter.MAX_RETRIES;
+        deleter.start();
+
+        deleter.deleteAttachments("asset1");
+        waitForDeletes(1);
+        assertEquals(Collections.singletonList("asset1"), deleted);
+    }
+
+    @Test
+    public void testOrphanedAttachmentsSweptAtStart() throws Exception {
+        orphaned.add("asset2");
+        deleter.start();
+
+        waitForDeletes(1);
+        assertEquals(Collections.singletonList("asset2"), deleted);
+    }
+
+    private void waitForDeletes(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (deleted.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+}
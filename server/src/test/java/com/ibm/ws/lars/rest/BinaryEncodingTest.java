@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+import mockit.Expectations;
+import mockit.Mocked;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link BinaryEncoding}
+ */
+public class BinaryEncodingTest {
+
+    private static final byte[] JSON = "[{\"name\":\"foo\",\"size\":12,\"score\":1.5,\"tags\":[\"a\",\"b\"],\"published\":true,\"other\":null}]"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (MediaType type : Arrays.asList(BinaryEncoding.SMILE_TYPE, BinaryEncoding.CBOR_TYPE)) {
+            byte[] encoded = BinaryEncoding.encode(JSON, type);
+            assertFalse("Data wasn't encoded as " + type, Arrays.equals(JSON, encoded));
+            assertArrayEquals("Wrong JSON after decoding " + type, JSON, BinaryEncoding.decode(encoded, type));
+        }
+    }
+
+    @Test
+    public void testJsonIsUnchanged() throws IOException {
+        assertSame(JSON, BinaryEncoding.encode(JSON, MediaType.APPLICATION_JSON_TYPE));
+        assertSame(JSON, BinaryEncoding.decode(JSON, null));
+
+        // Parameters are ignored
+        MediaType smileWithParameters = new MediaType("application", "x-jackson-smile", Collections.singletonMap("q", "0.5"));
+        assertArrayEquals(JSON, BinaryEncoding.decode(BinaryEncoding.encode(JSON, smileWithParameters), BinaryEncoding.SMILE_TYPE));
+    }
+
+    @Test
+    public void testDecodeInvalidData() {
+        try {
+            BinaryEncoding.decode(JSON, BinaryEncoding.SMILE_TYPE);
+            fail("JSON was decoded as Smile");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testGetResponseType(@Mocked final HttpHeaders headers) {
+        new Expectations() {
+            {
+                headers.getAcceptableMediaTypes();
+                returns(Arrays.asList(BinaryEncoding.SMILE_TYPE, MediaType.APPLICATION_JSON_TYPE),
+                        Arrays.asList(MediaType.APPLICATION_JSON_TYPE, BinaryEncoding.CBOR_TYPE),
+                        Arrays.asList(MediaType.TEXT_HTML_TYPE, BinaryEncoding.CBOR_TYPE),
+                        Arrays.asList(MediaType.WILDCARD_TYPE, BinaryEncoding.SMILE_TYPE),
+                        Arrays.<MediaType> asList());
+            }
+        };
+
+        assertEquals(BinaryEncoding.SMILE_TYPE, BinaryEncoding.getResponseType(headers));
+        assertEquals(MediaType.APPLICATION_JSON_TYPE, BinaryEncoding.getResponseType(headers));
+        assertEquals(BinaryEncoding.CBOR_TYPE, BinaryEncoding.getResponseType(headers));
+        assertEquals("Binary types must be asked for explicitly", MediaType.APPLICATION_JSON_TYPE, BinaryEncoding.getResponseType(headers));
+        assertEquals(MediaType.APPLICATION_JSON_TYPE, BinaryEncoding.getResponseType(headers));
+        assertEquals(MediaType.APPLICATION_JSON_TYPE, BinaryEncoding.getResponseType(null));
+    }
+
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.ibm.ws.lars.rest.BulkheadFilter.Workload;
+
+/**
+ * Unit tests for {@link Bulkhead} and the request classification in {@link BulkheadFilter}
+ */
+public class BulkheadTest {
+
+    @Test
+    public void testUnlimited() throws InterruptedException {
+        Bulkhead bulkhead = new Bulkhead("test", 0, 0, 0);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(bulkhead.tryEnter());
+        }
+    }
+
+    @Test
+    public void testLimitWithNoQueue() throws InterruptedException {
+        Bulkhead bulkhead = new Bulkhead("test", 2, 0, 1000);
+        assertTrue(bulkhead.tryEnter());
+        assertTrue(bulkhead.tryEnter());
+        assertFalse("Third request should be rejected", bulkhead.tryEnter());
+
+        bulkhead.exit();
+        assertTrue("Request should be allowed after another exits", bulkhead.tryEnter());
+    }
+
+    @Test
+    public void testQueue() throws Exception {
+        final Bulkhead bulkhead = new Bulkhead("test", 1, 1, 10000);
+        assertTrue(bulkhead.tryEnter());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> queued = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws InterruptedException {
+                    return bulkhead.tryEnter();
+                }
+            });
+
+            // Wait for the other thread to join the queue, which is then full
+            while (!bulkhead.toString().contains("queued=1")) {
+                Thread.sleep(10);
+            }
+            assertFalse("Request should be rejected when the queue is full", bulkhead.tryEnter());
+
+            bulkhead.exit();
+            assertTrue("Queued request should run once there is space", queued.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testQueueTimeout() throws InterruptedException {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 1, 50);
+        assertTrue(bulkhead.tryEnter());
+        assertFalse("Queued request should time out", bulkhead.tryEnter());
+    }
+
+    @Test
+    public void testGetWorkload() {
+        assertEquals(Workload.DOWNLOAD, BulkheadFilter.getWorkload("GET", "/ma/v1/assets/123/attachments/456/license.html", null, false));
+        assertEquals(Workload.UPLOAD, BulkheadFilter.getWorkload("POST", "/ma/v1/assets/123/attachments", null, false));
+        assertEquals(Workload.SEARCH, BulkheadFilter.getWorkload("GET", "/ma/v1/assets", null, true));
+        assertEquals(Workload.DOWNLOAD, BulkheadFilter.getWorkload("POST", "/ma/v1/bundle", null, false));
+        assertEquals(Workload.UPLOAD, BulkheadFilter.getWorkload("POST", "/ma/v1/assets", "multipart/form-data; boundary=xyz", false));
+
+        assertNull(BulkheadFilter.getWorkload("GET", "/ma/v1/assets", null, false));
+        assertNull(BulkheadFilter.getWorkload("GET", "/ma/v1/assets/123", null, false));
+        assertNull(BulkheadFilter.getWorkload("GET", "/ma/v1/assets/123/attachments", null, false));
+        assertNull(BulkheadFilter.getWorkload("DELETE", "/ma/v1/assets/123/attachments/456", null, false));
+        assertNull(BulkheadFilter.getWorkload("POST", "/ma/v1/assets", "application/json", false));
+    }
+
+}
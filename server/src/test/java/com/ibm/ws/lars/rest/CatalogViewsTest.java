@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import mockit.Deencapsulation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.ws.lars.rest.Condition.Operation;
+import com.ibm.ws.lars.rest.model.Asset;
+
+/**
+ * Unit tests for {@link CatalogViews}
+ */
+public class CatalogViewsTest extends AssetViewTestCase {
+
+    private static final AssetFilter PUBLISHED = filter(Asset.STATE, Operation.EQUALS, "published");
+
+    private static final AssetFilter PRODUCT_A = filter(CatalogViews.PRODUCT_ID_FIELD, Operation.EQUALS, "productA");
+
+    private Configuration configuration;
+    private CatalogViews catalogViews;
+
+    @Before
+    public void setUp() {
+        configuration = new Configuration();
+        Deencapsulation.setField(configuration, "catalogViewsEnabled", true);
+
+        catalogViews = new CatalogViews();
+        Deencapsulation.setField(catalogViews, "persistenceBean", persistor);
+        Deencapsulation.setField(catalogViews, "configuration", configuration);
+    }
+
+    @Test
+    public void testCanServe() {
+        AssetFilter product = filter(CatalogViews.PRODUCT_ID_FIELD, Operation.EQUALS, "com.ibm.websphere.appserver");
+
+        assertTrue(catalogViews.canServe(Arrays.asList(PUBLISHED, product), null, null, null));
+
+        assertFalse("Unpublished assets aren't in the catalog", catalogViews.canServe(Arrays.asList(product), null, null, null));
+        assertFalse("Product id is required", catalogViews.canServe(Arrays.asList(PUBLISHED), null, null, null));
+        assertFalse("Not equals can't be looked up",
+                    catalogViews.canServe(Arrays.asList(PUBLISHED, filter(CatalogViews.PRODUCT_ID_FIELD, Operation.NOT_EQUALS, "foo")), null, null, null));
+        assertFalse("Searches aren't supported", catalogViews.canServe(Arrays.asList(PUBLISHED, product), "foo", null, null));
+        assertFalse("Pagination isn't supported", catalogViews.canServe(Arrays.asList(PUBLISHED, product), null, new PaginationOptions(0, 10), null));
+
+        Deencapsulation.setField(configuration, "catalogViewsEnabled", false);
+        assertFalse("Catalog is disabled", catalogViews.canServe(Arrays.asList(PUBLISHED, product), null, null, null));
+    }
+
+    @Test
+    public void testRetrieveByProductAndVersion() throws Exception {
+        createAsset("a", "published", "features", "8.5.5.9", "productA");
+        createAsset("b", "published", "features", "8.5.5.8", "productA");
+        createAsset("c", "published", "features", "8.5.5.9", "productB");
+        createAsset("d", "draft", "features", "8.5.5.9", "productA");
+        createAsset("e", "published", "samples", "8.5.5.9", "productA");
+        createAsset("f", "published", "features", null, "productA");
+
+        assertThat(retrieve(PUBLISHED, filter(CatalogViews.PRODUCT_ID_FIELD, Operation.EQUALS, "productA")),
+                   containsInAnyOrder("a", "b", "e", "f"));
+        assertThat(retrieve(PUBLISHED,
+                            filter(CatalogViews.PRODUCT_ID_FIELD, Operation.EQUALS, "productA"),
+                            filter(CatalogViews.MIN_VERSION_FIELD, Operation.EQUALS, "8.5.5.9")),
+                   containsInAnyOrder("a", "e"));
+        assertThat(retrieve(PUBLISHED,
+                            filter(CatalogViews.PRODUCT_ID_FIELD, Operation.EQUALS, "productA", "productB"),
+                            filter(CatalogViews.MIN_VERSION_FIELD, Operation.EQUALS, "8.5.5.9"),
+                            filter("type", Operation.EQUALS, "features")),
+                   containsInAnyOrder("a", "c"));
+        assertThat(retrieve(PUBLISHED,
+                            filter(CatalogViews.PRODUCT_ID_FIELD, Operation.EQUALS, "productA"),
+                            filter("type", Operation.NOT_EQUALS, "features")),
+                   containsInAnyOrder("e"));
+
+        assertEquals(2, catalogViews.countAllAssets(Arrays.asList(PUBLISHED,
+                                                                  filter(CatalogViews.PRODUCT_ID_FIELD, Operation.EQUALS, "productA"),
+                                                                  filter(CatalogViews.MIN_VERSION_FIELD, Operation.EQUALS, "8.5.5.9"))));
+    }
+
+    @Test
+    public void testMultipleProducts() throws Exception {
+        // As with mongo, the product id and version don't have to come from the same appliesTo entry
+        createAsset("a", "published", "features", "8.5.5.9", "productA", "productB");
+
+        assertThat(retrieve(PUBLISHED,
+                            filter(CatalogViews.PRODUCT_ID_FIELD, Operation.EQUALS, "productB"),
+                            filter(CatalogViews.MIN_VERSION_FIELD, Operation.EQUALS, "8.5.5.9")),
+                   containsInAnyOrder("a"));
+    }
+
+    @Test
+    public void testCatalogUpdatedByEvents() throws Exception {
+        createAsset("a", "published", "features", "8.5.5.9", "productA");
+
+        // Load the catalog
+        assertThat(retrieve(PUBLISHED, PRODUCT_A), containsInAnyOrder("a"));
+
+        Asset b = createAsset("b", "published", "features", "8.5.5.9", "productA");
+        catalogViews.assetChanged(new AssetChangedEvent(b.get_id(), b));
+        assertThat(retrieve(PUBLISHED, PRODUCT_A), containsInAnyOrder("a", "b"));
+
+        // Unpublishing removes the asset from the catalog
+        Asset unpublished = new Asset(b);
+        unpublished.getProperties().put(Asset.STATE, "awaiting_approval");
+        catalogViews.assetChanged(new AssetChangedEvent(b.get_id(), unpublished));
+        assertThat(retrieve(PUBLISHED, PRODUCT_A), containsInAnyOrder("a"));
+
+        catalogViews.assetChanged(new AssetChangedEvent(b.get_id(), b));
+        catalogViews.assetChanged(new AssetChangedEvent(b.get_id(), null));
+        assertThat(retrieve(PUBLISHED, PRODUCT_A), containsInAnyOrder("a"));
+    }
+
+    @Override
+    protected Asset createVisibleAsset(String name) throws Exception {
+        return createAsset(name, "published", "features", "8.5.5.9", "productA");
+    }
+
+    @Override
+    protected int countVisibleAssets() {
+        return catalogViews.countAllAssets(Arrays.asList(PUBLISHED, PRODUCT_A));
+    }
+
+    @Override
+    protected void assetChanged(AssetChangedEvent event) {
+        catalogViews.assetChanged(event);
+    }
+
+    private Asset createAsset(String name, String state, String type, String minVersion, String... productIds) throws Exception {
+        StringBuilder json = new StringBuilder();
+        json.append("\"wlpInformation\":{\"appliesToFilterInfo\":[");
+        for (int i = 0; i < productIds.length; i++) {
+            json.append(i > 0 ? "," : "").append("{\"productId\":\"").append(productIds[i]).append("\"");
+            if (minVersion != null && i == 0) {
+                json.append(",\"minVersion\":{\"value\":\"").append(minVersion).append("\"}");
+            }
+            json.append("}");
+        }
+        json.append("]}");
+
+        return storeAsset(name, state, type, json.toString());
+    }
+
+    private List<String> retrieve(AssetFilter... filters) {
+        return getNames(catalogViews.retrieveAllAssets(Arrays.asList(filters)));
+    }
+
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import mockit.Deencapsulation;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ClientLimiter} and {@link TokenBucket}
+ */
+public class ClientLimiterTest {
+
+    @Test
+    public void testTokenBucket() {
+        FakeClockBucket bucket = new FakeClockBucket(10, 5);
+
+        assertTrue("Should allow a burst up to the capacity", bucket.tryConsume(10));
+        assertFalse(bucket.tryConsume(1));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), bucket.getNanosUntilAvailable(1), 10);
+
+        bucket.time += TimeUnit.SECONDS.toNanos(1);
+        assertTrue("Should have refilled 5 tokens", bucket.tryConsume(5));
+        assertFalse(bucket.tryConsume(1));
+
+        bucket.time += TimeUnit.SECONDS.toNanos(100);
+        assertFalse("Should not refill beyond the capacity", bucket.tryConsume(11));
+        assertTrue(bucket.tryConsume(10));
+    }
+
+    @Test
+    public void testTokenBucketDebt() {
+        FakeClockBucket bucket = new FakeClockBucket(1000, 1000);
+        assertEquals(0, bucket.consume(1000));
+        assertEquals("Should wait for the overdraft to be repaid", TimeUnit.SECONDS.toNanos(2), bucket.consume(2000), 10);
+    }
+
+    @Test
+    public void testConcurrencyLimit() {
+        ClientLimiter limiter = new ClientLimiter(2, 0, 0);
+        assertTrue(limiter.isEnabled());
+
+        ClientLimiter.Admission first = limiter.tryAdmit("a");
+        assertTrue(first.isAdmitted());
+        assertEquals(0, first.getRetryAfterSeconds());
+        assertTrue(limiter.tryAdmit("a").isAdmitted());
+        ClientLimiter.Admission third = limiter.tryAdmit("a");
+        assertFalse("Third concurrent request should be rejected", third.isAdmitted());
+        assertTrue(third.getRetryAfterSeconds() > 0);
+        assertTrue("Other clients are unaffected", limiter.tryAdmit("b").isAdmitted());
+
+        limiter.release(first);
+        assertTrue(limiter.tryAdmit("a").isAdmitted());
+    }
+
+    /**
+     * A client can be forgotten while one of its requests is in progress. Releasing that request
+     * must not affect the state of the client which is tracked afresh.
+     */
+    @Test
+    public void testReleaseAfterClientForgotten() {
+        ClientLimiter limiter = new ClientLimiter(1, 0, 0);
+        ClientLimiter.Admission forgotten = limiter.tryAdmit("a");
+        assertTrue(forgotten.isAdmitted());
+
+        Map<?, ?> clients = Deencapsulation.getField(limiter, "clients");
+        clients.clear();
+
+        assertTrue(limiter.tryAdmit("a").isAdmitted());
+        limiter.release(forgotten);
+        assertFalse("The second request is still in progress", limiter.tryAdmit("a").isAdmitted());
+    }
+
+    @Test
+    public void testRequestRate() {
+        ClientLimiter limiter = new ClientLimiter(0, 1, 0);
+        for (int i = 0; i < ClientLimiter.REQUEST_BURST_SECONDS; i++) {
+            ClientLimiter.Admission admission = limiter.tryAdmit("a");
+            assertTrue(admission.isAdmitted());
+            limiter.release(admission);
+        }
+        assertEquals("Should have to wait about a second", 1, limiter.tryAdmit("a").getRetryAfterSeconds());
+        assertTrue(limiter.tryAdmit("b").isAdmitted());
+    }
+
+    @Test
+    public void testBandwidth() {
+        assertFalse(new ClientLimiter(0, 0, 0).isEnabled());
+        assertNull(new ClientLimiter(1, 0, 0).tryAdmit("a").getBandwidth());
+
+        ClientLimiter limiter = new ClientLimiter(0, 0, 1024);
+        TokenBucket bandwidth = limiter.tryAdmit("a").getBandwidth();
+        assertNotNull(bandwidth);
+        assertTrue("A client's downloads share one bucket", bandwidth == limiter.tryAdmit("a").getBandwidth());
+        assertFalse(bandwidth == limiter.tryAdmit("b").getBandwidth());
+    }
+
+    private static class FakeClockBucket extends TokenBucket {
+        private long time;
+
+        FakeClockBucket(long capacity, long tokensPerSecond) {
+            super(capacity, tokensPerSecond);
+        }
+
+        @Override
+        long nanoTime() {
+            return time;
+        }
+    }
+
+}
@@ -17,6 +17,7 @@ package com.ibm.ws.lars.rest;
 
 import static mockit.Deencapsulation.invoke;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import org.junit.Test;
 
@@ -34,4 +35,21 @@ public class ConfigurationTest {
         assertEquals("http://example.org/wibble/ma/v1/", invoke(Configuration.class, methodName, "http://example.org/wibble/"));
     }
 
+    @Test
+    public void testQueryReadPreference() {
+        assertEquals("secondaryPreferred", Configuration.checkQueryReadPreference("secondaryPreferred", false));
+        assertNull(Configuration.checkQueryReadPreference(null, false));
+        assertNull(Configuration.checkQueryReadPreference(null, true));
+    }
+
+    /**
+     * The in-memory views must be loaded from the primary, or they could miss a write which hasn't
+     * reached a secondary yet
+     */
+    @Test
+    public void testQueryReadPreferenceIgnoredWithInMemoryViews() {
+        assertNull(Configuration.checkQueryReadPreference("secondaryPreferred", true));
+        assertNull(Configuration.checkQueryReadPreference("nearest", true));
+    }
+
 }
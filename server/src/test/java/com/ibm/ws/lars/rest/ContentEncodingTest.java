@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+import mockit.Expectations;
+import mockit.Mocked;
+
+import org.junit.Test;
+
+import com.ibm.ws.lars.testutils.BasicChecks;
+
+/**
+ * Unit tests for {@link ContentEncoding} and {@link SerializedContent}
+ */
+public class ContentEncodingTest {
+
+    @Test
+    public void testAcceptsGzip(@Mocked final HttpHeaders headers) {
+        new Expectations() {
+            {
+                headers.getRequestHeader(HttpHeaders.ACCEPT_ENCODING);
+                returns(Arrays.asList("gzip, deflate"),
+                        Arrays.asList("deflate", "GZIP;q=0.5"),
+                        Arrays.asList("*"),
+                        Arrays.asList("deflate"),
+                        Arrays.asList("gzip;q=0"),
+                        Arrays.asList("gzip;q=0, *"),
+                        null);
+            }
+        };
+
+        assertTrue(ContentEncoding.acceptsGzip(headers));
+        assertTrue(ContentEncoding.acceptsGzip(headers));
+        assertTrue(ContentEncoding.acceptsGzip(headers));
+        assertFalse(ContentEncoding.acceptsGzip(headers));
+        assertFalse(ContentEncoding.acceptsGzip(headers));
+        assertFalse("An explicit gzip;q=0 overrides the wildcard", ContentEncoding.acceptsGzip(headers));
+        assertFalse(ContentEncoding.acceptsGzip(headers));
+        assertFalse(ContentEncoding.acceptsGzip(null));
+    }
+
+    @Test
+    public void testIsCompressible() {
+        assertTrue(ContentEncoding.isCompressible("text/html; charset=UTF-8"));
+        assertTrue(ContentEncoding.isCompressible("application/json"));
+        assertTrue(ContentEncoding.isCompressible("application/xml"));
+        assertFalse(ContentEncoding.isCompressible("application/zip"));
+        assertFalse(ContentEncoding.isCompressible("application/java-archive"));
+        assertFalse(ContentEncoding.isCompressible(null));
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        byte[] data = "<html>Some license text, some license text, some license text</html>".getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = ContentEncoding.gzip(data);
+        assertArrayEquals(data, BasicChecks.slurp(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void testSerializedContentEncodingsAreReused() throws IOException {
+        byte[] json = "[{\"name\":\"foo\"}]".getBytes(StandardCharsets.UTF_8);
+        SerializedContent content = new SerializedContent(json);
+
+        assertSame(json, content.getBytes(MediaType.APPLICATION_JSON_TYPE, false));
+
+        byte[] gzipped = content.getBytes(MediaType.APPLICATION_JSON_TYPE, true);
+        assertArrayEquals(json, BasicChecks.slurp(new GZIPInputStream(new ByteArrayInputStream(gzipped))));
+        assertSame("Compressed content wasn't reused", gzipped, content.getBytes(MediaType.APPLICATION_JSON_TYPE, true));
+
+        byte[] smile = content.getBytes(BinaryEncoding.SMILE_TYPE, false);
+        assertSame("Smile content wasn't reused", smile,
+                   content.getBytes(new MediaType("application", "x-jackson-smile", Collections.singletonMap("q", "1")), false));
+        assertNotSame(smile, content.getBytes(BinaryEncoding.SMILE_TYPE, true));
+    }
+
+}
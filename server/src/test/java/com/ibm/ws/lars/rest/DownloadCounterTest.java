@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import mockit.Deencapsulation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.ws.lars.rest.model.Asset;
+
+/**
+ * Unit tests for {@link DownloadCounter}
+ */
+public class DownloadCounterTest {
+
+    private Configuration configuration;
+    private FailingPersistor persistor;
+    private DownloadCounter counter;
+    private String assetId;
+
+    @Before
+    public void setUp() throws Exception {
+        configuration = new Configuration();
+        Deencapsulation.setField(configuration, "downloadCountInterval", 60);
+
+        persistor = new FailingPersistor();
+        assetId = persistor.createAsset(Asset.deserializeAssetFromJson("{\"name\":\"foo\"}")).get_id();
+
+        counter = new DownloadCounter();
+        Deencapsulation.setField(counter, "configuration", configuration);
+        Deencapsulation.setField(counter, "persistenceBean", persistor);
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        assertEquals(0, new Configuration().getDownloadCountInterval());
+        assertTrue(counter.isEnabled());
+    }
+
+    @Test
+    public void testFlush() {
+        counter.recordDownload(assetId, "a");
+        counter.recordDownload(assetId, "a");
+        counter.recordDownload(assetId, "b");
+        counter.flush();
+
+        List<Map<String, Object>> counts = persistor.retrieveDownloadCounts(10);
+        assertEquals(1, counts.size());
+        assertEquals(3L, counts.get(0).get("downloads"));
+
+        // Only new downloads are added by the next flush
+        counter.recordDownload(assetId, "b");
+        counter.flush();
+        counter.flush();
+        assertEquals(4L, persistor.retrieveDownloadCounts(10).get(0).get("downloads"));
+    }
+
+    @Test
+    public void testFailedFlush() {
+        counter.recordDownload(assetId, "a");
+        persistor.fail = true;
+        counter.flush();
+        assertTrue(persistor.retrieveDownloadCounts(10).isEmpty());
+
+        counter.recordDownload(assetId, "a");
+        persistor.fail = false;
+        counter.flush();
+        assertEquals(2L, persistor.retrieveDownloadCounts(10).get(0).get("downloads"));
+    }
+
+    @Test
+    public void testDisabled() {
+        Deencapsulation.setField(configuration, "downloadCountInterval", 0);
+        assertFalse(counter.isEnabled());
+        counter.recordDownload(assetId, "a");
+        counter.flush();
+        assertTrue(persistor.retrieveDownloadCounts(10).isEmpty());
+    }
+
+    private static class FailingPersistor extends MemoryPersistor {
+        boolean fail = false;
+
+        @Override
+        public void addDownloads(Map<String, Map<String, Long>> counts) {
+            if (fail) {
+                throw new RuntimeException("Test failure");
+            }
+            super.addDownloads(counts);
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.enterprise.event.Event;
+import javax.enterprise.util.TypeLiteral;
+
+/**
+ * A simple implementation of {@link Event} for unit tests, which are run without a CDI container.
+ * <p>
+ * Fired events are recorded so that tests can check them.
+ */
+public class DummyEvent<T> implements Event<T> {
+
+    private final List<T> firedEvents = new ArrayList<>();
+
+    /** {@inheritDoc} */
+    @Override
+    public void fire(T event) {
+        firedEvents.add(event);
+    }
+
+    /**
+     * @return the events fired so far, in the order they were fired
+     */
+    public List<T> getFiredEvents() {
+        return firedEvents;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Event<T> select(Annotation... qualifiers) {
+        throw new UnsupportedOperationException("Qualifiers are not supported in this test facade");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public <U extends T> Event<U> select(Class<U> subtype, Annotation... qualifiers) {
+        throw new UnsupportedOperationException("Qualifiers are not supported in this test facade");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public <U extends T> Event<U> select(TypeLiteral<U> subtype, Annotation... qualifiers) {
+        throw new UnsupportedOperationException("Qualifiers are not supported in this test facade");
+    }
+
+}
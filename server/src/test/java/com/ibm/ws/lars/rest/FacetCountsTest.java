@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import mockit.Deencapsulation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.ws.lars.rest.Condition.Operation;
+import com.ibm.ws.lars.rest.model.Asset;
+
+/**
+ * Unit tests for {@link FacetCounts}
+ */
+public class FacetCountsTest extends AssetViewTestCase {
+
+    private static final Collection<AssetFilter> NO_FILTERS = Collections.emptyList();
+
+    private Configuration configuration;
+    private FacetCounts facetCounts;
+
+    @Before
+    public void setUp() {
+        configuration = new Configuration();
+        Deencapsulation.setField(configuration, "facetCountsEnabled", true);
+
+        facetCounts = new FacetCounts();
+        Deencapsulation.setField(facetCounts, "persistenceBean", persistor);
+        Deencapsulation.setField(facetCounts, "configuration", configuration);
+    }
+
+    @Test
+    public void testCanServe() {
+        List<String> type = Arrays.asList("type");
+        assertTrue(facetCounts.canServe(type, NO_FILTERS, null));
+        assertTrue(facetCounts.canServe(Arrays.asList("type", "licenseType"), AssetMatcher.PUBLISHED_ASSETS, null));
+
+        assertFalse("Searches aren't counted", facetCounts.canServe(type, NO_FILTERS, "foo"));
+        assertFalse("Name isn't counted", facetCounts.canServe(Arrays.asList("type", "name"), NO_FILTERS, null));
+        assertFalse("Filters other than published aren't supported",
+                    facetCounts.canServe(type, Arrays.asList(filter("name", Operation.EQUALS, "a")), null));
+
+        Deencapsulation.setField(configuration, "facetCountsEnabled", false);
+        assertFalse("Counts are disabled", facetCounts.canServe(type, NO_FILTERS, null));
+    }
+
+    @Test
+    public void testCounts() throws Exception {
+        createAsset("published", "features", "IPLA");
+        createAsset("published", "features", "ILAN");
+        createAsset("draft", "features", "IPLA");
+        createAsset("published", "samples", null);
+
+        Map<Object, Integer> expected = new LinkedHashMap<>();
+        expected.put("features", 3);
+        expected.put("samples", 1);
+        assertEquals(expected, counts("type", NO_FILTERS));
+
+        expected.clear();
+        expected.put("features", 2);
+        expected.put("samples", 1);
+        assertEquals(expected, counts("type", AssetMatcher.PUBLISHED_ASSETS));
+
+        expected.clear();
+        expected.put("IPLA", 1);
+        expected.put("ILAN", 1);
+        assertEquals(expected, counts("licenseType", AssetMatcher.PUBLISHED_ASSETS));
+
+        List<Map<String, Object>> summary = facetCounts.summarizeAssets(Arrays.asList("type"), NO_FILTERS);
+        assertEquals("type", summary.get(0).get("filterName"));
+        assertEquals(Arrays.<Object> asList("features", "samples"), summary.get(0).get("filterValue"));
+    }
+
+    @Test
+    public void testCountsUpdatedByEvents() throws Exception {
+        Asset asset = createAsset("draft", "features", null);
+        assertEquals(Collections.<Object, Integer> singletonMap("features", 1), counts("type", NO_FILTERS));
+        assertTrue(counts("type", AssetMatcher.PUBLISHED_ASSETS).isEmpty());
+
+        Asset published = new Asset(asset);
+        published.getProperties().put(Asset.STATE, "published");
+        facetCounts.assetChanged(new AssetChangedEvent(asset.get_id(), published));
+        assertEquals(Collections.<Object, Integer> singletonMap("features", 1), counts("type", NO_FILTERS));
+        assertEquals(Collections.<Object, Integer> singletonMap("features", 1), counts("type", AssetMatcher.PUBLISHED_ASSETS));
+
+        Asset changed = new Asset(published);
+        changed.getProperties().put(Asset.TYPE, "samples");
+        facetCounts.assetChanged(new AssetChangedEvent(asset.get_id(), changed));
+        assertEquals(Collections.<Object, Integer> singletonMap("samples", 1), counts("type", AssetMatcher.PUBLISHED_ASSETS));
+
+        facetCounts.assetChanged(new AssetChangedEvent(asset.get_id(), null));
+        assertTrue(counts("type", NO_FILTERS).isEmpty());
+    }
+
+    @Override
+    protected Asset createVisibleAsset(String name) throws Exception {
+        return storeAsset(name, "published", "features", null);
+    }
+
+    @Override
+    protected int countVisibleAssets() {
+        Integer count = counts("type", NO_FILTERS).get("features");
+        return count == null ? 0 : count;
+    }
+
+    @Override
+    protected void assetChanged(AssetChangedEvent event) {
+        facetCounts.assetChanged(event);
+    }
+
+    private Asset createAsset(String state, String type, String licenseType) throws Exception {
+        return storeAsset(null, state, type, licenseType == null ? null : "\"licenseType\":\"" + licenseType + "\"");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Object, Integer> counts(String field, Collection<AssetFilter> filters) {
+        Map<Object, Integer> counts = new LinkedHashMap<>();
+        List<Map<String, Object>> summary = facetCounts.summarizeAssets(Arrays.asList(field), filters);
+        for (Map<String, Object> valueCount : (List<Map<String, Object>>) summary.get(0).get(FacetCounts.COUNTS_KEY)) {
+            counts.put(valueCount.get("value"), (Integer) valueCount.get("count"));
+        }
+        return counts;
+    }
+
+}
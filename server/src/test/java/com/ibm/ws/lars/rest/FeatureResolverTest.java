@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import mockit.Deencapsulation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.ws.lars.rest.model.Asset;
+import com.ibm.ws.lars.rest.model.AssetList;
+
+/**
+ * Unit tests for {@link FeatureResolver}
+ */
+public class FeatureResolverTest {
+
+    private static final String PRODUCT_ID = "com.ibm.websphere.appserver";
+
+    private Persistor persistor;
+    private Configuration configuration;
+    private FeatureResolver resolver;
+    private final List<Collection<AssetFilter>> queries = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        // The resolver only asks for published features, but the memory persistor
+        // can't filter so just give it everything
+        persistor = new MemoryPersistor() {
+            @Override
+            public AssetList retrieveAllAssets(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions) {
+                queries.add(filters);
+                return retrieveAllAssets();
+            }
+        };
+        configuration = new Configuration();
+        Deencapsulation.setField(configuration, "featureResolverEnabled", true);
+        resolver = new FeatureResolver();
+        Deencapsulation.setField(resolver, "persistenceBean", persistor);
+        Deencapsulation.setField(resolver, "configuration", configuration);
+    }
+
+    @Test
+    public void testResolveTransitiveDependencies() throws Exception {
+        createFeature("published", "a", "8.5.5.6", "b");
+        createFeature("published", "b", "8.5.5.6", "c");
+        createFeature("published", "c", "8.5.5.6");
+        createFeature("published", "unrelated", "8.5.5.6");
+
+        assertThat(resolve("8.5.5.9", "a"), containsInAnyOrder("a", "b", "c"));
+        assertThat(resolve("8.5.5.9", "b"), containsInAnyOrder("b", "c"));
+    }
+
+    @Test
+    public void testResolveChecksProductVersion() throws Exception {
+        createFeature("published", "a", "8.5.5.6", "b");
+        createFeature("published", "b", "8.5.5.10");
+
+        // 8.5.5.10 is later than 8.5.5.9, even though it's lexically earlier
+        assertThat(resolve("8.5.5.9", "a"), containsInAnyOrder("a"));
+        assertThat(resolve("8.5.5.10", "a"), containsInAnyOrder("a", "b"));
+    }
+
+    @Test
+    public void testResolveIgnoresUnpublishedFeatures() throws Exception {
+        createFeature("published", "a", "8.5.5.6", "b");
+        createFeature("draft", "b", "8.5.5.6");
+
+        assertThat(resolve("8.5.5.9", "a"), containsInAnyOrder("a"));
+        assertTrue(resolve("8.5.5.9", "b").isEmpty());
+    }
+
+    @Test
+    public void testResolveCycle() throws Exception {
+        createFeature("published", "a", "8.5.5.6", "b");
+        createFeature("published", "b", "8.5.5.6", "a");
+
+        assertThat(resolve("8.5.5.9", "a"), containsInAnyOrder("a", "b"));
+    }
+
+    @Test
+    public void testGraphUpdatedByEvents() throws Exception {
+        createFeature("published", "a", "8.5.5.6", "b");
+
+        // Load the graph
+        assertThat(resolve("8.5.5.9", "a"), containsInAnyOrder("a"));
+
+        Asset b = createFeature("published", "b", "8.5.5.6");
+        resolver.assetChanged(new AssetChangedEvent(b.get_id(), b));
+        assertThat(resolve("8.5.5.9", "a"), containsInAnyOrder("a", "b"));
+
+        resolver.assetChanged(new AssetChangedEvent(b.get_id(), null));
+        assertThat(resolve("8.5.5.9", "a"), containsInAnyOrder("a"));
+    }
+
+    @Test
+    public void testGraphNotKeptWhenDisabled() throws Exception {
+        Deencapsulation.setField(configuration, "featureResolverEnabled", false);
+        createFeature("published", "a", "8.5.5.6", "b");
+
+        assertThat(resolve("8.5.5.9", "a"), containsInAnyOrder("a"));
+        assertNull("The graph should not be kept", Deencapsulation.getField(resolver, "graph"));
+
+        // No event is needed, the features are read again
+        createFeature("published", "b", "8.5.5.6");
+        assertThat(resolve("8.5.5.9", "a"), containsInAnyOrder("a", "b"));
+
+        resolver.warmUp();
+        assertNull("The graph should not be loaded", Deencapsulation.getField(resolver, "graph"));
+    }
+
+    @Test
+    public void testDisabledResolvesLevelByLevel() throws Exception {
+        Deencapsulation.setField(configuration, "featureResolverEnabled", false);
+        createFeature("published", "a", "8.5.5.6", "b", "c");
+        createFeature("published", "b", "8.5.5.6", "c");
+        createFeature("published", "c", "8.5.5.6");
+        createFeature("published", "unrelated", "8.5.5.6");
+
+        assertThat(resolve("8.5.5.9", "a"), containsInAnyOrder("a", "b", "c"));
+
+        // The requested names are looked up by every name field, then each level of required
+        // features only by symbolic name, and a name is never looked up twice
+        assertEquals(4, queries.size());
+        assertEquals(getNameFilter("wlpInformation.provideFeature", "a"), getNameFilter(queries.get(0)));
+        assertEquals(getNameFilter("wlpInformation.shortName", "a"), getNameFilter(queries.get(1)));
+        assertEquals(getNameFilter("wlpInformation.lowerCaseShortName", "a"), getNameFilter(queries.get(2)));
+        assertEquals(getNameFilter("wlpInformation.provideFeature", "b", "c"), getNameFilter(queries.get(3)));
+    }
+
+    @Test
+    public void testGraphReplacedOnChange() throws Exception {
+        createFeature("published", "a", "8.5.5.6");
+        resolver.warmUp();
+        Object before = Deencapsulation.getField(resolver, "graph");
+        assertNotNull(before);
+
+        Asset b = createFeature("published", "b", "8.5.5.6");
+        resolver.assetChanged(new AssetChangedEvent(b.get_id(), b));
+        assertNotSame("A new graph should be swapped in", before, Deencapsulation.getField(resolver, "graph"));
+    }
+
+    private Asset createFeature(String state, String symbolicName, String minVersion, String... requiredFeatures) throws Exception {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"type\":\"").append(Asset.FEATURE_TYPE).append("\",");
+        json.append("\"state\":\"").append(state).append("\",");
+        json.append("\"wlpInformation\":{");
+        json.append("\"provideFeature\":[\"").append(symbolicName).append("\"],");
+        json.append("\"requireFeature\":[");
+        for (int i = 0; i < requiredFeatures.length; i++) {
+            json.append(i > 0 ? "," : "").append("\"").append(requiredFeatures[i]).append("\"");
+        }
+        json.append("],");
+        json.append("\"appliesToFilterInfo\":[{\"productId\":\"").append(PRODUCT_ID).append("\",");
+        json.append("\"minVersion\":{\"value\":\"").append(minVersion).append("\",\"inclusive\":true}}]");
+        json.append("}}");
+
+        return persistor.createAsset(Asset.deserializeAssetFromJson(json.toString()));
+    }
+
+    private static String getNameFilter(String field, String... names) {
+        return field + "=" + Arrays.asList(names);
+    }
+
+    /**
+     * Describe the filter on a feature name field in a query made by the resolver
+     */
+    private static String getNameFilter(Collection<AssetFilter> filters) {
+        for (AssetFilter filter : filters) {
+            if (filter.getKey().startsWith("wlpInformation.")) {
+                List<String> names = new ArrayList<>();
+                for (Condition condition : filter.getConditions()) {
+                    names.add(condition.getValue());
+                }
+                return filter.getKey() + "=" + names;
+            }
+        }
+        return null;
+    }
+
+    private List<String> resolve(String productVersion, String... names) {
+        ProductDefinition product = new ProductDefinition(PRODUCT_ID, productVersion, null, null);
+        AssetList result = resolver.resolve(Arrays.asList(names), product);
+
+        List<String> resolvedNames = new ArrayList<>();
+        for (Asset asset : result) {
+            @SuppressWarnings("unchecked")
+            List<String> provided = (List<String>) asset.getWlpInformationField(FeatureResolver.PROVIDE_FEATURE);
+            resolvedNames.addAll(provided == null ? Collections.<String> emptyList() : provided);
+        }
+        return resolvedNames;
+    }
+}
@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ibm.ws.lars.rest.Condition.Operation;
+import com.ibm.ws.lars.rest.SortOptions.SortOrder;
+import com.ibm.ws.lars.rest.exceptions.NonExistentArtefactException;
+import com.ibm.ws.lars.rest.model.Asset;
+import com.ibm.ws.lars.rest.model.AssetList;
+import com.ibm.ws.lars.rest.model.Attachment;
+import com.ibm.ws.lars.rest.model.AttachmentContentMetadata;
+import com.ibm.ws.lars.rest.model.AttachmentContentResponse;
+import com.ibm.ws.lars.testutils.BasicChecks;
+
+/**
+ * Unit tests for {@link FilePersistor}
+ */
+public class FilePersistorTest {
+
+    private static final Collection<AssetFilter> NO_FILTERS = Collections.emptyList();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FilePersistor persistor;
+
+    @Before
+    public void setUp() {
+        persistor = open();
+    }
+
+    @After
+    public void tearDown() {
+        persistor.close();
+    }
+
+    @Test
+    public void testAssetLifecycle() throws Exception {
+        Asset created = persistor.createAsset(asset("{\"name\":\"first\",\"downloads\":5}"));
+        String id = created.get_id();
+        assertTrue("Bad id " + id, id.matches("[0-9a-f]{24}"));
+        assertFalse("Internal fields should not be stored", created.getProperties().containsKey("downloads"));
+        assertEquals(created, persistor.retrieveAsset(id));
+
+        created.put("name", "renamed");
+        assertEquals("renamed", persistor.updateAsset(id, created).getProperty(Asset.NAME));
+        assertEquals("renamed", persistor.retrieveAsset(id).getProperty(Asset.NAME));
+
+        persistor.deleteAsset(id);
+        assertEquals(0, persistor.retrieveAllAssets().size());
+        try {
+            persistor.retrieveAsset(id);
+            fail("A deleted asset was returned");
+        } catch (NonExistentArtefactException e) {
+            // expected
+        }
+        try {
+            persistor.updateAsset(id, created);
+            fail("A deleted asset was updated");
+        } catch (NonExistentArtefactException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+        Asset a = persistor.createAsset(asset("{\"name\":\"a\",\"type\":\"feature\",\"size\":3,\"tags\":[\"x\",\"y\"]}"));
+        Asset b = persistor.createAsset(asset("{\"name\":\"b\",\"type\":\"sample\",\"size\":1,\"tags\":[\"y\"]}"));
+        Asset c = persistor.createAsset(asset("{\"name\":\"c\",\"type\":\"feature\",\"size\":2}"));
+
+        Collection<AssetFilter> features = filters("type", Operation.EQUALS, "feature");
+        assertEquals(2, persistor.countAllAssets(features, null));
+        assertEquals(names(c, a), names(persistor.retrieveAllAssets(features, null, null, new SortOptions("size", SortOrder.ASCENDING))));
+
+        Collection<AssetFilter> notY = filters("tags", Operation.NOT_EQUALS, "y");
+        assertEquals(names(c), names(persistor.retrieveAllAssets(notY, null, null, null)));
+
+        assertEquals(names(b, c), names(persistor.retrieveAllAssets(NO_FILTERS, null, new PaginationOptions(1, 2),
+                                                                    new SortOptions("name", SortOrder.ASCENDING))));
+        assertEquals(names(a), names(persistor.retrieveAllAssets(NO_FILTERS, null, new PaginationOptions(0, 1),
+                                                                 new SortOptions("size", SortOrder.DESCENDING))));
+        assertEquals(names(b, c), names(persistor.retrieveAllAssets(NO_FILTERS, null, new PaginationOptions(1, Integer.MAX_VALUE),
+                                                                    new SortOptions("name", SortOrder.ASCENDING))));
+        assertEquals(names(a), names(persistor.retrieveAllAssets(NO_FILTERS, null, new PaginationOptions(-1, 1),
+                                                                 new SortOptions("name", SortOrder.ASCENDING))));
+
+        assertEquals(Arrays.<Object> asList("x", "y"), persistor.getDistinctValues("tags", NO_FILTERS, null));
+
+        List<byte[]> json = persistor.retrieveAllAssetsJson(features, null, null, new SortOptions("name", SortOrder.ASCENDING));
+        assertEquals(2, json.size());
+        assertEquals(a, Asset.deserializeAssetFromJson(new ByteArrayInputStream(json.get(0))));
+
+        assertEquals(b, Asset.deserializeAssetFromJson(new ByteArrayInputStream(persistor.retrieveAssetJson(b.get_id(), NO_FILTERS))));
+        try {
+            persistor.retrieveAssetJson(b.get_id(), features);
+            fail("An asset was returned which doesn't match the filters");
+        } catch (NonExistentArtefactException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        Asset weak = persistor.createAsset(asset("{\"name\":\"Sample\",\"description\":\"A long description which mentions servlets once\"}"));
+        Asset strong = persistor.createAsset(asset("{\"name\":\"Servlet\",\"shortDescription\":\"Servlet support\"}"));
+        persistor.createAsset(asset("{\"name\":\"Unrelated\",\"tags\":[\"jdbc\"]}"));
+
+        assertEquals(names(strong, weak), names(persistor.retrieveAllAssets(NO_FILTERS, "servlet", null, null)));
+        assertEquals(2, persistor.countAllAssets(NO_FILTERS, "servlet"));
+        assertEquals(names(strong), names(persistor.retrieveAllAssets(NO_FILTERS, "servlet -sample", null, null)));
+        assertEquals(names(strong), names(persistor.retrieveAllAssets(NO_FILTERS, "\"servlet support\"", null, null)));
+        assertEquals(0, persistor.countAllAssets(NO_FILTERS, "the"));
+    }
+
+    @Test
+    public void testAttachments() throws Exception {
+        Asset asset = persistor.createAsset(asset("{\"name\":\"withAttachments\"}"));
+        byte[] content = "some content".getBytes(StandardCharsets.UTF_8);
+        AttachmentContentMetadata contentMetadata = persistor.createAttachmentContent("file.txt", "text/plain", new ByteArrayInputStream(content));
+        assertEquals(content.length, contentMetadata.length);
+
+        Attachment attachment = new Attachment();
+        attachment.setAssetId(asset.get_id());
+        attachment.setGridFSId(contentMetadata.filename);
+        Attachment created = persistor.createAttachmentMetadata(attachment);
+        assertEquals(created, persistor.retrieveAttachmentMetadata(created.get_id()));
+        assertEquals(1, persistor.findAttachmentsForAsset(asset.get_id()).size());
+
+        AttachmentContentResponse response = persistor.retrieveAttachmentContent(contentMetadata.filename);
+        assertEquals("text/plain", response.getContentType());
+        try (InputStream stream = response.getContentStream()) {
+            assertTrue(Arrays.equals(content, BasicChecks.slurp(stream)));
+        }
+
+        persistor.deleteAsset(asset.get_id());
+        assertEquals(Collections.singleton(asset.get_id()), persistor.findAssetIdsWithOrphanedAttachments());
+        persistor.deleteAttachmentsForAsset(asset.get_id());
+        assertTrue(persistor.findAssetIdsWithOrphanedAttachments().isEmpty());
+        assertEquals(0, persistor.findAttachmentsForAsset(asset.get_id()).size());
+        try {
+            persistor.retrieveAttachmentContent(contentMetadata.filename);
+            fail("Deleted content was returned");
+        } catch (NonExistentArtefactException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDownloadCounts() throws Exception {
+        Asset first = persistor.createAsset(asset("{\"name\":\"first\"}"));
+        Asset second = persistor.createAsset(asset("{\"name\":\"second\"}"));
+
+        Map<String, Map<String, Long>> counts = new HashMap<>();
+        counts.put(first.get_id(), Collections.singletonMap("a1", 1L));
+        counts.put(second.get_id(), Collections.singletonMap("a2", 2L));
+        persistor.addDownloads(counts);
+        persistor.addDownloads(Collections.singletonMap(first.get_id(), Collections.singletonMap("a1", 2L)));
+
+        List<Map<String, Object>> results = persistor.retrieveDownloadCounts(10);
+        assertEquals(2, results.size());
+        assertEquals(first.get_id(), results.get(0).get("assetId"));
+        assertEquals(3L, results.get(0).get("downloads"));
+        assertEquals(Collections.singletonMap("a1", 3L), results.get(0).get("attachments"));
+        assertEquals(1, persistor.retrieveDownloadCounts(1).size());
+
+        // Assets can be sorted on their counts, with those never downloaded treated as missing them
+        Asset third = persistor.createAsset(asset("{\"name\":\"third\"}"));
+        assertEquals(names(first, second, third), names(persistor.retrieveAllAssets(NO_FILTERS, null, null, new SortOptions("downloads", SortOrder.DESCENDING))));
+        assertEquals(names(third, second, first), names(persistor.retrieveAllAssets(NO_FILTERS, null, null, new SortOptions("downloads", SortOrder.ASCENDING))));
+        assertEquals(names(second), names(persistor.retrieveAllAssets(NO_FILTERS, null, new PaginationOptions(0, 1),
+                                                                      new SortOptions("attachmentDownloads.a2", SortOrder.DESCENDING))));
+
+        // The counts aren't part of the asset, and survive an update
+        persistor.updateAsset(first.get_id(), persistor.retrieveAsset(first.get_id()));
+        assertFalse(persistor.retrieveAsset(first.get_id()).getProperties().containsKey("downloads"));
+        assertEquals(3L, persistor.retrieveDownloadCounts(10).get(0).get("downloads"));
+    }
+
+    /**
+     * Test that the store is the same after it is reopened, whether or not the index can be used
+     */
+    @Test
+    public void testReopen() throws Exception {
+        Asset first = persistor.createAsset(asset("{\"name\":\"first\"}"));
+        Asset second = persistor.createAsset(asset("{\"name\":\"second\"}"));
+        persistor.deleteAsset(first.get_id());
+        persistor.close();
+
+        persistor = open();
+        assertEquals(names(second), names(persistor.retrieveAllAssets()));
+
+        // Records written after the index was saved are read from the log
+        Asset third = persistor.createAsset(asset("{\"name\":\"third\"}"));
+        FilePersistor crashed = persistor;
+        persistor = open();
+        assertEquals(names(second, third), names(persistor.retrieveAllAssets()));
+        persistor.close();
+        crashed.close();
+
+        assertTrue(new File(folder.getRoot(), RecordLog.INDEX_FILE).delete());
+        persistor = open();
+        assertEquals(names(second, third), names(persistor.retrieveAllAssets()));
+    }
+
+    /**
+     * Test that a record which was partly written when the server stopped is discarded
+     */
+    @Test
+    public void testIncompleteRecord() throws Exception {
+        Asset asset = persistor.createAsset(asset("{\"name\":\"complete\"}"));
+        persistor.close();
+        assertTrue(new File(folder.getRoot(), RecordLog.INDEX_FILE).delete());
+
+        File log = new File(folder.getRoot(), RecordLog.LOG_FILE);
+        long length = log.length();
+        try (FileOutputStream output = new FileOutputStream(log, true)) {
+            output.write(new byte[] { 0, 0, 1, 0, 1, 2, 3 });
+        }
+
+        persistor = open();
+        assertEquals(names(asset), names(persistor.retrieveAllAssets()));
+        assertEquals(length, log.length());
+
+        Asset another = persistor.createAsset(asset("{\"name\":\"another\"}"));
+        persistor.close();
+        persistor = open();
+        assertEquals(names(asset, another), names(persistor.retrieveAllAssets()));
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        Asset asset = persistor.createAsset(asset("{\"name\":\"updated\"}"));
+        char[] padding = new char[10000];
+        Arrays.fill(padding, 'x');
+        asset.put("description", new String(padding));
+        for (int i = 0; i < 200; i++) {
+            asset.put("version", i);
+            persistor.updateAsset(asset.get_id(), asset);
+        }
+
+        File log = new File(folder.getRoot(), RecordLog.LOG_FILE);
+        assertTrue("The log should have been compacted, its size is " + log.length(), log.length() < 1024 * 1024);
+        assertEquals(asset, persistor.retrieveAsset(asset.get_id()));
+
+        persistor.close();
+        persistor = open();
+        assertEquals(asset, persistor.retrieveAsset(asset.get_id()));
+    }
+
+    private FilePersistor open() {
+        FilePersistor filePersistor = new FilePersistor();
+        filePersistor.open(folder.getRoot());
+        filePersistor.initialize();
+        return filePersistor;
+    }
+
+    private static Asset asset(String json) throws Exception {
+        return Asset.deserializeAssetFromJson(json);
+    }
+
+    private static Collection<AssetFilter> filters(String field, Operation operation, String value) {
+        return Collections.singletonList(new AssetFilter(field, Collections.singletonList(new Condition(operation, value))));
+    }
+
+    private static List<String> names(Asset... assets) {
+        List<String> names = new ArrayList<>();
+        for (Asset asset : assets) {
+            names.add((String) asset.getProperty(Asset.NAME));
+        }
+        return names;
+    }
+
+    private static List<String> names(AssetList assets) {
+        List<String> names = new ArrayList<>();
+        for (Asset asset : assets) {
+            names.add((String) asset.getProperty(Asset.NAME));
+        }
+        return names;
+    }
+
+}
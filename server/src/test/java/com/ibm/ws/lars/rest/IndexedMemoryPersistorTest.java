@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.ibm.ws.lars.rest.Condition.Operation;
+import com.ibm.ws.lars.rest.SortOptions.SortOrder;
+import com.ibm.ws.lars.rest.exceptions.NonExistentArtefactException;
+import com.ibm.ws.lars.rest.model.Asset;
+import com.ibm.ws.lars.rest.model.AssetList;
+import com.ibm.ws.lars.rest.model.Attachment;
+import com.ibm.ws.lars.rest.model.AttachmentContentMetadata;
+
+/**
+ * Unit tests for {@link IndexedMemoryPersistor}
+ */
+public class IndexedMemoryPersistorTest {
+
+    private static final Collection<AssetFilter> NO_FILTERS = Collections.emptyList();
+
+    private final IndexedMemoryPersistor persistor = new IndexedMemoryPersistor();
+
+    @Test
+    public void testAssetLifecycle() throws Exception {
+        Asset created = persistor.createAsset(asset("{\"name\":\"first\",\"downloads\":5}"));
+        String id = created.get_id();
+        assertFalse("Internal fields should not be stored", created.getProperties().containsKey("downloads"));
+        assertEquals(created, persistor.retrieveAsset(id));
+
+        // Changing a returned asset must not change the stored one
+        created.put("name", "changed");
+        assertEquals("first", persistor.retrieveAsset(id).getProperty(Asset.NAME));
+
+        created.put("name", "renamed");
+        assertEquals("renamed", persistor.updateAsset(id, created).getProperty(Asset.NAME));
+        assertEquals("renamed", persistor.retrieveAsset(id).getProperty(Asset.NAME));
+
+        persistor.deleteAsset(id);
+        assertEquals(0, persistor.retrieveAllAssets().size());
+        try {
+            persistor.retrieveAsset(id);
+            fail("A deleted asset was returned");
+        } catch (NonExistentArtefactException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+        Asset a = persistor.createAsset(asset("{\"name\":\"a\",\"type\":\"feature\",\"size\":3,\"tags\":[\"x\",\"y\"]}"));
+        Asset b = persistor.createAsset(asset("{\"name\":\"b\",\"type\":\"sample\",\"size\":1,\"tags\":[\"y\"]}"));
+        Asset c = persistor.createAsset(asset("{\"name\":\"c\",\"type\":\"feature\",\"size\":2}"));
+
+        Collection<AssetFilter> features = filters("type", Operation.EQUALS, "feature");
+        assertEquals(2, persistor.countAllAssets(features, null));
+        assertEquals(names(a, c), names(persistor.retrieveAllAssets(features, null, null, null)));
+        assertEquals(names(c, a), names(persistor.retrieveAllAssets(features, null, null, new SortOptions("size", SortOrder.ASCENDING))));
+        assertEquals(names(b), names(persistor.retrieveAllAssets(filters("type", Operation.NOT_EQUALS, "feature"), null, null, null)));
+
+        Collection<AssetFilter> notY = filters("tags", Operation.NOT_EQUALS, "y");
+        assertEquals(names(c), names(persistor.retrieveAllAssets(notY, null, null, null)));
+
+        assertEquals(names(b, c), names(persistor.retrieveAllAssets(NO_FILTERS, null, new PaginationOptions(1, 2),
+                                                                    new SortOptions("name", SortOrder.ASCENDING))));
+        assertEquals(names(a), names(persistor.retrieveAllAssets(NO_FILTERS, null, new PaginationOptions(0, 1),
+                                                                 new SortOptions("size", SortOrder.DESCENDING))));
+
+        assertEquals(Arrays.<Object> asList("x", "y"), persistor.getDistinctValues("tags", NO_FILTERS, null));
+
+        List<byte[]> json = persistor.retrieveAllAssetsJson(features, null, null, new SortOptions("name", SortOrder.ASCENDING));
+        assertEquals(2, json.size());
+        assertEquals(a, Asset.deserializeAssetFromJson(new ByteArrayInputStream(json.get(0))));
+
+        try {
+            persistor.retrieveAssetJson(b.get_id(), features);
+            fail("An asset was returned which doesn't match the filters");
+        } catch (NonExistentArtefactException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSortOnDownloadCounts() throws Exception {
+        Asset a = persistor.createAsset(asset("{\"name\":\"a\"}"));
+        Asset b = persistor.createAsset(asset("{\"name\":\"b\"}"));
+        Asset c = persistor.createAsset(asset("{\"name\":\"c\"}"));
+        SortOptions mostDownloaded = new SortOptions("downloads", SortOrder.DESCENDING);
+
+        persistor.addDownloads(Collections.singletonMap(b.get_id(), Collections.singletonMap("b1", 2L)));
+        persistor.addDownloads(Collections.singletonMap(c.get_id(), Collections.singletonMap("c1", 1L)));
+        assertEquals(names(b, c, a), names(persistor.retrieveAllAssets(NO_FILTERS, null, null, mostDownloaded)));
+
+        // The order follows the counts as they change, without the assets changing
+        persistor.addDownloads(Collections.singletonMap(c.get_id(), Collections.singletonMap("c2", 5L)));
+        assertEquals(names(c, b, a), names(persistor.retrieveAllAssets(NO_FILTERS, null, null, mostDownloaded)));
+        assertEquals(names(a), names(persistor.retrieveAllAssets(NO_FILTERS, null, new PaginationOptions(0, 1),
+                                                                 new SortOptions("downloads", SortOrder.ASCENDING))));
+    }
+
+    @Test
+    public void testIndexesFollowWrites() throws Exception {
+        Asset a = persistor.createAsset(asset("{\"name\":\"a\",\"type\":\"feature\",\"size\":1}"));
+        Asset b = persistor.createAsset(asset("{\"name\":\"b\",\"type\":\"feature\",\"size\":2}"));
+        Collection<AssetFilter> features = filters("type", Operation.EQUALS, "feature");
+        SortOptions bySize = new SortOptions("size", SortOrder.ASCENDING);
+
+        // Build the sorted index, then change the order
+        assertEquals(names(a, b), names(persistor.retrieveAllAssets(features, null, null, bySize)));
+        a.put("size", 3);
+        persistor.updateAsset(a.get_id(), a);
+        assertEquals(names(b, a), names(persistor.retrieveAllAssets(features, null, null, bySize)));
+
+        b.put("type", "sample");
+        persistor.updateAsset(b.get_id(), b);
+        assertEquals(names(a), names(persistor.retrieveAllAssets(features, null, null, bySize)));
+
+        persistor.deleteAsset(a.get_id());
+        assertEquals(0, persistor.countAllAssets(features, null));
+        assertEquals(names(b), names(persistor.retrieveAllAssets(NO_FILTERS, null, null, bySize)));
+    }
+
+    @Test
+    public void testStablePaging() throws Exception {
+        List<Asset> created = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            created.add(persistor.createAsset(asset("{\"name\":\"asset" + i + "\",\"type\":\"feature\"}")));
+        }
+
+        // Every asset has the same type, so they are returned in the order they were created
+        SortOptions byType = new SortOptions("type", SortOrder.DESCENDING);
+        List<String> paged = new ArrayList<>();
+        for (int offset = 0; offset < 10; offset += 3) {
+            paged.addAll(names(persistor.retrieveAllAssets(NO_FILTERS, null, new PaginationOptions(offset, 3), byType)));
+        }
+        assertEquals(names(created.toArray(new Asset[0])), paged);
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        Asset weak = persistor.createAsset(asset("{\"name\":\"Sample\",\"description\":\"A long description which mentions servlets once\"}"));
+        Asset strong = persistor.createAsset(asset("{\"name\":\"Servlet\",\"shortDescription\":\"Servlet support\"}"));
+        persistor.createAsset(asset("{\"name\":\"Unrelated\",\"tags\":[\"jdbc\"]}"));
+
+        assertEquals(names(strong, weak), names(persistor.retrieveAllAssets(NO_FILTERS, "servlet", null, null)));
+        assertEquals(2, persistor.countAllAssets(NO_FILTERS, "servlets"));
+        assertEquals(names(strong), names(persistor.retrieveAllAssets(NO_FILTERS, "servlet -sample", null, null)));
+        assertEquals(names(weak, strong), names(persistor.retrieveAllAssets(NO_FILTERS, "servlet", null,
+                                                                           new SortOptions("name", SortOrder.ASCENDING))));
+
+        strong.put("shortDescription", "Nothing to see");
+        strong.put("name", "Renamed");
+        persistor.updateAsset(strong.get_id(), strong);
+        assertEquals(names(weak), names(persistor.retrieveAllAssets(NO_FILTERS, "servlet", null, null)));
+    }
+
+    @Test
+    public void testAttachments() throws Exception {
+        Asset asset = persistor.createAsset(asset("{\"name\":\"a\"}"));
+        AttachmentContentMetadata content = persistor.createAttachmentContent("a.txt", "text/plain",
+                                                                              new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(5, content.length);
+
+        Attachment attachment = new Attachment();
+        attachment.setAssetId(asset.get_id());
+        attachment.setGridFSId(content.filename);
+        Attachment created = persistor.createAttachmentMetadata(attachment);
+        assertEquals(1, persistor.findAttachmentsForAsset(asset.get_id()).size());
+        assertEquals("text/plain", persistor.retrieveAttachmentContent(content.filename).getContentType());
+
+        persistor.deleteAsset(asset.get_id());
+        assertEquals(Collections.singleton(asset.get_id()), persistor.findAssetIdsWithOrphanedAttachments());
+        persistor.deleteAttachmentsForAsset(asset.get_id());
+        assertEquals(0, persistor.findAttachmentsForAsset(asset.get_id()).size());
+        try {
+            persistor.retrieveAttachmentMetadata(created.get_id());
+            fail("A deleted attachment was returned");
+        } catch (NonExistentArtefactException e) {
+            // expected
+        }
+        try {
+            persistor.retrieveAttachmentContent(content.filename);
+            fail("Deleted content was returned");
+        } catch (NonExistentArtefactException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testConcurrentReadsAndWrites() throws Exception {
+        final Collection<AssetFilter> features = filters("type", Operation.EQUALS, "feature");
+        final SortOptions byName = new SortOptions("name", SortOrder.ASCENDING);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread reader = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 200; j++) {
+                            persistor.retrieveAllAssets(features, "feature", new PaginationOptions(0, 10), byName);
+                            persistor.countAllAssets(features, null);
+                        }
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            };
+            reader.start();
+            readers.add(reader);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            Asset created = persistor.createAsset(asset("{\"name\":\"feature " + i + "\",\"type\":\"feature\"}"));
+            if (i % 2 == 0) {
+                persistor.deleteAsset(created.get_id());
+            }
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(100, persistor.countAllAssets(features, null));
+        assertEquals(100, persistor.countAllAssets(features, "feature"));
+    }
+
+    private static Asset asset(String json) throws Exception {
+        return Asset.deserializeAssetFromJson(json);
+    }
+
+    private static Collection<AssetFilter> filters(String field, Operation operation, String value) {
+        return Collections.singletonList(new AssetFilter(field, Collections.singletonList(new Condition(operation, value))));
+    }
+
+    private static List<String> names(Asset... assets) {
+        List<String> names = new ArrayList<>();
+        for (Asset asset : assets) {
+            names.add((String) asset.getProperty(Asset.NAME));
+        }
+        return names;
+    }
+
+    private static List<String> names(AssetList assets) {
+        List<String> names = new ArrayList<>();
+        for (Asset asset : assets) {
+            names.add((String) asset.getProperty(Asset.NAME));
+        }
+        return names;
+    }
+
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.logging.Logger;
+
+import mockit.Deencapsulation;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Mocked;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.ws.lars.rest.model.Asset;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+
+/**
+ * Unit tests for following the capped collection in {@link InvalidationBus}, with the collection
+ * and its tailable cursor mocked out
+ */
+public class InvalidationBusTest {
+
+    @Mocked
+    DBCollection messages;
+
+    @Injectable
+    DBCursor cursor;
+
+    @Mocked
+    Logger logger;
+
+    private Persistor persistor;
+    private DummyEvent<AssetChangedEvent> assetChanges;
+    private InvalidationBus invalidationBus;
+    private String nodeId;
+
+    @Before
+    public void setUp() {
+        persistor = new MemoryPersistor();
+        assetChanges = new DummyEvent<>();
+
+        invalidationBus = new InvalidationBus();
+        Deencapsulation.setField(invalidationBus, "persistenceBean", persistor);
+        Deencapsulation.setField(invalidationBus, "assetChanges", assetChanges);
+        // followOnce only runs while it is called from the tail thread
+        Deencapsulation.setField(invalidationBus, "tailThread", Thread.currentThread());
+        nodeId = Deencapsulation.getField(invalidationBus, "nodeId");
+    }
+
+    /**
+     * Messages from other servers fire a remote event for the asset, but messages from this server
+     * and messages which have already been seen are skipped
+     */
+    @Test
+    public void testApplyMessages() throws Exception {
+        final Asset asset = persistor.createAsset(Asset.deserializeAssetFromJson("{\"name\":\"changed\"}"));
+        final DBObject own = message(1, nodeId, "mine");
+        final DBObject other = message(2, "otherNode", asset.get_id());
+        final DBObject deleted = message(3, "otherNode", "deleted");
+
+        new Expectations() {
+            {
+                messages.find();
+                result = cursor;
+                cursor.addOption(anyInt);
+                result = cursor;
+                cursor.hasNext();
+                returns(true, true, true, true, false);
+                cursor.next();
+                returns(own, other, other, deleted);
+            }
+        };
+
+        invalidationBus.followOnce(messages);
+
+        List<AssetChangedEvent> events = assetChanges.getFiredEvents();
+        assertEquals("Own and repeated messages should be skipped", 2, events.size());
+
+        assertEquals(asset.get_id(), events.get(0).getAssetId());
+        assertEquals("changed", events.get(0).getAsset().getProperty(Asset.NAME));
+        assertTrue(events.get(0).isRemote());
+
+        assertEquals("deleted", events.get(1).getAssetId());
+        assertTrue("An asset which can't be found has been deleted", events.get(1).isDelete());
+        assertEquals((Object) 3, Deencapsulation.getField(invalidationBus, "lastId"));
+    }
+
+    /**
+     * If the last message seen has been removed from the capped collection, messages after it may
+     * have been removed too, so everything must be reset
+     */
+    @Test
+    public void testResetWhenMessagesMissed() {
+        Deencapsulation.setField(invalidationBus, "lastId", 1);
+
+        new Expectations() {
+            {
+                messages.findOne((DBObject) any);
+                result = null;
+                messages.find();
+                result = cursor;
+                cursor.addOption(anyInt);
+                result = cursor;
+                cursor.hasNext();
+                result = false;
+            }
+        };
+
+        invalidationBus.followOnce(messages);
+
+        List<AssetChangedEvent> events = assetChanges.getFiredEvents();
+        assertEquals(1, events.size());
+        assertTrue(events.get(0).isReset());
+        assertNull(Deencapsulation.getField(invalidationBus, "lastId"));
+    }
+
+    /**
+     * If the last message seen is still in the capped collection, nothing has been missed
+     */
+    @Test
+    public void testNoResetWhenLastMessageFound() {
+        Deencapsulation.setField(invalidationBus, "lastId", 1);
+
+        new Expectations() {
+            {
+                messages.findOne((DBObject) any);
+                result = message(1, "otherNode", "a");
+                messages.find();
+                result = cursor;
+                cursor.addOption(anyInt);
+                result = cursor;
+                cursor.hasNext();
+                result = false;
+            }
+        };
+
+        invalidationBus.followOnce(messages);
+
+        assertTrue(assetChanges.getFiredEvents().isEmpty());
+        assertEquals((Object) 1, Deencapsulation.getField(invalidationBus, "lastId"));
+    }
+
+    private static DBObject message(int id, String nodeId, String assetId) {
+        return new BasicDBObject("_id", id).append(InvalidationBus.NODE_FIELD, nodeId).append(InvalidationBus.ASSET_ID_FIELD, assetId);
+    }
+
+}
@@ -22,11 +22,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.Set;
 
 import com.ibm.ws.lars.rest.exceptions.AssetPersistenceException;
 import com.ibm.ws.lars.rest.exceptions.InvalidJsonAssetException;
@@ -58,6 +64,8 @@ public class MemoryPersistor implements Persistor {
 
     private final Map<String, AttachmentContent> gridFS = new HashMap<>();
 
+    private final Map<String, Map<String, Long>> downloads = new HashMap<>();
+
     /*
      * (non-Javadoc)
      *
@@ -74,6 +82,11 @@ public class MemoryPersistor implements Persistor {
         throw new UnsupportedOperationException("Filtering is not supported in this test facade");
     }
 
+    @Override
+    public List<byte[]> retrieveAllAssetsJson(Collection<AssetFilter> filters, String searchTerm, PaginationOptions pagination, SortOptions sortOptions) {
+        throw new UnsupportedOperationException("Filtering is not supported in this test facade");
+    }
+
     @Override
     public List<Object> getDistinctValues(String field, Collection<AssetFilter> filters, String searchTerm) {
         throw new UnsupportedOperationException("Filtering is not supported in this test facade");
@@ -98,6 +111,16 @@ public class MemoryPersistor implements Persistor {
         return Asset.createAssetFromMap(new HashMap<>(assets.get(assetId)));
     }
 
+    @Override
+    public byte[] retrieveAssetJson(String assetId, Collection<AssetFilter> filters) throws NonExistentArtefactException {
+        Asset asset = retrieveAsset(assetId);
+        if (!AssetMatcher.matchesAll(asset, filters)) {
+            throw new NonExistentArtefactException();
+        }
+        asset.getProperties().remove(Asset.ATTACHMENTS);
+        return asset.toJsonBytes();
+    }
+
     @Override
     public Asset createAsset(Asset newAsset) throws InvalidJsonAssetException {
         Map<String, Object> props = newAsset.getProperties();
@@ -115,6 +138,7 @@ public class MemoryPersistor implements Persistor {
     @Override
     public void deleteAsset(String assetId) {
         assets.remove(assetId);
+        downloads.remove(assetId);
     }
 
     /*
@@ -147,6 +171,33 @@ public class MemoryPersistor implements Persistor {
         return AttachmentList.createAttachmentListFromMaps(resultList);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, byte[]> retrieveAssetsJson(Collection<String> assetIds, Collection<AssetFilter> filters) {
+        Map<String, byte[]> result = new LinkedHashMap<>();
+        for (String assetId : assetIds) {
+            try {
+                result.put(assetId, retrieveAssetJson(assetId, filters));
+            } catch (NonExistentArtefactException e) {
+                // Left out of the result
+            }
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, AttachmentList> findAttachmentsForAssets(Collection<String> assetIds) {
+        Map<String, AttachmentList> result = new LinkedHashMap<>();
+        for (String assetId : assetIds) {
+            AttachmentList attachments = findAttachmentsForAsset(assetId);
+            if (attachments.size() > 0) {
+                result.put(assetId, attachments);
+            }
+        }
+        return result;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -232,6 +283,33 @@ public class MemoryPersistor implements Persistor {
         throw new RuntimeException("not implemented");
     }
 
+    @Override
+    public void deleteAttachmentsForAsset(String assetId) {
+        Iterator<Map<String, Object>> iterator = attachments.values().iterator();
+        while (iterator.hasNext()) {
+            Map<String, Object> attachmentState = iterator.next();
+            if (Objects.equals(attachmentState.get(ASSET_ID), assetId)) {
+                Object gridFSId = attachmentState.get(Attachment.GRIDFS_ID);
+                if (gridFSId != null) {
+                    gridFS.remove(gridFSId);
+                }
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public Collection<String> findAssetIdsWithOrphanedAttachments() {
+        Set<String> orphaned = new HashSet<>();
+        for (Map<String, Object> attachmentState : attachments.values()) {
+            Object assetId = attachmentState.get(ASSET_ID);
+            if (assetId != null && !assets.containsKey(assetId)) {
+                orphaned.add((String) assetId);
+            }
+        }
+        return orphaned;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -239,13 +317,61 @@ public class MemoryPersistor implements Persistor {
      * java.lang.String, java.lang.String)
      */
     @Override
-    public AttachmentContentResponse retrieveAttachmentContent(String gridFSId) {
+    public AttachmentContentResponse retrieveAttachmentContent(String gridFSId) throws NonExistentArtefactException {
         AttachmentContent content = gridFS.get(gridFSId);
+        if (content == null) {
+            throw new NonExistentArtefactException();
+        }
         InputStream contentStream = new ByteArrayInputStream(content.content);
         String contentType = content.contentType;
         return new AttachmentContentResponse(contentStream, contentType);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void addDownloads(Map<String, Map<String, Long>> counts) {
+        for (Entry<String, Map<String, Long>> assetCounts : counts.entrySet()) {
+            if (!assets.containsKey(assetCounts.getKey())) {
+                continue;
+            }
+            Map<String, Long> existing = downloads.get(assetCounts.getKey());
+            if (existing == null) {
+                existing = new HashMap<>();
+                downloads.put(assetCounts.getKey(), existing);
+            }
+            for (Entry<String, Long> attachmentCount : assetCounts.getValue().entrySet()) {
+                Long count = existing.get(attachmentCount.getKey());
+                existing.put(attachmentCount.getKey(), (count == null ? 0 : count) + attachmentCount.getValue());
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<Map<String, Object>> retrieveDownloadCounts(int limit) {
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (Entry<String, Map<String, Long>> assetCounts : downloads.entrySet()) {
+            long total = 0;
+            for (Long count : assetCounts.getValue().values()) {
+                total += count;
+            }
+            Map<String, Object> result = new HashMap<>();
+            result.put("assetId", assetCounts.getKey());
+            result.put(Asset.NAME, assets.get(assetCounts.getKey()).get(Asset.NAME));
+            result.put("downloads", total);
+            result.put("attachments", new HashMap<>(assetCounts.getValue()));
+            results.add(result);
+        }
+
+        Collections.sort(results, new Comparator<Map<String, Object>>() {
+            @Override
+            public int compare(Map<String, Object> a, Map<String, Object> b) {
+                return Long.compare((Long) b.get("downloads"), (Long) a.get("downloads"));
+            }
+        });
+        return results.size() > limit ? results.subList(0, limit) : results;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import mockit.Deencapsulation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.ws.lars.rest.Condition.Operation;
+import com.ibm.ws.lars.rest.SortOptions.SortOrder;
+import com.ibm.ws.lars.rest.model.Asset;
+
+/**
+ * Unit tests for {@link PublishedSnapshot}
+ */
+public class PublishedSnapshotTest extends AssetViewTestCase {
+
+    private static final AssetFilter PUBLISHED = filter(Asset.STATE, Operation.EQUALS, "published");
+
+    private Configuration configuration;
+    private PublishedSnapshot publishedSnapshot;
+
+    @Before
+    public void setUp() {
+        configuration = new Configuration();
+        Deencapsulation.setField(configuration, "publishedSnapshotEnabled", true);
+
+        publishedSnapshot = new PublishedSnapshot();
+        Deencapsulation.setField(publishedSnapshot, "persistenceBean", persistor);
+        Deencapsulation.setField(publishedSnapshot, "configuration", configuration);
+    }
+
+    @Test
+    public void testCanServe() {
+        assertTrue(publishedSnapshot.canServe(Arrays.asList(PUBLISHED), null, null));
+        assertTrue(publishedSnapshot.canServe(Arrays.asList(PUBLISHED, filter("type", Operation.NOT_EQUALS, "foo")), null, null));
+        assertTrue(publishedSnapshot.canServe(Arrays.asList(PUBLISHED), null, new SortOptions("name", SortOrder.ASCENDING)));
+
+        assertFalse("Unpublished assets aren't in the snapshot", publishedSnapshot.canServe(Collections.<AssetFilter> emptyList(), null, null));
+        assertFalse("Searches aren't supported", publishedSnapshot.canServe(Arrays.asList(PUBLISHED), "foo", null));
+        assertFalse("Download counts aren't in the snapshot",
+                    publishedSnapshot.canServe(Arrays.asList(PUBLISHED), null, new SortOptions("downloads", SortOrder.DESCENDING)));
+
+        Deencapsulation.setField(configuration, "publishedSnapshotEnabled", false);
+        assertFalse("Snapshot is disabled", publishedSnapshot.canServe(Arrays.asList(PUBLISHED), null, null));
+    }
+
+    @Test
+    public void testFilters() throws Exception {
+        createAsset("a", "published", "features", 3);
+        createAsset("b", "published", "samples", 1);
+        createAsset("c", "draft", "features", 2);
+        createAsset("d", "published", "features", 2);
+
+        assertThat(retrieve(null, null, PUBLISHED), containsInAnyOrder("a", "b", "d"));
+
+        // type is indexed, name is not
+        assertThat(retrieve(null, null, PUBLISHED, filter("type", Operation.EQUALS, "features")), containsInAnyOrder("a", "d"));
+        assertThat(retrieve(null, null, PUBLISHED, filter("type", Operation.EQUALS, "features", "samples")), containsInAnyOrder("a", "b", "d"));
+        assertThat(retrieve(null, null, PUBLISHED, filter("type", Operation.NOT_EQUALS, "features")), containsInAnyOrder("b"));
+        assertThat(retrieve(null, null, PUBLISHED, filter("name", Operation.EQUALS, "d")), containsInAnyOrder("d"));
+        assertThat(retrieve(null, null, PUBLISHED, filter("type", Operation.EQUALS, "features"), filter("name", Operation.NOT_EQUALS, "a")),
+                   containsInAnyOrder("d"));
+
+        assertEquals(2, publishedSnapshot.countAllAssets(Arrays.asList(PUBLISHED, filter("type", Operation.EQUALS, "features"))));
+        assertThat(publishedSnapshot.getDistinctValues("type", Arrays.asList(PUBLISHED)), containsInAnyOrder((Object) "features", "samples"));
+    }
+
+    @Test
+    public void testSortAndPaginate() throws Exception {
+        createAsset("a", "published", "features", 3);
+        createAsset("b", "published", "features", 1);
+        createAsset("c", "published", "features", 2);
+        createAsset("d", "published", "features", null);
+
+        assertThat(retrieve(new SortOptions("rank", SortOrder.ASCENDING), null, PUBLISHED), contains("d", "b", "c", "a"));
+        assertThat(retrieve(new SortOptions("rank", SortOrder.DESCENDING), null, PUBLISHED), contains("a", "c", "b", "d"));
+        assertThat(retrieve(new SortOptions("rank", SortOrder.ASCENDING), new PaginationOptions(1, 2), PUBLISHED), contains("b", "c"));
+        assertThat(retrieve(new SortOptions("rank", SortOrder.ASCENDING), new PaginationOptions(3, 2), PUBLISHED), contains("a"));
+        assertTrue(retrieve(null, new PaginationOptions(10, 2), PUBLISHED).isEmpty());
+
+        // As in mongo, a limit of zero means no limit and a negative offset means no offset
+        assertThat(retrieve(new SortOptions("rank", SortOrder.ASCENDING), new PaginationOptions(1, 0), PUBLISHED), contains("b", "c", "a"));
+        assertThat(retrieve(new SortOptions("rank", SortOrder.ASCENDING), new PaginationOptions(1, Integer.MAX_VALUE), PUBLISHED), contains("b", "c", "a"));
+        assertThat(retrieve(new SortOptions("rank", SortOrder.ASCENDING), new PaginationOptions(-1, 2), PUBLISHED), contains("d", "b"));
+    }
+
+    @Test
+    public void testSnapshotUpdatedByEvents() throws Exception {
+        createAsset("a", "published", "features", 1);
+
+        // Load the snapshot
+        assertThat(retrieve(null, null, PUBLISHED), containsInAnyOrder("a"));
+
+        Asset b = createAsset("b", "published", "features", 1);
+        publishedSnapshot.assetChanged(new AssetChangedEvent(b.get_id(), b));
+        assertThat(retrieve(null, null, PUBLISHED, filter("type", Operation.EQUALS, "features")), containsInAnyOrder("a", "b"));
+
+        // Only the index entries for the old and new values change
+        Asset sample = new Asset(b);
+        sample.getProperties().put("type", "samples");
+        publishedSnapshot.assetChanged(new AssetChangedEvent(b.get_id(), sample));
+        assertThat(retrieve(null, null, PUBLISHED, filter("type", Operation.EQUALS, "features")), containsInAnyOrder("a"));
+        assertThat(retrieve(null, null, PUBLISHED, filter("type", Operation.EQUALS, "samples")), containsInAnyOrder("b"));
+        assertThat(publishedSnapshot.getDistinctValues("type", Arrays.asList(PUBLISHED)), containsInAnyOrder((Object) "features", "samples"));
+
+        publishedSnapshot.assetChanged(new AssetChangedEvent(b.get_id(), b));
+        assertThat(retrieve(null, null, PUBLISHED, filter("type", Operation.EQUALS, "samples")), empty());
+
+        Asset unpublished = new Asset(b);
+        unpublished.getProperties().put(Asset.STATE, "awaiting_approval");
+        publishedSnapshot.assetChanged(new AssetChangedEvent(b.get_id(), unpublished));
+        assertThat(retrieve(null, null, PUBLISHED, filter("type", Operation.EQUALS, "features")), containsInAnyOrder("a"));
+
+        publishedSnapshot.assetChanged(new AssetChangedEvent(b.get_id(), b));
+        publishedSnapshot.assetChanged(new AssetChangedEvent(b.get_id(), null));
+        assertThat(retrieve(null, null, PUBLISHED), containsInAnyOrder("a"));
+    }
+
+    @Override
+    protected Asset createVisibleAsset(String name) throws Exception {
+        return createAsset(name, "published", "features", 1);
+    }
+
+    @Override
+    protected int countVisibleAssets() {
+        return publishedSnapshot.countAllAssets(Arrays.asList(PUBLISHED));
+    }
+
+    @Override
+    protected void assetChanged(AssetChangedEvent event) {
+        publishedSnapshot.assetChanged(event);
+    }
+
+    private Asset createAsset(String name, String state, String type, Integer rank) throws Exception {
+        return storeAsset(name, state, type, rank == null ? null : "\"rank\":" + rank);
+    }
+
+    private List<String> retrieve(SortOptions sortOptions, PaginationOptions pagination, AssetFilter... filters) {
+        return getNames(publishedSnapshot.retrieveAllAssets(Arrays.asList(filters), pagination, sortOptions));
+    }
+
+}
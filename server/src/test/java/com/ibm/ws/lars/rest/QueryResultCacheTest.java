@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import mockit.Deencapsulation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.ws.lars.rest.Condition.Operation;
+import com.ibm.ws.lars.rest.SortOptions.SortOrder;
+
+/**
+ * Unit tests for {@link QueryResultCache}
+ */
+public class QueryResultCacheTest {
+
+    private static final SerializedContent RESULT = new SerializedContent("[]".getBytes());
+
+    private Configuration configuration;
+    private QueryResultCache cache;
+
+    @Before
+    public void setUp() {
+        configuration = new Configuration();
+        Deencapsulation.setField(configuration, "queryCacheSize", 2);
+
+        cache = new QueryResultCache();
+        Deencapsulation.setField(cache, "configuration", configuration);
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        assertFalse(new Configuration().getQueryCacheSize() > 0);
+        assertTrue(cache.isEnabled());
+    }
+
+    @Test
+    public void testKeyNormalization() {
+        List<Object> key = QueryResultCache.createKey(Arrays.asList(filter("type", "a", "b"), filter("state", "published")), null, null, null);
+
+        assertEquals(key, QueryResultCache.createKey(Arrays.asList(filter("state", "published"), filter("type", "b", "a")), null, null, null));
+
+        assertNotEquals(key, QueryResultCache.createKey(Arrays.asList(filter("type", "a", "b")), null, null, null));
+        assertNotEquals(key, QueryResultCache.createKey(Arrays.asList(filter("type", "a", "b"), filter("state", "published")), "search", null, null));
+        assertNotEquals(key, QueryResultCache.createKey(Arrays.asList(filter("type", "a", "b"), filter("state", "published")), null,
+                                                        new PaginationOptions(0, 10), null));
+        assertNotEquals(key, QueryResultCache.createKey(Arrays.asList(filter("type", "a", "b"), filter("state", "published")), null, null,
+                                                        new SortOptions("name", SortOrder.ASCENDING)));
+    }
+
+    @Test
+    public void testDownloadCountSortsNotCached() {
+        assertTrue(QueryResultCache.canCache(null));
+        assertTrue(QueryResultCache.canCache(new SortOptions("name", SortOrder.ASCENDING)));
+        assertFalse(QueryResultCache.canCache(new SortOptions("downloads", SortOrder.DESCENDING)));
+        assertFalse(QueryResultCache.canCache(new SortOptions("attachmentDownloads.1234", SortOrder.DESCENDING)));
+    }
+
+    @Test
+    public void testInvalidatedByWrites() {
+        List<Object> key = QueryResultCache.createKey(Arrays.asList(filter("type", "a")), null, null, null);
+
+        cache.put(key, cache.getGeneration(), RESULT);
+        assertSame(RESULT, cache.get(key));
+
+        cache.assetChanged(new AssetChangedEvent("1234", null));
+        assertNull(cache.get(key));
+
+        // A result from a query which was running during a write must not be stored
+        long generation = cache.getGeneration();
+        cache.assetChanged(new AssetChangedEvent("1234", null));
+        cache.put(key, generation, RESULT);
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void testSizeLimit() {
+        List<Object> key1 = QueryResultCache.createKey(Arrays.asList(filter("type", "1")), null, null, null);
+        List<Object> key2 = QueryResultCache.createKey(Arrays.asList(filter("type", "2")), null, null, null);
+        List<Object> key3 = QueryResultCache.createKey(Arrays.asList(filter("type", "3")), null, null, null);
+
+        cache.put(key1, cache.getGeneration(), RESULT);
+        cache.put(key2, cache.getGeneration(), RESULT);
+        // Use key1 so that key2 is the least recently used
+        cache.get(key1);
+        cache.put(key3, cache.getGeneration(), RESULT);
+
+        assertSame(RESULT, cache.get(key1));
+        assertNull(cache.get(key2));
+        assertSame(RESULT, cache.get(key3));
+    }
+
+    private static AssetFilter filter(String field, String... values) {
+        List<Condition> conditions = new ArrayList<>();
+        for (String value : values) {
+            conditions.add(new Condition(Operation.EQUALS, value));
+        }
+        return new AssetFilter(field, conditions);
+    }
+
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.ws.lars.rest.Condition.Operation;
+import com.ibm.ws.lars.rest.model.Asset;
+import com.ibm.ws.lars.rest.model.AttachmentContentMetadata;
+import com.ibm.ws.lars.rest.model.AttachmentContentResponse;
+
+/**
+ * Unit tests for {@link RecordingPersistor} and {@link OperationEvents}
+ */
+public class RecordingPersistorTest {
+
+    private final Logger eventLogger = Logger.getLogger(OperationEvents.class.getCanonicalName());
+
+    private final List<String> events = new ArrayList<>();
+
+    private final Handler handler = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            events.add(record.getMessage());
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    };
+
+    private Level originalLevel;
+
+    private Persistor persistor;
+
+    @Before
+    public void setUp() {
+        originalLevel = eventLogger.getLevel();
+        eventLogger.addHandler(handler);
+        persistor = new RecordingPersistor(new MemoryPersistor());
+    }
+
+    @After
+    public void tearDown() {
+        eventLogger.removeHandler(handler);
+        eventLogger.setLevel(originalLevel);
+    }
+
+    @Test
+    public void testNoEventsWhenDisabled() throws Exception {
+        eventLogger.setLevel(Level.INFO);
+        assertEquals(OperationEvents.NOT_RECORDING, OperationEvents.start());
+
+        persistor.createAsset(Asset.deserializeAssetFromJson("{\"name\":\"a\"}"));
+        persistor.retrieveAllAssets();
+
+        assertEquals(Collections.<String> emptyList(), events);
+    }
+
+    @Test
+    public void testPersistorEvents() throws Exception {
+        eventLogger.setLevel(Level.FINE);
+        persistor = new RecordingPersistor(new IndexedMemoryPersistor());
+        persistor.createAsset(Asset.deserializeAssetFromJson("{\"name\":\"a\", \"state\":\"published\"}"));
+        persistor.createAsset(Asset.deserializeAssetFromJson("{\"name\":\"b\", \"state\":\"draft\"}"));
+
+        AssetFilter filter = new AssetFilter(Asset.STATE, Arrays.asList(new Condition(Operation.EQUALS, "published")));
+        persistor.retrieveAllAssets(Arrays.asList(filter), null, null, null);
+
+        assertEquals(3, events.size());
+        assertTrue(events.get(0), events.get(0).startsWith("persistor operation=createAsset ms="));
+        assertTrue(events.get(2), events.get(2).startsWith("persistor operation=retrieveAllAssets filters=state:EQUALS results=1 ms="));
+    }
+
+    @Test
+    public void testContentEvents() throws Exception {
+        eventLogger.setLevel(Level.FINE);
+        byte[] content = "Some content".getBytes(StandardCharsets.UTF_8);
+        AttachmentContentMetadata metadata = persistor.createAttachmentContent("file", "text/plain", new ByteArrayInputStream(content));
+
+        assertEquals(1, events.size());
+        assertTrue(events.get(0), events.get(0).startsWith("content operation=write bytes=" + content.length + " ms="));
+
+        AttachmentContentResponse response = persistor.retrieveAttachmentContent(metadata.filename);
+        assertEquals("text/plain", response.getContentType());
+        try (InputStream stream = response.getContentStream()) {
+            assertEquals('S', stream.read());
+            byte[] buffer = new byte[100];
+            assertEquals(content.length - 1, stream.read(buffer));
+            assertEquals("Read isn't recorded until the stream is closed", 1, events.size());
+        }
+
+        assertEquals(2, events.size());
+        assertTrue(events.get(1), events.get(1).startsWith("content operation=read bytes=" + content.length + " ms="));
+    }
+
+    @Test
+    public void testDescribeFilters() {
+        AssetFilter state = new AssetFilter(Asset.STATE, Arrays.asList(new Condition(Operation.EQUALS, "published")));
+        AssetFilter type = new AssetFilter("type", Arrays.asList(new Condition(Operation.EQUALS, "a"), new Condition(Operation.NOT_EQUALS, "b")));
+        assertEquals("state:EQUALS,type:EQUALS|NOT_EQUALS", OperationEvents.describeFilters(Arrays.asList(state, type)));
+        assertEquals("", OperationEvents.describeFilters(Collections.<AssetFilter> emptyList()));
+    }
+
+}
@@ -247,6 +247,23 @@ public class RepositoryRESTResourceLoggingTest {
         getRestResource().updateAssetState(NON_EXISTENT_ID, updateJson);
     }
 
+    @Test
+    public void testResolveFeatures(@Mocked final Logger logger) throws InvalidParameterException, JsonProcessingException {
+
+        final String resolveJson = "{\"symbolicNames\":[\"foo\"],\"product\":{\"id\":\"bar\"}}";
+
+        new Expectations() {
+            {
+                logger.isLoggable(Level.FINE);
+                result = true;
+
+                logger.fine("resolveFeatures called with json content:\n" + resolveJson);
+            }
+        };
+
+        getRestResource().resolveFeatures(resolveJson);
+    }
+
     @Test
     public void testGetFakeImConfig(@Mocked final Logger logger) {
 
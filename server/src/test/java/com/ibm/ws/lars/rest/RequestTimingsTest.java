@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link RequestTimings}
+ */
+public class RequestTimingsTest {
+
+    private static final Pattern METRIC = Pattern.compile("(\\w+);dur=(\\d+\\.\\d)(;desc=\"(\\d+) calls\")?");
+
+    @After
+    public void tearDown() {
+        RequestTimings.end();
+    }
+
+    @Test
+    public void testHeaderFormat() {
+        RequestTimings timings = RequestTimings.begin();
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.PARSE)) {
+            // Nothing to do
+        }
+        for (int i = 0; i < 2; i++) {
+            try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+                // Nothing to do
+            }
+        }
+
+        String[] metrics = timings.toHeader().split(", ");
+        assertEquals(3, metrics.length);
+        assertEquals(RequestTimings.PARSE, parse(metrics[0]).group(1));
+        assertEquals(null, parse(metrics[0]).group(4));
+        assertEquals(RequestTimings.DB, parse(metrics[1]).group(1));
+        assertEquals("2", parse(metrics[1]).group(4));
+        assertEquals(RequestTimings.TOTAL, parse(metrics[2]).group(1));
+    }
+
+    @Test
+    public void testNestedTimersExcludeInnerTime() throws Exception {
+        RequestTimings timings = RequestTimings.begin();
+        try (RequestTimings.Timer outer = RequestTimings.time(RequestTimings.SERIALIZE)) {
+            try (RequestTimings.Timer inner = RequestTimings.time(RequestTimings.DB)) {
+                Thread.sleep(50);
+            }
+        }
+
+        String[] metrics = timings.toHeader().split(", ");
+        assertEquals(RequestTimings.SERIALIZE, parse(metrics[0]).group(1));
+        assertEquals(RequestTimings.DB, parse(metrics[1]).group(1));
+        double serialize = Double.parseDouble(parse(metrics[0]).group(2));
+        double db = Double.parseDouble(parse(metrics[1]).group(2));
+        double total = Double.parseDouble(parse(metrics[2]).group(2));
+        assertTrue("db took " + db + "ms", db >= 49);
+        assertTrue("serialize took " + serialize + "ms", serialize < db);
+        assertTrue("total was " + total + "ms", total >= db);
+    }
+
+    @Test
+    public void testNotTiming() {
+        // Timers can be used when no request is being timed
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+            // Nothing to do
+        }
+
+        RequestTimings timings = RequestTimings.begin();
+        RequestTimings.end();
+        try (RequestTimings.Timer timer = RequestTimings.time(RequestTimings.DB)) {
+            // Nothing to do
+        }
+        assertEquals(1, timings.toHeader().split(", ").length);
+    }
+
+    private static Matcher parse(String metric) {
+        Matcher matcher = METRIC.matcher(metric);
+        assertTrue("Unexpected metric " + metric, matcher.matches());
+        return matcher;
+    }
+
+}
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import mockit.Deencapsulation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.ws.lars.rest.Condition.Operation;
+import com.ibm.ws.lars.rest.SortOptions.SortOrder;
+import com.ibm.ws.lars.rest.model.Asset;
+
+/**
+ * Unit tests for {@link SearchIndex}
+ */
+public class SearchIndexTest extends AssetViewTestCase {
+
+    private Configuration configuration;
+    private SearchIndex searchIndex;
+
+    @Before
+    public void setUp() {
+        configuration = new Configuration();
+        Deencapsulation.setField(configuration, "searchIndexEnabled", true);
+
+        searchIndex = new SearchIndex();
+        Deencapsulation.setField(searchIndex, "persistenceBean", persistor);
+        Deencapsulation.setField(searchIndex, "configuration", configuration);
+    }
+
+    @Test
+    public void testCanServe() {
+        assertTrue(searchIndex.canServe(Collections.<AssetFilter> emptyList(), "foo", null));
+        assertTrue(searchIndex.canServe(Collections.<AssetFilter> emptyList(), "foo", new SortOptions("name", SortOrder.ASCENDING)));
+        assertFalse("Only searches are served", searchIndex.canServe(Collections.<AssetFilter> emptyList(), null, null));
+        assertFalse("Download counts aren't in the index",
+                    searchIndex.canServe(Collections.<AssetFilter> emptyList(), "foo", new SortOptions("attachmentDownloads.a", SortOrder.DESCENDING)));
+
+        Deencapsulation.setField(configuration, "searchIndexEnabled", false);
+        assertFalse("Index is disabled", searchIndex.canServe(Collections.<AssetFilter> emptyList(), "foo", null));
+    }
+
+    @Test
+    public void testTokenize() {
+        assertEquals(Arrays.asList("jsp-2.3", "jsp", "2.3", "servlet", "support", "v8.5.5.9"),
+                     SearchIndex.tokenize("The jsp-2.3 Servlets, supported by v8.5.5.9."));
+        assertEquals(Arrays.asList("com.ibm.jdbc", "com", "ibm", "jdbc"), SearchIndex.tokenize("com.ibm.jdbc"));
+    }
+
+    @Test
+    public void testEditDistance() {
+        assertEquals(0, SearchIndex.editDistance("servlet", "servlet", 2));
+        assertEquals(1, SearchIndex.editDistance("servlet", "sevrlet", 2));
+        assertEquals(1, SearchIndex.editDistance("servlet", "servet", 2));
+        assertEquals(2, SearchIndex.editDistance("websphere", "wbesphre", 2));
+        assertEquals("Gives up beyond the maximum", 2, SearchIndex.editDistance("servlet", "jdbc", 1));
+    }
+
+    @Test
+    public void testFeatureNames() throws Exception {
+        createAsset("JavaServer Pages 2.3", "jsp-2.3", "features", "Dynamic web pages");
+        createAsset("JavaServer Pages 2.2", "jsp-2.2", "features", "Dynamic web pages");
+        createAsset("Servlet 3.1", "servlet-3.1", "features", "Java servlets");
+
+        assertThat(search("jsp-2.3"), contains("JavaServer Pages 2.3", "JavaServer Pages 2.2"));
+        assertThat(search("jsp"), containsInAnyOrder("JavaServer Pages 2.3", "JavaServer Pages 2.2"));
+        assertThat(search("servlet-3.1"), contains("Servlet 3.1"));
+    }
+
+    @Test
+    public void testPrefixAndTypos() throws Exception {
+        createAsset("WebSphere Liberty", null, "features", "The application server");
+        createAsset("Web Security", null, "features", "Secures applications");
+        createAsset("JDBC", null, "features", "Databases");
+
+        assertThat("Prefixes match", search("webs"), containsInAnyOrder("WebSphere Liberty", "Web Security"));
+        assertThat("Typos match", search("libety"), contains("WebSphere Liberty"));
+        assertThat("Two typos match in a long word", search("applicaitons"), containsInAnyOrder("WebSphere Liberty", "Web Security"));
+        assertThat("Short words must be spelled correctly", search("jdb"), contains("JDBC"));
+        assertTrue(search("jdc").isEmpty());
+    }
+
+    @Test
+    public void testRanking() throws Exception {
+        createAsset("Sample", null, "samples", "A long description which mentions jdbc once among many other words");
+        createAsset("JDBC", null, "features", "JDBC support");
+        createAsset("Other", null, "features", "Unrelated");
+
+        assertThat("Matches in the name score more", search("jdbc"), contains("JDBC", "Sample"));
+        assertThat("Exact matches score more than typos", search("sample samplr"), contains("Sample"));
+        assertThat(search("jdbc -support"), contains("Sample"));
+        assertThat(search("\"jdbc once\" jdbc"), contains("Sample"));
+    }
+
+    @Test
+    public void testFiltersSortAndPaginate() throws Exception {
+        createAsset("a", null, "features", "common");
+        createAsset("b", null, "samples", "common");
+        createAsset("c", null, "features", "common");
+
+        List<AssetFilter> features = Arrays.asList(filter("type", Operation.EQUALS, "features"));
+        assertThat(retrieve("common", new SortOptions("name", SortOrder.DESCENDING), null, features), contains("c", "a"));
+        assertThat(retrieve("common", new SortOptions("name", SortOrder.ASCENDING), new PaginationOptions(1, 1),
+                            Collections.<AssetFilter> emptyList()), contains("b"));
+        assertThat(retrieve("common", new SortOptions("name", SortOrder.ASCENDING), new PaginationOptions(1, 0),
+                            Collections.<AssetFilter> emptyList()), contains("b", "c"));
+        assertThat(retrieve("common", new SortOptions("name", SortOrder.ASCENDING), new PaginationOptions(1, Integer.MAX_VALUE),
+                            Collections.<AssetFilter> emptyList()), contains("b", "c"));
+        assertThat(retrieve("common", new SortOptions("name", SortOrder.ASCENDING), new PaginationOptions(-1, 1),
+                            Collections.<AssetFilter> emptyList()), contains("a"));
+        assertEquals(2, searchIndex.countAllAssets(features, "common"));
+        assertThat(searchIndex.getDistinctValues("type", Collections.<AssetFilter> emptyList(), "common"),
+                   containsInAnyOrder((Object) "features", "samples"));
+    }
+
+    @Test
+    public void testIndexUpdatedByEvents() throws Exception {
+        createAsset("first", null, "features", "alpha");
+        assertThat(search("alpha"), contains("first"));
+
+        Asset second = createAsset("second", null, "features", "alpha");
+        searchIndex.assetChanged(new AssetChangedEvent(second.get_id(), second));
+        assertThat(search("alpha"), containsInAnyOrder("first", "second"));
+
+        Asset changed = new Asset(second);
+        changed.getProperties().put("description", "beta");
+        searchIndex.assetChanged(new AssetChangedEvent(second.get_id(), changed));
+        assertThat(search("alpha"), contains("first"));
+        assertThat(search("beta"), contains("second"));
+
+        searchIndex.assetChanged(new AssetChangedEvent(second.get_id(), null));
+        assertTrue(search("beta").isEmpty());
+    }
+
+    @Override
+    protected Asset createVisibleAsset(String name) throws Exception {
+        return createAsset(name, null, "features", "alpha");
+    }
+
+    @Override
+    protected int countVisibleAssets() {
+        return searchIndex.countAllAssets(Collections.<AssetFilter> emptyList(), "alpha");
+    }
+
+    @Override
+    protected void assetChanged(AssetChangedEvent event) {
+        searchIndex.assetChanged(event);
+    }
+
+    private Asset createAsset(String name, String shortName, String type, String description) throws Exception {
+        String json = "\"description\":\"" + description + "\""
+                      + (shortName == null ? "" : ", \"wlpInformation\":{\"shortName\":\"" + shortName + "\"}");
+        return storeAsset(name, null, type, json);
+    }
+
+    private List<String> search(String searchTerm) {
+        return retrieve(searchTerm, null, null, Collections.<AssetFilter> emptyList());
+    }
+
+    private List<String> retrieve(String searchTerm, SortOptions sortOptions, PaginationOptions pagination, List<AssetFilter> filters) {
+        return getNames(searchIndex.retrieveAllAssets(filters, searchTerm, pagination, sortOptions));
+    }
+
+}
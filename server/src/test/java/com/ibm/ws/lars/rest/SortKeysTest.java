@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.ibm.ws.lars.rest.SortOptions.SortOrder;
+import com.ibm.ws.lars.rest.model.Asset;
+
+/**
+ * Unit tests for {@link SortKeys}
+ */
+public class SortKeysTest {
+
+    @Test
+    public void testVersionSortKeys() {
+        List<String> versions = Arrays.asList("8.5", "8.5.0.1", "8.5.5.9", "8.5.5.10", "8.5.5.beta", "8.5.10", "9", "10.0.0.1", "2016.0.0.0+");
+        for (int i = 0; i < versions.size(); i++) {
+            for (int j = 0; j < versions.size(); j++) {
+                LibertyVersion a = LibertyVersion.parse(versions.get(i));
+                LibertyVersion b = LibertyVersion.parse(versions.get(j));
+                assertEquals(versions.get(i) + " compared to " + versions.get(j),
+                             Integer.signum(a.compareTo(b)), Integer.signum(a.toSortKey().compareTo(b.toSortKey())));
+            }
+        }
+
+        assertEquals(LibertyVersion.parse("8.5").toSortKey(), LibertyVersion.parse("8.5.0.0").toSortKey());
+    }
+
+    @Test
+    public void testStoredSortField() {
+        assertEquals("_sortKeys.name", SortKeys.getStoredSortField("name"));
+        assertEquals("_sortKeys.minVersion", SortKeys.getStoredSortField("wlpInformation.appliesToFilterInfo.minVersion.value"));
+        assertEquals("type", SortKeys.getStoredSortField("type"));
+        assertTrue(SortKeys.getSortKeyFields().contains("_sortKeys.version"));
+    }
+
+    @Test
+    public void testCreateSortKeys() throws Exception {
+        Asset asset = Asset.deserializeAssetFromJson("{\"name\":\"Servlet\",\"version\":\"8.5.5.10\",\"type\":\"feature\","
+                                                     + "\"wlpInformation\":{\"appliesToFilterInfo\":[{\"minVersion\":{\"value\":\"8.5.5.9\"}},"
+                                                     + "{\"minVersion\":{\"value\":\"16.0.0.2\"}}]}}");
+        Map<String, Object> sortKeys = SortKeys.createSortKeys(asset.getProperties());
+        assertEquals("servlet", sortKeys.get("name"));
+        assertEquals(LibertyVersion.parse("8.5.5.10").toSortKey(), sortKeys.get("version"));
+        assertEquals(Arrays.asList(LibertyVersion.parse("8.5.5.9").toSortKey(), LibertyVersion.parse("16.0.0.2").toSortKey()), sortKeys.get("minVersion"));
+        assertEquals(3, sortKeys.size());
+    }
+
+    @Test
+    public void testComparatorUsesSortKeys() throws Exception {
+        List<Asset> assets = new ArrayList<>();
+        for (String json : Arrays.asList("{\"name\":\"b\",\"version\":\"8.5.5.10\"}",
+                                         "{\"name\":\"C\",\"version\":\"8.5.5.9\"}",
+                                         "{\"name\":\"a\",\"version\":\"8.5.5.1\"}")) {
+            assets.add(Asset.deserializeAssetFromJson(json));
+        }
+
+        Collections.sort(assets, AssetMatcher.getComparator(new SortOptions("version", SortOrder.ASCENDING)));
+        assertEquals(Arrays.asList("a", "C", "b"), names(assets));
+
+        Collections.sort(assets, AssetMatcher.getComparator(new SortOptions("name", SortOrder.ASCENDING)));
+        assertEquals(Arrays.asList("a", "b", "C"), names(assets));
+    }
+
+    private static List<String> names(List<Asset> assets) {
+        List<String> names = new ArrayList<>();
+        for (Asset asset : assets) {
+            names.add((String) asset.getProperty(Asset.NAME));
+        }
+        return names;
+    }
+
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import mockit.Deencapsulation;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link StartupListener}
+ */
+public class StartupListenerTest {
+
+    /**
+     * The startup tasks and the attachment deleter must run when the application is deployed,
+     * without waiting for a request to the REST application
+     */
+    @Test
+    public void testReadyWithoutRequests() throws Exception {
+        final CountDownLatch swept = new CountDownLatch(1);
+        Persistor persistor = new MemoryPersistor() {
+            @Override
+            public Collection<String> findAssetIdsWithOrphanedAttachments() {
+                swept.countDown();
+                return super.findAssetIdsWithOrphanedAttachments();
+            }
+        };
+        Configuration configuration = new Configuration();
+
+        StartupTasks startupTasks = new StartupTasks();
+        Deencapsulation.setField(startupTasks, "persistenceBean", persistor);
+        Deencapsulation.setField(startupTasks, "configuration", configuration);
+
+        InvalidationBus invalidationBus = new InvalidationBus();
+        Deencapsulation.setField(invalidationBus, "configuration", configuration);
+
+        AttachmentDeleter attachmentDeleter = new AttachmentDeleter();
+        Deencapsulation.setField(attachmentDeleter, "persistenceBean", persistor);
+
+        StartupListener listener = new StartupListener();
+        Deencapsulation.setField(listener, "startupTasks", startupTasks);
+        Deencapsulation.setField(listener, "invalidationBus", invalidationBus);
+        Deencapsulation.setField(listener, "attachmentDeleter", attachmentDeleter);
+
+        assertFalse(startupTasks.isReady());
+        listener.contextInitialized(null);
+        try {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!startupTasks.isReady() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue("The startup tasks should have finished", startupTasks.isReady());
+            assertTrue("The attachment deleter should have swept without waiting for a delete", swept.await(10, TimeUnit.SECONDS));
+        } finally {
+            listener.contextDestroyed(null);
+        }
+    }
+
+}
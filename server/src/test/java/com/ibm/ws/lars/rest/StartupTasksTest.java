@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import mockit.Deencapsulation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.ws.lars.rest.StartupTasks.Phase;
+import com.ibm.ws.lars.rest.model.Asset;
+
+/**
+ * Unit tests for {@link StartupTasks}
+ */
+public class StartupTasksTest {
+
+    private int initializeCalls;
+    private int initializeFailures;
+    private Persistor persistor;
+    private Configuration configuration;
+    private PublishedSnapshot publishedSnapshot;
+    private FacetCounts facetCounts;
+    private StartupTasks startupTasks;
+
+    @Before
+    public void setUp() {
+        initializeCalls = 0;
+        initializeFailures = 0;
+        persistor = new IndexedMemoryPersistor() {
+            @Override
+            public void initialize() {
+                initializeCalls++;
+                if (initializeCalls <= initializeFailures) {
+                    throw new IllegalStateException("Database unavailable");
+                }
+            }
+        };
+        configuration = new Configuration();
+
+        publishedSnapshot = new PublishedSnapshot();
+        Deencapsulation.setField(publishedSnapshot, "persistenceBean", persistor);
+        Deencapsulation.setField(publishedSnapshot, "configuration", configuration);
+        CatalogViews catalogViews = new CatalogViews();
+        Deencapsulation.setField(catalogViews, "persistenceBean", persistor);
+        Deencapsulation.setField(catalogViews, "configuration", configuration);
+        FeatureResolver featureResolver = new FeatureResolver();
+        Deencapsulation.setField(featureResolver, "persistenceBean", persistor);
+        Deencapsulation.setField(featureResolver, "configuration", configuration);
+        SearchIndex searchIndex = new SearchIndex();
+        Deencapsulation.setField(searchIndex, "persistenceBean", persistor);
+        Deencapsulation.setField(searchIndex, "configuration", configuration);
+        facetCounts = new FacetCounts();
+        Deencapsulation.setField(facetCounts, "persistenceBean", persistor);
+        Deencapsulation.setField(facetCounts, "configuration", configuration);
+
+        startupTasks = new StartupTasks();
+        Deencapsulation.setField(startupTasks, "persistenceBean", persistor);
+        Deencapsulation.setField(startupTasks, "configuration", configuration);
+        Deencapsulation.setField(startupTasks, "publishedSnapshot", publishedSnapshot);
+        Deencapsulation.setField(startupTasks, "catalogViews", catalogViews);
+        Deencapsulation.setField(startupTasks, "featureResolver", featureResolver);
+        Deencapsulation.setField(startupTasks, "searchIndex", searchIndex);
+        Deencapsulation.setField(startupTasks, "facetCounts", facetCounts);
+        Deencapsulation.setField(startupTasks, "retryMillis", 0L);
+    }
+
+    @Test
+    public void testReadyAfterInitializing() {
+        assertFalse(startupTasks.isReady());
+        assertEquals(Phase.STARTING, startupTasks.getPhase());
+
+        startupTasks.runTasks();
+
+        assertTrue(startupTasks.isReady());
+        assertEquals(1, initializeCalls);
+        Map<String, Object> status = startupTasks.getStatus();
+        assertEquals("READY", status.get("phase"));
+        assertEquals(Boolean.TRUE, status.get("ready"));
+        assertNotNull(status.get("elapsedMillis"));
+        assertNull(status.get("lastFailure"));
+    }
+
+    @Test
+    public void testInitializeRetried() {
+        initializeFailures = 2;
+
+        startupTasks.runTasks();
+
+        assertTrue(startupTasks.isReady());
+        assertEquals(3, initializeCalls);
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        persistor.createAsset(Asset.deserializeAssetFromJson("{\"state\":\"published\", \"type\":\"features\"}"));
+        Deencapsulation.setField(configuration, "warmUpEnabled", true);
+        Deencapsulation.setField(configuration, "publishedSnapshotEnabled", true);
+        Deencapsulation.setField(configuration, "facetCountsEnabled", true);
+
+        startupTasks.runTasks();
+
+        assertTrue(startupTasks.isReady());
+        assertNotNull("The snapshot should have been loaded", Deencapsulation.getField(publishedSnapshot, "snapshot"));
+        assertNotNull("The counts should have been loaded", Deencapsulation.getField(facetCounts, "assetValues"));
+    }
+
+    @Test
+    public void testWarmUpDisabled() throws Exception {
+        persistor.createAsset(Asset.deserializeAssetFromJson("{\"state\":\"published\", \"type\":\"features\"}"));
+        Deencapsulation.setField(configuration, "publishedSnapshotEnabled", true);
+
+        startupTasks.runTasks();
+
+        assertTrue(startupTasks.isReady());
+        assertNull("The snapshot should be loaded when it is first needed", Deencapsulation.getField(publishedSnapshot, "snapshot"));
+    }
+
+    @Test
+    public void testDisabledViewsNotWarmedUp() throws Exception {
+        persistor.createAsset(Asset.deserializeAssetFromJson("{\"state\":\"published\", \"type\":\"features\"}"));
+        Deencapsulation.setField(configuration, "warmUpEnabled", true);
+
+        startupTasks.runTasks();
+
+        assertTrue(startupTasks.isReady());
+        assertNull(Deencapsulation.getField(publishedSnapshot, "snapshot"));
+        assertNull(Deencapsulation.getField(facetCounts, "assetValues"));
+    }
+
+}
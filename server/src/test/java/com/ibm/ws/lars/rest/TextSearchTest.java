@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ibm.ws.lars.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.ibm.ws.lars.rest.model.Asset;
+
+/**
+ * Unit tests for {@link TextSearch}
+ */
+public class TextSearchTest {
+
+    @Test
+    public void testGetTerms() {
+        assertEquals(Arrays.asList("servlet", "support", "library", "jdbc", "deploy", "class"),
+                     TextSearch.getTerms("Servlets: the support of LIBRARIES, jdbc-deploying classes"));
+    }
+
+    @Test
+    public void testScore() throws Exception {
+        Asset asset = Asset.deserializeAssetFromJson("{\"name\":\"JDBC Driver\",\"description\":\"Connects to databases\",\"tags\":[\"sql\",\"database\"]}");
+
+        assertTrue(new TextSearch("jdbc").score(asset) > 0);
+        assertTrue("Words are stemmed", new TextSearch("database").score(asset) > new TextSearch("sql").score(asset));
+        assertTrue("Any word can match", new TextSearch("jdbc nosuchword").score(asset) > 0);
+        assertEquals("Negated words must not match", 0, new TextSearch("jdbc -sql").score(asset), 0);
+        assertTrue(new TextSearch("\"jdbc driver\"").score(asset) > 0);
+        assertEquals("Phrases must match", 0, new TextSearch("\"driver jdbc\" jdbc").score(asset), 0);
+        assertEquals("Stop words are ignored", 0, new TextSearch("to").score(asset), 0);
+        assertEquals(0, new TextSearch("-jdbc").score(asset), 0);
+    }
+
+}
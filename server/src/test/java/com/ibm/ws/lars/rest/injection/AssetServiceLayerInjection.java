@@ -17,8 +17,15 @@ package com.ibm.ws.lars.rest.injection;
 
 import java.lang.reflect.Field;
 
+import javax.enterprise.event.Event;
+
+import com.ibm.ws.lars.rest.AssetChangedEvent;
 import com.ibm.ws.lars.rest.AssetServiceLayer;
+import com.ibm.ws.lars.rest.AttachmentCache;
+import com.ibm.ws.lars.rest.AttachmentDeleter;
 import com.ibm.ws.lars.rest.Configuration;
+import com.ibm.ws.lars.rest.DownloadCounter;
+import com.ibm.ws.lars.rest.FeatureResolver;
 import com.ibm.ws.lars.rest.Persistor;
 
 /**
@@ -28,6 +35,11 @@ public class AssetServiceLayerInjection {
 
     private static final String CONFIGURATION_FIELD = "configuration";
     private static final String PERSISTENCE_BEAN_FIELD = "persistenceBean";
+    private static final String FEATURE_RESOLVER_FIELD = "featureResolver";
+    private static final String ASSET_CHANGES_FIELD = "assetChanges";
+    private static final String ATTACHMENT_CACHE_FIELD = "attachmentCache";
+    private static final String DOWNLOAD_COUNTER_FIELD = "downloadCounter";
+    private static final String ATTACHMENT_DELETER_FIELD = "attachmentDeleter";
 
     public static void setConfiguration(AssetServiceLayer serviceLayer, Configuration configuration) {
         try {
@@ -49,4 +61,54 @@ public class AssetServiceLayerInjection {
         }
     }
 
+    public static void setFeatureResolver(AssetServiceLayer serviceLayer, FeatureResolver featureResolver) {
+        try {
+            Field field = AssetServiceLayer.class.getDeclaredField(FEATURE_RESOLVER_FIELD);
+            field.setAccessible(true);
+            field.set(serviceLayer, featureResolver);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to inject feature resolver", e);
+        }
+    }
+
+    public static void setAssetChanges(AssetServiceLayer serviceLayer, Event<AssetChangedEvent> assetChanges) {
+        try {
+            Field field = AssetServiceLayer.class.getDeclaredField(ASSET_CHANGES_FIELD);
+            field.setAccessible(true);
+            field.set(serviceLayer, assetChanges);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to inject asset change event", e);
+        }
+    }
+
+    public static void setAttachmentCache(AssetServiceLayer serviceLayer, AttachmentCache attachmentCache) {
+        try {
+            Field field = AssetServiceLayer.class.getDeclaredField(ATTACHMENT_CACHE_FIELD);
+            field.setAccessible(true);
+            field.set(serviceLayer, attachmentCache);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to inject attachment cache", e);
+        }
+    }
+
+    public static void setDownloadCounter(AssetServiceLayer serviceLayer, DownloadCounter downloadCounter) {
+        try {
+            Field field = AssetServiceLayer.class.getDeclaredField(DOWNLOAD_COUNTER_FIELD);
+            field.setAccessible(true);
+            field.set(serviceLayer, downloadCounter);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to inject download counter", e);
+        }
+    }
+
+    public static void setAttachmentDeleter(AssetServiceLayer serviceLayer, AttachmentDeleter attachmentDeleter) {
+        try {
+            Field field = AssetServiceLayer.class.getDeclaredField(ATTACHMENT_DELETER_FIELD);
+            field.setAccessible(true);
+            field.set(serviceLayer, attachmentDeleter);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to inject attachment deleter", e);
+        }
+    }
+
 }